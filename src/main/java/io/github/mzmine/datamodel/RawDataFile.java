@@ -87,6 +87,20 @@ public interface RawDataFile {
   @Nonnull
   Scan[] getScanNumbers(int msLevel, @Nonnull Range<Float> rtRange);
 
+  /**
+   * Returns all MS2 scans in given retention time range with a precursor m/z in the given range
+   *
+   * @param rtRange          Retention time range
+   * @param precursorMzRange Precursor m/z range
+   * @return Array of scans in the order of {@link #getScanNumbers(int)}, never returns null
+   */
+  @Nonnull
+  default Scan[] getFragmentScans(@Nonnull Range<Float> rtRange,
+      @Nonnull Range<Double> precursorMzRange) {
+    return getScanNumbers(2).stream().filter(s -> rtRange.contains(s.getRetentionTime())
+        && precursorMzRange.contains(s.getPrecursorMZ())).toArray(Scan[]::new);
+  }
+
   /**
    * @param rt The rt
    * @param mslevel The ms level
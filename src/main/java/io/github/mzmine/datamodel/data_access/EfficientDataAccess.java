@@ -22,6 +22,10 @@ import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.featuredata.IonMobilogramTimeSeries;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * A factory to get efficient data access to scans in RawDataFile and features in FeatureList.
@@ -30,6 +34,12 @@ import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
  */
 public class EfficientDataAccess {
 
+  /**
+   * Scans are split into more chunks than threads, because the processing time per scan can vary
+   * a lot (e.g., frames vs. MS2 scans).
+   */
+  private static final int CHUNKS_PER_THREAD = 4;
+
   /**
    * The intended use of this memory access is to loop over all scans in a {@link RawDataFile} and
    * access data points via {@link ScanDataAccess#getMzValue(int)} and {@link
@@ -55,6 +65,51 @@ public class EfficientDataAccess {
     return new ScanDataAccess(dataFile, type, selection);
   }
 
+  /**
+   * Splits the scans of a {@link RawDataFile} into chunks of consecutive scans, which can be
+   * processed in parallel, e.g., by a parallel stream. Every chunk has its own data arrays, so the
+   * intended use of each access is the same as for {@link #of(RawDataFile, ScanDataType,
+   * ScanSelection)}. The number of chunks is a multiple of the parallelism of the current
+   * {@link ForkJoinPool} to balance the load between the threads.
+   *
+   * @param dataFile  target data file to loop over all scans or mass lists
+   * @param type      processed or raw data
+   * @param selection scan selection (null for all scans)
+   * @return a list of data accesses on disjoint, ordered scan ranges. Empty chunks are omitted.
+   */
+  public static List<ScanDataAccess> ofChunks(RawDataFile dataFile, ScanDataType type,
+      ScanSelection selection) {
+    final ForkJoinPool pool =
+        ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+    return ofChunks(dataFile, type, selection, pool.getParallelism() * CHUNKS_PER_THREAD);
+  }
+
+  /**
+   * Splits the scans of a {@link RawDataFile} into chunks of consecutive scans, which can be
+   * processed in parallel. See {@link #ofChunks(RawDataFile, ScanDataType, ScanSelection)}.
+   *
+   * @param dataFile  target data file to loop over all scans or mass lists
+   * @param type      processed or raw data
+   * @param selection scan selection (null for all scans)
+   * @param numChunks maximum number of chunks
+   * @return a list of data accesses on disjoint, ordered scan ranges. Empty chunks are omitted.
+   */
+  public static List<ScanDataAccess> ofChunks(RawDataFile dataFile, ScanDataType type,
+      ScanSelection selection, int numChunks) {
+    final int numScans = dataFile.getNumOfScans();
+    final int chunkSize = Math.max(1, (int) Math.ceil(numScans / (double) Math.max(1, numChunks)));
+
+    final List<ScanDataAccess> chunks = new ArrayList<>();
+    for (int first = 0; first < numScans; first += chunkSize) {
+      ScanDataAccess chunk = new ScanDataAccess(dataFile, type, selection, first,
+          Math.min(first + chunkSize, numScans));
+      if (chunk.getNumberOfScans() > 0) {
+        chunks.add(chunk);
+      }
+    }
+    return chunks;
+  }
+
   /**
    * Access the chromatographic data of features in a feature list sorted by scan ID (usually sorted
    * by retention time)
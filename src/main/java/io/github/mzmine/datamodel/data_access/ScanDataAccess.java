@@ -28,6 +28,7 @@ import io.github.mzmine.datamodel.data_access.EfficientDataAccess.ScanDataType;
 import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
 import io.github.mzmine.util.exceptions.MissingMassListException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.stream.Stream;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -63,24 +64,47 @@ public class ScanDataAccess implements MassSpectrum {
    */
   protected ScanDataAccess(RawDataFile dataFile,
       ScanDataType type, ScanSelection selection) {
+    this(dataFile, type, selection, 0, dataFile.getNumOfScans());
+  }
+
+  /**
+   * Access to a contiguous range of scans in the data file. Multiple instances on disjoint ranges
+   * can be used concurrently, each one has its own data arrays.
+   *
+   * @param dataFile          target data file to loop over all scans or mass lists
+   * @param type              processed or raw data
+   * @param selection         scan selection (null for all scans)
+   * @param firstScanInRange  index of the first scan in the data file (inclusive)
+   * @param lastScanInRange   index of the last scan in the data file (exclusive)
+   */
+  protected ScanDataAccess(RawDataFile dataFile, ScanDataType type, ScanSelection selection,
+      int firstScanInRange, int lastScanInRange) {
     this.dataFile = dataFile;
     this.type = type;
     this.selection = selection;
+    this.currentScanInDataFile = firstScanInRange - 1;
+
     // count matching scans
-    if (selection == null) {
-      totalScans = dataFile.getScans().size();
-    } else {
-      int size = 0;
-      for (Scan s : dataFile.getScans()) {
-        if (selection.matches(s)) {
-          size++;
+    final List<Scan> scans = dataFile.getScans();
+    int size = 0;
+    int maxCentroidDataPoints = 0;
+    for (int i = firstScanInRange; i < lastScanInRange; i++) {
+      final Scan s = scans.get(i);
+      if (selection == null || selection.matches(s)) {
+        size++;
+        if (type == ScanDataType.CENTROID && s.getMassList() != null) {
+          maxCentroidDataPoints = Math.max(maxCentroidDataPoints,
+              s.getMassList().getNumberOfDataPoints());
         }
       }
-      totalScans = size;
     }
-    // might even use the maximum number of data points in the selected scans
-    // but seems unnecessary
-    int length = getMaxNumberOfDataPoints();
+    totalScans = size;
+
+    // only the selected scans in this range define the length of the arrays
+    int length = switch (type) {
+      case CENTROID -> maxCentroidDataPoints;
+      case RAW -> dataFile.getMaxRawDataPoints();
+    };
     mzs = new double[length];
     intensities = new double[length];
   }
@@ -194,18 +218,6 @@ public class ScanDataAccess implements MassSpectrum {
     return totalScans;
   }
 
-  /**
-   * Maximum number of data points is used to create the arrays that back the data
-   *
-   * @return
-   */
-  private int getMaxNumberOfDataPoints() {
-    return switch (type) {
-      case CENTROID -> dataFile.getMaxCentroidDataPoints();
-      case RAW -> dataFile.getMaxRawDataPoints();
-    };
-  }
-
   // ###############################################
   // general MassSpectrum methods
   @Override
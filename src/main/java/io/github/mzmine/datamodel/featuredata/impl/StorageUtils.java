@@ -5,6 +5,8 @@ import io.github.mzmine.util.DataPointUtils;
 import io.github.mzmine.util.MemoryMapStorage;
 import java.io.IOException;
 import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -141,4 +143,60 @@ public class StorageUtils {
     }
     return buffer;
   }
+
+  /**
+   * Stores the given array into a float buffer.
+   *
+   * @param storage The storage to be used. If null, the values will be wrapped using {@link
+   *                FloatBuffer#wrap(float[])}.
+   * @param values  The values to be stored. If storage is null, a float buffer will be wrapped
+   *                around this array. Changes in the array will therefore be reflected in the
+   *                FloatBuffer.
+   * @return The float buffer the values were stored in.
+   */
+  @Nonnull
+  public static FloatBuffer storeValuesToFloatBuffer(@Nullable final MemoryMapStorage storage,
+      @Nonnull final float[] values) {
+
+    FloatBuffer buffer;
+    if (storage != null) {
+      try {
+        buffer = storage.storeData(values);
+      } catch (IOException e) {
+        e.printStackTrace();
+        buffer = FloatBuffer.wrap(values);
+      }
+    } else {
+      buffer = FloatBuffer.wrap(values);
+    }
+    return buffer;
+  }
+
+  /**
+   * Stores the given array into an int buffer.
+   *
+   * @param storage The storage to be used. If null, the values will be wrapped using {@link
+   *                IntBuffer#wrap(int[])}.
+   * @param values  The values to be stored. If storage is null, an int buffer will be wrapped
+   *                around this array. Changes in the array will therefore be reflected in the
+   *                IntBuffer.
+   * @return The int buffer the values were stored in.
+   */
+  @Nonnull
+  public static IntBuffer storeValuesToIntBuffer(@Nullable final MemoryMapStorage storage,
+      @Nonnull final int[] values) {
+
+    IntBuffer buffer;
+    if (storage != null) {
+      try {
+        buffer = storage.storeData(values);
+      } catch (IOException e) {
+        e.printStackTrace();
+        buffer = IntBuffer.wrap(values);
+      }
+    } else {
+      buffer = IntBuffer.wrap(values);
+    }
+    return buffer;
+  }
 }
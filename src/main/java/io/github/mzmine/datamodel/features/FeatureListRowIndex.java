@@ -0,0 +1,167 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.datamodel.features;
+
+import com.google.common.collect.Range;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nonnull;
+
+/**
+ * An immutable index of the rows of a feature list for m/z and retention time range queries. The
+ * rows are sorted once by their average m/z and once by their average retention time. A query
+ * uses the order of the bounded dimension (m/z preferred) to find the candidates with a binary
+ * search and checks the other dimension for each candidate.
+ * <p>
+ * The index is a snapshot. The owning feature list has to create a new index whenever rows are
+ * added or removed or the m/z or RT of a row changes.
+ */
+final class FeatureListRowIndex {
+
+  // in the order of the feature list
+  private final FeatureListRow[] rows;
+  private final double[] mzs;
+  private final float[] rts;
+
+  // row positions sorted by m/z and rt. NaN values are sorted to the end.
+  private final int[] mzOrder;
+  private final double[] sortedMzs;
+  private final int[] rtOrder;
+  private final float[] sortedRts;
+
+  FeatureListRowIndex(@Nonnull List<FeatureListRow> featureListRows) {
+    rows = featureListRows.toArray(FeatureListRow[]::new);
+    final int numRows = rows.length;
+
+    mzs = new double[numRows];
+    rts = new float[numRows];
+    for (int i = 0; i < numRows; i++) {
+      mzs[i] = rows[i].getAverageMZ();
+      rts[i] = rows[i].getAverageRT();
+    }
+
+    // same order as Double.compareTo and Float.compareTo, which are used by Range.contains
+    mzOrder = createOrder(numRows);
+    IntArrays.quickSort(mzOrder, (a, b) -> Double.compare(mzs[a], mzs[b]));
+    rtOrder = createOrder(numRows);
+    IntArrays.quickSort(rtOrder, (a, b) -> Float.compare(rts[a], rts[b]));
+
+    sortedMzs = new double[numRows];
+    sortedRts = new float[numRows];
+    for (int i = 0; i < numRows; i++) {
+      sortedMzs[i] = mzs[mzOrder[i]];
+      sortedRts[i] = rts[rtOrder[i]];
+    }
+  }
+
+  /**
+   * @param rtRange retention time range
+   * @param mzRange m/z range
+   * @return all rows with an average m/z and RT inside the ranges, in the order of the feature
+   * list.
+   */
+  @Nonnull
+  List<FeatureListRow> getRowsInsideScanAndMZRange(@Nonnull Range<Float> rtRange,
+      @Nonnull Range<Double> mzRange) {
+    final IntArrayList positions = new IntArrayList();
+
+    if (mzRange.hasLowerBound() || mzRange.hasUpperBound()) {
+      int i = mzRange.hasLowerBound() ? firstIndexNotBelow(sortedMzs, mzRange.lowerEndpoint()) : 0;
+      for (; i < sortedMzs.length; i++) {
+        final double mz = sortedMzs[i];
+        if (mzRange.hasUpperBound() && Double.compare(mz, mzRange.upperEndpoint()) > 0) {
+          break;
+        }
+        final int position = mzOrder[i];
+        if (mzRange.contains(mz) && rtRange.contains(rts[position])) {
+          positions.add(position);
+        }
+      }
+    } else if (rtRange.hasLowerBound() || rtRange.hasUpperBound()) {
+      int i = rtRange.hasLowerBound() ? firstIndexNotBelow(sortedRts, rtRange.lowerEndpoint()) : 0;
+      for (; i < sortedRts.length; i++) {
+        final float rt = sortedRts[i];
+        if (rtRange.hasUpperBound() && Float.compare(rt, rtRange.upperEndpoint()) > 0) {
+          break;
+        }
+        final int position = rtOrder[i];
+        if (rtRange.contains(rt) && mzRange.contains(mzs[position])) {
+          positions.add(position);
+        }
+      }
+    } else {
+      // both ranges are unbounded
+      return new ArrayList<>(Arrays.asList(rows));
+    }
+
+    // keep the order of the feature list
+    final int[] sortedPositions = positions.toIntArray();
+    IntArrays.quickSort(sortedPositions);
+    final List<FeatureListRow> result = new ArrayList<>(sortedPositions.length);
+    for (int position : sortedPositions) {
+      result.add(rows[position]);
+    }
+    return result;
+  }
+
+  private static int[] createOrder(int size) {
+    final int[] order = new int[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    return order;
+  }
+
+  /**
+   * @return the first index with a value >= the given value
+   */
+  private static int firstIndexNotBelow(double[] sorted, double value) {
+    int low = 0;
+    int high = sorted.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (Double.compare(sorted[mid], value) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the first index with a value >= the given value
+   */
+  private static int firstIndexNotBelow(float[] sorted, float value) {
+    int low = 0;
+    int high = sorted.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (Float.compare(sorted[mid], value) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
@@ -104,7 +104,12 @@ public interface ModularDataModel {
    * @return
    */
   default Object getValue(DataType type) {
-    return getMap().get(type).getValue();
+    if (type == null) {
+      return null;
+    }
+    // does not create the property, if the value was never set
+    Property<?> property = getMap().get(type);
+    return property == null ? null : property.getValue();
   }
 
   /**
@@ -115,19 +120,31 @@ public interface ModularDataModel {
    */
   default Object getValue(Class tclass) {
     DataType type = getTypeColumn(tclass);
-    return get(type).getValue();
+    return type == null ? null : getValue(type);
   }
 
   /**
-   * Property for this datatype
+   * Property for this datatype. Properties are only created once they are accessed, so a model
+   * does not hold properties for all the (possibly hundreds of) type columns of its feature list.
    * 
    * @param <T>
    * @param type
-   * @return
+   * @return the property or null, if the type is not a column of this model
    */
   @Nullable
   default <T extends Property<?>> T get(DataType<T> type) {
-    return (T) getMap().get(type);
+    // the concurrent map does not accept null keys
+    if (type == null) {
+      return null;
+    }
+    Property<?> property = getMap().get(type);
+    if (property == null) {
+      DataType realType = getTypes().get(type.getClass());
+      if (realType != null) {
+        property = putPropertyIfAbsent(realType, realType.createProperty());
+      }
+    }
+    return (T) property;
   }
 
   /**
@@ -181,8 +198,27 @@ public interface ModularDataModel {
 
     DataType realType = getTypes().get(type.getClass());
     // only set datatype -> property value once
-    if (getMap().get(realType) == null)
-      getMap().put(realType, value);
+    putPropertyIfAbsent(realType, value);
+  }
+
+  /**
+   * Puts the property, if no property was set for the type before. Properties are created lazily
+   * by concurrent threads, so the check and the put are done atomically and all threads use the
+   * same property.
+   *
+   * @return the property of the type, either the given or the previously set one
+   */
+  private Property<?> putPropertyIfAbsent(DataType realType, Property<?> value) {
+    final ObservableMap<DataType, Property<?>> map = getMap();
+    // the observable wrapper does not put atomically, so creation is synchronized on the map
+    synchronized (map) {
+      final Property<?> existing = map.get(realType);
+      if (existing != null) {
+        return existing;
+      }
+      map.put(realType, value);
+      return value;
+    }
   }
 
   /**
@@ -213,8 +249,7 @@ public interface ModularDataModel {
     Property property = get(realType);
     // TODO check if good - init property if not there
     if(property == null) {
-      property = realType.createProperty();
-      setProperty(realType, property);
+      property = putPropertyIfAbsent(realType, realType.createProperty());
     }
     if(value == null) {
       property.setValue(null);
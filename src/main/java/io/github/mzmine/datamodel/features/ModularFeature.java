@@ -61,12 +61,12 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import javafx.beans.property.ListProperty;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.Property;
 import javafx.collections.FXCollections;
-import javafx.collections.MapChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.ObservableMap;
 import javafx.scene.Node;
@@ -81,33 +81,15 @@ import javax.annotation.Nullable;
 public class ModularFeature implements Feature, ModularDataModel {
 
   private final ObservableMap<DataType, Property<?>> map =
-      FXCollections.observableMap(new HashMap<>());
+      FXCollections.observableMap(new ConcurrentHashMap<>());
   // buffert col charts and nodes
   private final Map<String, Node> buffertColCharts = new HashMap<>();
   @Nonnull
   private ModularFeatureList flist;
 
   public ModularFeature(@Nonnull ModularFeatureList flist) {
+    // properties of the type columns are created on demand, see ModularDataModel#get(DataType)
     this.flist = flist;
-
-    // add type property columns to maps
-    flist.getFeatureTypes().values().forEach(type -> {
-      this.setProperty(type, type.createProperty());
-    });
-
-    // register listener to types map to automatically generate default properties for new DataTypes
-    flist.getFeatureTypes().addListener(
-        (MapChangeListener<? super Class<? extends DataType>, ? super DataType>) change -> {
-          if (change.wasAdded()) {
-            // add type columns to maps
-            DataType type = change.getValueAdded();
-            this.setProperty(type, type.createProperty());
-          } else if (change.wasRemoved()) {
-            // remove type columns to maps
-            DataType<Property<?>> type = change.getValueRemoved();
-            this.removeProperty((Class<DataType<Property<?>>>) type.getClass());
-          }
-        });
   }
 
   // NOT TESTED
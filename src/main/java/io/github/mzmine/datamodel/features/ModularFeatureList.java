@@ -6,6 +6,8 @@ import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.features.types.DataType;
 import io.github.mzmine.datamodel.features.types.ManualAnnotationType;
 import io.github.mzmine.datamodel.features.types.numbers.IDType;
+import io.github.mzmine.datamodel.features.types.numbers.MZType;
+import io.github.mzmine.datamodel.features.types.numbers.RTType;
 import io.github.mzmine.util.MemoryMapStorage;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -19,7 +21,11 @@ import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import javafx.beans.InvalidationListener;
+import javafx.beans.property.Property;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.MapChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.ObservableMap;
 import javax.annotation.Nonnull;
@@ -59,6 +65,24 @@ public class ModularFeatureList implements FeatureList {
   private Range<Double> mzRange;
   private Range<Float> rtRange;
 
+  // lazily built index for range queries. Invalidated (set to null) whenever rows are added or
+  // removed or the m/z or RT of a row changes
+  private volatile FeatureListRowIndex rowIndex;
+  private final Object rowIndexLock = new Object();
+  private final InvalidationListener rowIndexInvalidator = observable -> invalidateRowIndex();
+  private final MapChangeListener<DataType, Property<?>> rowPropertyListener = change -> {
+    // the m/z or RT property of a row might be replaced or created after the row was added
+    if (change.getKey() instanceof MZType || change.getKey() instanceof RTType) {
+      if (change.wasRemoved()) {
+        change.getValueRemoved().removeListener(rowIndexInvalidator);
+      }
+      if (change.wasAdded()) {
+        change.getValueAdded().addListener(rowIndexInvalidator);
+      }
+      invalidateRowIndex();
+    }
+  };
+
   /*public ModularFeatureList(String name) {
     this(name, List.of());
   }*/
@@ -79,6 +103,13 @@ public class ModularFeatureList implements FeatureList {
     this.name = name;
     this.dataFiles = FXCollections.observableList(dataFiles);
     featureListRows = FXCollections.observableArrayList();
+    featureListRows.addListener((ListChangeListener<FeatureListRow>) change -> {
+      while (change.next()) {
+        change.getRemoved().forEach(this::unobserveRow);
+        change.getAddedSubList().forEach(this::observeRow);
+      }
+      invalidateRowIndex();
+    });
     descriptionOfAppliedTasks = FXCollections.observableArrayList();
     dateCreated = DATA_FORMAT.format(new Date());
     selectedScans = FXCollections.observableMap(new HashMap<>());
@@ -285,9 +316,68 @@ public class ModularFeatureList implements FeatureList {
   public ObservableList<FeatureListRow> getRowsInsideScanAndMZRange(Range<Float> rtRange,
       Range<Double> mzRange) {
     // TODO handle if mz or rt is not present
-    return modularStream().filter(
-        row -> rtRange.contains(row.getAverageRT()) && mzRange.contains(row.getAverageMZ()))
-        .collect(Collectors.toCollection(FXCollections::observableArrayList));
+    return FXCollections.observableArrayList(
+        getRowIndex().getRowsInsideScanAndMZRange(rtRange, mzRange));
+  }
+
+  /**
+   * @return the index of all rows for range queries. Created on demand, if rows were added or
+   * removed or the m/z or RT of a row changed since the last query.
+   */
+  @Nonnull
+  private FeatureListRowIndex getRowIndex() {
+    FeatureListRowIndex index = rowIndex;
+    if (index != null) {
+      return index;
+    }
+
+    // build the index only once, if multiple threads query the feature list concurrently
+    synchronized (rowIndexLock) {
+      index = rowIndex;
+      if (index == null) {
+        index = new FeatureListRowIndex(featureListRows);
+        rowIndex = index;
+      }
+      return index;
+    }
+  }
+
+  private void invalidateRowIndex() {
+    // waits until an index that is currently created is published, so it is not kept after a
+    // concurrent change
+    synchronized (rowIndexLock) {
+      rowIndex = null;
+    }
+  }
+
+  private void observeRow(FeatureListRow row) {
+    if (row instanceof ModularFeatureListRow) {
+      ModularFeatureListRow modularRow = (ModularFeatureListRow) row;
+      modularRow.getMap().addListener(rowPropertyListener);
+      addListener(modularRow.get(MZType.class), rowIndexInvalidator);
+      addListener(modularRow.get(RTType.class), rowIndexInvalidator);
+    }
+  }
+
+  private void unobserveRow(FeatureListRow row) {
+    if (row instanceof ModularFeatureListRow) {
+      ModularFeatureListRow modularRow = (ModularFeatureListRow) row;
+      modularRow.getMap().removeListener(rowPropertyListener);
+      Property<?> mz = modularRow.get(MZType.class);
+      if (mz != null) {
+        mz.removeListener(rowIndexInvalidator);
+      }
+      Property<?> rt = modularRow.get(RTType.class);
+      if (rt != null) {
+        rt.removeListener(rowIndexInvalidator);
+      }
+    }
+  }
+
+  private static void addListener(@Nullable Property<?> property, InvalidationListener listener) {
+    if (property != null) {
+      property.addListener(listener);
+    }
   }
 
   @Override
@@ -57,6 +57,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 import javafx.beans.property.ListProperty;
 import javafx.beans.property.MapProperty;
@@ -90,7 +91,7 @@ public class ModularFeatureListRow implements FeatureListRow, ModularDataModel {
    * this map see {@link #addFeature}
    */
   private final ObservableMap<DataType, Property<?>> map =
-      FXCollections.observableMap(new HashMap<>());
+      FXCollections.observableMap(new ConcurrentHashMap<>());
 
   private final Map<RawDataFile, ModularFeature> features;
 
@@ -103,25 +104,8 @@ public class ModularFeatureListRow implements FeatureListRow, ModularDataModel {
 
   public ModularFeatureListRow(@Nonnull ModularFeatureList flist, ModularFeatureListRow row,
       boolean copyFeatures) {
+    // properties of the type columns are created on demand, see ModularDataModel#get(DataType)
     this.flist = flist;
-    // add type property columns to maps
-    flist.getRowTypes().values().forEach(type -> {
-      this.setProperty(type, type.createProperty());
-    });
-
-    // register listener to types map to automatically generate default properties for new DataTypes
-    flist.getRowTypes().addListener(
-        (MapChangeListener<? super Class<? extends DataType>, ? super DataType>) change -> {
-          if (change.wasAdded()) {
-            // add type columns to maps
-            DataType type = change.getValueAdded();
-            this.setProperty(type, type.createProperty());
-          } else if (change.wasRemoved()) {
-            // remove type columns to maps
-            DataType<Property<?>> type = change.getValueRemoved();
-            this.removeProperty((Class<DataType<Property<?>>>) type.getClass());
-          }
-        });
 
     // copy all but features
     if (row != null) {
@@ -23,16 +23,12 @@ import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.featuredata.IonMobilogramTimeSeries;
 import io.github.mzmine.datamodel.features.ModularFeature;
 import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.graphicalnodes.FeatureChartImages;
 import io.github.mzmine.datamodel.features.types.graphicalnodes.FeatureShapeIonMobilityRetentionTimeHeatMapChart;
 import io.github.mzmine.datamodel.features.types.modifiers.GraphicalColumType;
-import io.github.mzmine.datamodel.features.types.tasks.FeatureGraphicalNodeTask;
-import io.github.mzmine.main.MZmineCore;
-import io.github.mzmine.taskcontrol.Task;
-import io.github.mzmine.taskcontrol.TaskPriority;
 import javafx.scene.Node;
 import javafx.scene.control.TreeTableCell;
 import javafx.scene.control.TreeTableColumn;
-import javafx.scene.layout.StackPane;
 import javax.annotation.Nonnull;
 
 public class FeatureShapeIonMobilityRetentionTimeHeatMapType extends LinkedDataType
@@ -56,21 +52,11 @@ public class FeatureShapeIonMobilityRetentionTimeHeatMapType extends LinkedDataT
       return null;
     }
 
-    // get existing buffered node from row (for column name)
-    // TODO listen to changes in features data
-    Node node = feature.getBufferedColChart(coll.getText());
-    if (node != null) {
-      return node;
-    }
-
-    StackPane pane = new StackPane();
-
-    // TODO stop task if new task is started
-    Task task = new FeatureGraphicalNodeTask(
-        FeatureShapeIonMobilityRetentionTimeHeatMapChart.class, pane, feature, coll.getText());
-    MZmineCore.getTaskController().addTask(task, TaskPriority.NORMAL);
-
-    return pane;
+    // rendered to a bitmap in the background, only visible cells request one
+    int width = (int) Math.max(getColumnWidth(), coll.getWidth());
+    return FeatureChartImages.getCellImage(cell, feature, coll.getText(), width,
+        DEFAULT_GRAPHICAL_CELL_HEIGHT,
+        () -> new FeatureShapeIonMobilityRetentionTimeHeatMapChart(feature, null));
   }
 
   @Override
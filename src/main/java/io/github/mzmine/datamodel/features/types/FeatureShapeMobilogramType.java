@@ -21,16 +21,12 @@ package io.github.mzmine.datamodel.features.types;
 import io.github.mzmine.datamodel.IMSRawDataFile;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.graphicalnodes.FeatureChartImages;
 import io.github.mzmine.datamodel.features.types.graphicalnodes.FeatureShapeMobilogramChart;
 import io.github.mzmine.datamodel.features.types.modifiers.GraphicalColumType;
-import io.github.mzmine.datamodel.features.types.tasks.FeaturesGraphicalNodeTask;
-import io.github.mzmine.main.MZmineCore;
-import io.github.mzmine.taskcontrol.Task;
-import io.github.mzmine.taskcontrol.TaskPriority;
 import javafx.scene.Node;
 import javafx.scene.control.TreeTableCell;
 import javafx.scene.control.TreeTableColumn;
-import javafx.scene.layout.StackPane;
 import javax.annotation.Nonnull;
 
 public class FeatureShapeMobilogramType extends LinkedDataType
@@ -53,21 +49,10 @@ public class FeatureShapeMobilogramType extends LinkedDataType
       return null;
     }
 
-    // get existing buffered node from row (for column name)
-    // TODO listen to changes in features data
-    Node node = row.getBufferedColChart(coll.getText());
-    if (node != null) {
-      return node;
-    }
-
-    StackPane pane = new StackPane();
-
-    // TODO stop task if new task is started
-    Task task = new FeaturesGraphicalNodeTask(FeatureShapeMobilogramChart.class, pane, row,
-        coll.getText());
-    MZmineCore.getTaskController().addTask(task, TaskPriority.NORMAL);
-
-    return pane;
+    // rendered to a bitmap in the background, only visible cells request one
+    int width = (int) Math.max(getColumnWidth(), coll.getWidth());
+    return FeatureChartImages.getCellImage(cell, row, coll.getText(), width,
+        DEFAULT_GRAPHICAL_CELL_HEIGHT, () -> new FeatureShapeMobilogramChart(row, null));
   }
 
   @Override
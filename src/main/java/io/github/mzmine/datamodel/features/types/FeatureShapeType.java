@@ -22,15 +22,12 @@ import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.datamodel.features.ModularFeature;
 import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.graphicalnodes.FeatureChartImages;
 import io.github.mzmine.datamodel.features.types.graphicalnodes.FeatureShapeChart;
 import io.github.mzmine.datamodel.features.types.modifiers.GraphicalColumType;
-import io.github.mzmine.datamodel.features.types.tasks.FeaturesGraphicalNodeTask;
-import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.visualization.chromatogram.ChromatogramVisualizerModule;
 import io.github.mzmine.modules.visualization.chromatogram.TICPlotType;
 import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
-import io.github.mzmine.taskcontrol.Task;
-import io.github.mzmine.taskcontrol.TaskPriority;
 import io.github.mzmine.util.FeatureUtils;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -39,7 +36,6 @@ import java.util.Map;
 import javafx.scene.Node;
 import javafx.scene.control.TreeTableCell;
 import javafx.scene.control.TreeTableColumn;
-import javafx.scene.layout.StackPane;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -67,21 +63,10 @@ public class FeatureShapeType extends LinkedDataType
       return null;
     }
 
-    // get existing buffered node from row (for column name)
-    // TODO listen to changes in features data
-    Node node = row.getBufferedColChart(coll.getText());
-    if (node != null) {
-      return node;
-    }
-
-    StackPane pane = new StackPane();
-
-    // TODO stop task if new task is started
-    Task task = new FeaturesGraphicalNodeTask(FeatureShapeChart.class, pane, row, coll.getText());
-    // TODO change to TaskPriority.LOW priority
-    MZmineCore.getTaskController().addTask(task, TaskPriority.HIGH);
-
-    return pane;
+    // rendered to a bitmap in the background, only visible cells request one
+    int width = (int) Math.max(getColumnWidth(), coll.getWidth());
+    return FeatureChartImages.getCellImage(cell, row, coll.getText(), width,
+        DEFAULT_GRAPHICAL_CELL_HEIGHT, () -> new FeatureShapeChart(row, null));
   }
 
   @Override
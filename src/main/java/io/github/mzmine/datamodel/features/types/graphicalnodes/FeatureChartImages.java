@@ -0,0 +1,292 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.datamodel.features.types.graphicalnodes;
+
+import io.github.mzmine.datamodel.features.Feature;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.util.javafx.FxThreadUtil;
+import java.awt.image.BufferedImage;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.application.Platform;
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.control.Cell;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.fx.ChartViewer;
+
+/**
+ * Renders the charts of graphical table cells to bitmaps on a small background pool. Only the
+ * images are kept, in a bounded least recently used cache keyed by the row or feature, the column
+ * and the cell size. Cells only request images while they are visible, pending requests of cells
+ * that were reused for other rows are canceled.
+ * <p>
+ * The keys hold the row or feature and the plotted feature data weakly, so the cache does not keep
+ * removed feature lists alive. New feature data does not match the key of an image of the old
+ * data, so changed rows and features are rendered again.
+ */
+public class FeatureChartImages {
+
+  private static final Logger logger = Logger.getLogger(FeatureChartImages.class.getName());
+
+  private static final int MAX_CACHED_IMAGES = 1000;
+  private static final String PENDING_RENDERING = "FeatureChartImages.pending";
+
+  private static final Map<ImageKey, Image> cache = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<ImageKey, Image> eldest) {
+      return size() > MAX_CACHED_IMAGES;
+    }
+  };
+  // the references of keys whose row, feature or data was garbage collected
+  private static final ReferenceQueue<Object> collectedReferences = new ReferenceQueue<>();
+
+  private static final ExecutorService executor = Executors
+      .newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+          runnable -> {
+            Thread t = new Thread(runnable, "Feature chart rendering");
+            t.setDaemon(true);
+            return t;
+          });
+
+  private FeatureChartImages() {
+  }
+
+  /**
+   * Creates the graphic of a table cell. The image is taken from the cache or rendered in the
+   * background and set once it is done.
+   *
+   * @param cell         The cell that will show the image. A pending rendering for a different
+   *                     image of this cell is canceled.
+   * @param owner        The row or feature that is plotted.
+   * @param column       The column name.
+   * @param width        The width of the image.
+   * @param height       The height of the image.
+   * @param chartFactory Creates the chart node. Called on a background thread, the node must
+   *                     contain a {@link ChartViewer}.
+   * @return The image view of the cell.
+   */
+  @Nonnull
+  public static Node getCellImage(@Nonnull Cell<?> cell, @Nonnull Object owner,
+      @Nonnull String column, int width, int height, @Nonnull Supplier<Node> chartFactory) {
+    final ImageKey key = new ImageKey(owner, getPlottedData(owner), column, width, height);
+    final ImageView view = new ImageView();
+    view.setUserData(key);
+
+    final Object pending = cell.getProperties().remove(PENDING_RENDERING);
+    if (pending instanceof Future) {
+      ((Future<?>) pending).cancel(false);
+    }
+
+    final Image cached;
+    synchronized (cache) {
+      removeCollectedKeys();
+      cached = cache.get(key);
+    }
+    if (cached != null) {
+      view.setImage(cached);
+      return view;
+    }
+
+    final Future<?> future = executor.submit(() -> {
+      final Image image = renderImage(chartFactory, width, height);
+      if (image == null) {
+        return;
+      }
+      synchronized (cache) {
+        cache.put(key, image);
+      }
+      Platform.runLater(() -> {
+        // the cell may show another row by now
+        if (key.equals(view.getUserData())) {
+          view.setImage(image);
+        }
+      });
+    });
+    cell.getProperties().put(PENDING_RENDERING, future);
+    return view;
+  }
+
+  /**
+   * Removes all images of the rows and features of a feature list from the cache, e.g. after the
+   * feature list was removed from the project.
+   */
+  public static void invalidate(@Nonnull FeatureList featureList) {
+    synchronized (cache) {
+      cache.keySet().removeIf(key -> {
+        final Object owner = key.owner.get();
+        return owner == null || (owner instanceof FeatureListRow
+            && ((FeatureListRow) owner).getFeatureList() == featureList) || (
+            owner instanceof Feature && ((Feature) owner).getFeatureList() == featureList);
+      });
+    }
+  }
+
+  /**
+   * Removes the images whose row, feature or data was garbage collected. Has to be called while
+   * the cache is locked.
+   */
+  private static void removeCollectedKeys() {
+    boolean collected = false;
+    while (collectedReferences.poll() != null) {
+      collected = true;
+    }
+    if (collected) {
+      cache.keySet().removeIf(ImageKey::isCollected);
+    }
+  }
+
+  /**
+   * @return The feature data of the feature or of all features of the row.
+   */
+  @Nonnull
+  private static List<Object> getPlottedData(@Nonnull Object owner) {
+    final List<Object> data = new ArrayList<>();
+    if (owner instanceof FeatureListRow) {
+      for (Feature feature : ((FeatureListRow) owner).getFeatures()) {
+        data.add(feature.getFeatureData());
+      }
+    } else if (owner instanceof Feature) {
+      data.add(((Feature) owner).getFeatureData());
+    }
+    return data;
+  }
+
+  @Nullable
+  private static Image renderImage(@Nonnull Supplier<Node> chartFactory, int width, int height) {
+    try {
+      final Node node = chartFactory.get();
+      // the chart nodes add their data sets on the fx thread, wait for them
+      FxThreadUtil.runOnFxThreadAndWait(() -> {
+      });
+      final ChartViewer viewer = findChartViewer(node);
+      if (viewer == null || viewer.getChart() == null) {
+        return null;
+      }
+      // the chart is not displayed, so it can be drawn on this thread
+      final JFreeChart chart = viewer.getChart();
+      final BufferedImage image = chart.createBufferedImage(width, height);
+      return SwingFXUtils.toFXImage(image, null);
+    } catch (Exception e) {
+      logger.log(Level.WARNING, "Cannot render chart of a table cell", e);
+      return null;
+    }
+  }
+
+  @Nullable
+  private static ChartViewer findChartViewer(@Nullable Node node) {
+    if (node instanceof ChartViewer) {
+      return (ChartViewer) node;
+    }
+    if (node instanceof Parent) {
+      for (Node child : ((Parent) node).getChildrenUnmodifiable()) {
+        final ChartViewer viewer = findChartViewer(child);
+        if (viewer != null) {
+          return viewer;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Identifies an image by the plotted row or feature and its feature data (by identity), the
+   * column and the size. Keys whose references were cleared are only equal to themselves.
+   */
+  private static class ImageKey {
+
+    private final WeakReference<Object> owner;
+    // null for features without data
+    private final List<WeakReference<Object>> data;
+    private final String column;
+    private final int width;
+    private final int height;
+    private final int hash;
+
+    private ImageKey(Object owner, List<Object> data, String column, int width, int height) {
+      this.owner = new WeakReference<>(owner, collectedReferences);
+      this.data = new ArrayList<>(data.size());
+      for (Object value : data) {
+        this.data.add(value != null ? new WeakReference<>(value, collectedReferences) : null);
+      }
+      this.column = column;
+      this.width = width;
+      this.height = height;
+      hash = 31 * (31 * (31 * System.identityHashCode(owner) + column.hashCode()) + width)
+          + height;
+    }
+
+    private boolean isCollected() {
+      return owner.get() == null || data.stream()
+          .anyMatch(value -> value != null && value.get() == null);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof ImageKey)) {
+        return false;
+      }
+      ImageKey key = (ImageKey) o;
+      if (hash != key.hash || width != key.width || height != key.height || !column
+          .equals(key.column) || data.size() != key.data.size()) {
+        return false;
+      }
+      final Object thisOwner = owner.get();
+      if (thisOwner == null || thisOwner != key.owner.get()) {
+        return false;
+      }
+      for (int i = 0; i < data.size(); i++) {
+        final WeakReference<Object> value = data.get(i);
+        final WeakReference<Object> other = key.data.get(i);
+        if (value == null || other == null) {
+          if (value != other) {
+            return false;
+          }
+        } else if (value.get() == null || value.get() != other.get()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
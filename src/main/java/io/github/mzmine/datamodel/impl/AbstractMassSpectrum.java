@@ -24,7 +24,7 @@ import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MassSpectrum;
 import io.github.mzmine.datamodel.MassSpectrumType;
 import io.github.mzmine.datamodel.Scan;
-import java.nio.DoubleBuffer;
+import io.github.mzmine.datamodel.impl.storage.StoredValues;
 import java.util.Iterator;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
@@ -46,16 +46,16 @@ public abstract class AbstractMassSpectrum implements MassSpectrum {
 
   protected synchronized void updateMzRangeAndTICValues() {
 
-    final DoubleBuffer mzValues = getMzValues();
-    final DoubleBuffer intensityValues = getIntensityValues();
+    final StoredValues mzValues = getMzValues();
+    final StoredValues intensityValues = getIntensityValues();
 
     assert mzValues != null;
     assert intensityValues != null;
-    assert mzValues.capacity() == intensityValues.capacity();
+    assert mzValues.size() == intensityValues.size();
 
     totalIonCurrent = 0.0;
 
-    if (mzValues.capacity() == 0) {
+    if (mzValues.size() == 0) {
       mzRange = null;
       basePeakIndex = null;
       return;
@@ -63,12 +63,12 @@ public abstract class AbstractMassSpectrum implements MassSpectrum {
 
     totalIonCurrent = 0.0;
     basePeakIndex = 0;
-    mzRange = Range.closed(mzValues.get(0), mzValues.get(mzValues.capacity() - 1));
+    mzRange = Range.closed(mzValues.get(0), mzValues.get(mzValues.size() - 1));
 
-    for (int i = 0; i < mzValues.capacity() - 1; i++) {
+    for (int i = 0; i < mzValues.size() - 1; i++) {
 
       // Check the order of the m/z values
-      if ((i < mzValues.capacity() - 1) && (mzValues.get(i) > mzValues.get(i + 1))) {
+      if ((i < mzValues.size() - 1) && (mzValues.get(i) > mzValues.get(i + 1))) {
         throw new IllegalArgumentException("The m/z values must be sorted in ascending order");
       }
 
@@ -90,7 +90,7 @@ public abstract class AbstractMassSpectrum implements MassSpectrum {
    */
   @Override
   public int getNumberOfDataPoints() {
-    return getMzValues().capacity();
+    return getMzValues().size();
   }
 
   /**
@@ -155,9 +155,9 @@ public abstract class AbstractMassSpectrum implements MassSpectrum {
     }
   }
 
-  abstract DoubleBuffer getMzValues();
+  abstract StoredValues getMzValues();
 
-  abstract DoubleBuffer getIntensityValues();
+  abstract StoredValues getIntensityValues();
 
   @Override
   public Iterator<DataPoint> iterator() {
@@ -18,23 +18,25 @@
 
 package io.github.mzmine.datamodel.impl;
 
-import io.github.mzmine.datamodel.featuredata.impl.StorageUtils;
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.impl.storage.SpectrumStorageSettings;
+import io.github.mzmine.datamodel.impl.storage.StoredValues;
 import io.github.mzmine.util.MemoryMapStorage;
-import java.nio.DoubleBuffer;
 import java.util.logging.Logger;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 /**
- * An implementation of MassSpectrum that stores the data points in a MemoryMapStorage.
+ * An implementation of MassSpectrum that stores the data points in a MemoryMapStorage. The values
+ * are encoded with the {@link io.github.mzmine.datamodel.impl.storage.MzStorageMode} and {@link
+ * io.github.mzmine.datamodel.impl.storage.IntensityStorageMode} set in the preferences.
  */
 public abstract class AbstractStorableSpectrum extends AbstractMassSpectrum {
 
   private static final Logger logger = Logger.getLogger(AbstractStorableSpectrum.class.getName());
-  private static final DoubleBuffer EMPTY_BUFFER = DoubleBuffer.wrap(new double[0]);
 
-  protected DoubleBuffer mzValues;
-  protected DoubleBuffer intensityValues;
+  protected StoredValues mzValues;
+  protected StoredValues intensityValues;
 
   /**
    * Note: mz and intensity values for a scan shall only be set once and are enforced to be
@@ -73,22 +75,48 @@ public abstract class AbstractStorableSpectrum extends AbstractMassSpectrum {
       }
     }
 
-    this.mzValues = StorageUtils.storeValuesToDoubleBuffer(storage, mzValues);
-    this.intensityValues = StorageUtils.storeValuesToDoubleBuffer(storage, intensityValues);
+    this.mzValues = SpectrumStorageSettings.storeMzValues(storage, mzValues);
+    this.intensityValues = SpectrumStorageSettings.storeIntensityValues(storage, intensityValues);
     updateMzRangeAndTICValues();
   }
 
-  DoubleBuffer getMzValues() {
+  /**
+   * Sets values that were already stored, e.g. when a project is loaded from binary data blocks.
+   * The m/z range, base peak and TIC have to be passed as well, so the stored values are not read
+   * (and paged in) when the spectrum is created.
+   *
+   * @param mzValues        The stored m/z values, sorted in ascending order.
+   * @param intensityValues The stored intensity values.
+   * @param mzRange         The range of the m/z values or null, if there are no values.
+   * @param basePeakIndex   The index of the base peak or null, if there are no values.
+   * @param tic             The total ion current.
+   */
+  protected synchronized void setStoredDataPoints(@Nonnull StoredValues mzValues,
+      @Nonnull StoredValues intensityValues, @Nullable Range<Double> mzRange,
+      @Nullable Integer basePeakIndex, double tic) {
+    assert mzValues.size() == intensityValues.size();
+    // values shall not be reset, but can be set at a later stage
+    assert this.mzValues == null;
+    assert this.intensityValues == null;
+
+    this.mzValues = mzValues;
+    this.intensityValues = intensityValues;
+    this.mzRange = mzRange;
+    this.basePeakIndex = basePeakIndex;
+    this.totalIonCurrent = tic;
+  }
+
+  StoredValues getMzValues() {
     if (mzValues == null) {
-      return EMPTY_BUFFER;
+      return StoredValues.EMPTY;
     } else {
       return mzValues;
     }
   }
 
-  DoubleBuffer getIntensityValues() {
+  StoredValues getIntensityValues() {
     if (intensityValues == null) {
-      return EMPTY_BUFFER;
+      return StoredValues.EMPTY;
     } else {
       return intensityValues;
     }
@@ -28,6 +28,8 @@ import io.github.mzmine.datamodel.MobilityType;
 import io.github.mzmine.datamodel.PolarityType;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.featuredata.impl.StorageUtils;
+import io.github.mzmine.datamodel.impl.storage.SpectrumStorageSettings;
+import io.github.mzmine.datamodel.impl.storage.StoredValues;
 import java.nio.DoubleBuffer;
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -54,8 +56,8 @@ public class SimpleFrame extends SimpleScan implements Frame {
   private Range<Double> mobilityRange;
 
   private DoubleBuffer mobilityBuffer;
-  private DoubleBuffer mobilityScanIntensityBuffer;
-  private DoubleBuffer mobilityScanMzBuffer;
+  private StoredValues mobilityScanIntensityBuffer;
+  private StoredValues mobilityScanMzBuffer;
 
   public SimpleFrame(@Nonnull RawDataFile dataFile, int scanNumber, int msLevel,
       float retentionTime, double precursorMZ, int precursorCharge, @Nullable double[] mzValues,
@@ -152,7 +154,8 @@ public class SimpleFrame extends SimpleScan implements Frame {
       }
     }
 
-    mobilityScanIntensityBuffer = StorageUtils.storeValuesToDoubleBuffer(getDataFile().getMemoryMapStorage(), data);
+    mobilityScanIntensityBuffer = SpectrumStorageSettings
+        .storeIntensityValues(getDataFile().getMemoryMapStorage(), data);
     if(getDataFile().getMemoryMapStorage() == null) {
       data = new double[numDatapoints]; // cannot reuse the same array then
     }
@@ -168,7 +171,7 @@ public class SimpleFrame extends SimpleScan implements Frame {
     }
 
     mobilityScanMzBuffer =
-        StorageUtils.storeValuesToDoubleBuffer(getDataFile().getMemoryMapStorage(), data);
+        SpectrumStorageSettings.storeMzValues(getDataFile().getMemoryMapStorage(), data);
 
     // now create the scans
     for (int i = 0; i < originalMobilityScans.size(); i++) {
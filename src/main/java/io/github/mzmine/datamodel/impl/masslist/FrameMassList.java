@@ -19,15 +19,14 @@
 package io.github.mzmine.datamodel.impl.masslist;
 
 import io.github.mzmine.datamodel.MobilityScan;
+import io.github.mzmine.datamodel.impl.storage.SpectrumStorageSettings;
+import io.github.mzmine.datamodel.impl.storage.StoredValues;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.util.MemoryMapStorage;
-import java.io.IOException;
-import java.nio.DoubleBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -36,8 +35,8 @@ public class FrameMassList extends SimpleMassList {
 
   private static Logger logger = Logger.getLogger(FrameMassList.class.getName());
 
-  protected DoubleBuffer mobilityScanMzBuffer;
-  protected DoubleBuffer mobilityScanIntensityBuffer;
+  protected StoredValues mobilityScanMzBuffer;
+  protected StoredValues mobilityScanIntensityBuffer;
 
   public FrameMassList(@Nonnull MemoryMapStorage storage,
       @Nonnull double[] mzValues,
@@ -119,30 +118,14 @@ public class FrameMassList extends SimpleMassList {
     double[] allMzOrIntensity = new double[numDp];
     putAllValuesIntoOneArray(mobilityScanPeaks, 0, allMzOrIntensity);
 
-    if (storage != null) {
-      try {
-        mobilityScanMzBuffer = storage.storeData(allMzOrIntensity);
-      } catch (IOException e) {
-        logger.log(Level.SEVERE, e.getMessage(), e);
-        mobilityScanMzBuffer = DoubleBuffer.wrap(allMzOrIntensity);
-        allMzOrIntensity = new double[numDp];
-      }
-    } else {
-      mobilityScanMzBuffer = DoubleBuffer.wrap(allMzOrIntensity);
-      allMzOrIntensity = new double[numDp];
+    mobilityScanMzBuffer = SpectrumStorageSettings.storeMzValues(storage, allMzOrIntensity);
+    if (storage == null) {
+      allMzOrIntensity = new double[numDp]; // cannot reuse the same array then
     }
 
     int[] basePeakIndices = putAllValuesIntoOneArray(mobilityScanPeaks, 1, allMzOrIntensity);
-    if (storage != null) {
-      try {
-        mobilityScanIntensityBuffer = storage.storeData(allMzOrIntensity);
-      } catch (IOException e) {
-        logger.log(Level.SEVERE, e.getMessage(), e);
-        mobilityScanIntensityBuffer = DoubleBuffer.wrap(allMzOrIntensity);
-      }
-    } else {
-      mobilityScanIntensityBuffer = DoubleBuffer.wrap(allMzOrIntensity);
-    }
+    mobilityScanIntensityBuffer = SpectrumStorageSettings
+        .storeIntensityValues(storage, allMzOrIntensity);
 
     for (int i = 0, mobilityScansSize = mobilityScans.size(); i < mobilityScansSize; i++) {
       MobilityScan mobilityScan = mobilityScans.get(i);
@@ -1,57 +1,54 @@
 /*
  * Copyright 2006-2020 The MZmine Development Team
- * 
+ *
  * This file is part of MZmine.
- * 
+ *
  * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
  * General Public License as published by the Free Software Foundation; either version 2 of the
  * License, or (at your option) any later version.
- * 
+ *
  * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
  * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
  * Public License for more details.
- * 
+ *
  * You should have received a copy of the GNU General Public License along with MZmine; if not,
  * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
  * USA
  */
 
-package io.github.mzmine.modules.dataprocessing.gapfill_peakfinder;
+package io.github.mzmine.datamodel.impl.storage;
 
-import io.github.mzmine.datamodel.DataPoint;
-import io.github.mzmine.datamodel.Scan;
+import java.nio.DoubleBuffer;
+import javax.annotation.Nonnull;
 
 /**
- * DataPoint implementation extended with retention time and scan number
+ * Stores values as 64-bit floating point numbers.
  */
-class GapDataPoint implements DataPoint {
-
-  private Scan scanNumber;
-  private double mz, rt, intensity;
-
-  /**
-   */
-  GapDataPoint(Scan scanNumber, double mz, double rt, double intensity) {
-    this.scanNumber = scanNumber;
-    this.mz = mz;
-    this.rt = rt;
-    this.intensity = intensity;
-  }
+final class DoubleStoredValues implements StoredValues {
+
+  private final DoubleBuffer values;
 
-  Scan getScan() {
-    return scanNumber;
+  DoubleStoredValues(@Nonnull DoubleBuffer values) {
+    this.values = values;
   }
 
-  public double getIntensity() {
-    return intensity;
+  @Override
+  public int size() {
+    return values.capacity();
   }
 
-  public double getMZ() {
-    return mz;
+  @Override
+  public double get(int index) {
+    return values.get(index);
   }
 
-  public double getRT() {
-    return rt;
+  @Override
+  public void get(int index, @Nonnull double[] dst, int dstOffset, int length) {
+    values.get(index, dst, dstOffset, length);
   }
 
+  @Override
+  public long getStorageSize() {
+    return (long) values.capacity() * Double.BYTES;
+  }
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.datamodel.impl.storage;
+
+import java.nio.FloatBuffer;
+import javax.annotation.Nonnull;
+
+/**
+ * Stores values as 32-bit floating point numbers. Sufficient for intensities, which are rarely
+ * measured with more than 7 significant digits.
+ */
+final class FloatStoredValues implements StoredValues {
+
+  private final FloatBuffer values;
+
+  FloatStoredValues(@Nonnull FloatBuffer values) {
+    this.values = values;
+  }
+
+  @Override
+  public int size() {
+    return values.capacity();
+  }
+
+  @Override
+  public double get(int index) {
+    return values.get(index);
+  }
+
+  @Override
+  public void get(int index, @Nonnull double[] dst, int dstOffset, int length) {
+    for (int i = 0; i < length; i++) {
+      dst[dstOffset + i] = values.get(index + i);
+    }
+  }
+
+  @Override
+  public long getStorageSize() {
+    return (long) values.capacity() * Float.BYTES;
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.datamodel.impl.storage;
+
+import io.github.mzmine.datamodel.featuredata.impl.StorageUtils;
+import io.github.mzmine.util.MemoryMapStorage;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Defines how intensity values of spectra are stored.
+ */
+public enum IntensityStorageMode {
+
+  /**
+   * 64-bit floating point, lossless.
+   */
+  DOUBLE("64-bit floating point (lossless)"),
+
+  /**
+   * 32-bit floating point, approx. 7 significant digits.
+   */
+  FLOAT("32-bit floating point");
+
+  private final String description;
+
+  IntensityStorageMode(String description) {
+    this.description = description;
+  }
+
+  /**
+   * @param storage The storage or null, if the values shall be stored in ram.
+   * @param values  The intensity values.
+   * @return The stored values.
+   */
+  @Nonnull
+  public StoredValues store(@Nullable MemoryMapStorage storage, @Nonnull double[] values) {
+    if (this == FLOAT) {
+      final float[] floats = new float[values.length];
+      for (int i = 0; i < values.length; i++) {
+        floats[i] = (float) values[i];
+      }
+      return new FloatStoredValues(StorageUtils.storeValuesToFloatBuffer(storage, floats));
+    }
+    return new DoubleStoredValues(StorageUtils.storeValuesToDoubleBuffer(storage, values));
+  }
+
+  @Override
+  public String toString() {
+    return description;
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.datamodel.impl.storage;
+
+import io.github.mzmine.datamodel.featuredata.impl.StorageUtils;
+import io.github.mzmine.util.MemoryMapStorage;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Defines how m/z values of spectra are stored.
+ */
+public enum MzStorageMode {
+
+  /**
+   * 64-bit floating point, lossless.
+   */
+  DOUBLE("64-bit floating point (lossless)"),
+
+  /**
+   * Block-wise delta encoded fixed point values, see {@link DeltaStoredValues}.
+   */
+  DELTA_FIXED_POINT("Delta encoded fixed point (max. error 0.5e-6)");
+
+  private final String description;
+
+  MzStorageMode(String description) {
+    this.description = description;
+  }
+
+  /**
+   * @param storage The storage or null, if the values shall be stored in ram.
+   * @param values  The m/z values.
+   * @return The stored values. If the values cannot be encoded with this mode, they are stored
+   * losslessly.
+   */
+  @Nonnull
+  public StoredValues store(@Nullable MemoryMapStorage storage, @Nonnull double[] values) {
+    if (this == DELTA_FIXED_POINT) {
+      final StoredValues encoded = DeltaStoredValues.encode(storage, values);
+      if (encoded != null) {
+        return encoded;
+      }
+    }
+    return new DoubleStoredValues(StorageUtils.storeValuesToDoubleBuffer(storage, values));
+  }
+
+  @Override
+  public String toString() {
+    return description;
+  }
+}
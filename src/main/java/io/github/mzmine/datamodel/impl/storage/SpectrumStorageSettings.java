@@ -0,0 +1,73 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.datamodel.impl.storage;
+
+import io.github.mzmine.util.MemoryMapStorage;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Holds the {@link MzStorageMode} and {@link IntensityStorageMode} used for newly created spectra.
+ * The modes are set from the {@link io.github.mzmine.gui.preferences.MZminePreferences}. Spectra
+ * that were already created keep their representation.
+ */
+public final class SpectrumStorageSettings {
+
+  private static volatile MzStorageMode mzStorageMode = MzStorageMode.DOUBLE;
+  private static volatile IntensityStorageMode intensityStorageMode = IntensityStorageMode.DOUBLE;
+
+  private SpectrumStorageSettings() {
+  }
+
+  @Nonnull
+  public static MzStorageMode getMzStorageMode() {
+    return mzStorageMode;
+  }
+
+  public static void setMzStorageMode(@Nullable MzStorageMode mode) {
+    mzStorageMode = mode != null ? mode : MzStorageMode.DOUBLE;
+  }
+
+  @Nonnull
+  public static IntensityStorageMode getIntensityStorageMode() {
+    return intensityStorageMode;
+  }
+
+  public static void setIntensityStorageMode(@Nullable IntensityStorageMode mode) {
+    intensityStorageMode = mode != null ? mode : IntensityStorageMode.DOUBLE;
+  }
+
+  /**
+   * Stores m/z values with the current {@link MzStorageMode}.
+   */
+  @Nonnull
+  public static StoredValues storeMzValues(@Nullable MemoryMapStorage storage,
+      @Nonnull double[] mzValues) {
+    return mzStorageMode.store(storage, mzValues);
+  }
+
+  /**
+   * Stores intensity values with the current {@link IntensityStorageMode}.
+   */
+  @Nonnull
+  public static StoredValues storeIntensityValues(@Nullable MemoryMapStorage storage,
+      @Nonnull double[] intensityValues) {
+    return intensityStorageMode.store(storage, intensityValues);
+  }
+}
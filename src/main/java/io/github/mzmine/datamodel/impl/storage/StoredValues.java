@@ -0,0 +1,67 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.datamodel.impl.storage;
+
+import java.nio.DoubleBuffer;
+import javax.annotation.Nonnull;
+
+/**
+ * Read access to a series of values that were stored with a {@link MzStorageMode} or {@link
+ * IntensityStorageMode}. Depending on the mode, the values may be stored in a compressed
+ * representation, but are always decoded to double.
+ */
+public interface StoredValues {
+
+  StoredValues EMPTY = new DoubleStoredValues(DoubleBuffer.wrap(new double[0]));
+
+  /**
+   * @param values Values that are already stored, e.g. a slice of a memory-mapped data block.
+   * @return The values without any further encoding.
+   */
+  @Nonnull
+  static StoredValues of(@Nonnull DoubleBuffer values) {
+    return new DoubleStoredValues(values);
+  }
+
+  /**
+   * @return The number of stored values.
+   */
+  int size();
+
+  /**
+   * @param index The index.
+   * @return The value at the given index.
+   */
+  double get(int index);
+
+  /**
+   * Decodes a range of values into the given array.
+   *
+   * @param index     The index of the first value.
+   * @param dst       The destination array.
+   * @param dstOffset The offset in the destination array.
+   * @param length    The number of values to decode.
+   */
+  void get(int index, @Nonnull double[] dst, int dstOffset, int length);
+
+  /**
+   * @return The number of bytes occupied by the stored values.
+   */
+  long getStorageSize();
+}
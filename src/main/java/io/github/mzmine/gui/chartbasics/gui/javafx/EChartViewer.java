@@ -48,6 +48,7 @@ import io.github.mzmine.gui.chartbasics.gui.swing.ChartGestureMouseAdapter;
 import io.github.mzmine.gui.chartbasics.gui.wrapper.ChartViewWrapper;
 import io.github.mzmine.gui.chartbasics.listener.AxesRangeChangedListener;
 import io.github.mzmine.gui.chartbasics.listener.AxisRangeChangedListener;
+import io.github.mzmine.gui.chartbasics.listener.LevelOfDetailListener;
 import io.github.mzmine.gui.chartbasics.listener.ZoomHistory;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.util.SaveImage;
@@ -91,6 +92,8 @@ public class EChartViewer extends ChartViewer {
   protected boolean addZoomHistory = true;
   private ChartGestureMouseAdapterFX mouseAdapter;
   private Menu exportMenu;
+  // visible range and width for datasets that serve a reduced number of items
+  private LevelOfDetailListener levelOfDetailListener;
 
   /**
    * Enhanced ChartPanel with extra scrolling methods, zoom history, graphics and data export<br>
@@ -252,12 +255,23 @@ public class EChartViewer extends ChartViewer {
 
   @Override
   public void setChart(JFreeChart chart) {
+    if (levelOfDetailListener != null && getChart() != null) {
+      getChart().removeChangeListener(levelOfDetailListener);
+    }
     super.setChart(chart);
 
     // If no chart, end here
     if (chart == null)
       return;
 
+    if (levelOfDetailListener == null) {
+      levelOfDetailListener = new LevelOfDetailListener(this);
+      widthProperty().addListener((observable, oldValue, newValue) -> {
+        levelOfDetailListener.update();
+      });
+    }
+    chart.addChangeListener(levelOfDetailListener);
+
     final EChartViewer chartPanel = this;
 
     // apply the theme here, let's see how that works
@@ -394,6 +408,9 @@ public class EChartViewer extends ChartViewer {
     if (getChart().getPlot() instanceof XYPlot && getChart().getXYPlot() != null
       /*&& getChart().getXYPlot().getDataset() != null*/) { // getDataset() may be null if the
       // first dataset was removed, but the plot may still hold other datasets
+      if (levelOfDetailListener != null) {
+        levelOfDetailListener.setShowAllItems(true);
+      }
       try {
         List<Object[]> modelList = new ArrayList<>();
 
@@ -464,6 +481,10 @@ public class EChartViewer extends ChartViewer {
       } catch (Exception ex) {
         logger.log(Level.WARNING, "Cannot retrieve data for export", ex);
         return null;
+      } finally {
+        if (levelOfDetailListener != null) {
+          levelOfDetailListener.setShowAllItems(false);
+        }
       }
     }
     return null;
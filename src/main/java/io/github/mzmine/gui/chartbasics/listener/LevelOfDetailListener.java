@@ -0,0 +1,93 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.gui.chartbasics.listener;
+
+import io.github.mzmine.gui.chartbasics.simplechart.datasets.LevelOfDetailDataset;
+import javax.annotation.Nonnull;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.event.ChartChangeEvent;
+import org.jfree.chart.event.ChartChangeListener;
+import org.jfree.chart.fx.ChartViewer;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.data.Range;
+import org.jfree.data.xy.XYDataset;
+
+/**
+ * Passes the visible domain range and the width of the chart to all {@link LevelOfDetailDataset}s
+ * of an {@link XYPlot}. About two items per pixel are requested. Listens to chart changes, which
+ * include zooming and added datasets.
+ */
+public class LevelOfDetailListener implements ChartChangeListener {
+
+  private final ChartViewer chartViewer;
+  private boolean showAllItems = false;
+
+  public LevelOfDetailListener(@Nonnull ChartViewer chartViewer) {
+    this.chartViewer = chartViewer;
+  }
+
+  @Override
+  public void chartChanged(ChartChangeEvent event) {
+    update();
+  }
+
+  /**
+   * Passes the current domain range and width to the datasets.
+   */
+  public void update() {
+    final JFreeChart chart = chartViewer.getChart();
+    if (showAllItems || chart == null || !(chart.getPlot() instanceof XYPlot)
+        || chartViewer.getWidth() < 1) {
+      return;
+    }
+    final XYPlot plot = chart.getXYPlot();
+    final Range domain = plot.getDomainAxis().getRange();
+    final int maxItems = 2 * (int) chartViewer.getWidth();
+    for (int i = 0; i < plot.getDatasetCount(); i++) {
+      final XYDataset dataset = plot.getDataset(i);
+      if (dataset instanceof LevelOfDetailDataset) {
+        ((LevelOfDetailDataset) dataset)
+            .setVisibleDomain(domain.getLowerBound(), domain.getUpperBound(), maxItems);
+      }
+    }
+  }
+
+  /**
+   * @param showAllItems true to let all datasets serve all their items, e.g. for a data export.
+   *                     false to serve the items for the visible range again.
+   */
+  public void setShowAllItems(boolean showAllItems) {
+    // set first, the change events of the datasets call update
+    this.showAllItems = showAllItems;
+    final JFreeChart chart = chartViewer.getChart();
+    if (!showAllItems) {
+      update();
+    } else if (chart != null && chart.getPlot() instanceof XYPlot) {
+      final XYPlot plot = chart.getXYPlot();
+      for (int i = 0; i < plot.getDatasetCount(); i++) {
+        final XYDataset dataset = plot.getDataset(i);
+        if (dataset instanceof LevelOfDetailDataset) {
+          ((LevelOfDetailDataset) dataset)
+              .setVisibleDomain(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+                  Integer.MAX_VALUE);
+        }
+      }
+    }
+  }
+}
@@ -46,11 +46,16 @@ import org.jfree.data.xy.IntervalXYDataset;
  * PlotXYDataProvider} can be used to construct this dataset. The dataset implements the interfaces,
  * too, because the default renderers can then generate labels and tooltips based on the interface
  * methods and therefore be more reusable.
+ * <p>
+ * Once the values are computed, only the minima and maxima of the visible domain range are served
+ * as items (see {@link MinMaxLevelOfDetail}). Items are mapped to the indices of the value provider
+ * by {@link #getValueIndex(int)}.
  *
  * @author https://github.com/SteffenHeu
  */
 public class ColoredXYDataset extends AbstractXYDataset implements Task, IntervalXYDataset,
-    SeriesKeyProvider, LabelTextProvider, ToolTipTextProvider, ColorPropertyProvider {
+    SeriesKeyProvider, LabelTextProvider, ToolTipTextProvider, ColorPropertyProvider,
+    LevelOfDetailDataset {
 
   private static Logger logger = Logger.getLogger(ColoredXYDataset.class.getName());
   protected final XYValueProvider xyValueProvider;
@@ -71,6 +76,7 @@ public class ColoredXYDataset extends AbstractXYDataset implements Task, Interva
   protected int computedItemCount;
   protected boolean[] isLocalMaximum;
   protected boolean valuesComputed;
+  protected final MinMaxLevelOfDetail levelOfDetail = new MinMaxLevelOfDetail();
 
   private ColoredXYDataset(XYValueProvider xyValueProvider,
       SeriesKeyProvider<Comparable<?>> seriesKeyProvider, LabelTextProvider labelTextProvider,
@@ -161,7 +167,7 @@ public class ColoredXYDataset extends AbstractXYDataset implements Task, Interva
 
   @Override
   public int getItemCount(int series) {
-    return computedItemCount;
+    return levelOfDetail.getItemCount(computedItemCount);
   }
 
   @Override
@@ -169,7 +175,7 @@ public class ColoredXYDataset extends AbstractXYDataset implements Task, Interva
     if (!valuesComputed) {
       return 0.d;
     }
-    return xyValueProvider.getDomainValue(item);
+    return xyValueProvider.getDomainValue(levelOfDetail.getDataIndex(item));
   }
 
   @Override
@@ -177,7 +183,7 @@ public class ColoredXYDataset extends AbstractXYDataset implements Task, Interva
     if (!valuesComputed) {
       return 0.d;
     }
-    return xyValueProvider.getRangeValue(item);
+    return xyValueProvider.getRangeValue(levelOfDetail.getDataIndex(item));
   }
 
   @Override
@@ -185,7 +191,7 @@ public class ColoredXYDataset extends AbstractXYDataset implements Task, Interva
     if (!valuesComputed) {
       return 0.0d;
     }
-    return xyValueProvider.getDomainValue(item);
+    return xyValueProvider.getDomainValue(levelOfDetail.getDataIndex(item));
   }
 
   @Override
@@ -193,13 +199,16 @@ public class ColoredXYDataset extends AbstractXYDataset implements Task, Interva
     if (!valuesComputed) {
       return 0.0d;
     }
-    return xyValueProvider.getRangeValue(item);
+    return xyValueProvider.getRangeValue(levelOfDetail.getDataIndex(item));
   }
 
+  /**
+   * @return The index of the value provider for the given domain value or -1.
+   */
   public int getValueIndex(final double domainValue, final double rangeValue) {
     // todo binary search somehow here
     for (int i = 0; i < computedItemCount; i++) {
-      if (Double.compare(domainValue, getXValue(0, i)) == 0) {
+      if (Double.compare(domainValue, xyValueProvider.getDomainValue(i)) == 0) {
 //          && Double.compare(rangeValue, getYValue(0, i)) == 0) {
         return i;
       }
@@ -207,6 +216,20 @@ public class ColoredXYDataset extends AbstractXYDataset implements Task, Interva
     return -1;
   }
 
+  /**
+   * @return The index of the value provider for the given item.
+   */
+  public int getValueIndex(final int item) {
+    return levelOfDetail.getDataIndex(item);
+  }
+
+  @Override
+  public void setVisibleDomain(double lower, double upper, int maxItems) {
+    if (levelOfDetail.setVisibleDomain(lower, upper, maxItems)) {
+      fireDatasetChanged();
+    }
+  }
+
   public XYValueProvider getValueProvider() {
     return xyValueProvider;
   }
@@ -222,7 +245,7 @@ public class ColoredXYDataset extends AbstractXYDataset implements Task, Interva
       return null;
     }
     if (labelTextProvider != null) {
-      return labelTextProvider.getLabel(itemIndex);
+      return labelTextProvider.getLabel(levelOfDetail.getDataIndex(itemIndex));
     }
     return String.valueOf(getYValue(1, itemIndex));
   }
@@ -233,7 +256,7 @@ public class ColoredXYDataset extends AbstractXYDataset implements Task, Interva
     if (itemIndex > getItemCount(1) || toolTipTextProvider == null) {
       return null;
     }
-    return toolTipTextProvider.getToolTipText(itemIndex);
+    return toolTipTextProvider.getToolTipText(levelOfDetail.getDataIndex(itemIndex));
   }
 
   public Double getMinimumRangeValue() {
@@ -269,13 +292,20 @@ public class ColoredXYDataset extends AbstractXYDataset implements Task, Interva
       isLocalMaximum[i] = SimpleChartUtility.isLocalMaximum(this, 0, i);
     }
 
+    levelOfDetail.setData(computedItemCount, xyValueProvider::getDomainValue,
+        xyValueProvider::getRangeValue);
+
     computed = true;
     status.set(TaskStatus.FINISHED);
 //    if (!autocompute) {
     if (Platform.isFxApplicationThread()) {
+      levelOfDetail.updateVisibleItems();
       fireDatasetChanged();
     } else {
-      Platform.runLater(this::fireDatasetChanged);
+      Platform.runLater(() -> {
+        levelOfDetail.updateVisibleItems();
+        fireDatasetChanged();
+      });
     }
 //    }
   }
@@ -362,6 +392,6 @@ public class ColoredXYDataset extends AbstractXYDataset implements Task, Interva
     if (item > getItemCount(0)) {
       return false;
     }
-    return isLocalMaximum[item];
+    return isLocalMaximum[levelOfDetail.getDataIndex(item)];
   }
 }
@@ -181,6 +181,13 @@ public class ColoredXYZDataset extends ColoredXYDataset implements XYZDataset, P
     this.boxHeight = boxHeight;
   }
 
+  /**
+   * XYZ datasets are drawn as blocks, so all items are served.
+   */
+  @Override
+  public void setVisibleDomain(double lower, double upper, int maxItems) {
+  }
+
   public int getValueIndex(final double domainValue, final double rangeValue) {
     for (int i = 0; i < computedItemCount; i++) {
       if (Double.compare(domainValue, getX(0, i).doubleValue()) == 0
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.gui.chartbasics.simplechart.datasets;
+
+import io.github.mzmine.gui.chartbasics.listener.LevelOfDetailListener;
+
+/**
+ * A dataset that serves a reduced number of items for the visible domain range. The item indices
+ * of such a dataset therefore change when the visible range changes. The visible range is set by
+ * the {@link LevelOfDetailListener} of the chart.
+ *
+ * @see MinMaxLevelOfDetail
+ */
+public interface LevelOfDetailDataset {
+
+  /**
+   * Sets the visible domain range. Fires a dataset change event, if the served items changed. Has
+   * to be called on the FX thread.
+   *
+   * @param lower    The lower bound of the visible domain range.
+   * @param upper    The upper bound of the visible domain range.
+   * @param maxItems The maximum number of items that should be served for the visible range.
+   */
+  void setVisibleDomain(double lower, double upper, int maxItems);
+
+}
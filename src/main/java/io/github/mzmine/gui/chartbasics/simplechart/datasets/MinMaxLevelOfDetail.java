@@ -0,0 +1,238 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.gui.chartbasics.simplechart.datasets;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+import javax.annotation.Nullable;
+
+/**
+ * Min/max decimation of the items of a {@link LevelOfDetailDataset}. A pyramid of the indices of
+ * the minimum and maximum range values in buckets of 2, 4, 8, ... items is computed once. For the
+ * visible domain range, the level with the fewest buckets that still results in at most the
+ * maximum number of items is chosen, and the minimum and maximum of each bucket are served. The
+ * shape of a line plot is therefore kept, even though only about two items per pixel are drawn.
+ * <p>
+ * The first, the last, the minimum and the maximum item are always served, so the auto range of
+ * the axes does not change.
+ * <p>
+ * Items of the dataset are mapped to data indices by {@link #getDataIndex(int)}. The visible items
+ * must only be changed on the FX thread, which renders the chart.
+ */
+public class MinMaxLevelOfDetail {
+
+  // pyramid, level k (k >= 1) is stored at k - 1 and holds buckets of 2^k data points
+  private int[][] minIndices;
+  private int[][] maxIndices;
+  private double[] domainValues;
+  private int numValues;
+  private int minIndex;
+  private int maxIndex;
+
+  private double lower = Double.NaN;
+  private double upper = Double.NaN;
+  private int maxItems;
+
+  // data indices of the served items or null, if all items are served
+  private volatile int[] visibleItems;
+
+  /**
+   * Computes the pyramid. The domain values have to be in ascending order, otherwise all items
+   * will be served.
+   *
+   * @param numValues    The number of data points.
+   * @param domainValues The domain value of a data index.
+   * @param rangeValues  The range value of a data index.
+   */
+  public synchronized void setData(int numValues, IntToDoubleFunction domainValues,
+      IntToDoubleFunction rangeValues) {
+    this.domainValues = null;
+    minIndices = null;
+    maxIndices = null;
+    this.numValues = numValues;
+    if (numValues < 2) {
+      return;
+    }
+
+    final double[] x = new double[numValues];
+    final double[] y = new double[numValues];
+    for (int i = 0; i < numValues; i++) {
+      x[i] = domainValues.applyAsDouble(i);
+      y[i] = rangeValues.applyAsDouble(i);
+      if (i > 0 && Double.compare(x[i - 1], x[i]) > 0) {
+        return;
+      }
+    }
+
+    int numLevels = 0;
+    for (int buckets = numValues; buckets > 1; buckets = (buckets + 1) / 2) {
+      numLevels++;
+    }
+    final int[][] mins = new int[numLevels][];
+    final int[][] maxs = new int[numLevels][];
+    for (int level = 0; level < numLevels; level++) {
+      final int[] childMins = level == 0 ? null : mins[level - 1];
+      final int[] childMaxs = level == 0 ? null : maxs[level - 1];
+      final int numChildren = level == 0 ? numValues : childMins.length;
+      final int numBuckets = (numChildren + 1) / 2;
+      mins[level] = new int[numBuckets];
+      maxs[level] = new int[numBuckets];
+      for (int b = 0; b < numBuckets; b++) {
+        final int left = 2 * b;
+        final int right = Math.min(left + 1, numChildren - 1);
+        final int minLeft = level == 0 ? left : childMins[left];
+        final int minRight = level == 0 ? right : childMins[right];
+        final int maxLeft = level == 0 ? left : childMaxs[left];
+        final int maxRight = level == 0 ? right : childMaxs[right];
+        mins[level][b] = y[minRight] < y[minLeft] ? minRight : minLeft;
+        maxs[level][b] = y[maxRight] > y[maxLeft] ? maxRight : maxLeft;
+      }
+    }
+
+    minIndex = mins[numLevels - 1][0];
+    maxIndex = maxs[numLevels - 1][0];
+    minIndices = mins;
+    maxIndices = maxs;
+    this.domainValues = x;
+  }
+
+  /**
+   * Sets the visible domain range and computes the visible items, if the data was set.
+   *
+   * @return true if the visible items changed.
+   */
+  public synchronized boolean setVisibleDomain(double lower, double upper, int maxItems) {
+    if (Double.compare(this.lower, lower) == 0 && Double.compare(this.upper, upper) == 0
+        && this.maxItems == maxItems) {
+      return false;
+    }
+    this.lower = lower;
+    this.upper = upper;
+    this.maxItems = maxItems;
+    return updateVisibleItems();
+  }
+
+  /**
+   * Computes the visible items for the last visible domain range, e.g. after the data was set.
+   *
+   * @return true if the visible items changed.
+   */
+  public synchronized boolean updateVisibleItems() {
+    final int[] items = computeVisibleItems();
+    if (Arrays.equals(items, visibleItems)) {
+      return false;
+    }
+    visibleItems = items;
+    return true;
+  }
+
+  /**
+   * @param numValues The number of data points currently available.
+   * @return The number of served items.
+   */
+  public int getItemCount(int numValues) {
+    final int[] items = visibleItems;
+    return items == null ? numValues : items.length;
+  }
+
+  /**
+   * @return The data index of the given item.
+   */
+  public int getDataIndex(int item) {
+    final int[] items = visibleItems;
+    return items == null ? item : items[item];
+  }
+
+  /**
+   * @return The item of the given data index or -1, if it is not served.
+   */
+  public int getItem(int dataIndex) {
+    final int[] items = visibleItems;
+    if (items == null) {
+      return dataIndex;
+    }
+    final int item = Arrays.binarySearch(items, dataIndex);
+    return item >= 0 ? item : -1;
+  }
+
+  @Nullable
+  private int[] computeVisibleItems() {
+    if (domainValues == null || Double.isNaN(lower) || maxItems <= 0) {
+      return null;
+    }
+
+    // one more item on each side, so lines are drawn to the border of the plot
+    final int from = Math.max(firstIndexAbove(lower, false) - 1, 0);
+    final int to = Math.min(firstIndexAbove(upper, true) + 1, numValues);
+    if (to - from <= maxItems && from == 0 && to == numValues) {
+      return null;
+    }
+
+    final IntArrayList items = new IntArrayList();
+    items.add(0);
+    items.add(numValues - 1);
+    items.add(minIndex);
+    items.add(maxIndex);
+    if (to - from <= maxItems) {
+      for (int i = from; i < to; i++) {
+        items.add(i);
+      }
+    } else {
+      int level = 0;
+      while (level < minIndices.length - 1
+          && 2 * (((to - 1) >> (level + 1)) - (from >> (level + 1)) + 1) > maxItems) {
+        level++;
+      }
+      final int toBucket = (to - 1) >> (level + 1);
+      for (int b = from >> (level + 1); b <= toBucket; b++) {
+        items.add(minIndices[level][b]);
+        items.add(maxIndices[level][b]);
+      }
+    }
+
+    final int[] sorted = items.toIntArray();
+    Arrays.sort(sorted);
+    int numUnique = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (i == 0 || sorted[i] != sorted[i - 1]) {
+        sorted[numUnique++] = sorted[i];
+      }
+    }
+    return Arrays.copyOf(sorted, numUnique);
+  }
+
+  /**
+   * @param inclusive true to return the first index with a value > domainValue, false for >=.
+   */
+  private int firstIndexAbove(double domainValue, boolean inclusive) {
+    int low = 0;
+    int high = numValues;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      final int compare = Double.compare(domainValues[mid], domainValue);
+      if (compare < 0 || (inclusive && compare == 0)) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
@@ -18,6 +18,9 @@
 
 package io.github.mzmine.gui.preferences;
 
+import io.github.mzmine.datamodel.impl.storage.IntensityStorageMode;
+import io.github.mzmine.datamodel.impl.storage.MzStorageMode;
+import io.github.mzmine.datamodel.impl.storage.SpectrumStorageSettings;
 import io.github.mzmine.gui.chartbasics.chartthemes.ChartThemeParameters;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.Parameter;
@@ -117,13 +120,26 @@ public class MZminePreferences extends SimpleParameterSet {
           + " will be stored. Requires a restart of MZmine to take effect",
           System.getProperty("java.io.tmpdir"));
 
+  public static final ComboParameter<MzStorageMode> mzStorageMode = new ComboParameter<>(
+      "Spectra m/z storage", "Defines how m/z values of newly imported or processed spectra "
+      + "are stored. Delta encoding requires approx. 45 % less memory, but rounds m/z values to "
+      + "6 decimals.", FXCollections.observableArrayList(MzStorageMode.values()),
+      MzStorageMode.DOUBLE);
+
+  public static final ComboParameter<IntensityStorageMode> intensityStorageMode =
+      new ComboParameter<>("Spectra intensity storage",
+          "Defines how intensity values of newly imported or processed spectra are stored. 32-bit "
+              + "floating point values require half the memory.",
+          FXCollections.observableArrayList(IntensityStorageMode.values()),
+          IntensityStorageMode.DOUBLE);
+
   public MZminePreferences() {
     super(
         new Parameter[]{mzFormat, rtFormat, mobilityFormat, ccsFormat, intensityFormat, ppmFormat,
             unitFormat,
             numOfThreads, proxySettings, rExecPath, sendStatistics, windowSetttings, sendErrorEMail,
             defaultColorPalette, defaultPaintScale, chartParam, darkMode, imsModuleWarnings,
-            tempDirectory});
+            tempDirectory, mzStorageMode, intensityStorageMode});
   }
 
   @Override
@@ -136,6 +152,8 @@ public class MZminePreferences extends SimpleParameterSet {
       // Update proxy settings
       updateSystemProxySettings();
 
+      updateSpectrumStorageSettings();
+
       // Repaint windows to update number formats
       // MZmineCore.getDesktop().getMainWindow().repaint();
 
@@ -163,6 +181,12 @@ public class MZminePreferences extends SimpleParameterSet {
   public void loadValuesFromXML(Element xmlElement) {
     super.loadValuesFromXML(xmlElement);
     updateSystemProxySettings();
+    updateSpectrumStorageSettings();
+  }
+
+  private void updateSpectrumStorageSettings() {
+    SpectrumStorageSettings.setMzStorageMode(getParameter(mzStorageMode).getValue());
+    SpectrumStorageSettings.setIntensityStorageMode(getParameter(intensityStorageMode).getValue());
   }
 
   private void updateSystemProxySettings() {
@@ -48,7 +48,6 @@ import java.lang.management.ManagementFactory;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Locale;
@@ -72,8 +71,6 @@ public final class MZmineCore {
   private static MZmineConfiguration configuration;
   private static Desktop desktop;
   private static ProjectManagerImpl projectManager;
-  private static final List<MemoryMapStorage> storageList = Collections
-      .synchronizedList(new ArrayList<>());
 
   private static Map<Class<?>, MZmineModule> initializedModules =
       new Hashtable<Class<?>, MZmineModule>();
@@ -360,12 +357,4 @@ public final class MZmineCore {
       Platform.runLater(r);
     }
   }
-
-  public static void registerStorage(MemoryMapStorage storage) {
-    storageList.add(storage);
-  }
-
-  public static List<MemoryMapStorage> getStorageList() {
-    return storageList;
-  }
 }
@@ -111,13 +111,7 @@ public class TmpFileCleanup implements Runnable {
       }
     }
 
-    for(final MemoryMapStorage storage : MZmineCore.getStorageList()) {
-      try {
-        storage.discard(theUnsafe);
-      } catch (IOException e) {
-        e.printStackTrace();
-      }
-    }
+    MemoryMapStorage.discardAll(theUnsafe);
 
   }
 
@@ -117,6 +117,13 @@ public class HierarAlignerGCParameters extends SimpleParameterSet {
           + " If the file already exists, it will be overwritten.",
       "txt", FileSelectionType.SAVE);
 
+  public static final BooleanParameter sparseDistanceMatrix = new BooleanParameter(
+      "Sparse distance matrix",
+      "If checked, only the distances of rows within the m/z and RT tolerances are stored and rows"
+          + " are clustered in groups of connected rows. Reduces memory for large datasets."
+          + " Ignored if \"Export dendrogram as TXT/CDT\" is checked.",
+      false);
+
   /**
    * GLG HACK: temporarily removed for clarity public static final BooleanParameter
    * SameChargeRequired = new BooleanParameter( "Require same charge state", "If checked, only rows
@@ -142,7 +149,7 @@ public class HierarAlignerGCParameters extends SimpleParameterSet {
         // useKnownCompoundsAsRef,
         // useDetectedMzOnly,
         // RTToleranceAfter,
-        exportDendrogramTxt, dendrogramTxtFilename
+        sparseDistanceMatrix, exportDendrogramTxt, dendrogramTxtFilename
         /* SameChargeRequired, SameIDRequired, compareIsotopePattern */
     });
   }
@@ -28,6 +28,9 @@ import io.github.mzmine.datamodel.features.ModularFeatureListRow;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.util.FeatureUtils;
 import io.github.mzmine.util.MemoryMapStorage;
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
@@ -42,6 +45,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.Vector;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import javax.annotation.Nullable;
 import org.gnf.clustering.DataSource;
 import org.gnf.clustering.DistanceMatrix;
@@ -92,6 +96,7 @@ public class HierarAlignerGCTask extends AbstractTask {
 
   private boolean exportDendrogramAsTxt;
   private File dendrogramTxtFilename;
+  private boolean useSparseMatrix;
 
   /**
    * GLG HACK: temporary removed for clarity private boolean sameIDRequired, sameChargeRequired,
@@ -170,6 +175,12 @@ public class HierarAlignerGCTask extends AbstractTask {
         parameters.getParameter(HierarAlignerGCParameters.exportDendrogramTxt).getValue();
     dendrogramTxtFilename =
         parameters.getParameter(HierarAlignerGCParameters.dendrogramTxtFilename).getValue();
+    useSparseMatrix =
+        parameters.getParameter(HierarAlignerGCParameters.sparseDistanceMatrix).getValue();
+    if (useSparseMatrix && exportDendrogramAsTxt) {
+      logger.warning("The dendrogram can only be exported with a full distance matrix.");
+      useSparseMatrix = false;
+    }
 
     /**
      * GLG HACK: temporarily removed for clarity sameChargeRequired = parameters.getParameter(
@@ -328,7 +339,8 @@ public class HierarAlignerGCTask extends AbstractTask {
     }
 
     // If 'Hybrid' or no distance matrix: no need for a matrix
-    if (CLUSTERER_TYPE == ClustererType.HYBRID || !saveRAMratherThanCPU_1) {
+    if (!useSparseMatrix
+        && (CLUSTERER_TYPE == ClustererType.HYBRID || !saveRAMratherThanCPU_1)) {
       // distances = new double[nbPeaks][nbPeaks];
 
       int nRowCount = nbPeaks;
@@ -360,7 +372,8 @@ public class HierarAlignerGCTask extends AbstractTask {
         maximumScore);
 
     // If 'Hybrid' or no distance matrix: no need for a matrix
-    if (CLUSTERER_TYPE == ClustererType.HYBRID || !saveRAMratherThanCPU_1) {
+    if (!useSparseMatrix
+        && (CLUSTERER_TYPE == ClustererType.HYBRID || !saveRAMratherThanCPU_1)) {
 
       for (int x = 0; x < nbPeaks; ++x) {
 
@@ -420,7 +433,15 @@ public class HierarAlignerGCTask extends AbstractTask {
     }
     String outputPrefix = null;
 
-    if (CLUSTERER_TYPE == ClustererType.CLASSIC) { // Pure Hierar!
+    if (useSparseMatrix) {
+
+      gnfClusters = clusterSparse(distProvider, newIds.length, max_dist);
+      if (gnfClusters == null) {
+        return; // canceled
+      }
+      do_cluster = false;
+
+    } else if (CLUSTERER_TYPE == ClustererType.CLASSIC) { // Pure Hierar!
 
       outputPrefix = "hierar_0";
 
@@ -484,7 +505,9 @@ public class HierarAlignerGCTask extends AbstractTask {
     int[] rowOrder = new int[nRowCount];
     if (DEBUG)
       logger.info("Sorting tree nodes...");
-    org.gnf.clustering.Utils.NodeSort(arNodes, nRowCount - 2, 0, rowOrder);
+    if (arNodes != null) {
+      org.gnf.clustering.Utils.NodeSort(arNodes, nRowCount - 2, 0, rowOrder);
+    }
 
     if (do_cluster) {
 
@@ -677,6 +700,163 @@ public class HierarAlignerGCTask extends AbstractTask {
 
   }
 
+  /**
+   * Clusters the rows on a {@link SparseDistanceMatrix} that only holds the distances of rows
+   * within the m/z and RT tolerances. Rows that are not connected by such distances can never form
+   * a valid cluster, so every connected group of rows is clustered on its own, on a small dense
+   * matrix.
+   *
+   * @return The clusters as lists of indices into {@link #full_rows_list} or null, if the task was
+   * canceled.
+   */
+  @Nullable
+  private List<List<Integer>> clusterSparse(RowVsRowDistanceProvider distProvider, int level,
+      double max_dist) {
+
+    final int nRowCount = full_rows_list.size();
+    final double mzMaxDiff = mzTolerance.getMzTolerance();
+    final double rtMaxDiff = rtTolerance.getTolerance();
+
+    // rows sorted by RT, the matrix is indexed by the position in this order
+    final float[] rts = new float[nRowCount];
+    for (int i = 0; i < nRowCount; i++) {
+      rts[i] = full_rows_list.get(i).getBestFeature().getRT();
+    }
+    final int[] order = IntStream.range(0, nRowCount).toArray();
+    IntArrays.quickSort(order, (a, b) -> Float.compare(rts[a], rts[b]));
+
+    // only pairs closer than the RT tolerance are candidates, the remaining tests are done by the
+    // distance provider
+    final int[][] upperNeighbors = new int[nRowCount][];
+    final float[][] upperDistances = new float[nRowCount][];
+    // the parallel stream runs on the pool of the current task thread
+    IntStream.range(0, nRowCount).parallel().forEach(p -> {
+      final IntArrayList neighbors = new IntArrayList();
+      final FloatArrayList distances = new FloatArrayList();
+      for (int q = p + 1; q < nRowCount
+          && Math.abs(rts[order[q]] - rts[order[p]]) < rtMaxDiff / 2.0 && !isCanceled(); q++) {
+        final float dist = (float) distProvider.getRankedDistance(Math.min(order[p], order[q]),
+            Math.max(order[p], order[q]), mzMaxDiff, rtMaxDiff, minScore);
+        if (dist < RowVsRowDistanceProvider.OUT_OF_TOLERANCE_DISTANCE) {
+          neighbors.add(q);
+          distances.add(dist);
+        }
+      }
+      upperNeighbors[p] = neighbors.toIntArray();
+      upperDistances[p] = distances.toFloatArray();
+    });
+    if (isCanceled()) {
+      return null;
+    }
+
+    final MemoryMapStorage matrixStorage = MemoryMapStorage.forFeatureList();
+    try {
+      final SparseDistanceMatrix matrix =
+          new SparseDistanceMatrix(upperNeighbors, upperDistances, matrixStorage);
+      processedRows += nRowCount;
+      logger.finest(() -> "Sparse distance matrix holds " + matrix.getNumberOfValues() / 2
+          + " pairs of " + nRowCount + " rows.");
+
+      // connected groups of rows (union find)
+      final int[] parents = IntStream.range(0, nRowCount).toArray();
+      for (int p = 0; p < nRowCount; p++) {
+        for (int k = 0; k < matrix.getNumberOfNeighbors(p); k++) {
+          final int rootP = findRoot(parents, p);
+          final int rootQ = findRoot(parents, matrix.getNeighbor(p, k));
+          if (rootP != rootQ) {
+            parents[Math.max(rootP, rootQ)] = Math.min(rootP, rootQ);
+          }
+        }
+      }
+      final List<IntArrayList> components = new ArrayList<>();
+      final int[] componentIndex = new int[nRowCount];
+      for (int p = 0; p < nRowCount; p++) {
+        final int root = findRoot(parents, p);
+        if (root == p) {
+          componentIndex[p] = components.size();
+          components.add(new IntArrayList());
+        }
+        components.get(componentIndex[root]).add(p);
+      }
+
+      final List<List<Integer>> clusters = new ArrayList<>();
+      for (IntArrayList component : components) {
+        if (isCanceled()) {
+          return null;
+        }
+        if (component.size() == 1) {
+          clusters.add(List.of(order[component.getInt(0)]));
+          continue;
+        }
+        clusters.addAll(
+            clusterComponent(matrix, component, order, level, max_dist, distProvider));
+      }
+
+      return clusters;
+    } finally {
+      if (matrixStorage != null) {
+        matrixStorage.release();
+      }
+    }
+  }
+
+  /**
+   * Clusters a connected group of rows on a dense distance matrix. Distances that are not stored
+   * in the sparse matrix are restored as in {@link RowVsRowDistanceProvider#getRankedDistance}.
+   *
+   * @param component The positions of the rows in the sparse matrix, in ascending order.
+   * @param order     Maps the positions in the sparse matrix to indices into {@link
+   *                  #full_rows_list}.
+   * @return The clusters as lists of indices into {@link #full_rows_list}.
+   */
+  private List<List<Integer>> clusterComponent(SparseDistanceMatrix matrix,
+      IntArrayList component, int[] order, int level, double max_dist,
+      RowVsRowDistanceProvider distProvider) {
+
+    final int size = component.size();
+    final DistanceMatrix distances = new DistanceMatrixTriangular1D2D(size);
+    for (int x = 0; x < size; x++) {
+      final int p = component.getInt(x);
+      final RawDataFile file = full_rows_list.get(order[p]).getRawDataFiles().get(0);
+      for (int y = x + 1; y < size; y++) {
+        final int q = component.getInt(y);
+        float dist = matrix.getValue(p, q);
+        if (Float.isNaN(dist)) {
+          dist = (float) (file == full_rows_list.get(order[q]).getRawDataFiles().get(0)
+              ? RowVsRowDistanceProvider.SAME_FILE_DISTANCE
+              : RowVsRowDistanceProvider.OUT_OF_TOLERANCE_DISTANCE);
+        }
+        distances.setValue(x, y, dist);
+      }
+    }
+    // the matrix is changed by the clustering
+    final DistanceMatrix distancesBkp = new DistanceMatrixTriangular1D2D(distances);
+
+    final org.gnf.clustering.Node[] nodes =
+        org.gnf.clustering.sequentialcache.SequentialCacheClustering.clusterDM(distances,
+            linkageStartegyType, null, size);
+    org.gnf.clustering.Utils.NodeSort(nodes, size - 2, 0, new int[size]);
+
+    final List<List<Integer>> clusters = new ArrayList<>();
+    for (List<Integer> localCluster : getValidatedClusters_3(nodes, 0.0f, level, max_dist,
+        distancesBkp, distProvider)) {
+      final List<Integer> cluster = new ArrayList<>(localCluster.size());
+      for (int leaf : localCluster) {
+        cluster.add(order[component.getInt(leaf)]);
+      }
+      clusters.add(cluster);
+    }
+    return clusters;
+  }
+
+  private static int findRoot(int[] parents, int i) {
+    while (parents[i] != i) {
+      parents[i] = parents[parents[i]];
+      i = parents[i];
+    }
+    return i;
+  }
+
   /**
    * Two clusters can be merged if and only if: - The resulting merged cluster: (their parent)
    * doesn't exceed 'level' leaves - The distance between them two is acceptable (close enough)
@@ -25,6 +25,15 @@ import io.github.mzmine.datamodel.MZmineProject;
 
 public class RowVsRowDistanceProvider {
 
+  /**
+   * Ranked distance of two rows of the same raw data file, they are never aligned.
+   */
+  public static final double SAME_FILE_DISTANCE = 1000.0d;
+  /**
+   * Ranked distance of two rows outside of the m/z or RT tolerance.
+   */
+  public static final double OUT_OF_TOLERANCE_DISTANCE = 100.0d;
+
   MZmineProject project;
   // boolean useOldestRDFancestor;
   // Hashtable<RawDataFile, List<double[]>> rtAdjustementMapping;
@@ -123,7 +132,7 @@ public class RowVsRowDistanceProvider {
     // aligned_row_id < 102)
     // || (row_id >= 102 && aligned_row_id >= 102)) {
     if (row.getRawDataFiles().get(0) == k_row.getRawDataFiles().get(0)) {
-      return 1000.0d;
+      return SAME_FILE_DISTANCE;
     }
     // Not candidate
     else {
@@ -140,7 +149,7 @@ public class RowVsRowDistanceProvider {
       if ((Math.abs(row.getBestFeature().getRT() - k_row.getBestFeature().getRT()) >= rtMaxDiff / 2.0
           || Math.abs(row.getBestFeature().getMZ() - k_row.getBestFeature().getMZ()) >= mzMaxDiff
               / 2.0)) {
-        return 100.0d;
+        return OUT_OF_TOLERANCE_DISTANCE;
       }
     }
 
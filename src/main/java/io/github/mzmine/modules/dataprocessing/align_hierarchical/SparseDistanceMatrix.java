@@ -0,0 +1,141 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.dataprocessing.align_hierarchical;
+
+import io.github.mzmine.datamodel.featuredata.impl.StorageUtils;
+import io.github.mzmine.util.MemoryMapStorage;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A symmetric distance matrix that only stores the distances of close pairs of rows, in compressed
+ * sparse row (CSR) format: the neighbours of row i are stored at the indices rowOffsets[i] to
+ * rowOffsets[i + 1] - 1 of the column and distance arrays, sorted by column. The memory therefore
+ * grows with the number of close pairs instead of the square of the number of rows. The column and
+ * distance arrays can be stored in a {@link MemoryMapStorage}.
+ */
+public class SparseDistanceMatrix {
+
+  private final int dimension;
+  private final int[] rowOffsets;
+  private final IntBuffer columns;
+  private final FloatBuffer distances;
+
+  /**
+   * @param upperNeighbors For every row i, the rows j > i that have a stored distance, in ascending
+   *                       order.
+   * @param upperDistances The distances of row i to its neighbours in upperNeighbors[i].
+   * @param storage        The storage for the column and distance arrays. May be null if the
+   *                       arrays shall be kept in ram.
+   */
+  public SparseDistanceMatrix(@Nonnull int[][] upperNeighbors, @Nonnull float[][] upperDistances,
+      @Nullable MemoryMapStorage storage) {
+    dimension = upperNeighbors.length;
+
+    // every pair is stored twice, once for each of its rows
+    final int[] lowerCounts = new int[dimension];
+    long numEntries = 0;
+    for (int i = 0; i < dimension; i++) {
+      for (int j : upperNeighbors[i]) {
+        lowerCounts[j]++;
+      }
+      numEntries += 2L * upperNeighbors[i].length;
+    }
+    if (numEntries > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          "Too many pairs of rows within the tolerances: " + numEntries / 2);
+    }
+
+    rowOffsets = new int[dimension + 1];
+    for (int i = 0; i < dimension; i++) {
+      rowOffsets[i + 1] = rowOffsets[i] + lowerCounts[i] + upperNeighbors[i].length;
+    }
+
+    // lower neighbours of a row are added in ascending order, the upper ones follow
+    final int[] columnArray = new int[(int) numEntries];
+    final float[] distanceArray = new float[(int) numEntries];
+    final int[] nextLower = new int[dimension];
+    System.arraycopy(rowOffsets, 0, nextLower, 0, dimension);
+    for (int i = 0; i < dimension; i++) {
+      int nextUpper = rowOffsets[i] + lowerCounts[i];
+      for (int k = 0; k < upperNeighbors[i].length; k++) {
+        final int j = upperNeighbors[i][k];
+        final float distance = upperDistances[i][k];
+        columnArray[nextUpper] = j;
+        distanceArray[nextUpper] = distance;
+        nextUpper++;
+        columnArray[nextLower[j]] = i;
+        distanceArray[nextLower[j]] = distance;
+        nextLower[j]++;
+      }
+    }
+
+    columns = StorageUtils.storeValuesToIntBuffer(storage, columnArray);
+    distances = StorageUtils.storeValuesToFloatBuffer(storage, distanceArray);
+  }
+
+  public int getRowCount() {
+    return dimension;
+  }
+
+  /**
+   * @return The number of stored distances of the given row.
+   */
+  public int getNumberOfNeighbors(int row) {
+    return rowOffsets[row + 1] - rowOffsets[row];
+  }
+
+  /**
+   * @param row   The row.
+   * @param index The index of the neighbour, 0 <= index < {@link #getNumberOfNeighbors(int)}.
+   * @return The neighbour, neighbours are sorted in ascending order.
+   */
+  public int getNeighbor(int row, int index) {
+    return columns.get(rowOffsets[row] + index);
+  }
+
+  /**
+   * @return The distance of the two rows or {@link Float#NaN}, if it is not stored.
+   */
+  public float getValue(int row, int column) {
+    int low = rowOffsets[row];
+    int high = rowOffsets[row + 1] - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      final int midColumn = columns.get(mid);
+      if (midColumn < column) {
+        low = mid + 1;
+      } else if (midColumn > column) {
+        high = mid - 1;
+      } else {
+        return distances.get(mid);
+      }
+    }
+    return Float.NaN;
+  }
+
+  /**
+   * @return The number of stored distances, each pair is stored twice.
+   */
+  public int getNumberOfValues() {
+    return rowOffsets[dimension];
+  }
+}
@@ -42,11 +42,20 @@ import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.RangeUtils;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarity;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarityFunction;
+import io.github.mzmine.util.scans.similarity.WeightedSpectrum;
+import io.github.mzmine.util.scans.similarity.WeightedSpectrumMatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
 public class JoinAlignerTask extends AbstractTask {
@@ -56,8 +65,9 @@ public class JoinAlignerTask extends AbstractTask {
   private ModularFeatureList[] featureLists;
   private ModularFeatureList alignedFeatureList;
 
-  // Processed rows counter
-  private int processedRows, totalRows;
+  // Processed rows counter, incremented concurrently
+  private final AtomicInteger processedRows = new AtomicInteger(0);
+  private int totalRows;
 
   private String featureListName;
   private MZTolerance mzTolerance;
@@ -75,6 +85,9 @@ public class JoinAlignerTask extends AbstractTask {
   private MZmineProcessingStep<SpectralSimilarityFunction> simFunction;
   private int msLevel;
   private boolean compareMobility;
+  // prepared spectra of the aligned rows, valid while the aligned feature list is not modified
+  private final Map<FeatureListRow, Optional<WeightedSpectrum>> alignedSpectra =
+      new ConcurrentHashMap<>();
 
   public JoinAlignerTask(MZmineProject project, ParameterSet parameters,
       @Nullable MemoryMapStorage storage) {
@@ -139,7 +152,7 @@ public class JoinAlignerTask extends AbstractTask {
     if (totalRows == 0) {
       return 0f;
     }
-    return (double) processedRows / (double) totalRows;
+    return (double) processedRows.get() / (double) totalRows;
   }
 
   /**
@@ -202,118 +215,28 @@ public class JoinAlignerTask extends AbstractTask {
 
       FeatureListRow[] allRows = featureList.getRows().toArray(FeatureListRow[]::new);
 
-      // Calculate scores for all possible alignments of this row
-      for (FeatureListRow row : allRows) {
-
+      // Calculate scores for all possible alignments of each row. The rows are scored in
+      // parallel, the parallel stream runs on the pool of the current task thread. The aligned
+      // feature list is not modified while scoring.
+      List<List<RowVsRowScore>> rowScores = Arrays.stream(allRows).parallel().map(row -> {
         if (isCanceled()) {
-          return;
+          return List.<RowVsRowScore>of();
         }
+        List<RowVsRowScore> scores = calculateScores(row);
+        processedRows.incrementAndGet();
+        return scores;
+      }).collect(Collectors.toList());
+
+      alignedSpectra.clear();
+      if (isCanceled()) {
+        return;
+      }
 
-        // Calculate limits for a row with which the row can be aligned
-        Range<Double> mzRange = mzTolerance.getToleranceRange(row.getAverageMZ());
-        Range<Float> rtRange = rtTolerance.getToleranceRange(row.getAverageRT());
-
-        Range<Float> mobilityRange = compareMobility && !Float.isNaN(row.getAverageMobility()) ?
-            mobilityTolerance.getToleranceRange(row.getAverageMobility()) : Range.singleton(0f);
-
-        // Get all rows of the aligned peaklist within parameter limits
-        List<FeatureListRow> candidateRows = alignedFeatureList
-            .getRowsInsideScanAndMZRange(rtRange, mzRange);
-
-        // Calculate scores and store them
-        for (FeatureListRow candidate : candidateRows) {
-
-          if (compareMobility && !Float.isNaN(candidate.getAverageMobility()) &&
-              !mobilityRange.contains(candidate.getAverageMobility())) {
-            continue;
-          }
-
-          if (sameChargeRequired) {
-            if (!FeatureUtils.compareChargeState(row, candidate)) {
-              continue;
-            }
-          }
-
-          if (sameIDRequired) {
-            if (!FeatureUtils.compareIdentities(row, candidate)) {
-              continue;
-            }
-          }
-
-          if (compareIsotopePattern) {
-            IsotopePattern ip1 = row.getBestIsotopePattern();
-            IsotopePattern ip2 = candidate.getBestIsotopePattern();
-
-            if ((ip1 != null) && (ip2 != null)) {
-              ParameterSet isotopeParams =
-                  parameters.getParameter(JoinAlignerParameters.compareIsotopePattern)
-                      .getEmbeddedParameters();
-
-              if (!IsotopePatternScoreCalculator.checkMatch(ip1, ip2, isotopeParams)) {
-                continue;
-              }
-            }
-          }
-
-          // compare the similarity of spectra mass lists on MS1 or
-          // MS2 level
-          if (compareSpectraSimilarity) {
-            DataPoint[] rowDPs = null;
-            DataPoint[] candidateDPs = null;
-            SpectralSimilarity sim = null;
-
-            // get data points of mass list of the representative
-            // scans
-            if (msLevel == 1) {
-              rowDPs =
-                  row.getBestFeature().getRepresentativeScan().getMassList()
-                      .getDataPoints();
-              candidateDPs = candidate.getBestFeature().getRepresentativeScan()
-                  .getMassList()
-                  .getDataPoints();
-            }
-
-            // get data points of mass list of the best
-            // fragmentation scans
-            if (msLevel == 2) {
-              if (row.getBestFragmentation() != null && candidate.getBestFragmentation() != null) {
-                rowDPs = row.getBestFragmentation().getMassList().getDataPoints();
-                candidateDPs =
-                    candidate.getBestFragmentation().getMassList().getDataPoints();
-              } else {
-                continue;
-              }
-            }
-
-            // compare mass list data points of selected scans
-            if (rowDPs != null && candidateDPs != null) {
-
-              // calculate similarity using SimilarityFunction
-              sim = createSimilarity(rowDPs, candidateDPs);
-
-              // check if similarity is null. Similarity is not
-              // null if similarity score is >= the
-              // user set threshold
-              if (sim == null) {
-                continue;
-              }
-            }
-          }
-
-          RowVsRowScore score = null;
-          if (!compareMobility) {
-            score = new RowVsRowScore(row, candidate, RangeUtils.rangeLength(mzRange) / 2.0,
-                mzWeight,
-                RangeUtils.rangeLength(rtRange) / 2.0, rtWeight);
-          } else {
-            score = new RowVsRowScore(row, candidate, RangeUtils.rangeLength(mzRange) / 2.0,
-                mzWeight,
-                RangeUtils.rangeLength(rtRange) / 2.0, rtWeight,
-                RangeUtils.rangeLength(mobilityRange), mobilityWeight);
-          }
-          scoreSet.add(score);
-        }
-        processedRows++;
+      // The scores are added in the same order as in a sequential run. RowVsRowScore never
+      // compares as equal, so the order of equal scores (and therefore the alignment) depends on
+      // the insertion order.
+      for (List<RowVsRowScore> scores : rowScores) {
+        scoreSet.addAll(scores);
       }
 
       // Create a table of mappings for best scores
@@ -356,7 +279,7 @@ public class JoinAlignerTask extends AbstractTask {
           targetRow.addFeature(file, new ModularFeature(alignedFeatureList, row.getFeature(file)));
         }
 
-        processedRows++;
+        processedRows.incrementAndGet();
       }
     } // Next feature list
 
@@ -376,13 +299,135 @@ public class JoinAlignerTask extends AbstractTask {
   }
 
   /**
-   * Uses the similarity function and filter to create similarity.
+   * Calculates the scores of a row with all candidate rows in the aligned feature list.
    *
-   * @return positive match with similarity or null if criteria was not met
+   * @param row row of the feature list, which is aligned
+   * @return the scores in the order of the candidate rows in the aligned feature list
    */
-  private SpectralSimilarity createSimilarity(DataPoint[] library, DataPoint[] query) {
-    return simFunction.getModule().getSimilarity(simFunction.getParameterSet(), mzTolerance, 0,
-        library, query);
+  private List<RowVsRowScore> calculateScores(FeatureListRow row) {
+    final List<RowVsRowScore> scores = new ArrayList<>();
+
+    // Calculate limits for a row with which the row can be aligned
+    Range<Double> mzRange = mzTolerance.getToleranceRange(row.getAverageMZ());
+    Range<Float> rtRange = rtTolerance.getToleranceRange(row.getAverageRT());
+
+    Range<Float> mobilityRange = compareMobility && !Float.isNaN(row.getAverageMobility()) ?
+        mobilityTolerance.getToleranceRange(row.getAverageMobility()) : Range.singleton(0f);
+
+    // Get all rows of the aligned peaklist within parameter limits
+    List<FeatureListRow> candidateRows = alignedFeatureList
+        .getRowsInsideScanAndMZRange(rtRange, mzRange);
+
+    // spectra similarity: prepared mass list of the row, created for the first candidate
+    WeightedSpectrum rowSpectrum = null;
+    boolean rowSpectrumCreated = false;
+    final WeightedSpectrumMatcher matcher =
+        compareSpectraSimilarity ? new WeightedSpectrumMatcher() : null;
+
+    // Calculate scores and store them
+    for (FeatureListRow candidate : candidateRows) {
+
+      if (compareMobility && !Float.isNaN(candidate.getAverageMobility()) &&
+          !mobilityRange.contains(candidate.getAverageMobility())) {
+        continue;
+      }
+
+      if (sameChargeRequired) {
+        if (!FeatureUtils.compareChargeState(row, candidate)) {
+          continue;
+        }
+      }
+
+      if (sameIDRequired) {
+        if (!FeatureUtils.compareIdentities(row, candidate)) {
+          continue;
+        }
+      }
+
+      if (compareIsotopePattern) {
+        IsotopePattern ip1 = row.getBestIsotopePattern();
+        IsotopePattern ip2 = candidate.getBestIsotopePattern();
+
+        if ((ip1 != null) && (ip2 != null)) {
+          ParameterSet isotopeParams =
+              parameters.getParameter(JoinAlignerParameters.compareIsotopePattern)
+                  .getEmbeddedParameters();
+
+          if (!IsotopePatternScoreCalculator.checkMatch(ip1, ip2, isotopeParams)) {
+            continue;
+          }
+        }
+      }
+
+      // compare the similarity of spectra mass lists on MS1 or
+      // MS2 level
+      if (compareSpectraSimilarity) {
+        // mass lists of the best fragmentation scans are required
+        if (msLevel == 2
+            && (row.getBestFragmentation() == null || candidate.getBestFragmentation() == null)) {
+          continue;
+        }
+
+        // get the prepared mass lists of the representative (MS1) or best fragmentation (MS2)
+        // scans. The row is prepared once, the candidates once per feature list.
+        if (!rowSpectrumCreated) {
+          rowSpectrum = createSpectrum(row);
+          rowSpectrumCreated = true;
+        }
+        WeightedSpectrum candidateSpectrum = alignedSpectra
+            .computeIfAbsent(candidate, r -> Optional.ofNullable(createSpectrum(r))).orElse(null);
+
+        // compare mass list data points of selected scans
+        if (rowSpectrum != null && candidateSpectrum != null) {
+
+          // calculate similarity using SimilarityFunction
+          SpectralSimilarity sim = simFunction.getModule()
+              .getSimilarity(simFunction.getParameterSet(), mzTolerance, 0, rowSpectrum,
+                  candidateSpectrum, matcher);
+
+          // check if similarity is null. Similarity is not
+          // null if similarity score is >= the
+          // user set threshold
+          if (sim == null) {
+            continue;
+          }
+        }
+      }
+
+      RowVsRowScore score = null;
+      if (!compareMobility) {
+        score = new RowVsRowScore(row, candidate, RangeUtils.rangeLength(mzRange) / 2.0,
+            mzWeight,
+            RangeUtils.rangeLength(rtRange) / 2.0, rtWeight);
+      } else {
+        score = new RowVsRowScore(row, candidate, RangeUtils.rangeLength(mzRange) / 2.0,
+            mzWeight,
+            RangeUtils.rangeLength(rtRange) / 2.0, rtWeight,
+            RangeUtils.rangeLength(mobilityRange), mobilityWeight);
+      }
+      scores.add(score);
+    }
+
+    return scores;
+  }
+
+  /**
+   * Prepares the mass list of the representative scan (MS1) or the best fragmentation scan (MS2)
+   * for the similarity function.
+   *
+   * @return the prepared mass list or null, if there is no scan
+   */
+  @Nullable
+  private WeightedSpectrum createSpectrum(FeatureListRow row) {
+    DataPoint[] dps = null;
+    if (msLevel == 1) {
+      dps = row.getBestFeature().getRepresentativeScan().getMassList().getDataPoints();
+    } else if (msLevel == 2 && row.getBestFragmentation() != null) {
+      dps = row.getBestFragmentation().getMassList().getDataPoints();
+    }
+    return dps == null ? null
+        : new WeightedSpectrum(dps,
+            simFunction.getModule().getWeights(simFunction.getParameterSet()));
   }
 
 }
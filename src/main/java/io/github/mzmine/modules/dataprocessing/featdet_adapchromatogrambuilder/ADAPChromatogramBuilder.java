@@ -0,0 +1,319 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.DataPointSorter;
+import io.github.mzmine.util.SortingDirection;
+import io.github.mzmine.util.SortingProperty;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.function.BooleanSupplier;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Groups the data points of all scans into chromatograms. Data points are processed from the
+ * highest to the lowest intensity. A data point is added to the chromatogram whose m/z range
+ * contains it, or starts a new chromatogram with a range that spans the m/z tolerance without
+ * overlapping the neighbouring ranges.
+ * <p>
+ * {@link #buildChromatograms(double[], double[], int[], int)} works on parallel arrays of m/z,
+ * intensity and scan index and only creates objects for the chromatograms and the data points
+ * assigned to them. {@link #buildChromatograms(List)} is the original implementation with one
+ * object per data point and is kept as a reference. Both produce identical chromatograms.
+ */
+public class ADAPChromatogramBuilder {
+
+  private final RawDataFile dataFile;
+  private final Scan[] scans;
+  private final MZTolerance mzTolerance;
+  private final double minIntensityForStartChrom;
+  private final BooleanSupplier isCanceled;
+
+  private volatile double progress = 0d;
+
+  /**
+   * @param dataFile                  the data file
+   * @param scans                     all selected scans, sorted by retention time
+   * @param mzTolerance               m/z tolerance to create the range of a new chromatogram
+   * @param minIntensityForStartChrom points below this intensity do not start a chromatogram
+   * @param isCanceled                checked regularly, the building is stopped if true
+   */
+  public ADAPChromatogramBuilder(@Nonnull RawDataFile dataFile, @Nonnull Scan[] scans,
+      @Nonnull MZTolerance mzTolerance, double minIntensityForStartChrom,
+      @Nonnull BooleanSupplier isCanceled) {
+    this.dataFile = dataFile;
+    this.scans = scans;
+    this.mzTolerance = mzTolerance;
+    this.minIntensityForStartChrom = minIntensityForStartChrom;
+    this.isCanceled = isCanceled;
+  }
+
+  /**
+   * @return the progress of the current build (0-1)
+   */
+  public double getProgress() {
+    return progress;
+  }
+
+  /**
+   * Builds the chromatograms from parallel arrays. Data point i has the m/z mzs[i], the intensity
+   * intensities[i] and was detected in scans[scanIndices[i]]. The arrays are not modified.
+   *
+   * @param mzs         m/z values
+   * @param intensities intensity values
+   * @param scanIndices index of the scan in the scans array
+   * @param numPoints   number of data points in the arrays
+   * @return the (unfinished) chromatograms sorted by their m/z range or null if canceled
+   */
+  @Nullable
+  public List<ADAPChromatogram> buildChromatograms(@Nonnull double[] mzs,
+      @Nonnull double[] intensities, @Nonnull int[] scanIndices, int numPoints) {
+    progress = 0d;
+
+    // sort the indices of the data points by intensity (descending). Equal data points keep
+    // their original order, so the order is the same as the stable sort of the data point list
+    final int[] order = new int[numPoints];
+    for (int i = 0; i < numPoints; i++) {
+      order[i] = i;
+    }
+    IntArrays.parallelQuickSort(order, (a, b) -> {
+      int result = Double.compare(intensities[b], intensities[a]);
+      if (result == 0) {
+        result = Double.compare(mzs[b], mzs[a]);
+      }
+      if (result == 0) {
+        result = Integer.compare(a, b);
+      }
+      return result;
+    });
+
+    // non overlapping, open m/z ranges mapped by their lower bound
+    final TreeMap<Double, MzRange> ranges = new TreeMap<>();
+
+    for (int n = 0; n < numPoints; n++) {
+      if ((n & 0xffff) == 0) {
+        if (isCanceled.getAsBoolean()) {
+          return null;
+        }
+        progress = n / (double) numPoints;
+      }
+
+      final int i = order[n];
+      final double mz = mzs[i];
+      final double intensity = intensities[i];
+      if (Double.isNaN(mz) || Double.isNaN(intensity)) {
+        continue;
+      }
+
+      final MzRange containsPointRange = findRangeContaining(ranges, mz);
+      if (containsPointRange != null) {
+        containsPointRange.chromatogram
+            .addMzFeature(scans[scanIndices[i]], new SimpleDataPoint(mz, intensity));
+        continue;
+      }
+
+      // skip it entirely if the intensity is not high enough
+      if (intensity < minIntensityForStartChrom) {
+        continue;
+      }
+
+      // use the bounds of the neighbouring ranges, so none of the ranges overlap
+      final Range<Double> toleranceRange = mzTolerance.getToleranceRange(mz);
+      final MzRange plusRange = findRangeContaining(ranges, toleranceRange.upperEndpoint());
+      final MzRange minusRange = findRangeContaining(ranges, toleranceRange.lowerEndpoint());
+      final double toBeLowerBound =
+          minusRange == null ? toleranceRange.lowerEndpoint() : minusRange.upperBound;
+      final double toBeUpperBound =
+          plusRange == null ? toleranceRange.upperEndpoint() : plusRange.lowerBound;
+
+      if (toBeLowerBound < toBeUpperBound) {
+        final ADAPChromatogram newChrom = new ADAPChromatogram(dataFile, scans);
+        newChrom.addMzFeature(scans[scanIndices[i]], new SimpleDataPoint(mz, intensity));
+        newChrom.setHighPointMZ(mz);
+
+        // ranges enclosed by the new range are merged into the new range, the same way a guava
+        // RangeSet coalesces connected ranges. Their chromatograms are dropped.
+        ranges.subMap(toBeLowerBound, true, toBeUpperBound, false).clear();
+        ranges.put(toBeLowerBound, new MzRange(toBeLowerBound, toBeUpperBound, newChrom));
+      } else if (Double.compare(toBeLowerBound, toBeUpperBound) == 0 && plusRange != null) {
+        plusRange.chromatogram
+            .addMzFeature(scans[scanIndices[i]], new SimpleDataPoint(mz, intensity));
+      } else {
+        throw new IllegalStateException(
+            String.format("Incorrect range [%f, %f] for m/z %f", toBeLowerBound, toBeUpperBound,
+                mz));
+      }
+    }
+
+    final List<ADAPChromatogram> chromatograms = new ArrayList<>(ranges.size());
+    for (MzRange range : ranges.values()) {
+      chromatograms.add(range.chromatogram);
+    }
+    progress = 1d;
+    return chromatograms;
+  }
+
+  /**
+   * The original implementation, which creates one object per data point and sorts the list of
+   * data points. Kept as a reference for {@link #buildChromatograms(double[], double[], int[],
+   * int)}.
+   *
+   * @param allMzValues all data points. The list is sorted by intensity.
+   * @return the (unfinished) chromatograms sorted by their m/z range or null if canceled
+   */
+  @Nullable
+  public List<ADAPChromatogram> buildChromatograms(@Nonnull List<ExpandedDataPoint> allMzValues) {
+    RangeSet<Double> rangeSet = TreeRangeSet.create();
+    // After each range is created it does not change so we can map the ranges (which will be
+    // unique) to the chromatograms
+    Map<Range<Double>, ADAPChromatogram> rangeToChromMap = new HashMap<>();
+
+    // sort data points by intensity
+    allMzValues.sort(new DataPointSorter(SortingProperty.Intensity, SortingDirection.Descending));
+
+    progress = 0d;
+    double progressStep = (allMzValues.size() > 0) ? 1d / allMzValues.size() : 0d;
+
+    for (ExpandedDataPoint mzFeature : allMzValues) {
+      progress += progressStep;
+
+      if (isCanceled.getAsBoolean()) {
+        return null;
+      }
+
+      if (mzFeature == null || Double.isNaN(mzFeature.getMZ()) || Double
+          .isNaN(mzFeature.getIntensity())) {
+        continue;
+      }
+
+      Range<Double> containsPointRange = rangeSet.rangeContaining(mzFeature.getMZ());
+
+      Range<Double> toleranceRange = mzTolerance.getToleranceRange(mzFeature.getMZ());
+      if (containsPointRange == null) {
+        // skip it entierly if the intensity is not high enough
+        if (mzFeature.getIntensity() < minIntensityForStartChrom) {
+          continue;
+        }
+        // look +- mz tolerance to see if ther is a range near by.
+        // If there is use the proper boundry of that range for the
+        // new range to insure than NON OF THE RANGES OVERLAP.
+        Range<Double> plusRange = rangeSet.rangeContaining(toleranceRange.upperEndpoint());
+        Range<Double> minusRange = rangeSet.rangeContaining(toleranceRange.lowerEndpoint());
+        Double toBeLowerBound;
+        Double toBeUpperBound;
+
+        // If both of the above ranges are null then we make the new range spaning the full
+        // mz tolerance range.
+        // If one or both are not null we need to properly modify the range of the new
+        // chromatogram so that none of the points are overlapping.
+        if ((plusRange == null) && (minusRange == null)) {
+          toBeLowerBound = toleranceRange.lowerEndpoint();
+          toBeUpperBound = toleranceRange.upperEndpoint();
+        } else if ((plusRange == null) && (minusRange != null)) {
+          // the upper end point of the minus range will be the lower
+          // range of the new one
+          toBeLowerBound = minusRange.upperEndpoint();
+          toBeUpperBound = toleranceRange.upperEndpoint();
+        } else if ((minusRange == null) && (plusRange != null)) {
+          toBeLowerBound = toleranceRange.lowerEndpoint();
+          toBeUpperBound = plusRange.lowerEndpoint();
+        } else if ((minusRange != null) && (plusRange != null)) {
+          toBeLowerBound = minusRange.upperEndpoint();
+          toBeUpperBound = plusRange.lowerEndpoint();
+        } else {
+          toBeLowerBound = 0.0;
+          toBeUpperBound = 0.0;
+        }
+
+        if (toBeLowerBound < toBeUpperBound) {
+          Range<Double> newRange = Range.open(toBeLowerBound, toBeUpperBound);
+          ADAPChromatogram newChrom = new ADAPChromatogram(dataFile, scans);
+
+          newChrom.addMzFeature(mzFeature.getScan(), mzFeature);
+
+          newChrom.setHighPointMZ(mzFeature.getMZ());
+
+          rangeToChromMap.put(newRange, newChrom);
+          // also need to put it in the set -> this is where the range can be efficiently found.
+          rangeSet.add(newRange);
+        } else if (toBeLowerBound.equals(toBeUpperBound) && plusRange != null) {
+          ADAPChromatogram curChrom = rangeToChromMap.get(plusRange);
+          curChrom.addMzFeature(mzFeature.getScan(), mzFeature);
+        } else {
+          throw new IllegalStateException(String.format("Incorrect range [%f, %f] for m/z %f",
+              toBeLowerBound, toBeUpperBound, mzFeature.getMZ()));
+        }
+
+      } else {
+        // In this case we do not need to update the rangeSet
+        ADAPChromatogram curChrom = rangeToChromMap.get(containsPointRange);
+        curChrom.addMzFeature(mzFeature.getScan(), mzFeature);
+      }
+    }
+
+    final List<ADAPChromatogram> chromatograms = new ArrayList<>();
+    for (Range<Double> range : rangeSet.asRanges()) {
+      chromatograms.add(rangeToChromMap.get(range));
+    }
+    progress = 1d;
+    return chromatograms;
+  }
+
+  /**
+   * @return the open range that contains the m/z or null
+   */
+  @Nullable
+  private static MzRange findRangeContaining(TreeMap<Double, MzRange> ranges, double mz) {
+    // ranges are open, so the lower bound has to be smaller than the m/z
+    final Entry<Double, MzRange> entry = ranges.lowerEntry(mz);
+    if (entry != null && mz < entry.getValue().upperBound) {
+      return entry.getValue();
+    }
+    return null;
+  }
+
+  /**
+   * An open m/z range (lowerBound, upperBound) and its chromatogram.
+   */
+  private static final class MzRange {
+
+    private final double lowerBound;
+    private final double upperBound;
+    private final ADAPChromatogram chromatogram;
+
+    private MzRange(double lowerBound, double upperBound, ADAPChromatogram chromatogram) {
+      this.lowerBound = lowerBound;
+      this.upperBound = upperBound;
+      this.chromatogram = chromatogram;
+    }
+  }
+}
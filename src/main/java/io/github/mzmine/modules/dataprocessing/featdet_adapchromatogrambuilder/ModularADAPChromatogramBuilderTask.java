@@ -21,10 +21,6 @@
 package io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder;
 
 
-import com.google.common.collect.Range;
-import com.google.common.collect.RangeSet;
-import com.google.common.collect.TreeRangeSet;
-import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.MassList;
 import io.github.mzmine.datamodel.RawDataFile;
@@ -43,7 +39,6 @@ import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.ADAPChromatogramSorter;
-import io.github.mzmine.util.DataPointSorter;
 import io.github.mzmine.util.DataTypeUtils;
 import io.github.mzmine.util.FeatureConvertors;
 import io.github.mzmine.util.MemoryMapStorage;
@@ -52,21 +47,13 @@ import io.github.mzmine.util.SortingProperty;
 import io.github.mzmine.util.exceptions.MissingMassListException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
 import java.util.logging.Logger;
 import javax.annotation.Nullable;
 
 
 public class ModularADAPChromatogramBuilderTask extends AbstractTask {
 
-  RangeSet<Double> rangeSet = TreeRangeSet.create();
-  // After each range is created it does not change so we can map the ranges (which will be uniqe)
-  // to the chromatograms
-  HashMap<Range, ADAPChromatogram> rangeToChromMap = new HashMap<Range, ADAPChromatogram>();
-
   private Logger logger = Logger.getLogger(this.getClass().getName());
 
   private MZmineProject project;
@@ -75,6 +62,8 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
   // scan counter
   // private int processedPoints = 0, totalPoints;
   private double progress = 0.0;
+  // set while the chromatograms are built
+  private volatile ADAPChromatogramBuilder builder;
   private ScanSelection scanSelection;
   private int newFeatureID = 1;
   private Scan[] scans;
@@ -133,7 +122,9 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
    */
   @Override
   public double getFinishedPercentage() {
-    return progress;
+    // building the chromatograms is the first half of the task
+    final ADAPChromatogramBuilder currentBuilder = builder;
+    return currentBuilder != null ? currentBuilder.getProgress() * 0.5 : progress;
   }
 
   public RawDataFile getDataFile() {
@@ -191,175 +182,78 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
               + "Please, set the scan filter parameter to a specific MS level");
     }
 
-    // make a list of all the data points
-    // sort data points by intensity
-    // loop through list
-    // add data point to chromatogrm or make new one
-    // update mz avg and other stuff
-    //
-
-
-    // make a list of all the data points
-    List<ExpandedDataPoint> allMzValues = new ArrayList<ExpandedDataPoint>();
+    // collect all data points in parallel arrays of m/z, intensity and scan index
+    long totalPoints = 0;
+    for (Scan scan : scans) {
+      MassList massList = scan.getMassList();
+      if (massList == null) {
+        setStatus(TaskStatus.ERROR);
+        setErrorMessage("Scan " + dataFile + " #" + scan.getScanNumber()
+            + " does not have a mass list");
+        return;
+      }
+      totalPoints += massList.getNumberOfDataPoints();
+    }
+    if (totalPoints > Integer.MAX_VALUE - 8) {
+      setStatus(TaskStatus.ERROR);
+      setErrorMessage("Too many data points (" + totalPoints + ") in " + dataFile
+          + ". Please restrict the scan selection.");
+      return;
+    }
 
+    final int numPoints = (int) totalPoints;
+    final double[] mzs = new double[numPoints];
+    final double[] intensities = new double[numPoints];
+    final int[] scanIndices = new int[numPoints];
 
     ScanDataAccess scanData = EfficientDataAccess.of(dataFile, ScanDataType.CENTROID, scanSelection);
 
-    while(scanData.hasNextScan()) {
+    int point = 0;
+    for (int scanIndex = 0; scanData.hasNextScan(); scanIndex++) {
       if (isCanceled())
         return;
 
-      Scan scan = null;
       try {
-        scan = scanData.nextScan();
+        scanData.nextScan();
       } catch (MissingMassListException e) {
         setStatus(TaskStatus.ERROR);
-        setErrorMessage("Scan " + dataFile + " #" + scan.getScanNumber()
-            + " does not have a mass list");
+        setErrorMessage(e.getMessage());
         e.printStackTrace();
         return;
       }
 
       int dps = scanData.getNumberOfDataPoints();
-      for (int i=0; i<dps; i++) {
-        ExpandedDataPoint curDatP = new ExpandedDataPoint(scanData.getMzValue(i), scanData.getIntensityValue(i), scan);
-        allMzValues.add(curDatP);
-        // corespondingScanNum.add(scan.getScanNumber());
+      for (int i = 0; i < dps; i++) {
+        mzs[point] = scanData.getMzValue(i);
+        intensities[point] = scanData.getIntensityValue(i);
+        scanIndices[point] = scanIndex;
+        point++;
       }
     }
 
-    // Integer[] simpleCorespondingScanNums = new Integer[corespondingScanNum.size()];
-    // corespondingScanNum.toArray(simpleCorespondingScanNums );
-
-    // sort data points by intensity
-    allMzValues.sort(new DataPointSorter(SortingProperty.Intensity, SortingDirection.Descending));
-
-    // Set<Chromatogram> buildingChromatograms;
-    // buildingChromatograms = new LinkedHashSet<Chromatogram>();
-
-    double maxIntensity = allMzValues.get(0).getIntensity();
-
-    // count starts at 1 since we already have added one with a single point.
-
-    // Stopwatch stopwatch = Stopwatch.createUnstarted();
-    // stopwatch2 = Stopwatch.createUnstarted();
-    // Stopwatch stopwatch3 = Stopwatch.createUnstarted();
-
-
-    progress = 0.0;
-    double progressStep = (allMzValues.size() > 0) ? 0.5 / allMzValues.size() : 0.0;
-
-    for (ExpandedDataPoint mzFeature : allMzValues) {
-
-      progress += progressStep;
-
-      if (isCanceled()) {
-        return;
-      }
-
-      if (mzFeature == null || Double.isNaN(mzFeature.getMZ()) || Double.isNaN(mzFeature.getIntensity())) {
-        continue;
-      }
-
-      //////////////////////////////////////////////////
-
-      Range<Double> containsPointRange = rangeSet.rangeContaining(mzFeature.getMZ());
-
-      Range<Double> toleranceRange = mzTolerance.getToleranceRange(mzFeature.getMZ());
-      if (containsPointRange == null) {
-        // skip it entierly if the intensity is not high enough
-        if (mzFeature.getIntensity() < minIntensityForStartChrom) {
-          continue;
-        }
-        // look +- mz tolerance to see if ther is a range near by.
-        // If there is use the proper boundry of that range for the
-        // new range to insure than NON OF THE RANGES OVERLAP.
-        Range<Double> plusRange = rangeSet.rangeContaining(toleranceRange.upperEndpoint());
-        Range<Double> minusRange = rangeSet.rangeContaining(toleranceRange.lowerEndpoint());
-        Double toBeLowerBound;
-        Double toBeUpperBound;
-
-        double cur_max_testing_mz = mzFeature.getMZ();
-
-        // If both of the above ranges are null then we make the new range spaning the full
-        // mz tolerance range.
-        // If one or both are not null we need to properly modify the range of the new
-        // chromatogram so that none of the points are overlapping.
-        if ((plusRange == null) && (minusRange == null)) {
-          toBeLowerBound = toleranceRange.lowerEndpoint();
-          toBeUpperBound = toleranceRange.upperEndpoint();
-        } else if ((plusRange == null) && (minusRange != null)) {
-          // the upper end point of the minus range will be the lower
-          // range of the new one
-          toBeLowerBound = minusRange.upperEndpoint();
-          toBeUpperBound = toleranceRange.upperEndpoint();
-
-        } else if ((minusRange == null) && (plusRange != null)) {
-          toBeLowerBound = toleranceRange.lowerEndpoint();
-          toBeUpperBound = plusRange.lowerEndpoint();
-          // double tmp_this = plusRange.upperEndpoint();
-          // System.out.println("tmp_this");
-        } else if ((minusRange != null) && (plusRange != null)) {
-          toBeLowerBound = minusRange.upperEndpoint();
-          toBeUpperBound = plusRange.lowerEndpoint();
-        } else {
-          toBeLowerBound = 0.0;
-          toBeUpperBound = 0.0;
-        }
-
-        if (toBeLowerBound < toBeUpperBound) {
-          Range<Double> newRange = Range.open(toBeLowerBound, toBeUpperBound);
-          ADAPChromatogram newChrom = new ADAPChromatogram(dataFile, scans);
-
-          newChrom.addMzFeature(mzFeature.getScan(), mzFeature);
-
-          newChrom.setHighPointMZ(mzFeature.getMZ());
-
-
-          rangeToChromMap.put(newRange, newChrom);
-          // also need to put it in the set -> this is where the range can be efficiently found.
-
-          rangeSet.add(newRange);
-        } else if (toBeLowerBound.equals(toBeUpperBound) && plusRange != null) {
-          ADAPChromatogram curChrom = rangeToChromMap.get(plusRange);
-          curChrom.addMzFeature(mzFeature.getScan(), mzFeature);
-        } else
-          throw new IllegalStateException(String.format("Incorrect range [%f, %f] for m/z %f",
-              toBeLowerBound, toBeUpperBound, mzFeature.getMZ()));
-
-      } else {
-        // In this case we do not need to update the rangeSet
-
-        ADAPChromatogram curChrom = rangeToChromMap.get(containsPointRange);
-
-        curChrom.addMzFeature(mzFeature.getScan(), mzFeature);
-
-        // update the entry in the map
-        rangeToChromMap.put(containsPointRange, curChrom);
-      }
+    // sort data points by intensity, loop through them and add each data point to a
+    // chromatogram or make a new one
+    builder = new ADAPChromatogramBuilder(dataFile, scans, mzTolerance, minIntensityForStartChrom,
+        this::isCanceled);
+    final List<ADAPChromatogram> chromatograms =
+        builder.buildChromatograms(mzs, intensities, scanIndices, point);
+    builder = null;
+    if (chromatograms == null || isCanceled()) {
+      return;
     }
-
-    // System.out.println("search chroms (ms): " + stopwatch.elapsed(TimeUnit.MILLISECONDS));
-    // System.out.println("making new chrom (ms): " + stopwatch2.elapsed(TimeUnit.MILLISECONDS));
+    progress = 0.5;
 
     // finish chromatograms
-    Set<Range<Double>> ranges = rangeSet.asRanges();
-    Iterator<Range<Double>> RangeIterator = ranges.iterator();
-
     List<ADAPChromatogram> buildingChromatograms = new ArrayList<ADAPChromatogram>();
 
-    progressStep = (ranges.size() > 0) ? 0.5 / ranges.size() : 0.0;
-    while (RangeIterator.hasNext()) {
+    double progressStep = (chromatograms.size() > 0) ? 0.5 / chromatograms.size() : 0.0;
+    for (ADAPChromatogram chromatogram : chromatograms) {
       if (isCanceled()) {
         return;
       }
 
       progress += progressStep;
 
-      Range<Double> curRangeKey = RangeIterator.next();
-
-      ADAPChromatogram chromatogram = rangeToChromMap.get(curRangeKey);
-
       chromatogram.finishChromatogram();
 
       // And remove chromatograms who dont have a certian number of continous points above the
@@ -0,0 +1,528 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_ionmobilitytracebuilder;
+
+import com.google.common.collect.Range;
+import com.google.common.math.Quantiles;
+import io.github.mzmine.datamodel.Frame;
+import io.github.mzmine.datamodel.MassList;
+import io.github.mzmine.datamodel.MobilityScan;
+import io.github.mzmine.datamodel.MobilityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.featuredata.IonMobilitySeries;
+import io.github.mzmine.datamodel.featuredata.IonMobilogramTimeSeries;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonMobilitySeries;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonMobilogramTimeSeries;
+import io.github.mzmine.datamodel.featuredata.impl.StorageUtils;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.FeatureConvertors;
+import io.github.mzmine.util.MemoryMapStorage;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BooleanSupplier;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Builds ion mobility traces from frames that are added in retention time order.
+ * <p>
+ * A data point that is not within the m/z range of an existing trace starts a new trace. The range
+ * of the new trace is the m/z tolerance around the data point, limited by the ranges of the
+ * neighbouring traces, so the ranges never overlap. Within a frame, the data points are assigned by
+ * descending intensity.
+ * <p>
+ * Only the data points of the current frame are held in primitive arrays. After a frame was
+ * processed, the data points of every trace in this frame are written to a {@link
+ * MemoryMapStorage}. The memory consumption therefore does not grow with the number of data points
+ * (a TIMS run has hundreds of millions), but with the number of traces and frames per trace. The
+ * mobilograms are only created for the traces that pass the filters in {@link
+ * #finish(ModularFeatureList, RawDataFile, BooleanSupplier)}.
+ */
+class IonMobilityTraceBuilder {
+
+  private final List<Frame> frames;
+  private final MZTolerance mzTolerance;
+  private final int minDataPointsRt;
+  private final int minTotalSignals;
+  private final int allowedMissingMobilityScans;
+  private final int allowedMissingFrames;
+  @Nullable
+  private final MemoryMapStorage tempStorage;
+
+  // traces by the (open) lower endpoint of their m/z range
+  private final TreeMap<Double, BuildingTrace> traces = new TreeMap<>();
+  private int lastFrameIndex = -1;
+  private volatile int finishedTraces = 0;
+
+  // data points of the current frame
+  private double[] mzs = new double[0];
+  private double[] intensities = new double[0];
+  private int[] scanIndices = new int[0];
+  private BuildingTrace[] pointTraces = new BuildingTrace[0];
+  private int[] order = new int[0];
+  private double[] mzBuffer = new double[0];
+  private double[] intensityBuffer = new double[0];
+
+  /**
+   * @param frames      All frames of the raw data file that shall be processed, sorted by
+   *                    retention time.
+   * @param tempStorage The storage for the data points of the traces until they are finished. May
+   *                    be null if the data points shall be kept in ram.
+   */
+  IonMobilityTraceBuilder(@Nonnull List<Frame> frames, @Nonnull MZTolerance mzTolerance,
+      int minDataPointsRt, int minTotalSignals, int allowedMissingMobilityScans,
+      int allowedMissingFrames, @Nullable MemoryMapStorage tempStorage) {
+    this.frames = frames;
+    this.mzTolerance = mzTolerance;
+    this.minDataPointsRt = minDataPointsRt;
+    this.minTotalSignals = minTotalSignals;
+    this.allowedMissingMobilityScans = allowedMissingMobilityScans;
+    this.allowedMissingFrames = allowedMissingFrames;
+    this.tempStorage = tempStorage;
+  }
+
+  /**
+   * Adds the data points of the mass lists of all mobility scans of a frame to the traces. Frames
+   * have to be added in ascending order.
+   *
+   * @param frameIndex The index of the frame in the list of frames.
+   * @return false if a mobility scan of the frame does not have a mass list.
+   */
+  boolean addFrame(int frameIndex) {
+    if (frameIndex <= lastFrameIndex) {
+      throw new IllegalArgumentException("Frames have to be added in ascending order.");
+    }
+    lastFrameIndex = frameIndex;
+
+    final List<MobilityScan> mobilityScans = frames.get(frameIndex).getMobilityScans();
+    int numPoints = 0;
+    for (int i = 0; i < mobilityScans.size(); i++) {
+      final MassList massList = mobilityScans.get(i).getMassList();
+      if (massList == null) {
+        return false;
+      }
+      final int numDp = massList.getNumberOfDataPoints();
+      mzBuffer = massList.getMzValues(mzBuffer);
+      intensityBuffer = massList.getIntensityValues(intensityBuffer);
+      ensureCapacity(numPoints + numDp);
+      System.arraycopy(mzBuffer, 0, mzs, numPoints, numDp);
+      System.arraycopy(intensityBuffer, 0, intensities, numPoints, numDp);
+      Arrays.fill(scanIndices, numPoints, numPoints + numDp, i);
+      numPoints += numDp;
+    }
+
+    // assign the data points by descending intensity
+    for (int i = 0; i < numPoints; i++) {
+      order[i] = i;
+    }
+    IntArrays.quickSort(order, 0, numPoints,
+        (a, b) -> Double.compare(intensities[b], intensities[a]));
+    for (int i = 0; i < numPoints; i++) {
+      pointTraces[order[i]] = getOrCreateTrace(mzs[order[i]]);
+    }
+
+    // group by trace and mobility scan, the most intense data point of a mobility scan first
+    IntArrays.quickSort(order, 0, numPoints, (a, b) -> {
+      int result = Integer.compare(pointTraces[a].id, pointTraces[b].id);
+      if (result == 0) {
+        result = Integer.compare(scanIndices[a], scanIndices[b]);
+      }
+      if (result == 0) {
+        result = Double.compare(intensities[b], intensities[a]);
+      }
+      return result;
+    });
+    int start = 0;
+    while (start < numPoints) {
+      final BuildingTrace trace = pointTraces[order[start]];
+      int end = start + 1;
+      while (end < numPoints && pointTraces[order[end]] == trace) {
+        end++;
+      }
+      trace.addFrame(frameIndex, storeDataPoints(start, end));
+      start = end;
+    }
+
+    Arrays.fill(pointTraces, 0, numPoints, null);
+    return true;
+  }
+
+  /**
+   * Creates a feature for every trace that has enough data points in consecutive frames. Zeros
+   * are added around gaps of missing mobility scans and frames.
+   *
+   * @param featureList The feature list, its storage is used for the mobilograms.
+   * @param isCanceled  Stops the creation of features if true.
+   * @return The features, sorted by m/z.
+   */
+  @Nonnull
+  List<ModularFeature> finish(@Nonnull ModularFeatureList featureList,
+      @Nonnull RawDataFile dataFile, @Nonnull BooleanSupplier isCanceled) {
+    final List<ModularFeature> features = new ArrayList<>();
+    // the ranges do not overlap, so the traces are sorted by m/z
+    for (BuildingTrace trace : traces.values()) {
+      if (isCanceled.getAsBoolean()) {
+        break;
+      }
+      final ModularFeature feature = finishTrace(trace, featureList, dataFile);
+      if (feature != null) {
+        features.add(feature);
+      }
+      finishedTraces++;
+    }
+
+    traces.clear();
+    if (tempStorage != null) {
+      tempStorage.release();
+    }
+    return features;
+  }
+
+  /**
+   * @return The number of traces.
+   */
+  int getNumberOfTraces() {
+    return traces.size();
+  }
+
+  /**
+   * @return The number of traces that were finished by {@link #finish(ModularFeatureList,
+   * RawDataFile, BooleanSupplier)}.
+   */
+  int getNumberOfFinishedTraces() {
+    return finishedTraces;
+  }
+
+  private void ensureCapacity(int numPoints) {
+    if (mzs.length < numPoints) {
+      final int capacity = Math.max(numPoints, mzs.length * 2);
+      mzs = Arrays.copyOf(mzs, capacity);
+      intensities = Arrays.copyOf(intensities, capacity);
+      scanIndices = Arrays.copyOf(scanIndices, capacity);
+      pointTraces = Arrays.copyOf(pointTraces, capacity);
+      order = new int[capacity];
+    }
+  }
+
+  /**
+   * Stores the mobility scan indices, m/z and intensity values of the data points order[start] to
+   * order[end - 1] in a single buffer.
+   */
+  private DoubleBuffer storeDataPoints(int start, int end) {
+    final int n = end - start;
+    final double[] data = new double[3 * n];
+    for (int i = 0; i < n; i++) {
+      final int point = order[start + i];
+      data[i] = scanIndices[point];
+      data[n + i] = mzs[point];
+      data[2 * n + i] = intensities[point];
+    }
+    return StorageUtils.storeValuesToDoubleBuffer(tempStorage, data);
+  }
+
+  @Nullable
+  private BuildingTrace getTraceContaining(double mz) {
+    final Entry<Double, BuildingTrace> entry = traces.floorEntry(mz);
+    if (entry != null && entry.getValue().contains(mz)) {
+      return entry.getValue();
+    }
+    return null;
+  }
+
+  @Nonnull
+  private BuildingTrace getOrCreateTrace(double mz) {
+    final BuildingTrace containing = getTraceContaining(mz);
+    if (containing != null) {
+      return containing;
+    }
+
+    // look +- mz tolerance to see if there is a range near by. If there is, use the proper
+    // boundary of that range for the new range to ensure that none of the ranges overlap.
+    final Range<Double> toleranceRange = mzTolerance.getToleranceRange(mz);
+    final BuildingTrace plus = getTraceContaining(toleranceRange.upperEndpoint());
+    final BuildingTrace minus = getTraceContaining(toleranceRange.lowerEndpoint());
+    final double lower = minus != null ? minus.upperMz : toleranceRange.lowerEndpoint();
+    final double upper = plus != null ? plus.lowerMz : toleranceRange.upperEndpoint();
+
+    if (lower < upper) {
+      final BuildingTrace trace = new BuildingTrace(traces.size(), mz, lower, upper);
+      traces.put(lower, trace);
+      return trace;
+    } else if (lower == upper && plus != null) {
+      return plus;
+    }
+    throw new IllegalStateException(
+        String.format("Incorrect range [%f, %f] for m/z %f", lower, upper, mz));
+  }
+
+  @Nullable
+  private ModularFeature finishTrace(BuildingTrace trace, ModularFeatureList featureList,
+      RawDataFile dataFile) {
+    if (trace.numDataPoints < minTotalSignals || !hasConsecutiveFrames(trace.frameIndices)) {
+      return null;
+    }
+
+    final Frame firstFrame = frames.get(trace.frameIndices.getInt(0));
+    final MobilityType mobilityType = firstFrame.getMobilityType();
+    // in tims, each subscan number in different frames has the same mobility
+    final Int2IntOpenHashMap scanNumberCounts = new Int2IntOpenHashMap();
+    final Set<Double> mobilities = new HashSet<>();
+
+    Range<Double> intensityRange = null;
+    Range<Double> mzRange = null;
+    Range<Double> mobilityRange = null;
+    Range<Float> rtRange = null;
+    double maximumIntensity = Double.MIN_VALUE;
+    float rt = 0f;
+    double mobility = 0d;
+
+    final List<IonMobilitySeries> frameMobilograms = new ArrayList<>();
+    for (int k = 0; k < trace.frameIndices.size(); k++) {
+      final Frame frame = frames.get(trace.frameIndices.getInt(k));
+      final int numScans = frame.getNumberOfMobilityScans();
+      final DoubleBuffer data = trace.dataPoints.get(k);
+      final int n = data.capacity() / 3;
+
+      final DoubleArrayList mobilogramMzs = new DoubleArrayList();
+      final DoubleArrayList mobilogramIntensities = new DoubleArrayList();
+      final List<MobilityScan> mobilogramScans = new ArrayList<>();
+      int previousScanIndex = -1;
+      int lastScanIndex = 0;
+      for (int i = 0; i < n; i++) {
+        final int scanIndex = (int) data.get(i);
+        final MobilityScan scan = frame.getMobilityScan(scanIndex);
+        if (mobilityType == MobilityType.TIMS) {
+          scanNumberCounts.addTo(scan.getMobilityScanNumber(), 1);
+        } else {
+          mobilities.add(scan.getMobility());
+        }
+        // only the most intense data point of a mobility scan
+        if (scanIndex == previousScanIndex) {
+          continue;
+        }
+        previousScanIndex = scanIndex;
+
+        // fill borders of gaps in the mobility dimension with 0s
+        if (scanIndex - lastScanIndex > allowedMissingMobilityScans + 1) {
+          if (lastScanIndex != 0 && lastScanIndex + 1 < numScans) {
+            mobilogramMzs.add(trace.mz);
+            mobilogramIntensities.add(0d);
+            mobilogramScans.add(frame.getMobilityScan(lastScanIndex + 1));
+          }
+          if (scanIndex - 1 >= 0 && !(lastScanIndex != 0 && lastScanIndex + 1 == scanIndex - 1)) {
+            mobilogramMzs.add(trace.mz);
+            mobilogramIntensities.add(0d);
+            mobilogramScans.add(frame.getMobilityScan(scanIndex - 1));
+          }
+        }
+        lastScanIndex = scanIndex;
+
+        final double mz = data.get(n + i);
+        final double intensity = data.get(2 * n + i);
+        mobilogramMzs.add(mz);
+        mobilogramIntensities.add(intensity);
+        mobilogramScans.add(scan);
+
+        // set ranges
+        if (intensityRange == null) {
+          intensityRange = Range.singleton(intensity);
+          mzRange = Range.singleton(mz);
+          mobilityRange = Range.singleton(scan.getMobility());
+          rtRange = Range.singleton(frame.getRetentionTime());
+        } else {
+          intensityRange = intensityRange.span(Range.singleton(intensity));
+          mzRange = mzRange.span(Range.singleton(mz));
+          mobilityRange = mobilityRange.span(Range.singleton(scan.getMobility()));
+          rtRange = rtRange.span(Range.singleton(frame.getRetentionTime()));
+        }
+
+        // set maxima
+        if (maximumIntensity < intensity) {
+          maximumIntensity = intensity;
+          rt = frame.getRetentionTime();
+          mobility = scan.getMobility();
+        }
+      }
+      if (lastScanIndex + 1 < numScans) {
+        mobilogramMzs.add(trace.mz);
+        mobilogramIntensities.add(0d);
+        mobilogramScans.add(frame.getMobilityScan(lastScanIndex + 1));
+      }
+
+      // the mobilograms are stored in the feature list's storage by the time series
+      frameMobilograms.add(new SimpleIonMobilitySeries(null, mobilogramMzs.toDoubleArray(),
+          mobilogramIntensities.toDoubleArray(), mobilogramScans));
+    }
+
+    // fill borders of gaps in the rt dimension with 0s
+    final int offset = firstFrame.getMobilityScans().get(0).getMobilityScanNumber();
+    final int timsMobilityScanNumber =
+        mobilityType == MobilityType.TIMS ? findMostFrequentMobilityScanNumber(scanNumberCounts)
+            : -1;
+    final double medianMobility =
+        mobilityType != MobilityType.TIMS ? Quantiles.median().compute(mobilities) : -1d;
+
+    final int numFrames = frames.size();
+    final List<IonMobilitySeries> mobilograms = new ArrayList<>();
+    int lastIndex = 0;
+    for (int k = 0; k < trace.frameIndices.size(); k++) {
+      final int frameIndex = trace.frameIndices.getInt(k);
+      if (frameIndex - lastIndex > allowedMissingFrames + 1) {
+        if (lastIndex != 0 && lastIndex + 1 < numFrames) {
+          mobilograms.add(createZeroMobilogram(frames.get(lastIndex + 1), trace.mz,
+              mobilityType, timsMobilityScanNumber - offset, medianMobility));
+        }
+        if (frameIndex - 1 >= 0 && !(lastIndex != 0 && lastIndex + 1 == frameIndex - 1)) {
+          mobilograms.add(createZeroMobilogram(frames.get(frameIndex - 1), trace.mz,
+              mobilityType, timsMobilityScanNumber - offset, medianMobility));
+        }
+      }
+      lastIndex = frameIndex;
+      mobilograms.add(frameMobilograms.get(k));
+    }
+    if (lastIndex + 1 < numFrames) {
+      mobilograms.add(createZeroMobilogram(frames.get(lastIndex + 1), trace.mz,
+          mobilityType, timsMobilityScanNumber - offset, medianMobility));
+    }
+
+    final IonMobilityTrace ionTrace =
+        new IonMobilityTrace(trace.mz, rt, mobility, maximumIntensity, mzRange);
+    ionTrace.setMobilityRange(mobilityRange);
+    ionTrace.setRetentionTimeRange(rtRange);
+    ionTrace.setIntensityRange(intensityRange);
+    ionTrace.setFeatureList(featureList);
+
+    final IonMobilogramTimeSeries imTimeSeries =
+        new SimpleIonMobilogramTimeSeries(featureList.getMemoryMapStorage(), mobilograms);
+    return FeatureConvertors.IonMobilityIonTraceToModularFeature(ionTrace, dataFile,
+        imTimeSeries);
+  }
+
+  private boolean hasConsecutiveFrames(IntArrayList frameIndices) {
+    int consecutive = 0;
+    for (int i = 1; i < frameIndices.size(); i++) {
+      if (frameIndices.getInt(i) == frameIndices.getInt(i - 1) + 1) {
+        consecutive++;
+        if (consecutive >= minDataPointsRt) {
+          return true;
+        }
+      } else {
+        consecutive = 0;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param mobilityScanIndex The index of the mobility scan in TIMS frames.
+   * @param medianMobility    The mobility of the trace in other frames. The mobility scan with the
+   *                          closest mobility is used.
+   */
+  private static IonMobilitySeries createZeroMobilogram(Frame frame, double mz,
+      MobilityType mobilityType, int mobilityScanIndex, double medianMobility) {
+    // in tims, each subscan number in different frames has the same mobility
+    final MobilityScan scan = mobilityType == MobilityType.TIMS ? frame
+        .getMobilityScan(mobilityScanIndex)
+        : findMobilityScanWithClosestMobility(medianMobility, frame.getMobilityScans());
+    return new SimpleIonMobilitySeries(null, new double[]{mz}, new double[]{0d}, List.of(scan));
+  }
+
+  /**
+   * In Bruker PASEF, every frame in a segment has the same ion mobility range & association of scan
+   * number <-> mobility
+   */
+  private static int findMostFrequentMobilityScanNumber(Int2IntOpenHashMap scanNumberCounts) {
+    int mostFrequent = -1;
+    int maxCount = 0;
+    for (var entry : scanNumberCounts.int2IntEntrySet()) {
+      if (entry.getIntValue() > maxCount || (entry.getIntValue() == maxCount
+          && entry.getIntKey() < mostFrequent)) {
+        mostFrequent = entry.getIntKey();
+        maxCount = entry.getIntValue();
+      }
+    }
+    return mostFrequent;
+  }
+
+  /**
+   * In DTIMS (at least agilent) the observed mobility window can change, therefore we can't just
+   * take the most frequent scan number
+   */
+  private static MobilityScan findMobilityScanWithClosestMobility(double mobility,
+      List<MobilityScan> mobilityScans) {
+    double delta = Double.MAX_VALUE;
+    for (int i = 0; i < mobilityScans.size(); i++) {
+      MobilityScan scan = mobilityScans.get(i);
+      double currentDelta = Math.abs(scan.getMobility() - mobility);
+      if (currentDelta < delta) {
+        delta = currentDelta;
+      }
+      if (currentDelta > delta) {
+        return mobilityScans.get(i - 1);
+      }
+    }
+    return mobilityScans.get(mobilityScans.size() - 1);
+  }
+
+  /**
+   * A trace while the frames are added. The data points of each frame are stored in a single
+   * buffer: the mobility scan indices, the m/z values and the intensities, sorted by mobility scan.
+   */
+  private static final class BuildingTrace {
+
+    private final int id;
+    // the m/z of the data point that started this trace
+    private final double mz;
+    // the open m/z range of this trace
+    private final double lowerMz;
+    private final double upperMz;
+    private final IntArrayList frameIndices = new IntArrayList();
+    private final List<DoubleBuffer> dataPoints = new ArrayList<>();
+    private int numDataPoints = 0;
+
+    private BuildingTrace(int id, double mz, double lowerMz, double upperMz) {
+      this.id = id;
+      this.mz = mz;
+      this.lowerMz = lowerMz;
+      this.upperMz = upperMz;
+    }
+
+    private boolean contains(double value) {
+      return lowerMz < value && value < upperMz;
+    }
+
+    private void addFrame(int frameIndex, DoubleBuffer frameDataPoints) {
+      frameIndices.add(frameIndex);
+      dataPoints.add(frameDataPoints);
+      numDataPoints += frameDataPoints.capacity() / 3;
+    }
+  }
+}
@@ -19,6 +19,7 @@
 package io.github.mzmine.modules.dataprocessing.featdet_massdetection;
 
 import io.github.mzmine.datamodel.Frame;
+import io.github.mzmine.datamodel.MassList;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.data_access.EfficientDataAccess;
@@ -32,9 +33,11 @@ import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.MemoryMapStorage;
+import io.github.mzmine.util.exceptions.MissingMassListException;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import ucar.ma2.ArrayDouble;
 import ucar.ma2.DataType;
@@ -50,8 +53,9 @@ public class MassDetectionTask extends AbstractTask {
   private final Logger logger = Logger.getLogger(this.getClass().getName());
   private final RawDataFile dataFile;
   private final ScanSelection scanSelection;
-  // scan counter
-  private int processedScans = 0, totalScans = 0;
+  // scan counter, incremented concurrently
+  private final AtomicInteger processedScans = new AtomicInteger(0);
+  private int totalScans = 0;
   // Mass detector
   private MZmineProcessingStep<MassDetector> massDetector;
   // for outputting file
@@ -97,7 +101,7 @@ public class MassDetectionTask extends AbstractTask {
     if (totalScans == 0) {
       return 0;
     } else {
-      return (double) processedScans / totalScans;
+      return (double) processedScans.get() / totalScans;
     }
   }
 
@@ -132,40 +136,30 @@ public class MassDetectionTask extends AbstractTask {
 
       logger.info("Started mass detector on " + dataFile);
 
-      // uses only a single array for each (mz and intensity) to loop over all scans
-      ScanDataAccess data = EfficientDataAccess.of(dataFile,
+      // the scans are split into chunks of consecutive scans, which are processed in parallel.
+      // every chunk uses only a single array for each (mz and intensity) to loop over its scans
+      final List<ScanDataAccess> chunks = EfficientDataAccess.ofChunks(dataFile,
           EfficientDataAccess.ScanDataType.RAW, scanSelection);
-      totalScans = data.getNumberOfScans();
+      totalScans = chunks.stream().mapToInt(ScanDataAccess::getNumberOfScans).sum();
 
-      // all scans
-      while(data.hasNextScan()) {
-        if (isCanceled()) {
-          return;
-        }
+      // the parallel stream runs on the pool of the current task thread
+      chunks.parallelStream().forEach(this::detectMasses);
 
-        Scan scan = data.nextScan();
-
-        MassDetector detector = massDetector.getModule();
-        // run mass detection on data object
-        // [mzs, intensities]
-        double[][] mzPeaks = detector.getMassValues(data, massDetector.getParameterSet());
-
-        if (scan instanceof Frame) {
-          // for ion mobility, detect subscans, too
-          FrameMassList frameMassList = new FrameMassList(getMemoryMapStorage(), mzPeaks[0], mzPeaks[1]);
-          Frame frame = (Frame) scan;
-          frameMassList.generateAndAddMobilityScanMassLists(frame.getMobilityScans(),
-              getMemoryMapStorage(), detector, massDetector.getParameterSet());
-          frame.addMassList(frameMassList);
-        } else {
-          SimpleMassList newMassList = new SimpleMassList(getMemoryMapStorage(), mzPeaks[0], mzPeaks[1]);
-          scan.addMassList(newMassList);
-        }
+      if (isCanceled()) {
+        return;
+      }
 
-        if (this.saveToCDF) {
+      if (this.saveToCDF) {
+        // collect the mass lists in the order of the scans
+        for (Scan scan : scanSelection.getMatchingScans(dataFile)) {
+          final MassList massList = scan.getMassList();
+          if (massList == null) {
+            continue;
+          }
           curTotalIntensity = 0;
-          double[] mzs = mzPeaks[0];
-          double[] intensities = mzPeaks[1];
+          double[] mzs = massList.getMzValues(new double[massList.getNumberOfDataPoints()]);
+          double[] intensities =
+              massList.getIntensityValues(new double[massList.getNumberOfDataPoints()]);
           int size = mzs.length;
           for (int a = 0; a < size; a++) {
             allMZ.add(mzs[a]);
@@ -175,16 +169,13 @@ public class MassDetectionTask extends AbstractTask {
 
           scanAcquisitionTime.add(scan.getRetentionTime());
           pointsInScans.add(0);
-          startIndex.add(mzPeaks.length + lastPointCount);
+          // [mzs, intensities]
+          startIndex.add(2 + lastPointCount);
           totalIntensity.add(curTotalIntensity);
 
-          lastPointCount = mzPeaks.length + lastPointCount;
+          lastPointCount = 2 + lastPointCount;
         }
 
-        processedScans++;
-      }
-
-      if (this.saveToCDF) {
         // ************** write mass list
         // *******************************
         final String outFileNamePath = outFilename.getPath();
@@ -297,4 +288,48 @@ public class MassDetectionTask extends AbstractTask {
     logger.info("Finished mass detector on " + dataFile);
 
   }
+
+  /**
+   * Detects the masses in all scans of a chunk. Chunks are processed concurrently.
+   *
+   * @param data data access to a chunk of consecutive scans
+   */
+  private void detectMasses(ScanDataAccess data) {
+    final MassDetector detector = massDetector.getModule();
+    final ParameterSet detectorParameters = massDetector.getParameterSet();
+
+    while (data.hasNextScan()) {
+      if (isCanceled()) {
+        return;
+      }
+
+      final Scan scan;
+      try {
+        scan = data.nextScan();
+      } catch (MissingMassListException e) {
+        // only thrown for centroid data
+        throw new IllegalStateException(e);
+      }
+
+      // run mass detection on data object
+      // [mzs, intensities]
+      double[][] mzPeaks = detector.getMassValues(data, detectorParameters);
+
+      if (scan instanceof Frame) {
+        // for ion mobility, detect subscans, too
+        FrameMassList frameMassList = new FrameMassList(getMemoryMapStorage(), mzPeaks[0],
+            mzPeaks[1]);
+        Frame frame = (Frame) scan;
+        frameMassList.generateAndAddMobilityScanMassLists(frame.getMobilityScans(),
+            getMemoryMapStorage(), detector, detectorParameters);
+        frame.addMassList(frameMassList);
+      } else {
+        SimpleMassList newMassList = new SimpleMassList(getMemoryMapStorage(), mzPeaks[0],
+            mzPeaks[1]);
+        scan.addMassList(newMassList);
+      }
+
+      processedScans.incrementAndGet();
+    }
+  }
 }
@@ -39,10 +39,10 @@ import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
-import io.github.mzmine.util.scans.ScanUtils;
 import io.github.mzmine.util.scans.SpectraMerging;
 import io.github.mzmine.util.scans.SpectraMerging.MergingType;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.logging.Level;
@@ -149,7 +149,9 @@ public class GroupMS2Task extends AbstractTask {
         double fmz = f.getMZ();
         Range<Float> rtRange = f.getRawDataPointsRTRange();
 
-        List<Scan> scans = ScanUtils.streamScans(raw, 2)
+        // the raw data file looks up the scans by precursor m/z
+        List<Scan> scans = Arrays.stream(
+            raw.getFragmentScans(rtTol.getToleranceRange(frt), mzTol.getToleranceRange(fmz)))
             .filter(scan -> filterScan(scan, frt, fmz, rtRange)).collect(
                 Collectors.toList());
 
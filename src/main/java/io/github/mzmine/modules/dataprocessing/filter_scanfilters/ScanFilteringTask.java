@@ -32,7 +32,9 @@ import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.MemoryMapStorage;
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import javafx.collections.ObservableList;
 import javax.annotation.Nullable;
 
@@ -43,8 +45,9 @@ class ScanFilteringTask extends AbstractTask {
   private final MZmineProject project;
   private RawDataFile dataFile, newFile;
 
-  // scan counter
-  private int processedScans = 0, totalScans;
+  // scan counter, incremented concurrently
+  private final AtomicInteger processedScans = new AtomicInteger(0);
+  private int totalScans;
   private ObservableList<Scan> scanNumbers;
 
   // User parameters
@@ -93,7 +96,7 @@ class ScanFilteringTask extends AbstractTask {
     if (totalScans == 0) {
       return 0;
     } else {
-      return (double) processedScans / totalScans;
+      return (double) processedScans.get() / totalScans;
     }
   }
 
@@ -121,25 +124,33 @@ class ScanFilteringTask extends AbstractTask {
       String newName = dataFile.getName() + " " + suffix;
       newFile = MZmineCore.createNewFile(newName, getMemoryMapStorage());
 
-      for (int i = 0; i < totalScans; i++) {
-
+      // filter all scans in parallel, the parallel stream runs on the pool of the current task
+      // thread. The results are added to the new file in the original order afterwards.
+      final ScanFilter filter = rawDataFilter.getModule();
+      final ParameterSet filterParameters = rawDataFilter.getParameterSet();
+      final Scan[] newScans = new Scan[totalScans];
+      IntStream.range(0, totalScans).parallel().forEach(i -> {
         if (isCanceled()) {
           return;
         }
 
         Scan scan = scanNumbers.get(i);
-        Scan newScan = null;
         if (select.matches(scan))
-          newScan =
-              rawDataFilter.getModule().filterScan(newFile, scan, rawDataFilter.getParameterSet());
+          newScans[i] = filter.filterScan(newFile, scan, filterParameters);
         else
-          newScan = scan; // TODO need to create a copy of the scan
+          newScans[i] = scan; // TODO need to create a copy of the scan
+
+        processedScans.incrementAndGet();
+      });
 
+      if (isCanceled()) {
+        return;
+      }
+
+      for (Scan newScan : newScans) {
         if (newScan != null) {
           newFile.addScan(newScan);
         }
-
-        processedScans++;
       }
 
       // Finalize writing
@@ -36,7 +36,9 @@ import io.github.mzmine.util.DataPointUtils;
 import io.github.mzmine.util.scans.ScanUtils;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import javax.annotation.Nullable;
 
 public class ScanSmoothingTask extends AbstractTask {
@@ -46,8 +48,11 @@ public class ScanSmoothingTask extends AbstractTask {
   private final MZmineProject project;
   private final RawDataFile dataFile;
 
-  // scan counter
-  private int processedScans = 0, totalScans;
+  // scan counters, incremented concurrently
+  private final AtomicInteger processedScans = new AtomicInteger(0);
+  private final AtomicInteger timepassed = new AtomicInteger(0);
+  private final AtomicInteger mzpassed = new AtomicInteger(0);
+  private int totalScans;
   private List<Scan> scanNumbers;
 
   // User parameters
@@ -101,7 +106,7 @@ public class ScanSmoothingTask extends AbstractTask {
     if (totalScans == 0)
       return 0;
     else
-      return (double) processedScans / totalScans;
+      return (double) processedScans.get() / totalScans;
   }
 
   public RawDataFile getDataFile() {
@@ -121,137 +126,36 @@ public class ScanSmoothingTask extends AbstractTask {
     scanNumbers = dataFile.getScanNumbers(1);
     totalScans = scanNumbers.size();
 
-    RawDataFile newRDFW = null;
-    int timepassed = 0;
-    int mzpassed = 0;
     try {
-      newRDFW = MZmineCore.createNewFile(dataFile.getName() + ' ' + suffix, storage);
+      newRDF = MZmineCore.createNewFile(dataFile.getName() + ' ' + suffix, storage);
 
-      DataPoint mzValues[][] = null; // [relative scan][j value]
-      int i, j, si, sj, ii, k, ssi, ssj;
-      for (i = 0; i < totalScans; i++) {
-
-        if (isCanceled())
+      // every scan is smoothed independently, the parallel stream runs on the pool of the current
+      // task thread. The new scans are added to the new file in the original order afterwards.
+      final Scan[] newScans = new Scan[totalScans];
+      IntStream.range(0, totalScans).parallel().forEach(i -> {
+        if (isCanceled()) {
           return;
+        }
 
-        // Smoothing in TIME space
         Scan scan = scanNumbers.get(i);
-        if (scan != null) {
-          double rt = scan.getRetentionTime();
-          DataPoint[] newDP = null;
-          sj = si = i;
-          ssi = ssj = i;
-          if (timeSpan > 0 || scanSpan > 0) {
-            double timeMZtol = Math.max(mzTol, 1e-5);
-            for (si = i; si > 1; si--) {
-              Scan scanS = scanNumbers.get(si - 1);
-              if (scanS == null || scanS.getRetentionTime() < rt - timeSpan / 2) {
-                break;
-              }
-            }
-            for (sj = i; sj < totalScans - 1; sj++) {
-              Scan scanS = scanNumbers.get(sj + 1);
-              if (scanS == null || scanS.getRetentionTime() >= rt + timeSpan / 2) {
-                break;
-              }
-            }
-            ssi = i - (scanSpan - 1) / 2;
-            ssj = i + (scanSpan - 1) / 2;
-            if (ssi < 0) {
-              ssj += -ssi;
-              ssi = 0;
-            }
-            if (ssj >= totalScans) {
-              ssi -= (ssj - totalScans + 1);
-              ssj = totalScans - 1;
-            }
-            if (sj - si + 1 < scanSpan) {
-              si = ssi;
-              sj = ssj;
-              // si = Math.min(si, ssi);
-              // sj = Math.max(sj, ssj);
-            }
-            if (sj > si) {
-              timepassed++;
-              // Allocate
-              if (mzValues == null || mzValues.length < sj - si + 1)
-                mzValues = new DataPoint[sj - si + 1][];
-              // Load Data Points
-              for (j = si; j <= sj; j++) {
-                Scan xscan = scanNumbers.get(j);
-                mzValues[j - si] = ScanUtils.extractDataPoints(xscan);
-              }
-              // Estimate Averages
-              ii = i - si;
-              newDP = new DataPoint[mzValues[ii].length];
-              for (k = 0; k < mzValues[ii].length; k++) {
-                DataPoint dp = mzValues[ii][k];
-                double mz = dp.getMZ();
-                double intensidad = 0;
-                if (dp.getIntensity() > 0) { // only process
-                  // those > 0
-                  double a = 0;
-                  short c = 0;
-                  int f = 0;
-                  for (j = 0; j < mzValues.length; j++) {
-                    // System.out.println(j);
-                    if (mzValues[j].length > k
-                        && Math.abs(mzValues[j][k].getMZ() - mz) < timeMZtol) {
-                      f = k;
-                    } else {
-                      f = findFirstMass(mz, mzValues[j]);
-                      if (Math.abs(mzValues[j][f].getMZ() - mz) > timeMZtol) {
-                        f = -f;
-                      }
-                    }
-                    if (f >= 0 && mzValues[j][f].getIntensity() >= minimumHeight) {
-                      a += mzValues[j][f].getIntensity();
-                      c++;
-                    } else {
-                      c = (short) (c + 0);
-                    }
-                  }
-                  intensidad = c > 0 ? a / c : 0;
-                }
-                newDP[k] = new SimpleDataPoint(mz, intensidad);
-              }
-            }
-          } else if (scan != null) {
-            newDP = ScanUtils.extractDataPoints(scan);
-          }
+        DataPoint[] newDP = smoothScan(i);
 
-          // Smoothing in MZ space
-
-          if ((mzTol > 0 || mzPoints > 0)) {
-            mzpassed++;
-            DataPoint[] updatedDP = new DataPoint[newDP.length];
-            for (k = 0; k < newDP.length; k++) {
-              double mz = newDP[k].getMZ();
-              double intensidad = 0;
-              if (newDP[k].getIntensity() > 0) {
-                for (si = k; si > 0
-                    && (newDP[si].getMZ() + mzTol >= mz || k - si <= mzPoints); si--);
-                for (sj = k; sj < newDP.length - 1
-                    && (newDP[sj].getMZ() - mzTol <= mz || sj - k <= mzPoints); sj++);
-                double sum = 0;
-                for (j = si; j <= sj; j++) {
-                  sum += newDP[j].getIntensity();
-                }
-                intensidad = sum / (sj - si + 1);
-              }
-              updatedDP[k] = new SimpleDataPoint(mz, intensidad);
-            }
-            newDP = updatedDP;
-          }
+        // Register new smoothing data
+        if (scan != null && newDP != null) {
+          double[][] dp = DataPointUtils.getDataPointsAsDoubleArray(newDP);
+          newScans[i] = new SimpleScan(newRDF, scan, dp[0], dp[1]);
+        }
+        processedScans.incrementAndGet();
+      });
 
-          // Register new smoothing data
-          if (scan != null && newDP != null) {
-            double[][] dp = DataPointUtils.getDataPointsAsDoubleArray(newDP);
-            final SimpleScan newScan = new SimpleScan(newRDFW, scan, dp[0], dp[1]);
-            newRDFW.addScan(newScan);
-          }
+      if (isCanceled()) {
+        return;
+      }
+
+      for (Scan newScan : newScans) {
+        if (newScan != null) {
+          newRDF.addScan(newScan);
         }
-        processedScans++;
       }
 
       if (!isCanceled()) {
@@ -272,9 +176,9 @@ public class ScanSmoothingTask extends AbstractTask {
 
         setStatus(TaskStatus.FINISHED);
 
-        if (mzpassed + timepassed < totalScans / 2) {
+        if (mzpassed.get() + timepassed.get() < totalScans / 2) {
           logger.warning("It seems that parameters were not properly set. Scans processed : time="
-              + timepassed + ", mz=" + mzpassed);
+              + timepassed.get() + ", mz=" + mzpassed.get());
         }
 
         logger.info("Finished Scan Smoothing on " + dataFile);
@@ -287,6 +191,133 @@ public class ScanSmoothingTask extends AbstractTask {
 
   }
 
+  /**
+   * Smoothes the scan at index i in time and m/z space. Reads only the original data and can
+   * therefore be called concurrently.
+   *
+   * @param i index of the scan in the list of MS1 scans
+   * @return the smoothed data points or null
+   */
+  @Nullable
+  private DataPoint[] smoothScan(int i) {
+    DataPoint mzValues[][]; // [relative scan][j value]
+    int j, si, sj, ii, k, ssi, ssj;
+
+    Scan scan = scanNumbers.get(i);
+    if (scan == null) {
+      return null;
+    }
+
+    // Smoothing in TIME space
+    double rt = scan.getRetentionTime();
+    DataPoint[] newDP = null;
+    sj = si = i;
+    ssi = ssj = i;
+    if (timeSpan > 0 || scanSpan > 0) {
+      double timeMZtol = Math.max(mzTol, 1e-5);
+      for (si = i; si > 1; si--) {
+        Scan scanS = scanNumbers.get(si - 1);
+        if (scanS == null || scanS.getRetentionTime() < rt - timeSpan / 2) {
+          break;
+        }
+      }
+      for (sj = i; sj < totalScans - 1; sj++) {
+        Scan scanS = scanNumbers.get(sj + 1);
+        if (scanS == null || scanS.getRetentionTime() >= rt + timeSpan / 2) {
+          break;
+        }
+      }
+      ssi = i - (scanSpan - 1) / 2;
+      ssj = i + (scanSpan - 1) / 2;
+      if (ssi < 0) {
+        ssj += -ssi;
+        ssi = 0;
+      }
+      if (ssj >= totalScans) {
+        ssi -= (ssj - totalScans + 1);
+        ssj = totalScans - 1;
+      }
+      if (sj - si + 1 < scanSpan) {
+        si = ssi;
+        sj = ssj;
+        // si = Math.min(si, ssi);
+        // sj = Math.max(sj, ssj);
+      }
+      if (sj > si) {
+        timepassed.incrementAndGet();
+        // Allocate
+        mzValues = new DataPoint[sj - si + 1][];
+        // Load Data Points
+        for (j = si; j <= sj; j++) {
+          Scan xscan = scanNumbers.get(j);
+          mzValues[j - si] = ScanUtils.extractDataPoints(xscan);
+        }
+        // Estimate Averages
+        ii = i - si;
+        newDP = new DataPoint[mzValues[ii].length];
+        for (k = 0; k < mzValues[ii].length; k++) {
+          DataPoint dp = mzValues[ii][k];
+          double mz = dp.getMZ();
+          double intensidad = 0;
+          if (dp.getIntensity() > 0) { // only process
+            // those > 0
+            double a = 0;
+            short c = 0;
+            int f = 0;
+            for (j = 0; j < mzValues.length; j++) {
+              // System.out.println(j);
+              if (mzValues[j].length > k
+                  && Math.abs(mzValues[j][k].getMZ() - mz) < timeMZtol) {
+                f = k;
+              } else {
+                f = findFirstMass(mz, mzValues[j]);
+                if (Math.abs(mzValues[j][f].getMZ() - mz) > timeMZtol) {
+                  f = -f;
+                }
+              }
+              if (f >= 0 && mzValues[j][f].getIntensity() >= minimumHeight) {
+                a += mzValues[j][f].getIntensity();
+                c++;
+              } else {
+                c = (short) (c + 0);
+              }
+            }
+            intensidad = c > 0 ? a / c : 0;
+          }
+          newDP[k] = new SimpleDataPoint(mz, intensidad);
+        }
+      }
+    } else {
+      newDP = ScanUtils.extractDataPoints(scan);
+    }
+
+    // Smoothing in MZ space
+
+    if ((mzTol > 0 || mzPoints > 0)) {
+      mzpassed.incrementAndGet();
+      DataPoint[] updatedDP = new DataPoint[newDP.length];
+      for (k = 0; k < newDP.length; k++) {
+        double mz = newDP[k].getMZ();
+        double intensidad = 0;
+        if (newDP[k].getIntensity() > 0) {
+          for (si = k; si > 0
+              && (newDP[si].getMZ() + mzTol >= mz || k - si <= mzPoints); si--);
+          for (sj = k; sj < newDP.length - 1
+              && (newDP[sj].getMZ() - mzTol <= mz || sj - k <= mzPoints); sj++);
+          double sum = 0;
+          for (j = si; j <= sj; j++) {
+            sum += newDP[j].getIntensity();
+          }
+          intensidad = sum / (sj - si + 1);
+        }
+        updatedDP[k] = new SimpleDataPoint(mz, intensidad);
+      }
+      newDP = updatedDP;
+    }
+
+    return newDP;
+  }
+
   static int findFirstMass(double mass, DataPoint mzValues[]) {
     int l = 0;
     int r = mzValues.length - 1;
@@ -27,13 +27,13 @@ import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.datamodel.features.ModularFeature;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.impl.SimpleDataPoint;
-import io.github.mzmine.util.RangeUtils;
 import io.github.mzmine.util.scans.ScanUtils;
-import java.util.List;
-import java.util.Vector;
+import java.util.Arrays;
 
 public class Gap {
 
+  private static final int INITIAL_CAPACITY = 16;
+
   private FeatureListRow peakListRow;
   private RawDataFile rawDataFile;
 
@@ -41,9 +41,15 @@ public class Gap {
   private Range<Float> rtRange;
   private double intTolerance;
 
-  // These store information about peak that is currently under construction
-  private List<GapDataPoint> currentPeakDataPoints;
-  private List<GapDataPoint> bestPeakDataPoints;
+  // These store information about peak that is currently under construction. The buffers are
+  // reused for all peaks of this gap, currentSize == 0 means that no peak is under construction.
+  private Scan[] currentScans;
+  private double[] currentMZs, currentRTs, currentIntensities;
+  private int currentSize;
+
+  // Copies of the data points of the best peak candidate
+  private Scan[] bestScans;
+  private double[] bestMZs, bestRTs, bestIntensities;
   private double bestPeakHeight;
 
   /**
@@ -62,6 +68,23 @@ public class Gap {
     this.rtRange = rtRange;
   }
 
+  public Range<Double> getMZRange() {
+    return mzRange;
+  }
+
+  public Range<Float> getRTRange() {
+    return rtRange;
+  }
+
+  /**
+   * @param rt The retention time of the next scan.
+   * @return false, if the RT range has been passed and no peak is under construction, so scans
+   * with a retention time >= rt will be ignored.
+   */
+  public boolean acceptsScansAt(double rt) {
+    return rt <= rtRange.upperEndpoint() || currentSize > 0;
+  }
+
   public void offerNextScan(Scan scan) {
 
     double scanRT = scan.getRetentionTime();
@@ -71,46 +94,94 @@ public class Gap {
       return;
 
     // If we have passed the RT range and finished processing last peak
-    if ((scanRT > rtRange.upperEndpoint()) && (currentPeakDataPoints == null))
+    if (!acceptsScansAt(scanRT))
       return;
 
     // Find top m/z peak in our range
     DataPoint basePeak = ScanUtils.findBasePeak(scan, mzRange);
+    offerDataPoint(scan, scanRT, basePeak.getMZ(), basePeak.getIntensity());
+  }
+
+  /**
+   * Same as {@link #offerNextScan(Scan)}, but the data points of the scan are passed, so they are
+   * only read once for all gaps of a raw data file.
+   *
+   * @param mzs         the m/z values of the scan in ascending order
+   * @param intensities the intensity values of the scan
+   * @param numDp       the number of data points of the scan
+   */
+  public void offerNextScan(Scan scan, double[] mzs, double[] intensities, int numDp) {
+
+    double scanRT = scan.getRetentionTime();
 
-    GapDataPoint currentDataPoint;
-    if (basePeak != null) {
-      currentDataPoint =
-          new GapDataPoint(scan, basePeak.getMZ(), scanRT, basePeak.getIntensity());
+    if (scanRT < rtRange.lowerEndpoint() || !acceptsScansAt(scanRT))
+      return;
+
+    // Find top m/z peak in our range, the same way as ScanUtils.findBasePeak
+    double baseMz = 0d;
+    double baseIntensity = 0d;
+    int i = Arrays.binarySearch(mzs, 0, numDp, mzRange.lowerEndpoint());
+    if (i < 0) {
+      i = -i - 1;
     } else {
-      currentDataPoint =
-          new GapDataPoint(scan, RangeUtils.rangeCenter(mzRange), scanRT, 0);
+      // find the first of equal values
+      while (i > 0 && mzs[i - 1] == mzs[i]) {
+        i--;
+      }
+    }
+    for (; i < numDp && mzs[i] <= mzRange.upperEndpoint(); i++) {
+      if (mzRange.contains(mzs[i]) && intensities[i] > baseIntensity) {
+        baseIntensity = intensities[i];
+        baseMz = mzs[i];
+      }
     }
 
+    offerDataPoint(scan, scanRT, baseMz, baseIntensity);
+  }
+
+  private void offerDataPoint(Scan scan, double rt, double mz, double intensity) {
+
     // If we have not yet started, just create a new peak
-    if (currentPeakDataPoints == null) {
-      currentPeakDataPoints = new Vector<GapDataPoint>();
-      currentPeakDataPoints.add(currentDataPoint);
+    if (currentSize == 0) {
+      addCurrentDataPoint(scan, mz, rt, intensity);
       return;
     }
 
     // Check if this continues previous peak?
-    if (checkRTShape(currentDataPoint)) {
+    if (checkRTShape(rt, intensity)) {
       // Yes, continue this peak.
-      currentPeakDataPoints.add(currentDataPoint);
+      addCurrentDataPoint(scan, mz, rt, intensity);
     } else {
 
       // No, new peak is starting
 
       // Check peak formed so far
-      if (currentPeakDataPoints != null) {
-        checkCurrentPeak();
-        currentPeakDataPoints = null;
-      }
-
+      checkCurrentPeak();
+      currentSize = 0;
     }
 
   }
 
+  private void addCurrentDataPoint(Scan scan, double mz, double rt, double intensity) {
+    if (currentScans == null) {
+      currentScans = new Scan[INITIAL_CAPACITY];
+      currentMZs = new double[INITIAL_CAPACITY];
+      currentRTs = new double[INITIAL_CAPACITY];
+      currentIntensities = new double[INITIAL_CAPACITY];
+    } else if (currentSize == currentScans.length) {
+      final int capacity = currentSize * 2;
+      currentScans = Arrays.copyOf(currentScans, capacity);
+      currentMZs = Arrays.copyOf(currentMZs, capacity);
+      currentRTs = Arrays.copyOf(currentRTs, capacity);
+      currentIntensities = Arrays.copyOf(currentIntensities, capacity);
+    }
+    currentScans[currentSize] = scan;
+    currentMZs[currentSize] = mz;
+    currentRTs[currentSize] = rt;
+    currentIntensities[currentSize] = intensity;
+    currentSize++;
+  }
+
   /**
    * Finalizes the gap, adds a peak
    * 
@@ -118,60 +189,60 @@ public class Gap {
   public void noMoreOffers() {
 
     // Check peak that was last constructed
-    if (currentPeakDataPoints != null) {
+    if (currentSize > 0) {
       checkCurrentPeak();
-      currentPeakDataPoints = null;
+      currentSize = 0;
     }
+    // the buffers are not needed anymore
+    currentScans = null;
+    currentMZs = currentRTs = currentIntensities = null;
 
     // If we have best peak candidate, construct a SimpleChromatographicPeak
-    if (bestPeakDataPoints != null) {
+    if (bestScans != null) {
 
+      final int numDp = bestScans.length;
       double mz = 0;
       float rt = 0, height = 0, area = 0;
-      Scan scanNumbers[] = new Scan[bestPeakDataPoints.size()];
-      DataPoint finalDataPoint[] = new DataPoint[bestPeakDataPoints.size()];
+      DataPoint finalDataPoint[] = new DataPoint[numDp];
       Range<Double> finalMZRange = null;
       Range<Float> finalRTRange = null, finalIntensityRange = null;
       Scan representativeScan = null;
 
       // Process all datapoints
-      for (int i = 0; i < bestPeakDataPoints.size(); i++) {
-
-        GapDataPoint dp = bestPeakDataPoints.get(i);
+      for (int i = 0; i < numDp; i++) {
 
         if (i == 0) {
-          finalRTRange = Range.singleton((float) dp.getRT());
-          finalMZRange = Range.singleton(dp.getMZ());
-          finalIntensityRange = Range.singleton((float) dp.getIntensity());
+          finalRTRange = Range.singleton((float) bestRTs[i]);
+          finalMZRange = Range.singleton(bestMZs[i]);
+          finalIntensityRange = Range.singleton((float) bestIntensities[i]);
         } else {
           assert finalRTRange != null && finalMZRange != null && finalIntensityRange != null;
-          finalRTRange = finalRTRange.span(Range.singleton((float) dp.getRT()));
-          finalMZRange = finalMZRange.span(Range.singleton(dp.getMZ()));
-          finalIntensityRange = finalIntensityRange.span(Range.singleton((float) dp.getIntensity()));
+          finalRTRange = finalRTRange.span(Range.singleton((float) bestRTs[i]));
+          finalMZRange = finalMZRange.span(Range.singleton(bestMZs[i]));
+          finalIntensityRange =
+              finalIntensityRange.span(Range.singleton((float) bestIntensities[i]));
         }
 
-        scanNumbers[i] = bestPeakDataPoints.get(i).getScan();
-        finalDataPoint[i] = new SimpleDataPoint(dp.getMZ(), dp.getIntensity());
-        mz += bestPeakDataPoints.get(i).getMZ();
+        finalDataPoint[i] = new SimpleDataPoint(bestMZs[i], bestIntensities[i]);
+        mz += bestMZs[i];
 
         // Check height
-        if (bestPeakDataPoints.get(i).getIntensity() > height) {
-          height = (float) bestPeakDataPoints.get(i).getIntensity();
-          rt = (float) bestPeakDataPoints.get(i).getRT();
-          representativeScan = bestPeakDataPoints.get(i).getScan();
+        if (bestIntensities[i] > height) {
+          height = (float) bestIntensities[i];
+          rt = (float) bestRTs[i];
+          representativeScan = bestScans[i];
         }
 
         // Skip last data point
-        if (i == bestPeakDataPoints.size() - 1)
+        if (i == numDp - 1)
           break;
 
         // X axis interval length
-        double rtDifference =
-            (bestPeakDataPoints.get(i + 1).getRT() - bestPeakDataPoints.get(i).getRT()) * 60d;
+        double rtDifference = (bestRTs[i + 1] - bestRTs[i]) * 60d;
 
         // intensity at the beginning and end of the interval
-        double intensityStart = bestPeakDataPoints.get(i).getIntensity();
-        double intensityEnd = bestPeakDataPoints.get(i + 1).getIntensity();
+        double intensityStart = bestIntensities[i];
+        double intensityEnd = bestIntensities[i + 1];
 
         // calculate area of the interval
         area += (rtDifference * (intensityStart + intensityEnd) / 2);
@@ -179,7 +250,7 @@ public class Gap {
       }
 
       // Calculate average m/z value
-      mz /= bestPeakDataPoints.size();
+      mz /= numDp;
 
       // Find the best fragmentation scan, if available
       Scan fragmentScan = ScanUtils.findBestFragmentScan(rawDataFile, finalRTRange, finalMZRange);
@@ -189,7 +260,7 @@ public class Gap {
           ScanUtils.findAllMS2FragmentScans(rawDataFile, finalRTRange, finalMZRange);
 
       ModularFeature newPeak = new ModularFeature((ModularFeatureList) peakListRow.getFeatureList(),
-          rawDataFile, mz, rt, height, area, scanNumbers,
+          rawDataFile, mz, rt, height, area, bestScans,
           finalDataPoint, FeatureStatus.ESTIMATED, representativeScan, fragmentScan,
           allMS2FragmentScanNumbers, finalRTRange, finalMZRange, finalIntensityRange);
 
@@ -202,22 +273,22 @@ public class Gap {
    * This function check for the shape of the peak in RT direction, and determines if it is possible
    * to add given m/z peak at the end of the peak.
    */
-  private boolean checkRTShape(GapDataPoint dp) {
+  private boolean checkRTShape(double rt, double intensity) {
 
-    if (dp.getRT() < rtRange.lowerEndpoint()) {
-      double prevInt = currentPeakDataPoints.get(currentPeakDataPoints.size() - 1).getIntensity();
-      if (dp.getIntensity() > (prevInt * (1 - intTolerance))) {
+    if (rt < rtRange.lowerEndpoint()) {
+      double prevInt = currentIntensities[currentSize - 1];
+      if (intensity > (prevInt * (1 - intTolerance))) {
         return true;
       }
     }
 
-    if (rtRange.contains((float) dp.getRT())) {
+    if (rtRange.contains((float) rt)) {
       return true;
     }
 
-    if (dp.getRT() > rtRange.upperEndpoint()) {
-      double prevInt = currentPeakDataPoints.get(currentPeakDataPoints.size() - 1).getIntensity();
-      if (dp.getIntensity() < (prevInt * (1 + intTolerance))) {
+    if (rt > rtRange.upperEndpoint()) {
+      double prevInt = currentIntensities[currentSize - 1];
+      if (intensity < (prevInt * (1 + intTolerance))) {
         return true;
       }
     }
@@ -231,18 +302,16 @@ public class Gap {
     // 1) Check if currentpeak has a local maximum inside the search range
     int highestMaximumInd = -1;
     double currentMaxHeight = 0f;
-    for (int i = 1; i < currentPeakDataPoints.size() - 1; i++) {
+    for (int i = 1; i < currentSize - 1; i++) {
 
-      if (rtRange.contains((float) currentPeakDataPoints.get(i).getRT())) {
+      if (rtRange.contains((float) currentRTs[i])) {
 
-        if ((currentPeakDataPoints.get(i).getIntensity() >= currentPeakDataPoints.get(i + 1)
-            .getIntensity())
-            && (currentPeakDataPoints.get(i).getIntensity() >= currentPeakDataPoints.get(i - 1)
-                .getIntensity())) {
+        if ((currentIntensities[i] >= currentIntensities[i + 1])
+            && (currentIntensities[i] >= currentIntensities[i - 1])) {
 
-          if (currentPeakDataPoints.get(i).getIntensity() > currentMaxHeight) {
+          if (currentIntensities[i] > currentMaxHeight) {
 
-            currentMaxHeight = currentPeakDataPoints.get(i).getIntensity();
+            currentMaxHeight = currentIntensities[i];
             highestMaximumInd = i;
           }
         }
@@ -255,9 +324,9 @@ public class Gap {
 
     // 2) Find elution start and stop
     int startInd = highestMaximumInd;
-    double currentInt = currentPeakDataPoints.get(startInd).getIntensity();
+    double currentInt = currentIntensities[startInd];
     while (startInd > 0) {
-      double nextInt = currentPeakDataPoints.get(startInd - 1).getIntensity();
+      double nextInt = currentIntensities[startInd - 1];
       if (currentInt < (nextInt * (1 - intTolerance)))
         break;
       startInd--;
@@ -267,18 +336,18 @@ public class Gap {
       currentInt = nextInt;
     }
 
-    // Since subList does not include toIndex value then find highest
-    // possible value of stopInd+1 and currentPeakDataPoints.size()
+    // Since the range does not include toIndex value then find highest
+    // possible value of stopInd+1 and currentSize
     int stopInd = highestMaximumInd, toIndex = highestMaximumInd;
-    currentInt = currentPeakDataPoints.get(stopInd).getIntensity();
-    while (stopInd < (currentPeakDataPoints.size() - 1)) {
-      double nextInt = currentPeakDataPoints.get(stopInd + 1).getIntensity();
+    currentInt = currentIntensities[stopInd];
+    while (stopInd < (currentSize - 1)) {
+      double nextInt = currentIntensities[stopInd + 1];
       if (nextInt > (currentInt * (1 + intTolerance))) {
-        toIndex = Math.min(currentPeakDataPoints.size(), stopInd + 1);
+        toIndex = Math.min(currentSize, stopInd + 1);
         break;
       }
       stopInd++;
-      toIndex = Math.min(currentPeakDataPoints.size(), stopInd + 1);
+      toIndex = Math.min(currentSize, stopInd + 1);
       if (nextInt == 0) {
         stopInd++;
         toIndex = stopInd;
@@ -288,8 +357,12 @@ public class Gap {
     }
 
     // 3) Check if this is the best candidate for a peak
-    if ((bestPeakDataPoints == null) || (bestPeakHeight < currentMaxHeight)) {
-      bestPeakDataPoints = currentPeakDataPoints.subList(startInd, toIndex);
+    if ((bestScans == null) || (bestPeakHeight < currentMaxHeight)) {
+      // copy, because the buffers are reused for the next peak
+      bestScans = Arrays.copyOfRange(currentScans, startInd, toIndex);
+      bestMZs = Arrays.copyOfRange(currentMZs, startInd, toIndex);
+      bestRTs = Arrays.copyOfRange(currentRTs, startInd, toIndex);
+      bestIntensities = Arrays.copyOfRange(currentIntensities, startInd, toIndex);
     }
 
   }
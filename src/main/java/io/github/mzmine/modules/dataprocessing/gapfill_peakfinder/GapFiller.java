@@ -0,0 +1,95 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.dataprocessing.gapfill_peakfinder;
+
+import io.github.mzmine.datamodel.Scan;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import javax.annotation.Nonnull;
+
+/**
+ * Offers the scans of a raw data file to all gaps of this file in a single sweep over the
+ * retention time. Instead of offering every scan to every gap, the gaps are sorted by the start of
+ * their RT range and only the gaps whose RT range (or peak under construction) covers the current
+ * scan are active. The data points of a scan are read once and each active gap looks up its m/z
+ * window with a binary search.
+ * <p>
+ * The scans have to be offered in the order of their retention time. The resulting features are
+ * the same as if each scan was offered to each gap with {@link Gap#offerNextScan(Scan)}.
+ */
+public class GapFiller {
+
+  private final List<Gap> gaps;
+  private final Gap[] sortedGaps;
+  private final List<Gap> activeGaps = new ArrayList<>();
+  private int nextGap = 0;
+
+  private double[] mzs = new double[0];
+  private double[] intensities = new double[0];
+
+  /**
+   * @param gaps The gaps of one raw data file.
+   */
+  public GapFiller(@Nonnull List<Gap> gaps) {
+    this.gaps = gaps;
+    sortedGaps = gaps.toArray(new Gap[0]);
+    Arrays.sort(sortedGaps, Comparator.comparing(gap -> gap.getRTRange().lowerEndpoint()));
+  }
+
+  /**
+   * Offers the next scan to all gaps that cover its retention time.
+   *
+   * @param scan The next scan, its retention time must not be lower than the one of the previous
+   *             scan.
+   */
+  public void offerNextScan(@Nonnull Scan scan) {
+    final double rt = scan.getRetentionTime();
+
+    // activate all gaps that start before this scan
+    while (nextGap < sortedGaps.length && sortedGaps[nextGap].getRTRange().lowerEndpoint() <= rt) {
+      activeGaps.add(sortedGaps[nextGap]);
+      nextGap++;
+    }
+
+    // remove the gaps that passed their RT range, they will not accept any later scan
+    activeGaps.removeIf(gap -> !gap.acceptsScansAt(rt));
+    if (activeGaps.isEmpty()) {
+      return;
+    }
+
+    final int numDp = scan.getNumberOfDataPoints();
+    mzs = scan.getMzValues(mzs);
+    intensities = scan.getIntensityValues(intensities);
+    for (Gap gap : activeGaps) {
+      gap.offerNextScan(scan, mzs, intensities, numDp);
+    }
+  }
+
+  /**
+   * Finalizes all gaps and adds the detected features to their rows.
+   */
+  public void noMoreOffers() {
+    activeGaps.clear();
+    for (Gap gap : gaps) {
+      gap.noMoreOffers();
+    }
+  }
+}
@@ -147,22 +147,19 @@ class PeakFinderTask extends AbstractTask {
           return;
         }
 
-        // Get all scans of this data file
+        // Get all scans of this data file and sweep over the gaps in RT order
+        final GapFiller gapFiller = new GapFiller(gaps);
         dataFile.getScanNumbers(1).forEach(scan -> {
           if(!isCanceled()) {
-            // Feed this scan to all gaps
-            for (Gap gap : gaps) {
-              gap.offerNextScan(scan);
-            }
+            // Feed this scan to all gaps that cover its RT
+            gapFiller.offerNextScan(scan);
 
             processedScans.incrementAndGet();
           }
         });
 
         // Finalize gaps
-        for (Gap gap : gaps) {
-          gap.noMoreOffers();
-        }
+        gapFiller.noMoreOffers();
       });
     }
     // terminate - stream only skips all elements
@@ -263,13 +260,12 @@ class PeakFinderTask extends AbstractTask {
           continue;
         }
 
-        // Get all scans of this data file
+        // Get all scans of this data file and sweep over the gaps in RT order
+        final GapFiller gapFiller = new GapFiller(gaps);
         datafile1.getScanNumbers(1).forEach(scan -> {
           if(!isCanceled()) {
-            // Feed this scan to all gaps
-            for (Gap gap : gaps) {
-              gap.offerNextScan(scan);
-            }
+            // Feed this scan to all gaps that cover its RT
+            gapFiller.offerNextScan(scan);
             processedScans.incrementAndGet();
           }
         });
@@ -280,9 +276,7 @@ class PeakFinderTask extends AbstractTask {
         }
 
         // Finalize gaps
-        for (Gap gap : gaps) {
-          gap.noMoreOffers();
-        }
+        gapFiller.noMoreOffers();
       }
     }
   }
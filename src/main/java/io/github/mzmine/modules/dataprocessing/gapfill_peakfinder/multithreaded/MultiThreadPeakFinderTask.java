@@ -27,6 +27,7 @@ import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.Gap;
+import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.GapFiller;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
@@ -126,13 +127,12 @@ class MultiThreadPeakFinderTask extends AbstractTask {
         continue;
       }
 
-      // Get all scans of this data file
+      // Get all scans of this data file and sweep over the gaps in RT order
+      final GapFiller gapFiller = new GapFiller(gaps);
       dataFile.getScanNumbers(1).forEach(scan -> {
         if(!isCanceled()) {
-          // Feed this scan to all gaps
-          for (Gap gap : gaps) {
-            gap.offerNextScan(scan);
-          }
+          // Feed this scan to all gaps that cover its RT
+          gapFiller.offerNextScan(scan);
 
           processedScans.incrementAndGet();
         }
@@ -143,9 +143,7 @@ class MultiThreadPeakFinderTask extends AbstractTask {
         }
 
       // Finalize gaps
-      for (Gap gap : gaps) {
-        gap.noMoreOffers();
-      }
+      gapFiller.noMoreOffers();
     }
 
     // first notify listener
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_formulapredictionfeaturelist;
+
+import com.google.common.collect.Range;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.openscience.cdk.formula.MolecularFormulaGenerator;
+import org.openscience.cdk.formula.MolecularFormulaRange;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.interfaces.IIsotope;
+import org.openscience.cdk.interfaces.IMolecularFormula;
+
+/**
+ * All formulas of an element range within a mass range, sorted by their mass. The formulas are
+ * enumerated once, the candidates for a single mass are then found by a binary search instead of
+ * running a {@link MolecularFormulaGenerator} for every mass. The formulas are stored as element
+ * counts and only converted to {@link IMolecularFormula}s when they are requested.
+ */
+class FormulaMassTable {
+
+  private final IChemObjectBuilder builder;
+  private final IIsotope[] isotopes;
+  // the masses in ascending order and the element counts of each formula in the same order
+  private final double[] masses;
+  private final int[] counts;
+
+  private FormulaMassTable(IChemObjectBuilder builder, IIsotope[] isotopes, double[] masses,
+      int[] counts) {
+    this.builder = builder;
+    this.isotopes = isotopes;
+    this.masses = masses;
+    this.counts = counts;
+  }
+
+  /**
+   * Enumerates all formulas within the mass range. The generator is passed in, so the enumeration
+   * can be canceled by {@link MolecularFormulaGenerator#cancel()}.
+   *
+   * @param builder       The builder that was used to create the generator.
+   * @param generator     A generator for the element range and the whole mass range of the table.
+   * @param elementCounts The element range of the generator.
+   * @param maxFormulas   The maximum number of formulas in the table.
+   * @return The table or null, if there are more than maxFormulas formulas in the mass range.
+   */
+  @Nullable
+  static FormulaMassTable create(@Nonnull IChemObjectBuilder builder,
+      @Nonnull MolecularFormulaGenerator generator, @Nonnull MolecularFormulaRange elementCounts,
+      int maxFormulas) {
+    final List<IIsotope> isotopeList = new ArrayList<>();
+    elementCounts.isotopes().forEach(isotopeList::add);
+    final IIsotope[] isotopes = isotopeList.toArray(new IIsotope[0]);
+
+    final DoubleArrayList masses = new DoubleArrayList();
+    final IntArrayList counts = new IntArrayList();
+    IMolecularFormula formula;
+    while ((formula = generator.getNextFormula()) != null) {
+      if (masses.size() >= maxFormulas) {
+        return null;
+      }
+      double mass = 0d;
+      for (IIsotope isotope : isotopes) {
+        final int count = formula.getIsotopeCount(isotope);
+        mass += count * isotope.getExactMass();
+        counts.add(count);
+      }
+      masses.add(mass);
+    }
+
+    // sort the formulas by their mass
+    final int n = masses.size();
+    final double[] unsortedMasses = masses.toDoubleArray();
+    final int[] order = new int[n];
+    Arrays.setAll(order, i -> i);
+    IntArrays.quickSort(order, (a, b) -> Double.compare(unsortedMasses[a], unsortedMasses[b]));
+
+    final double[] sortedMasses = new double[n];
+    final int[] sortedCounts = new int[n * isotopes.length];
+    for (int i = 0; i < n; i++) {
+      sortedMasses[i] = unsortedMasses[order[i]];
+      counts.getElements(order[i] * isotopes.length, sortedCounts, i * isotopes.length,
+          isotopes.length);
+    }
+    return new FormulaMassTable(builder, isotopes, sortedMasses, sortedCounts);
+  }
+
+  /**
+   * @return The number of formulas in this table.
+   */
+  int size() {
+    return masses.length;
+  }
+
+  /**
+   * @param massRange The mass range.
+   * @return All formulas within the mass range, sorted by their mass.
+   */
+  @Nonnull
+  List<IMolecularFormula> getFormulas(@Nonnull Range<Double> massRange) {
+    final int from = lowerBound(massRange.lowerEndpoint());
+    final List<IMolecularFormula> formulas = new ArrayList<>();
+    for (int i = from; i < masses.length && massRange.contains(masses[i]); i++) {
+      final IMolecularFormula formula = builder.newInstance(IMolecularFormula.class);
+      for (int j = 0; j < isotopes.length; j++) {
+        final int count = counts[i * isotopes.length + j];
+        if (count > 0) {
+          formula.addIsotope(isotopes[j], count);
+        }
+      }
+      formulas.add(formula);
+    }
+    return formulas;
+  }
+
+  /**
+   * @return The index of the first mass that is greater than or equal to the given mass.
+   */
+  private int lowerBound(double mass) {
+    int low = 0;
+    int high = masses.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (masses[mid] < mass) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
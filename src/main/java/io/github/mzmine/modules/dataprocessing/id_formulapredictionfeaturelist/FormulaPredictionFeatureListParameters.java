@@ -25,6 +25,7 @@ import io.github.mzmine.modules.tools.isotopepatternscore.IsotopePatternScorePar
 import io.github.mzmine.modules.tools.msmsscore.MSMSScoreParameters;
 import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.impl.SimpleParameterSet;
+import io.github.mzmine.parameters.parametertypes.BooleanParameter;
 import io.github.mzmine.parameters.parametertypes.ComboParameter;
 import io.github.mzmine.parameters.parametertypes.IntegerParameter;
 import io.github.mzmine.parameters.parametertypes.elements.ElementsParameter;
@@ -55,6 +56,13 @@ public class FormulaPredictionFeatureListParameters extends SimpleParameterSet {
   public static final ElementsParameter elements =
       new ElementsParameter("Elements", "Elements and ranges");
 
+  public static final BooleanParameter formulaMassTable = new BooleanParameter(
+      "Precompute formula masses",
+      "Enumerate all formulas of the element ranges for the m/z range of the feature list once and "
+          + "look up the candidates of each feature in a table sorted by mass. Faster for large "
+          + "feature lists and small element ranges, but needs memory for all formulas.",
+      false);
+
   public static final OptionalModuleParameter elementalRatios =
       new OptionalModuleParameter("Element count heuristics",
           "Restrict formulas by heuristic restrictions of elemental counts and ratios",
@@ -74,7 +82,7 @@ public class FormulaPredictionFeatureListParameters extends SimpleParameterSet {
 
   public FormulaPredictionFeatureListParameters() {
     super(new Parameter[] {charge, ionization, FEATURE_LISTS, sorting, mzTolerance,
-        maxBestFormulasPerFeature, elements, elementalRatios, rdbeRestrictions, isotopeFilter,
-        msmsFilter});
+        maxBestFormulasPerFeature, elements, formulaMassTable, elementalRatios, rdbeRestrictions,
+        isotopeFilter, msmsFilter});
   }
 }
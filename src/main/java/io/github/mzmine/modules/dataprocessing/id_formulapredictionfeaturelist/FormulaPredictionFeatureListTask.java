@@ -35,7 +35,7 @@ import io.github.mzmine.modules.dataprocessing.id_formulaprediction.restrictions
 import io.github.mzmine.modules.dataprocessing.id_formulaprediction.restrictions.rdbe.RDBERestrictionChecker;
 import io.github.mzmine.modules.tools.isotopepatternscore.IsotopePatternScoreCalculator;
 import io.github.mzmine.modules.tools.isotopepatternscore.IsotopePatternScoreParameters;
-import io.github.mzmine.modules.tools.isotopeprediction.IsotopePatternCalculator;
+import io.github.mzmine.modules.tools.isotopeprediction.IsotopePatternCache;
 import io.github.mzmine.modules.tools.msmsscore.MSMSScore;
 import io.github.mzmine.modules.tools.msmsscore.MSMSScoreCalculator;
 import io.github.mzmine.modules.tools.msmsscore.MSMSScoreParameters;
@@ -46,7 +46,11 @@ import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.FormulaUtils;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import org.openscience.cdk.formula.MolecularFormulaGenerator;
 import org.openscience.cdk.formula.MolecularFormulaRange;
 import org.openscience.cdk.interfaces.IChemObjectBuilder;
@@ -54,21 +58,35 @@ import org.openscience.cdk.interfaces.IMolecularFormula;
 import org.openscience.cdk.silent.SilentChemObjectBuilder;
 import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
 
+/**
+ * Predicts the formulas of all rows of a feature list. The rows are processed in parallel.
+ */
 public class FormulaPredictionFeatureListTask extends AbstractTask {
 
+  /**
+   * The maximum number of formulas in a {@link FormulaMassTable}. Larger element and mass ranges
+   * are searched by a generator per row.
+   */
+  private static final int MAX_MASS_TABLE_FORMULAS = 5_000_000;
+
+  private static final int ISOTOPE_PATTERN_CACHE_SIZE = 10_000;
+
   private Logger logger = Logger.getLogger(this.getClass().getName());
-  private Range<Double> massRange;
   private MolecularFormulaRange elementCounts;
-  private MolecularFormulaGenerator generator;
+  // generators that are currently running, they are canceled if the task is canceled
+  private final Set<MolecularFormulaGenerator> generators = ConcurrentHashMap.newKeySet();
+  private final IsotopePatternCache isotopePatterns =
+      new IsotopePatternCache(ISOTOPE_PATTERN_CACHE_SIZE);
+  private final boolean useMassTable;
   private IonizationType ionType;
-  private double searchedMass;
   private int charge;
   private FeatureList featureList;
   private boolean checkIsotopes, checkMSMS, checkRatios, checkRDBE;
   private ParameterSet isotopeParameters, msmsParameters, ratiosParameters, rdbeParameters, parameters;
   private MZTolerance mzTolerance;
-  private String message;
-  private int totalRows, finishedRows;
+  private volatile String message;
+  private int totalRows;
+  private final AtomicInteger finishedRows = new AtomicInteger(0);
   private int maxBestFormulasPerFeature;
   private final double minScore;
   private final double minMSMSScore;
@@ -95,6 +113,8 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
         parameters.getParameter(FormulaPredictionFeatureListParameters.mzTolerance).getValue();
     elementCounts =
         parameters.getParameter(FormulaPredictionFeatureListParameters.elements).getValue();
+    useMassTable = parameters.getParameter(FormulaPredictionFeatureListParameters.formulaMassTable)
+        .getValue();
 
     checkIsotopes =
         parameters.getParameter(FormulaPredictionFeatureListParameters.isotopeFilter).getValue();
@@ -156,7 +176,7 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
     if (totalRows == 0) {
       return 0.0;
     }
-    return (double) finishedRows / (double) totalRows;
+    return (double) finishedRows.get() / (double) totalRows;
   }
 
   /**
@@ -177,85 +197,167 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
 
     totalRows = featureList.getNumberOfRows();
 
-    for (FeatureListRow row : featureList.getRows()) {
+    final List<FeatureListRow> rows = featureList.getRows().stream()
+        .filter(row -> row.getPeakIdentities().isEmpty()).collect(Collectors.toList());
+    finishedRows.set(totalRows - rows.size());
 
-      if (row.getPeakIdentities().size() > 0) {
-        continue;
-      }
+    final FormulaMassTable massTable = useMassTable ? createMassTable(rows) : null;
+    if (isCanceled()) {
+      return;
+    }
 
-      this.searchedMass = (row.getAverageMZ() - ionType.getAddedMass()) * charge;
+    // the parallel stream runs on the pool of the current task thread
+    rows.parallelStream().forEach(row -> {
+      if (isCanceled() || getStatus() == TaskStatus.ERROR) {
+        return;
+      }
+      predictFormulas(row, massTable);
+      finishedRows.incrementAndGet();
+    });
 
-      message = "Formula prediction for "
-          + MZmineCore.getConfiguration().getMZFormat().format(searchedMass);
+    if (isCanceled() || getStatus() == TaskStatus.ERROR) {
+      return;
+    }
 
-      massRange = mzTolerance.getToleranceRange(searchedMass);
+    featureList.getAppliedMethods().add(new SimpleFeatureListAppliedMethod(
+        FormulaPredictionFeatureListModule.class, parameters));
 
-      IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
-      generator = new MolecularFormulaGenerator(builder, massRange.lowerEndpoint(),
-          massRange.upperEndpoint(), elementCounts);
+    logger.finest("Finished formula search for all the features");
 
-      IMolecularFormula cdkFormula;
+    setStatus(TaskStatus.FINISHED);
 
-      // create a map to store ResultFormula and relative mass deviation
-      // for sorting
-      List<MolecularFormulaIdentity> flist = new ArrayList<>();
-      while ((cdkFormula = generator.getNextFormula()) != null) {
-        if (isCanceled()) {
-          return;
-        }
+  }
 
-        // Mass is ok, so test other constraints
-        if (checkConstraints(cdkFormula, row)) {
-          Double isotopeScore = calcIsotopePatternScore(cdkFormula, row);
-          Double msmsScore = calcIsotopePatternScore(cdkFormula, row);
-          if (getStatus().equals(TaskStatus.ERROR)) {
-            return;
-          }
+  /**
+   * Enumerates all formulas for the mass range of the given rows.
+   *
+   * @return The table or null, if there are no rows or too many formulas.
+   */
+  private FormulaMassTable createMassTable(List<FeatureListRow> rows) {
+    if (rows.isEmpty()) {
+      return null;
+    }
+    double minMass = Double.POSITIVE_INFINITY;
+    double maxMass = Double.NEGATIVE_INFINITY;
+    for (FeatureListRow row : rows) {
+      final Range<Double> massRange = mzTolerance.getToleranceRange(getSearchedMass(row));
+      minMass = Math.min(minMass, massRange.lowerEndpoint());
+      maxMass = Math.max(maxMass, massRange.upperEndpoint());
+    }
 
-          if ((isotopeScore == null || isotopeScore >= minScore)
-              && (msmsScore == null || msmsScore >= minMSMSScore)) {
-            // write to map
-            MolecularFormulaIdentity molf =
-                new MolecularFormulaIdentity(cdkFormula, searchedMass, isotopeScore, msmsScore);
-            flist.add(molf);
-          }
-        }
+    message = "Calculating all formulas from " + MZmineCore.getConfiguration().getMZFormat()
+        .format(minMass) + " to " + MZmineCore.getConfiguration().getMZFormat().format(maxMass);
+
+    final IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+    final MolecularFormulaGenerator generator =
+        new MolecularFormulaGenerator(builder, minMass, maxMass, elementCounts);
+    generators.add(generator);
+    try {
+      final FormulaMassTable massTable =
+          FormulaMassTable.create(builder, generator, elementCounts, MAX_MASS_TABLE_FORMULAS);
+      if (massTable == null) {
+        logger.info("More than " + MAX_MASS_TABLE_FORMULAS + " formulas from " + minMass + " to "
+            + maxMass + ", searching the formulas of every feature separately.");
+      } else {
+        logger.finest("Calculated " + massTable.size() + " formulas from " + minMass + " to "
+            + maxMass);
       }
+      return massTable;
+    } finally {
+      generators.remove(generator);
+    }
+  }
 
-      if (isCanceled()) {
-        return;
-      }
+  private double getSearchedMass(FeatureListRow row) {
+    return (row.getAverageMZ() - ionType.getAddedMass()) * charge;
+  }
+
+  /**
+   * Predicts the formulas of a single row and adds the best ones as identities.
+   *
+   * @param massTable The formulas of the whole mass range or null, if the formulas shall be
+   *                  generated for this row.
+   */
+  private void predictFormulas(FeatureListRow row, FormulaMassTable massTable) {
+    final double searchedMass = getSearchedMass(row);
+
+    message = "Formula prediction for "
+        + MZmineCore.getConfiguration().getMZFormat().format(searchedMass);
 
-      // sort formulas by ppm difference
-      FormulaUtils.sortFormulaList(flist, sortPPMFactor, sortIsotopeFactor, sortMSMSFactor);
+    final Range<Double> massRange = mzTolerance.getToleranceRange(searchedMass);
 
-      // Add the new formula entry top results
-      int ctr = 0;
-      for (MolecularFormulaIdentity f : flist) {
-        if (ctr < maxBestFormulasPerFeature) {
-          f.setPropertyValue(FeatureIdentity.PROPERTY_METHOD, this.getClass().getName());
-          row.addFeatureIdentity(f, false);
-          ctr++;
+    // create a map to store ResultFormula and relative mass deviation
+    // for sorting
+    List<MolecularFormulaIdentity> flist = new ArrayList<>();
+    if (massTable != null) {
+      for (IMolecularFormula cdkFormula : massTable.getFormulas(massRange)) {
+        if (isCanceled() || !addFormula(cdkFormula, row, searchedMass, flist)) {
+          return;
         }
       }
-      if (isCanceled()) {
-        return;
+    } else {
+      IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+      MolecularFormulaGenerator generator = new MolecularFormulaGenerator(builder,
+          massRange.lowerEndpoint(), massRange.upperEndpoint(), elementCounts);
+      generators.add(generator);
+      try {
+        // the task might have been canceled before the generator was added
+        if (isCanceled()) {
+          return;
+        }
+        IMolecularFormula cdkFormula;
+        while ((cdkFormula = generator.getNextFormula()) != null) {
+          if (isCanceled() || !addFormula(cdkFormula, row, searchedMass, flist)) {
+            return;
+          }
+        }
+      } finally {
+        generators.remove(generator);
       }
-      finishedRows++;
-
     }
 
     if (isCanceled()) {
       return;
     }
 
-    featureList.getAppliedMethods().add(new SimpleFeatureListAppliedMethod(
-        FormulaPredictionFeatureListModule.class, parameters));
+    // sort formulas by ppm difference
+    FormulaUtils.sortFormulaList(flist, sortPPMFactor, sortIsotopeFactor, sortMSMSFactor);
 
-    logger.finest("Finished formula search for all the features");
+    // Add the new formula entry top results
+    int ctr = 0;
+    for (MolecularFormulaIdentity f : flist) {
+      if (ctr < maxBestFormulasPerFeature) {
+        f.setPropertyValue(FeatureIdentity.PROPERTY_METHOD, this.getClass().getName());
+        row.addFeatureIdentity(f, false);
+        ctr++;
+      }
+    }
+  }
 
-    setStatus(TaskStatus.FINISHED);
+  /**
+   * Scores a candidate formula and adds it to the list, if it passes all filters.
+   *
+   * @return false if the scoring failed and the task was set to {@link TaskStatus#ERROR}.
+   */
+  private boolean addFormula(IMolecularFormula cdkFormula, FeatureListRow row,
+      double searchedMass, List<MolecularFormulaIdentity> flist) {
+    // Mass is ok, so test other constraints
+    if (checkConstraints(cdkFormula, row)) {
+      Double isotopeScore = calcIsotopePatternScore(cdkFormula, row);
+      Double msmsScore = calcIsotopePatternScore(cdkFormula, row);
+      if (getStatus().equals(TaskStatus.ERROR)) {
+        return false;
+      }
 
+      if ((isotopeScore == null || isotopeScore >= minScore)
+          && (msmsScore == null || msmsScore >= minMSMSScore)) {
+        // write to map
+        MolecularFormulaIdentity molf =
+            new MolecularFormulaIdentity(cdkFormula, searchedMass, isotopeScore, msmsScore);
+        flist.add(molf);
+      }
+    }
+    return true;
   }
 
   private boolean checkConstraints(IMolecularFormula cdkFormula, FeatureListRow featureListRow) {
@@ -325,8 +427,6 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
 
       String stringFormula = MolecularFormulaManipulator.getString(cdkFormula);
 
-      String adjustedFormula = FormulaUtils.ionizeFormula(stringFormula, ionType, charge);
-
       final double isotopeNoiseLevel = isotopeParameters
           .getParameter(IsotopePatternScoreParameters.isotopeNoiseLevel).getValue();
 
@@ -339,8 +439,8 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
 
       final double minPredictedAbundance = isotopeNoiseLevel / detectedPatternHeight;
 
-      predictedIsotopePattern = IsotopePatternCalculator.calculateIsotopePattern(adjustedFormula,
-          minPredictedAbundance, charge, ionType.getPolarity());
+      predictedIsotopePattern = isotopePatterns.getIsotopePattern(stringFormula, ionType, charge,
+          minPredictedAbundance);
 
       isotopeScore = IsotopePatternScoreCalculator.getSimilarityScore(detectedPattern,
           predictedIsotopePattern, isotopeParameters);
@@ -352,9 +452,9 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
   public void cancel() {
     super.cancel();
 
-    // We need to cancel the formula generator, because searching for next
+    // We need to cancel the formula generators, because searching for next
     // candidate formula may take a looong time
-    if (generator != null) {
+    for (MolecularFormulaGenerator generator : generators) {
       generator.cancel();
     }
 
@@ -29,6 +29,7 @@ import java.util.logging.Logger;
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MassList;
 import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.taskcontrol.AbstractTask;
@@ -106,17 +107,21 @@ class Ms2SearchTask extends AbstractTask {
 
     totalRows = rows1Length;
 
+    // the mass lists of the second feature list are read once, not once per pair
+    double[][][] ions2 = new double[rows2Length][][];
+    for (int j = 0; j < rows2Length; j++) {
+      ions2[j] = getIons(rows2[j].getBestFragmentation());
+    }
+
     for (int i = 0; i < rows1Length; i++) {
+      // Complication. The "best" peak, may not have the "best"
+      // fragmentation
+      double[][] ions1 = getIons(rows1[i].getBestFragmentation());
       for (int j = 0; j < rows2Length; j++) {
         Feature featureA = rows1[i].getBestFeature();
         Feature featureB = rows2[j].getBestFeature();
-        // Complication. The "best" peak, may not have the "best"
-        // fragmentation
-        Scan scanA = rows1[i].getBestFragmentation();
-        Scan scanB = rows2[j].getBestFragmentation();
 
-        searchResult =
-            simpleMS2similarity(scanA, scanB, intensityThreshold, mzTolerance);
+        searchResult = simpleMS2similarity(ions1, ions2[j], intensityThreshold, mzTolerance);
 
         // Report the final score to the peaklist identity
         if (searchResult != null && searchResult.getScore() > scoreThreshold
@@ -142,68 +147,71 @@ class Ms2SearchTask extends AbstractTask {
 
   }
 
-  private Ms2SearchResult simpleMS2similarity(Scan scanMS2A, Scan scanMS2B,
-      double intensityThreshold, MZTolerance mzRange) {
-
-    double runningScoreTotal = 0.0;
-    double mzRangePPM = mzRange.getPpmTolerance();
-
-    List<DataPoint> matchedIons = new ArrayList<DataPoint>();
-
-    // Fetch 1st feature MS2 scan.
-    // int ms2ScanNumberA = featureA.getMostIntenseFragmentScanNumber();
-    // Scan scanMS2A = featureA.getDataFile().getScan(ms2ScanNumberA);
-
-    // Fetch 2nd feature MS2 scan.
-    // int ms2ScanNumberB = featureB.getMostIntenseFragmentScanNumber();
-    // Scan scanMS2B = featureB.getDataFile().getScan(ms2ScanNumberB);
-
-    if (scanMS2A == null || scanMS2B == null) {
-      return null;
-    }
-
-    // Fetch centroided data
-    MassList massListA = scanMS2A.getMassList();
-    MassList massListB = scanMS2B.getMassList();
-
-    if (massListA == null) {
-      // Will this work properly? As this function isn't directly the
-      // task?
-      setStatus(TaskStatus.ERROR);
-      setErrorMessage("Scan " + scanMS2A.getDataFile().getName() + " #" + scanMS2A.getScanNumber()
-          + " does not have a mass list");
+  /**
+   * Fetch centroided data
+   *
+   * @return the m/z values and intensities of the mass list of the scan or null, if there is no
+   * scan or mass list or the mass list is empty
+   */
+  private double[][] getIons(Scan scan) {
+    if (scan == null) {
       return null;
     }
 
-    if (massListB == null) {
+    MassList massList = scan.getMassList();
+    if (massList == null) {
       // Will this work properly? As this function isn't directly the
       // task?
       setStatus(TaskStatus.ERROR);
-      setErrorMessage("Scan " + scanMS2B.getDataFile().getName() + " #" + scanMS2B.getScanNumber()
+      setErrorMessage("Scan " + scan.getDataFile().getName() + " #" + scan.getScanNumber()
           + " does not have a mass list");
       return null;
     }
 
-    DataPoint[] ionsA = null;
-    DataPoint[] ionsB = null;
-
-    ionsA = massListA.getDataPoints();
-    ionsB = massListB.getDataPoints();
-
-    if (ionsA == null || ionsB == null || ionsA.length == 0 || ionsB.length == 0) {
+    int numIons = massList.getNumberOfDataPoints();
+    if (numIons == 0) {
       // Fall back to profile data?
       // Profile / raw data.
       // ionsA = scanMS2A.getDataPointsOverIntensity(intensityThreshold);
       // ionsB = scanMS2B.getDataPointsOverIntensity(intensityThreshold);
       return null;
     }
+    return new double[][] {massList.getMzValues(new double[numIons]),
+        massList.getIntensityValues(new double[numIons])};
+  }
+
+  /**
+   * Sum of the intensity products of all ion pairs within m/z tolerance.
+   *
+   * @param ionsA m/z values and intensities of the mass list of the first scan, sorted by m/z
+   * @param ionsB m/z values and intensities of the mass list of the second scan, sorted by m/z
+   */
+  private Ms2SearchResult simpleMS2similarity(double[][] ionsA, double[][] ionsB,
+      double intensityThreshold, MZTolerance mzRange) {
+
+    if (ionsA == null || ionsB == null) {
+      return null;
+    }
+
+    double runningScoreTotal = 0.0;
+    double mzRangePPM = mzRange.getPpmTolerance();
+
+    List<DataPoint> matchedIons = new ArrayList<DataPoint>();
+
+    double[] mzA = ionsA[0];
+    double[] intensityA = ionsA[1];
+    double[] mzB = ionsB[0];
+    double[] intensityB = ionsB[1];
 
     // Compare every ion peak in MS2 scan A, to every ion peak in MS2 scan
     // B.
-    double ionsBMaxMZ = ionsB[ionsB.length - 1].getMZ();
-    for (int i = 0; i < ionsA.length; i++) {
+    double ionsBMaxMZ = mzB[mzB.length - 1];
+    // first ion of B that can match the current ion of A. The lower end of the tolerance window
+    // only increases with the m/z of A, so ions below it are never compared again.
+    int startB = 0;
+    for (int i = 0; i < mzA.length; i++) {
 
-      double iMZ = ionsA[i].getMZ();
+      double iMZ = mzA[i];
       double mzRangeAbsolute = iMZ * 1e-6 * mzRangePPM;
 
       if (iMZ - mzRangeAbsolute > ionsBMaxMZ)
@@ -211,9 +219,13 @@ class Ms2SearchTask extends AbstractTask {
                // the max of j, no more
                // matches are possible.
 
-      for (int j = 0; j < ionsB.length; j++) {
+      while (startB < mzB.length && mzB[startB] <= iMZ - mzRangeAbsolute) {
+        startB++;
+      }
+
+      for (int j = startB; j < mzB.length; j++) {
 
-        double jMZ = ionsB[j].getMZ();
+        double jMZ = mzB[j];
 
         if (iMZ < jMZ - mzRangeAbsolute)
           break; // Potential speedup heuristic. iMZ smaller than jMZ.
@@ -221,8 +233,8 @@ class Ms2SearchTask extends AbstractTask {
                  // they can only increase.
 
         if (Math.abs(iMZ - jMZ) < mzRangeAbsolute) {
-          runningScoreTotal += ionsA[i].getIntensity() * ionsB[j].getIntensity();
-          matchedIons.add(ionsA[i]);
+          runningScoreTotal += intensityA[i] * intensityB[j];
+          matchedIons.add(new SimpleDataPoint(iMZ, intensityA[i]));
         }
 
       }
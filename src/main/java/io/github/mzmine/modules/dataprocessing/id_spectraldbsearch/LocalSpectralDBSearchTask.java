@@ -23,8 +23,11 @@ import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.scans.similarity.WeightedSpectrum;
+import io.github.mzmine.util.spectraldb.SpectralLibraryIndex;
 import io.github.mzmine.util.spectraldb.entry.SpectralDBEntry;
 import io.github.mzmine.util.spectraldb.parser.AutoLibraryParser;
 import io.github.mzmine.util.spectraldb.parser.LibraryEntryProcessor;
@@ -32,7 +35,9 @@ import io.github.mzmine.util.spectraldb.parser.UnsupportedFormatException;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -40,6 +45,12 @@ class LocalSpectralDBSearchTask extends AbstractTask {
 
   private Logger logger = Logger.getLogger(this.getClass().getName());
 
+  /**
+   * Minimum width of the fragment bins of the library index. The width only affects the search
+   * performance.
+   */
+  private static final double MIN_FRAGMENT_BIN_WIDTH = 0.01;
+
   private final FeatureList featureList;
   private final File dataBaseFile;
 
@@ -128,28 +139,51 @@ class LocalSpectralDBSearchTask extends AbstractTask {
   }
 
   /**
-   * Load all library entries from data base file
+   * Load all library entries from data base file, index them and start the tasks to match the
+   * rows against the library
    *
    * @param dataBaseFile
-   * @return
+   * @return the tasks or an empty list if the library is empty
    */
   private List<RowsSpectralMatchTask> parseFile(File dataBaseFile)
       throws UnsupportedFormatException, IOException {
     //
-    List<RowsSpectralMatchTask> tasks = new ArrayList<>();
+    List<SpectralDBEntry> library = new ArrayList<>();
     AutoLibraryParser parser = new AutoLibraryParser(100, new LibraryEntryProcessor() {
       @Override
       public void processNextEntries(List<SpectralDBEntry> list, int alreadyProcessed) {
-        // start last task
-        RowsSpectralMatchTask task = new RowsSpectralMatchTask(featureList.getName(), rows, parameters,
-            alreadyProcessed + 1, list);
-        MZmineCore.getTaskController().addTask(task);
-        tasks.add(task);
+        library.addAll(list);
       }
     });
-
-    // return tasks
     parser.parse(this, dataBaseFile);
+
+    List<RowsSpectralMatchTask> tasks = new ArrayList<>();
+    if (library.isEmpty() || isCanceled()) {
+      return tasks;
+    }
+
+    // the index is built once and shared by all tasks
+    final MZTolerance mzTol =
+        parameters.getParameter(LocalSpectralDBSearchParameters.mzTolerance).getValue();
+    final SpectralLibraryIndex index = new SpectralLibraryIndex(library,
+        Math.max(MIN_FRAGMENT_BIN_WIDTH, mzTol.getMzTolerance()));
+    logger.info("Indexed " + index.size() + " library entries of " + dataBaseFile);
+
+    // every task matches a part of the rows against the whole library
+    final AtomicReferenceArray<WeightedSpectrum> librarySpectra =
+        new AtomicReferenceArray<>(index.size());
+    final int numTasks =
+        Math.max(1, Math.min(rows.length, Runtime.getRuntime().availableProcessors()));
+    for (int t = 0; t < numTasks; t++) {
+      final int from = (int) ((long) rows.length * t / numTasks);
+      final int to = (int) ((long) rows.length * (t + 1) / numTasks);
+      final FeatureListRow[] taskRows = Arrays.copyOfRange(rows, from, to);
+      RowsSpectralMatchTask task =
+          new RowsSpectralMatchTask(featureList.getName(), taskRows, parameters, index,
+              librarySpectra);
+      MZmineCore.getTaskController().addTask(task);
+      tasks.add(task);
+    }
     return tasks;
   }
 
@@ -39,7 +39,11 @@ import io.github.mzmine.util.scans.ScanAlignment;
 import io.github.mzmine.util.scans.ScanUtils;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarity;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarityFunction;
+import io.github.mzmine.util.scans.similarity.WeightedSpectrum;
+import io.github.mzmine.util.scans.similarity.WeightedSpectrumMatcher;
+import io.github.mzmine.util.scans.similarity.Weights;
 import io.github.mzmine.util.scans.sorting.ScanSortMode;
+import io.github.mzmine.util.spectraldb.SpectralLibraryIndex;
 import io.github.mzmine.util.spectraldb.entry.DBEntryField;
 import io.github.mzmine.util.spectraldb.entry.SpectralDBEntry;
 import io.github.mzmine.util.spectraldb.entry.SpectralDBFeatureIdentity;
@@ -47,8 +51,11 @@ import java.io.File;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Consumer;
+import java.util.function.IntFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nonnull;
@@ -76,6 +83,10 @@ public class RowsSpectralMatchTask extends AbstractTask {
   private final double noiseLevel;
   private final int minMatch;
   private List<SpectralDBEntry> list;
+  // if set, only the candidates found in the index are matched instead of the list
+  private SpectralLibraryIndex index;
+  // prepared spectra of the index entries, shared by all tasks and created on demand
+  private AtomicReferenceArray<WeightedSpectrum> librarySpectra;
 
   private int count = 0;
 
@@ -105,6 +116,22 @@ public class RowsSpectralMatchTask extends AbstractTask {
     this(description, rows, parameters, startEntry, list, null);
   }
 
+  /**
+   * Matches the rows against all entries of the library. The index is used to find the candidates
+   * of each row, the exact similarity is only calculated for these.
+   *
+   * @param librarySpectra the prepared spectra of the index entries, shared by all tasks that
+   *                       use the same index and parameters. Has the size of the index.
+   */
+  public RowsSpectralMatchTask(String description, @Nonnull FeatureListRow[] rows,
+      ParameterSet parameters, @Nonnull SpectralLibraryIndex index,
+      @Nonnull AtomicReferenceArray<WeightedSpectrum> librarySpectra) {
+    this(description, rows, parameters, 1, Collections.emptyList(), null);
+    this.index = index;
+    this.librarySpectra = librarySpectra;
+    this.listsize = index.size();
+  }
+
   public RowsSpectralMatchTask(String description, @Nonnull FeatureListRow[] rows,
       ParameterSet parameters, int startEntry, List<SpectralDBEntry> list,
       Consumer<SpectralDBFeatureIdentity> matchListener) {
@@ -179,6 +206,12 @@ public class RowsSpectralMatchTask extends AbstractTask {
     setStatus(TaskStatus.PROCESSING);
     addRowTypes();
 
+    final SpectralLibraryIndex.Searcher searcher = index != null ? index.createSearcher() : null;
+    // library and row spectra are prepared once, unless they are cropped for every pair
+    final boolean prepareSpectra = index != null && !cropSpectraToOverlap;
+    final Weights weights = simFunction.getModule().getWeights(simFunction.getParameterSet());
+    final WeightedSpectrumMatcher matcher = new WeightedSpectrumMatcher();
+
     for (FeatureListRow row : rows) {
       if (isCanceled()) {
         logger.info("Added " + count + " spectral library matches (before being cancelled)");
@@ -199,23 +232,30 @@ public class RowsSpectralMatchTask extends AbstractTask {
           rowMassLists.add(rowMassList);
         }
 
-        // match against all library entries
-        for (SpectralDBEntry ident : list) {
-          SpectralDBFeatureIdentity best = null;
-          // match all scans against this ident to find best match
-          for (int i = 0; i < scans.size(); i++) {
-            SpectralSimilarity sim = spectraDBMatch(row, rowMassLists.get(i), ident);
-            if (sim != null
-                && (!needsIsotopePattern || SpectralMatchTask.checkForIsotopePattern(sim,
-                    mzToleranceSpectra, minMatchedIsoSignals))
-                && (best == null || best.getSimilarity().getScore() < sim.getScore())) {
-              best = new SpectralDBFeatureIdentity(scans.get(i), ident, sim, METHOD);
+        if (prepareSpectra) {
+          final List<WeightedSpectrum> rowSpectra = new ArrayList<>(rowMassLists.size());
+          for (DataPoint[] rowMassList : rowMassLists) {
+            rowSpectra.add(new WeightedSpectrum(rowMassList, weights));
+          }
+          // match against the candidates
+          for (int candidate : getCandidates(searcher, row, rowMassLists)) {
+            final SpectralDBEntry ident = index.getEntry(candidate);
+            matchEntry(row, scans, ident, i -> spectraDBMatch(row, rowSpectra.get(i), ident,
+                getLibrarySpectrum(candidate, ident, weights), matcher));
+          }
+        } else {
+          // match against all library entries or the candidates
+          final List<SpectralDBEntry> entries;
+          if (searcher != null) {
+            entries = new ArrayList<>();
+            for (int candidate : getCandidates(searcher, row, rowMassLists)) {
+              entries.add(index.getEntry(candidate));
             }
+          } else {
+            entries = list;
           }
-          // has match?
-          if (best != null) {
-            addIdentity(row, best);
-            count++;
+          for (SpectralDBEntry ident : entries) {
+            matchEntry(row, scans, ident, i -> spectraDBMatch(row, rowMassLists.get(i), ident));
           }
         }
         // sort identities based on similarity score
@@ -243,6 +283,63 @@ public class RowsSpectralMatchTask extends AbstractTask {
     setStatus(TaskStatus.FINISHED);
   }
 
+  /**
+   * Matches all scans of the row against the library entry and adds the best match to the row.
+   *
+   * @param match matches the scan with the given index against the entry
+   */
+  private void matchEntry(FeatureListRow row, List<Scan> scans, SpectralDBEntry ident,
+      IntFunction<SpectralSimilarity> match) {
+    SpectralDBFeatureIdentity best = null;
+    // match all scans against this ident to find best match
+    for (int i = 0; i < scans.size(); i++) {
+      SpectralSimilarity sim = match.apply(i);
+      if (sim != null
+          && (!needsIsotopePattern || SpectralMatchTask.checkForIsotopePattern(sim,
+              mzToleranceSpectra, minMatchedIsoSignals))
+          && (best == null || best.getSimilarity().getScore() < sim.getScore())) {
+        best = new SpectralDBFeatureIdentity(scans.get(i), ident, sim, METHOD);
+      }
+    }
+    // has match?
+    if (best != null) {
+      addIdentity(row, best);
+      count++;
+    }
+  }
+
+  /**
+   * @return the indices of all library entries that can match at least one of the mass lists, in
+   * the order of the library
+   */
+  private int[] getCandidates(SpectralLibraryIndex.Searcher searcher, FeatureListRow row,
+      List<DataPoint[]> rowMassLists) {
+    final List<double[]> queries = new ArrayList<>(rowMassLists.size());
+    for (DataPoint[] massList : rowMassLists) {
+      queries.add(Arrays.stream(massList).mapToDouble(DataPoint::getMZ).toArray());
+    }
+
+    final Double precursorMZ = msLevel > 1 ? row.getAverageMZ() : null;
+    return searcher.findCandidates(precursorMZ, mzTolerancePrecursor, queries, mzToleranceSpectra,
+        minMatch);
+  }
+
+  /**
+   * @return the prepared (and deisotoped) spectrum of the index entry
+   */
+  private WeightedSpectrum getLibrarySpectrum(int entry, SpectralDBEntry ident, Weights weights) {
+    WeightedSpectrum spectrum = librarySpectra.get(entry);
+    if (spectrum == null) {
+      DataPoint[] library = ident.getDataPoints();
+      if (removeIsotopes)
+        library = removeIsotopes(library);
+      // other tasks may prepare the same spectrum concurrently, the results are equal
+      spectrum = new WeightedSpectrum(library, weights);
+      librarySpectra.set(entry, spectrum);
+    }
+    return spectrum;
+  }
+
   private void addRowTypes() {
     // modular feature list?
     Arrays.stream(rows).filter(row -> row.getFeatureList() instanceof ModularFeatureList)
@@ -296,6 +393,21 @@ public class RowsSpectralMatchTask extends AbstractTask {
     return null;
   }
 
+  /**
+   * Same as {@link #spectraDBMatch(FeatureListRow, DataPoint[], SpectralDBEntry)} on prepared
+   * spectra, which are not cropped.
+   *
+   * @return spectral similarity or null if no match
+   */
+  private SpectralSimilarity spectraDBMatch(FeatureListRow row, WeightedSpectrum rowSpectrum,
+      SpectralDBEntry ident, WeightedSpectrum library, WeightedSpectrumMatcher matcher) {
+    if (checkRT(row, ident) && (msLevel == 1 || checkPrecursorMZ(row, ident))) {
+      return simFunction.getModule().getSimilarity(simFunction.getParameterSet(),
+          mzToleranceSpectra, minMatch, library, rowSpectrum, matcher);
+    }
+    return null;
+  }
+
   /**
    * Uses the similarity function and filter to create similarity.
    * 
@@ -28,6 +28,8 @@ import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.impl.SimpleParameterSet;
 import io.github.mzmine.parameters.parametertypes.ModuleComboParameter;
 import io.github.mzmine.parameters.parametertypes.OptionalParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
+import io.github.mzmine.parameters.parametertypes.selectors.ScanSelectionParameter;
 import io.github.mzmine.parameters.parametertypes.submodules.OptionalModuleParameter;
 
 public class AdvancedSpectraImportParameters extends SimpleParameterSet {
@@ -45,8 +47,13 @@ public class AdvancedSpectraImportParameters extends SimpleParameterSet {
       new OptionalParameter<>(new ModuleComboParameter<MassDetector>("MS2 detector (Advanced)",
           "Algorithm to use on MS2 scans for mass detection and its parameters", massDetectors));
 
+  public static final OptionalParameter<ScanSelectionParameter> scanFilter =
+      new OptionalParameter<>(new ScanSelectionParameter("Scan filters (mzML)",
+          "Only import the scans that match the filters. Spectra of indexed mzML files that do not "
+              + "match are skipped without reading their data points.", new ScanSelection()));
+
   public AdvancedSpectraImportParameters() {
-    super(new Parameter[]{msMassDetection, ms2MassDetection});
+    super(new Parameter[]{msMassDetection, ms2MassDetection, scanFilter});
   }
 
 }
@@ -19,20 +19,33 @@ package io.github.mzmine.modules.io.import_all_data_files;
 
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
-import io.github.mzmine.datamodel.data_access.EfficientDataAccess;
-import io.github.mzmine.datamodel.data_access.ScanDataAccess;
 import io.github.mzmine.datamodel.impl.masslist.SimpleMassList;
 import io.github.mzmine.modules.MZmineProcessingStep;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.MemoryMapStorage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import javafx.collections.ListChangeListener;
 import javax.annotation.Nonnull;
 
 /**
  * This import task wraps other data import tasks that do not support application of mass detection
- * during data import. This task calls the data import and applies mass detection afterwards.
+ * during data import. This task calls the data import and applies mass detection to every scan as
+ * soon as it is added to the data file.
+ * <p>
+ * The scans are collected in batches, which are handed over to the pool of the current task. The
+ * scan listener is called while the data file is locked, so it never applies the mass detection
+ * or waits for the pool itself. The added scans are already held by the data file, so the
+ * submitted batches only hold references to them.
  */
 public class MsDataImportAndMassDetectWrapperTask extends AbstractTask {
 
@@ -43,8 +56,16 @@ public class MsDataImportAndMassDetectWrapperTask extends AbstractTask {
   private Logger logger = Logger.getLogger(
       MsDataImportAndMassDetectWrapperTask.class.getName());
 
-  private int totalScans = 1;
-  private int parsedScans = 0;
+  /**
+   * Number of scans that are processed by one pool task
+   */
+  private static final int BATCH_SIZE = 32;
+
+  // scans that were added, but not submitted yet. guarded by itself
+  private final List<Scan> batch = new ArrayList<>(BATCH_SIZE);
+  private final Queue<ForkJoinTask<?>> submittedBatches = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger processedScans = new AtomicInteger(0);
+  private volatile Exception detectionException = null;
 
   /**
    * This import task wraps other data import tasks that do not support application of mass
@@ -69,8 +90,9 @@ public class MsDataImportAndMassDetectWrapperTask extends AbstractTask {
           .getEmbeddedParameter().getValue();
     }
     if (advancedParam.getParameter(AdvancedSpectraImportParameters.ms2MassDetection).getValue()) {
-      this.ms2Detector = advancedParam.getParameter(AdvancedSpectraImportParameters.msMassDetection)
-          .getEmbeddedParameter().getValue();
+      this.ms2Detector = advancedParam
+          .getParameter(AdvancedSpectraImportParameters.ms2MassDetection).getEmbeddedParameter()
+          .getValue();
     }
   }
 
@@ -83,59 +105,119 @@ public class MsDataImportAndMassDetectWrapperTask extends AbstractTask {
 
   @Override
   public double getFinishedPercentage() {
-    return totalScans > 0 ? (importTask.getFinishedPercentage() + parsedScans / (double)totalScans) / 2d
-        : importTask.getFinishedPercentage() / 2d;
+    final int totalScans = Math.max(1, newMZmineFile.getNumOfScans());
+    return (importTask.getFinishedPercentage() + processedScans.get() / (double) totalScans) / 2d;
   }
 
   @Override
   public void run() {
     setStatus(TaskStatus.PROCESSING);
-    try {
-      // import data
-      importTask.run();
-
-      // should be in the new data file
-      if (importTask.isFinished()) {
-        totalScans = newMZmineFile.getNumOfScans();
 
-        // uses only a single array for each (mz and intensity) to loop over all scans
-        ScanDataAccess data = EfficientDataAccess.of(newMZmineFile,
-            EfficientDataAccess.ScanDataType.RAW);
-        totalScans = data.getNumberOfScans();
+    final ForkJoinPool pool =
+        ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
 
-        // all scans
-        while(data.hasNextScan()) {
-          if (isCanceled()) {
-            return;
+    // the import thread hands over every new scan
+    final ListChangeListener<Scan> scansListener = change -> {
+      while (change.next()) {
+        if (change.wasAdded()) {
+          for (Scan scan : change.getAddedSubList()) {
+            addToBatch(pool, scan);
           }
+        }
+      }
+    };
 
-          Scan scan = data.nextScan();
+    try {
+      newMZmineFile.getScans().addListener(scansListener);
 
-          double[][] mzIntensities = null;
-          if (ms1Detector != null && scan.getMSLevel() <= 1) {
-            mzIntensities = ms1Detector.getModule()
-                .getMassValues(data, ms1Detector.getParameterSet());
-          } else if (ms2Detector != null && scan.getMSLevel() >= 2) {
-            mzIntensities = ms2Detector.getModule()
-                .getMassValues(data, ms2Detector.getParameterSet());
-          }
+      // import data
+      try {
+        importTask.run();
+      } finally {
+        newMZmineFile.getScans().removeListener(scansListener);
+      }
 
-          if (mzIntensities != null) {
-            // uses a different storage for mass lists then the one defined for the MS data import
-            SimpleMassList newMassList = new SimpleMassList(storage, mzIntensities[0],
-                mzIntensities[1]);
-            scan.addMassList(newMassList);
-          }
-        }
+      // process the last batch and wait for the submitted ones. joining a task from a thread of
+      // the same pool executes pending tasks instead of blocking the thread
+      final List<Scan> remaining;
+      synchronized (batch) {
+        remaining = new ArrayList<>(batch);
+        batch.clear();
+      }
+      remaining.forEach(this::applyMassDetection);
+      ForkJoinTask<?> submitted;
+      while ((submitted = submittedBatches.poll()) != null) {
+        submitted.join();
+      }
+      if (isCanceled()) {
+        return;
       }
 
+      if (detectionException != null) {
+        throw detectionException;
+      }
     } catch (Exception e) {
+      logger.log(Level.SEVERE, "Error while importing and applying mass detection", e);
       setErrorMessage(e.getMessage());
       setStatus(TaskStatus.ERROR);
-      e.printStackTrace();
       return;
     }
 
     this.setStatus(TaskStatus.FINISHED);
   }
+
+  /**
+   * Adds the scan to the current batch and submits the batch to the pool once it is full. Does not
+   * block, it is called while the data file is locked.
+   */
+  private void addToBatch(@Nonnull ForkJoinPool pool, @Nonnull Scan scan) {
+    final Scan[] fullBatch;
+    synchronized (batch) {
+      batch.add(scan);
+      if (batch.size() < BATCH_SIZE) {
+        return;
+      }
+      fullBatch = batch.toArray(Scan[]::new);
+      batch.clear();
+    }
+
+    final ForkJoinTask<?> task = ForkJoinTask.adapt(() -> {
+      for (Scan batchScan : fullBatch) {
+        applyMassDetection(batchScan);
+      }
+    });
+    submittedBatches.add(task);
+    pool.execute(task);
+  }
+
+  /**
+   * Applies the mass detector of the MS level and adds the mass list to the scan
+   */
+  private void applyMassDetection(Scan scan) {
+    try {
+      if (isCanceled() || detectionException != null) {
+        return;
+      }
+
+      double[][] mzIntensities = null;
+      if (ms1Detector != null && scan.getMSLevel() <= 1) {
+        mzIntensities = ms1Detector.getModule()
+            .getMassValues(scan, ms1Detector.getParameterSet());
+      } else if (ms2Detector != null && scan.getMSLevel() >= 2) {
+        mzIntensities = ms2Detector.getModule()
+            .getMassValues(scan, ms2Detector.getParameterSet());
+      }
+
+      if (mzIntensities != null) {
+        // uses a different storage for mass lists then the one defined for the MS data import
+        SimpleMassList newMassList = new SimpleMassList(storage, mzIntensities[0],
+            mzIntensities[1]);
+        scan.addMassList(newMassList);
+      }
+      processedScans.incrementAndGet();
+    } catch (Exception e) {
+      logger.log(Level.WARNING, "Cannot apply mass detection to scan " + scan, e);
+      detectionException = e;
+    }
+  }
 }
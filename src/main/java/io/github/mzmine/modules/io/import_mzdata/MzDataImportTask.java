@@ -20,11 +20,13 @@ package io.github.mzmine.modules.io.import_mzdata;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Base64;
 import java.util.LinkedList;
 import java.util.logging.Logger;
+import javax.annotation.Nullable;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 import org.xml.sax.Attributes;
@@ -48,6 +50,8 @@ public class MzDataImportTask extends AbstractTask {
   private Logger logger = Logger.getLogger(this.getClass().getName());
 
   private File file;
+  // if set, the data is parsed from this stream, e.g. a decompressing stream, instead of the file
+  private @Nullable InputStream inputStream;
   private MZmineProject project;
   private RawDataFile newMZmineFile;
   private int totalScans = 0, parsedScans;
@@ -93,12 +97,23 @@ public class MzDataImportTask extends AbstractTask {
   private LinkedList<SimpleScan> parentStack;
 
   public MzDataImportTask(MZmineProject project, File fileToOpen, RawDataFile newMZmineFile) {
+    this(project, fileToOpen, null, newMZmineFile);
+  }
+
+  /**
+   * @param fileToOpen  The file, only used for its name if an input stream is given.
+   * @param inputStream The stream to parse instead of the file, e.g. the decompressed entry of an
+   *                    archive. Closed after parsing.
+   */
+  public MzDataImportTask(MZmineProject project, File fileToOpen,
+      @Nullable InputStream inputStream, RawDataFile newMZmineFile) {
     super(null); // storage in raw data file
     // 256 kilo-chars buffer
     charBuffer = new StringBuilder(1 << 18);
     parentStack = new LinkedList<SimpleScan>();
     this.project = project;
     this.file = fileToOpen;
+    this.inputStream = inputStream;
     this.newMZmineFile = newMZmineFile;
   }
 
@@ -125,7 +140,11 @@ public class MzDataImportTask extends AbstractTask {
     try {
 
       SAXParser saxParser = factory.newSAXParser();
-      saxParser.parse(file, handler);
+      if (inputStream != null) {
+        saxParser.parse(inputStream, handler);
+      } else {
+        saxParser.parse(file, handler);
+      }
 
       project.addFile(newMZmineFile);
 
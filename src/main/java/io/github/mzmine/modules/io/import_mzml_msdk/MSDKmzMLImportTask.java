@@ -44,11 +44,14 @@ import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.ExceptionUtils;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import javax.annotation.Nullable;
 
 /**
@@ -57,7 +60,14 @@ import javax.annotation.Nullable;
  */
 public class MSDKmzMLImportTask extends AbstractTask {
 
+  /**
+   * Number of scans that are decoded concurrently before they are added to the raw data file.
+   */
+  private static final int BATCH_SIZE = 512;
+
   private final File file;
+  // if set, the data is parsed from this stream, e.g. a decompressing stream, instead of the file
+  private final @Nullable InputStream inputStream;
   private MzMLFileImportMethod msdkTask = null;
   private Logger logger = Logger.getLogger(this.getClass().getName());
   private MZmineProject project;
@@ -69,6 +79,7 @@ public class MSDKmzMLImportTask extends AbstractTask {
   private final boolean applyMassDetection;
   private MZmineProcessingStep<MassDetector> ms1Detector = null;
   private MZmineProcessingStep<MassDetector> ms2Detector = null;
+  private ScanSelection scanSelection = null;
 
   public MSDKmzMLImportTask(MZmineProject project, File fileToOpen, RawDataFile newMZmineFile) {
     this(project, fileToOpen, newMZmineFile, null);
@@ -76,8 +87,20 @@ public class MSDKmzMLImportTask extends AbstractTask {
 
   public MSDKmzMLImportTask(MZmineProject project, File fileToOpen, RawDataFile newMZmineFile,
       AdvancedSpectraImportParameters advancedParam) {
+    this(project, fileToOpen, null, newMZmineFile, advancedParam);
+  }
+
+  /**
+   * @param fileToOpen  The file, only used for its name if an input stream is given.
+   * @param inputStream The stream to parse instead of the file, e.g. the decompressed entry of an
+   *                    archive. Spectra are then parsed sequentially, without the index.
+   */
+  public MSDKmzMLImportTask(MZmineProject project, File fileToOpen,
+      @Nullable InputStream inputStream, RawDataFile newMZmineFile,
+      AdvancedSpectraImportParameters advancedParam) {
     super(newMZmineFile.getMemoryMapStorage()); // storage in raw data file
     this.file = fileToOpen;
+    this.inputStream = inputStream;
     this.project = project;
     this.newMZmineFile = newMZmineFile;
     description = "Importing raw data file: " + fileToOpen.getName();
@@ -93,6 +116,10 @@ public class MSDKmzMLImportTask extends AbstractTask {
             .getParameter(AdvancedSpectraImportParameters.msMassDetection)
             .getEmbeddedParameter().getValue();
       }
+      if (advancedParam.getParameter(AdvancedSpectraImportParameters.scanFilter).getValue()) {
+        this.scanSelection = advancedParam.getParameter(AdvancedSpectraImportParameters.scanFilter)
+            .getEmbeddedParameter().getValue();
+      }
     }
 
     this.applyMassDetection = ms1Detector != null || ms2Detector != null;
@@ -109,7 +136,11 @@ public class MSDKmzMLImportTask extends AbstractTask {
 
     try {
 
-      msdkTask = new MzMLFileImportMethod(file);
+      msdkTask = inputStream != null ? new MzMLFileImportMethod(inputStream)
+          : new MzMLFileImportMethod(file);
+      if (scanSelection != null) {
+        msdkTask.setScanFilter(createScanFilter(scanSelection));
+      }
       msdkTask.execute();
       io.github.msdk.datamodel.RawDataFile file = msdkTask.getResult();
 
@@ -127,6 +158,9 @@ public class MSDKmzMLImportTask extends AbstractTask {
         buildLCMSFile(file);
       }
 
+      if (isCanceled()) {
+        return;
+      }
 
     } catch (Throwable e) {
       e.printStackTrace();
@@ -146,6 +180,21 @@ public class MSDKmzMLImportTask extends AbstractTask {
     project.addFile(newMZmineFile);
   }
 
+  /**
+   * The filter is tested with the meta data of the MSDK scans, before their data points are read.
+   * The retention time of MSDK scans is given in seconds, but the scan selection uses minutes.
+   */
+  private static Predicate<MsScan> createScanFilter(ScanSelection selection) {
+    final int scanNumberOffset = selection.getScanNumberRange() != null ? selection
+        .getScanNumberRange().lowerEndpoint() : 1;
+    return scan -> selection.matches(new MsdkScanWrapper(scan) {
+      @Override
+      public float getRetentionTime() {
+        return super.getRetentionTime() / 60f;
+      }
+    }, scanNumberOffset);
+  }
+
   private double[][] applyMassDetection(MZmineProcessingStep<MassDetector> msDetector,
       MsdkScanWrapper scan) {
     // run mass detection on data object
@@ -162,41 +211,58 @@ public class MSDKmzMLImportTask extends AbstractTask {
   }
 
   public void buildLCMSFile(io.github.msdk.datamodel.RawDataFile file) throws IOException {
-    for (MsScan scan : file.getScans()) {
-      MzMLMsScan mzMLScan = (MzMLMsScan) scan;
+    final List<MsScan> scans = file.getScans();
+    final Scan[] batch = new Scan[Math.max(1, Math.min(BATCH_SIZE, scans.size()))];
 
-      Scan newScan = null;
+    for (int start = 0; start < scans.size() && !isCanceled(); start += batch.length) {
+      final int from = start;
+      final int size = Math.min(batch.length, scans.size() - start);
 
-      if (applyMassDetection) {
-        // wrap scan
-        MsdkScanWrapper wrapper = new MsdkScanWrapper(scan);
-        double[][] mzIntensities = null;
-
-        // apply mass detection
-        if (ms1Detector != null && wrapper.getMSLevel() == 1) {
-          mzIntensities = applyMassDetection(ms1Detector, wrapper);
-        } else if (ms2Detector != null && wrapper.getMSLevel() >= 2) {
-          mzIntensities = applyMassDetection(ms2Detector, wrapper);
-        }
+      // decoding the binary arrays, mass detection and storing the data points is done
+      // concurrently, but the scans are added to the raw data file in their original order
+      IntStream.range(0, size).parallel()
+          .forEach(i -> batch[i] = convertScan((MzMLMsScan) scans.get(from + i)));
 
-        if(mzIntensities != null) {
-          // create mass list and scan. Override data points and spectrum type
-          newScan = ConversionUtils.msdkScanToSimpleScan(newMZmineFile, mzMLScan, mzIntensities[0],
-              mzIntensities[1], MassSpectrumType.CENTROIDED);
-          ScanPointerMassList newMassList = new ScanPointerMassList(newScan);
-          newScan.addMassList(newMassList);
-        }
+      for (int i = 0; i < size; i++) {
+        newMZmineFile.addScan(batch[i]);
+        batch[i] = null;
       }
+      parsedScans += size;
+      description =
+          "Importing " + file.getName() + ", parsed " + parsedScans + "/" + totalScans + " scans";
+    }
+  }
 
-      if (newScan == null) {
-        newScan = ConversionUtils.msdkScanToSimpleScan(newMZmineFile, mzMLScan);
+  /**
+   * Decodes the data points of the given scan and converts it to a {@link Scan}. Mass detection is
+   * applied, if selected in the advanced import parameters.
+   */
+  private Scan convertScan(MzMLMsScan mzMLScan) {
+    mzMLScan.decodeDataPoints();
+
+    if (applyMassDetection) {
+      // wrap scan
+      MsdkScanWrapper wrapper = new MsdkScanWrapper(mzMLScan);
+      double[][] mzIntensities = null;
+
+      // apply mass detection
+      if (ms1Detector != null && wrapper.getMSLevel() == 1) {
+        mzIntensities = applyMassDetection(ms1Detector, wrapper);
+      } else if (ms2Detector != null && wrapper.getMSLevel() >= 2) {
+        mzIntensities = applyMassDetection(ms2Detector, wrapper);
       }
 
-      newMZmineFile.addScan(newScan);
-      parsedScans++;
-      description =
-          "Importing " + file.getName() + ", parsed " + parsedScans + "/" + totalScans + " scans";
+      if (mzIntensities != null) {
+        // create mass list and scan. Override data points and spectrum type
+        Scan newScan = ConversionUtils.msdkScanToSimpleScan(newMZmineFile, mzMLScan,
+            mzIntensities[0], mzIntensities[1], MassSpectrumType.CENTROIDED);
+        ScanPointerMassList newMassList = new ScanPointerMassList(newScan);
+        newScan.addMassList(newMassList);
+        return newScan;
+      }
     }
+
+    return ConversionUtils.msdkScanToSimpleScan(newMZmineFile, mzMLScan);
   }
 
   public void buildIonMobilityFile(io.github.msdk.datamodel.RawDataFile file) throws IOException {
@@ -17,15 +17,22 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import io.github.msdk.MSDKException;
 import io.github.msdk.MSDKMethod;
+import io.github.msdk.MSDKRuntimeException;
 import io.github.msdk.datamodel.Chromatogram;
 import io.github.msdk.datamodel.MsScan;
 import io.github.msdk.datamodel.RawDataFile;
+import io.github.mzmine.modules.io.import_mzml_msdk.msdk.data.MzMLIndex;
 import io.github.mzmine.modules.io.import_mzml_msdk.msdk.data.MzMLParser;
 import io.github.mzmine.modules.io.import_mzml_msdk.msdk.data.MzMLRawDataFile;
+import io.github.mzmine.modules.io.import_mzml_msdk.msdk.data.MzMLTags;
 import io.github.mzmine.modules.io.import_mzml_msdk.msdk.util.ByteBufferInputStream;
 import io.github.mzmine.modules.io.import_mzml_msdk.msdk.util.FileMemoryMapper;
 import javolution.text.CharArray;
@@ -53,6 +60,13 @@ public class MzMLFileImportMethod implements MSDKMethod<RawDataFile> {
   private final Logger logger = Logger.getLogger(this.getClass().getName());
   private Predicate<MsScan> msScanPredicate = s -> true;
   private Predicate<Chromatogram> chromatogramPredicate = c -> true;
+  private Predicate<MsScan> scanFilter = s -> true;
+
+  /**
+   * Minimum number of spectra or chromatograms that are parsed by one thread, if the file is
+   * indexed.
+   */
+  private static final int MIN_ELEMENTS_PER_CHUNK = 64;
 
   /**
    * <p>
@@ -202,9 +216,11 @@ public class MzMLFileImportMethod implements MSDKMethod<RawDataFile> {
 
       InputStream is = null;
 
+      MzMLIndex index = null;
       if (mzMLFile != null) {
         logger.info("Began parsing file: " + mzMLFile.getAbsolutePath());
         is = FileMemoryMapper.mapToMemory(mzMLFile);
+        index = MzMLIndex.read((ByteBufferInputStream) is);
       } else if (inputStream != null) {
         logger.info("Began parsing file from stream");
         is = inputStream;
@@ -247,6 +263,13 @@ public class MzMLFileImportMethod implements MSDKMethod<RawDataFile> {
             case XMLStreamConstants.START_ELEMENT:
               final CharArray openingTagName = xmlStreamReader.getLocalName();
               parser.processOpeningTag(xmlStreamReader, is, openingTagName);
+
+              // the header was parsed, continue with the indexed spectra and chromatograms
+              if (index != null && (openingTagName.contentEquals(MzMLTags.TAG_SPECTRUM_LIST)
+                  || openingTagName.contentEquals(MzMLTags.TAG_CHROMATOGRAM_LIST))) {
+                parseIndexedElements(parser, index, (ByteBufferInputStream) is);
+                eventType = XMLStreamConstants.END_DOCUMENT;
+              }
               break;
 
             case XMLStreamConstants.END_ELEMENT:
@@ -265,6 +288,8 @@ public class MzMLFileImportMethod implements MSDKMethod<RawDataFile> {
         if (xmlStreamReader != null)
           xmlStreamReader.close();
       }
+      if (canceled)
+        return null;
       progress = 1f;
       logger.info("Parsing Complete");
     } catch (IOException | XMLStreamException e) {
@@ -276,6 +301,53 @@ public class MzMLFileImportMethod implements MSDKMethod<RawDataFile> {
   }
 
 
+  /**
+   * <p>
+   * Parses the spectra and chromatograms of an indexed file at their offsets. The offsets are split
+   * into chunks that are parsed concurrently, each by its own {@link MzMLParser MzMLParser}.
+   * </p>
+   */
+  private void parseIndexedElements(MzMLParser headerParser, MzMLIndex index,
+      ByteBufferInputStream is) {
+    final long[] spectra = index.getSpectrumOffsets();
+    final long[] chromatograms = index.getChromatogramOffsets();
+    final int total = spectra.length + chromatograms.length;
+    final AtomicInteger parsed = new AtomicInteger(0);
+
+    for (long[] offsets : new long[][] {spectra, chromatograms}) {
+      final String listTag =
+          offsets == spectra ? MzMLTags.TAG_SPECTRUM_LIST : MzMLTags.TAG_CHROMATOGRAM_LIST;
+      final int numChunks = Math.min(Runtime.getRuntime().availableProcessors() * 4,
+          (offsets.length + MIN_ELEMENTS_PER_CHUNK - 1) / MIN_ELEMENTS_PER_CHUNK);
+
+      final List<MzMLParser> chunkParsers = IntStream.range(0, numChunks).parallel()
+          .mapToObj(chunk -> {
+            final int from = (int) ((long) offsets.length * chunk / numChunks);
+            final int to = (int) ((long) offsets.length * (chunk + 1) / numChunks);
+            final MzMLParser chunkParser = new MzMLParser(headerParser);
+            final ByteBufferInputStream elementStream = is.copy();
+            final XMLStreamReaderImpl xmlStreamReader = new XMLStreamReaderImpl();
+            try {
+              for (int i = from; i < to && !canceled; i++) {
+                elementStream.position(offsets[i]);
+                xmlStreamReader.setInput(elementStream, "UTF-8");
+                chunkParser.parseIndexedElement(xmlStreamReader, is, offsets[i], listTag);
+                xmlStreamReader.reset();
+                progress = (float) parsed.incrementAndGet() / total;
+              }
+            } catch (XMLStreamException e) {
+              throw new MSDKRuntimeException(e);
+            }
+            return chunkParser;
+          }).collect(Collectors.toList());
+
+      // keep the order of the file
+      for (MzMLParser chunkParser : chunkParsers) {
+        chunkParser.addParsedElementsTo(headerParser);
+      }
+    }
+  }
+
   /** {@inheritDoc} */
   @Override
   public Float getFinishedPercentage() {
@@ -320,6 +392,31 @@ public class MzMLFileImportMethod implements MSDKMethod<RawDataFile> {
     return chromatogramPredicate;
   }
 
+  /**
+   * <p>
+   * Getter for the field <code>scanFilter</code>.
+   * </p>
+   *
+   * @return {@link Predicate Predicate} that {@link MsScan MsScan}s have to pass to be added to the
+   *         {@link MzMLRawDataFile RawDataFile} at all. Evaluates to true always, if it wasn't set
+   */
+  public Predicate<MsScan> getScanFilter() {
+    return scanFilter;
+  }
+
+  /**
+   * <p>
+   * Setter for the field <code>scanFilter</code>. In contrast to the <code>msScanPredicate</code>,
+   * which only decides which scans are pre-loaded, scans that do not pass this filter are dropped.
+   * If the source is an indexed mzML file, the binary data of dropped scans is not parsed at all.
+   * </p>
+   *
+   * @param scanFilter {@link Predicate Predicate} that is tested with the meta data of each scan
+   */
+  public void setScanFilter(Predicate<MsScan> scanFilter) {
+    this.scanFilter = scanFilter;
+  }
+
   /**
    * <p>
    * Getter for the field <code>mzMLFile</code>.
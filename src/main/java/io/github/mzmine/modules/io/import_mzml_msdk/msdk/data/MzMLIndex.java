@@ -0,0 +1,308 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.import_mzml_msdk.msdk.data;
+
+import io.github.mzmine.modules.io.import_mzml_msdk.msdk.util.ByteBufferInputStream;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javolution.text.CharArray;
+import javolution.xml.internal.stream.XMLStreamReaderImpl;
+import javolution.xml.stream.XMLStreamConstants;
+
+/**
+ * The byte offsets of the spectra and chromatograms of an indexedmzML file, as listed in its
+ * {@code <indexList>}. The offsets allow to parse single spectra without reading the whole
+ * document.
+ */
+public class MzMLIndex {
+
+  private static final Logger logger = Logger.getLogger(MzMLIndex.class.getName());
+
+  /**
+   * The {@code <indexListOffset>} is located in the last bytes of the file, followed only by the
+   * file checksum and the closing tag.
+   */
+  private static final int TAIL_LENGTH = 4096;
+  private static final Pattern INDEX_LIST_OFFSET = Pattern.compile(
+      "<" + MzMLTags.TAG_INDEX_LIST_OFFSET + ">\\s*(\\d+)\\s*</" + MzMLTags.TAG_INDEX_LIST_OFFSET
+          + ">");
+  private static final Pattern COUNT_ATTRIBUTE =
+      Pattern.compile("\\s" + MzMLTags.ATTR_COUNT + "\\s*=\\s*[\"'](\\d+)[\"']");
+  private static final int SEARCH_BUFFER_LENGTH = 1 << 16;
+  private static final int MAX_START_TAG_LENGTH = 1024;
+
+  private final long[] spectrumOffsets;
+  private final long[] chromatogramOffsets;
+
+  private MzMLIndex(long[] spectrumOffsets, long[] chromatogramOffsets) {
+    this.spectrumOffsets = spectrumOffsets;
+    this.chromatogramOffsets = chromatogramOffsets;
+  }
+
+  /**
+   * Reads the index of an indexedmzML file. The index is only used if all offsets point to the
+   * start of a {@code <spectrum>} or {@code <chromatogram>} element, because some converters write
+   * character instead of byte offsets, and if the number of offsets matches the count of the
+   * {@code <spectrumList>} and {@code <chromatogramList>}, because an incomplete index would drop
+   * scans.
+   *
+   * @param is The memory-mapped file. The position of the stream is not changed.
+   * @return The index or null, if the file is not indexed or the index is invalid.
+   */
+  @Nullable
+  public static MzMLIndex read(@Nonnull ByteBufferInputStream is) {
+    try {
+      final long indexListOffset = findIndexListOffset(is);
+      if (indexListOffset < 0 || indexListOffset >= is.length()) {
+        return null;
+      }
+
+      final LongArrayList spectra = new LongArrayList();
+      final LongArrayList chromatograms = new LongArrayList();
+      final ByteBufferInputStream indexStream = is.copy();
+      indexStream.position(indexListOffset);
+
+      final XMLStreamReaderImpl xmlStreamReader = new XMLStreamReaderImpl();
+      try {
+        xmlStreamReader.setInput(indexStream, "UTF-8");
+        LongArrayList currentIndex = null;
+        final StringBuilder offset = new StringBuilder();
+        int eventType;
+        do {
+          eventType = xmlStreamReader.next();
+          if (eventType == XMLStreamConstants.START_ELEMENT) {
+            final CharArray name = xmlStreamReader.getLocalName();
+            if (name.contentEquals(MzMLTags.TAG_INDEX)) {
+              final CharArray indexName =
+                  xmlStreamReader.getAttributeValue(null, MzMLTags.ATTR_NAME);
+              currentIndex = indexName == null ? null
+                  : indexName.contentEquals(MzMLTags.TAG_SPECTRUM) ? spectra
+                      : indexName.contentEquals(MzMLTags.TAG_CHROMATOGRAM) ? chromatograms : null;
+            } else if (name.contentEquals(MzMLTags.TAG_OFFSET)) {
+              offset.setLength(0);
+            } else if (!name.contentEquals(MzMLTags.TAG_INDEX_LIST)) {
+              // the offset does not point to the index list
+              return null;
+            }
+          } else if (eventType == XMLStreamConstants.CHARACTERS) {
+            offset.append(xmlStreamReader.getText());
+          } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+            final CharArray name = xmlStreamReader.getLocalName();
+            if (name.contentEquals(MzMLTags.TAG_OFFSET) && currentIndex != null) {
+              currentIndex.add(Long.parseLong(offset.toString().trim()));
+            } else if (name.contentEquals(MzMLTags.TAG_INDEX_LIST)) {
+              break;
+            }
+          }
+        } while (eventType != XMLStreamConstants.END_DOCUMENT);
+      } finally {
+        xmlStreamReader.close();
+      }
+
+      if (!isValid(is, spectra, MzMLTags.TAG_SPECTRUM) || !isValid(is, chromatograms,
+          MzMLTags.TAG_CHROMATOGRAM)) {
+        logger.info("The index of the mzML file does not match the file content, it is ignored");
+        return null;
+      }
+
+      // the spectrum list starts before the first spectrum, the chromatogram list after the last
+      // spectrum and before the first chromatogram
+      final long firstChromatogram =
+          chromatograms.isEmpty() ? indexListOffset : chromatograms.getLong(0);
+      final long firstSpectrum = spectra.isEmpty() ? firstChromatogram : spectra.getLong(0);
+      final long lastSpectrum = spectra.isEmpty() ? 0 : spectra.getLong(spectra.size() - 1);
+      final long spectrumCount =
+          readListCount(is, 0, firstSpectrum, MzMLTags.TAG_SPECTRUM_LIST);
+      final long chromatogramCount =
+          readListCount(is, lastSpectrum, firstChromatogram, MzMLTags.TAG_CHROMATOGRAM_LIST);
+      if ((spectrumCount >= 0 && spectrumCount != spectra.size()) || (chromatogramCount >= 0
+          && chromatogramCount != chromatograms.size())) {
+        logger.warning("The index of the mzML file lists " + spectra.size() + " spectra and "
+            + chromatograms.size() + " chromatograms, but the file contains " + spectrumCount
+            + " spectra and " + chromatogramCount
+            + " chromatograms. The index is ignored and the file is parsed sequentially.");
+        return null;
+      }
+      return new MzMLIndex(spectra.toLongArray(), chromatograms.toLongArray());
+
+    } catch (Exception e) {
+      logger.log(Level.INFO, "Cannot read the index of the mzML file, it is ignored", e);
+      return null;
+    }
+  }
+
+  /**
+   * @return The offset of the index list or -1, if the file does not contain one.
+   */
+  private static long findIndexListOffset(ByteBufferInputStream is) {
+    final ByteBufferInputStream tailStream = is.copy();
+    final long tailStart = Math.max(0, is.length() - TAIL_LENGTH);
+    tailStream.position(tailStart);
+
+    final byte[] tail = new byte[(int) (is.length() - tailStart)];
+    int read = 0;
+    while (read < tail.length) {
+      final int n = tailStream.read(tail, read, tail.length - read);
+      if (n <= 0) {
+        break;
+      }
+      read += n;
+    }
+
+    final Matcher matcher =
+        INDEX_LIST_OFFSET.matcher(new String(tail, 0, read, StandardCharsets.ISO_8859_1));
+    long offset = -1;
+    while (matcher.find()) {
+      offset = Long.parseLong(matcher.group(1));
+    }
+    return offset;
+  }
+
+  /**
+   * Checks that the offsets are increasing and that each offset points to an element of the
+   * given name.
+   */
+  private static boolean isValid(ByteBufferInputStream is, LongArrayList offsets, String tag) {
+    final ByteBufferInputStream stream = is.copy();
+    final byte[] expected = ("<" + tag).getBytes(StandardCharsets.ISO_8859_1);
+    final byte[] actual = new byte[expected.length + 1];
+    long last = -1;
+    for (int i = 0; i < offsets.size(); i++) {
+      final long offset = offsets.getLong(i);
+      if (offset <= last || offset + actual.length > is.length()) {
+        return false;
+      }
+      last = offset;
+
+      stream.position(offset);
+      int read = 0;
+      while (read < actual.length) {
+        final int n = stream.read(actual, read, actual.length - read);
+        if (n <= 0) {
+          return false;
+        }
+        read += n;
+      }
+      for (int j = 0; j < expected.length; j++) {
+        if (actual[j] != expected[j]) {
+          return false;
+        }
+      }
+      // the name has to end here, e.g. <spectrum but not <spectrumList
+      if (!Character.isWhitespace(actual[expected.length]) && actual[expected.length] != '>') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reads the count attribute of the first element with the given name that starts in the given
+   * byte range.
+   *
+   * @return The count, 0 if there is no such element or -1 if the element has no valid count.
+   */
+  private static long readListCount(ByteBufferInputStream is, long from, long to, String tag) {
+    final long start = findStartTag(is, from, to, tag);
+    if (start < 0) {
+      return 0;
+    }
+
+    final ByteBufferInputStream stream = is.copy();
+    stream.position(start);
+    final byte[] startTag = new byte[(int) Math.min(MAX_START_TAG_LENGTH, is.length() - start)];
+    int length = 0;
+    while (length < startTag.length) {
+      final int b = stream.read();
+      if (b < 0 || b == '>') {
+        break;
+      }
+      startTag[length++] = (byte) b;
+    }
+
+    final Matcher matcher =
+        COUNT_ATTRIBUTE.matcher(new String(startTag, 0, length, StandardCharsets.ISO_8859_1));
+    return matcher.find() ? Long.parseLong(matcher.group(1)) : -1;
+  }
+
+  /**
+   * @return The offset of the first start tag of the given name that starts in the given byte
+   * range or -1, if there is none.
+   */
+  private static long findStartTag(ByteBufferInputStream is, long from, long to, String tag) {
+    final byte[] pattern = ("<" + tag).getBytes(StandardCharsets.ISO_8859_1);
+    final ByteBufferInputStream stream = is.copy();
+    final byte[] buffer = new byte[SEARCH_BUFFER_LENGTH];
+
+    // the buffer overlaps the previous one, so that tags crossing the buffer end are found
+    for (long bufferStart = from; bufferStart < to;
+        bufferStart += SEARCH_BUFFER_LENGTH - pattern.length) {
+      stream.position(bufferStart);
+      final int length =
+          (int) Math.min(SEARCH_BUFFER_LENGTH, Math.min(to + pattern.length, is.length())
+              - bufferStart);
+      int read = 0;
+      while (read < length) {
+        final int n = stream.read(buffer, read, length - read);
+        if (n <= 0) {
+          break;
+        }
+        read += n;
+      }
+
+      for (int i = 0; i + pattern.length < read && bufferStart + i < to; i++) {
+        int j = 0;
+        while (j < pattern.length && buffer[i + j] == pattern[j]) {
+          j++;
+        }
+        final byte next = buffer[i + pattern.length];
+        // the name has to end here, e.g. <spectrumList but not <spectrumListX
+        if (j == pattern.length && (Character.isWhitespace(next) || next == '>' || next == '/')) {
+          return bufferStart + i;
+        }
+      }
+      if (read < length) {
+        break;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return The byte offsets of the {@code <spectrum>} elements in document order.
+   */
+  @Nonnull
+  public long[] getSpectrumOffsets() {
+    return spectrumOffsets;
+  }
+
+  /**
+   * @return The byte offsets of the {@code <chromatogram>} elements in document order.
+   */
+  @Nonnull
+  public long[] getChromatogramOffsets() {
+    return chromatogramOffsets;
+  }
+}
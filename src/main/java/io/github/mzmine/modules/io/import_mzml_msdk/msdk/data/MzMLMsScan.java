@@ -37,6 +37,7 @@ import io.github.msdk.spectra.centroidprofiledetection.SpectrumTypeDetectionAlgo
 import io.github.msdk.util.MsSpectrumUtil;
 import io.github.msdk.util.tolerances.MzTolerance;
 import io.github.mzmine.datamodel.MobilityType;
+import io.github.mzmine.modules.io.import_mzml_msdk.msdk.util.ByteBufferInputStream;
 
 
 /**
@@ -237,17 +238,7 @@ public class MzMLMsScan implements MsScan {
   @Override
   public double[] getMzValues(double array[]) {
     if (mzValues == null) {
-      if (getMzBinaryDataInfo().getArrayLength() != numOfDataPoints) {
-        logger.warning(
-            "m/z binary data array contains a different array length from the default array length of the scan (#"
-                + getScanNumber() + ")");
-      }
-
-      try {
-        mzValues = MzMLPeaksDecoder.decodeToDouble(inputStream, getMzBinaryDataInfo(), array);
-      } catch (Exception e) {
-        throw (new MSDKRuntimeException(e));
-      }
+      mzValues = decodeMzValues(inputStream, array);
     }
 
     if (array == null || array.length < getNumberOfDataPoints()) {
@@ -265,18 +256,7 @@ public class MzMLMsScan implements MsScan {
   @Override
   public float[] getIntensityValues(float array[]) {
     if (intensityValues == null) {
-      if (getIntensityBinaryDataInfo().getArrayLength() != numOfDataPoints) {
-        logger.warning(
-            "Intensity binary data array contains a different array length from the default array length of the scan (#"
-                + getScanNumber() + ")");
-      }
-
-      try {
-        intensityValues =
-            MzMLPeaksDecoder.decodeToFloat(inputStream, getIntensityBinaryDataInfo(), array);
-      } catch (Exception e) {
-        throw (new MSDKRuntimeException(e));
-      }
+      intensityValues = decodeIntensityValues(inputStream, array);
     }
 
     if (array == null || array.length < numOfDataPoints) {
@@ -288,6 +268,53 @@ public class MzMLMsScan implements MsScan {
     return array;
   }
 
+  /**
+   * <p>
+   * Decodes the m/z and intensity values of this scan, so they are cached for subsequent calls to
+   * {@link #getMzValues(double[])} and {@link #getIntensityValues(float[])}. If the scan was read
+   * from a memory-mapped file, the values are decoded from a private copy of the mapped stream, so
+   * multiple scans of the same file can be decoded concurrently.
+   * </p>
+   */
+  public void decodeDataPoints() {
+    final InputStream is = inputStream instanceof ByteBufferInputStream
+        ? ((ByteBufferInputStream) inputStream).copy() : inputStream;
+    if (mzValues == null) {
+      mzValues = decodeMzValues(is, null);
+    }
+    if (intensityValues == null) {
+      intensityValues = decodeIntensityValues(is, null);
+    }
+  }
+
+  private double[] decodeMzValues(InputStream is, double array[]) {
+    if (getMzBinaryDataInfo().getArrayLength() != numOfDataPoints) {
+      logger.warning(
+          "m/z binary data array contains a different array length from the default array length of the scan (#"
+              + getScanNumber() + ")");
+    }
+
+    try {
+      return MzMLPeaksDecoder.decodeToDouble(is, getMzBinaryDataInfo(), array);
+    } catch (Exception e) {
+      throw (new MSDKRuntimeException(e));
+    }
+  }
+
+  private float[] decodeIntensityValues(InputStream is, float array[]) {
+    if (getIntensityBinaryDataInfo().getArrayLength() != numOfDataPoints) {
+      logger.warning(
+          "Intensity binary data array contains a different array length from the default array length of the scan (#"
+              + getScanNumber() + ")");
+    }
+
+    try {
+      return MzMLPeaksDecoder.decodeToFloat(is, getIntensityBinaryDataInfo(), array);
+    } catch (Exception e) {
+      throw (new MSDKRuntimeException(e));
+    }
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -26,6 +26,8 @@ import io.github.mzmine.modules.io.import_mzml_msdk.msdk.MzMLFileImportMethod;
 import io.github.mzmine.modules.io.import_mzml_msdk.msdk.util.TagTracker;
 import javolution.text.CharArray;
 import javolution.xml.internal.stream.XMLStreamReaderImpl;
+import javolution.xml.stream.XMLStreamConstants;
+import javolution.xml.stream.XMLStreamException;
 import javolution.xml.stream.XMLStreamReader;
 
 /**
@@ -40,6 +42,12 @@ public class MzMLParser {
   private final MzMLRawDataFile newRawFile;
   private final MzMLFileImportMethod importer;
 
+  /**
+   * Position of the parsed element in the file, if single elements of an indexed file are parsed.
+   * The positions of the binary data are relative to the start of the element in this case.
+   */
+  private long elementOffset = 0;
+
   /**
    * <p>
    * Constructor for {@link MzMLParser MzMLParser}
@@ -55,6 +63,26 @@ public class MzMLParser {
         vars.spectrumList, vars.chromatogramsList);
   }
 
+  /**
+   * <p>
+   * Constructor for a parser that reads single spectra or chromatograms of an indexed mzML file
+   * with {@link #parseIndexedElement(XMLStreamReaderImpl, InputStream, long, String)}. The
+   * parsed elements are collected by this parser and added to the raw data file of the header
+   * parser by {@link #addParsedElementsTo(MzMLParser)}, so multiple parts of a file can be parsed
+   * concurrently.
+   * </p>
+   *
+   * @param headerParser the parser that already parsed the header of the file, including the
+   *        <code>&lt;referenceableParamGroupList&gt;</code>
+   */
+  public MzMLParser(MzMLParser headerParser) {
+    this.vars = new Vars();
+    this.vars.referenceableParamGroupList = headerParser.vars.referenceableParamGroupList;
+    this.tracker = new TagTracker();
+    this.importer = headerParser.importer;
+    this.newRawFile = headerParser.newRawFile;
+  }
+
   /**
    * <p>
    * Carry out the required parsing of the mzML data when the {@link XMLStreamReaderImpl
@@ -172,8 +200,8 @@ public class MzMLParser {
       } else if (openingTagName.contentEquals(MzMLTags.TAG_BINARY)) {
         if (vars.spectrum != null && !vars.skipBinaryDataArray) {
           int bomOffset = xmlStreamReader.getLocation().getBomLength();
-          vars.binaryDataInfo
-              .setPosition(xmlStreamReader.getLocation().getTotalCharsRead() + bomOffset);
+          vars.binaryDataInfo.setPosition(
+              elementOffset + xmlStreamReader.getLocation().getTotalCharsRead() + bomOffset);
         }
         if (!vars.skipBinaryDataArray) {
           if (MzMLCV.cvMzArray.equals(vars.binaryDataInfo.getArrayType().getAccession())) {
@@ -278,8 +306,8 @@ public class MzMLParser {
       } else if (openingTagName.contentEquals(MzMLTags.TAG_BINARY)) {
         if (vars.chromatogram != null && !vars.skipBinaryDataArray) {
           int bomOffset = xmlStreamReader.getLocation().getBomLength();
-          vars.binaryDataInfo
-              .setPosition(xmlStreamReader.getLocation().getTotalCharsRead() + bomOffset);
+          vars.binaryDataInfo.setPosition(
+              elementOffset + xmlStreamReader.getLocation().getTotalCharsRead() + bomOffset);
         }
         if (!vars.skipBinaryDataArray) {
           if (MzMLCV.cvRetentionTimeArray
@@ -431,7 +459,8 @@ public class MzMLParser {
       if (closingTagName.contentEquals(MzMLTags.TAG_SPECTRUM)) {
         if (vars.spectrum.getMzBinaryDataInfo() != null
             && vars.spectrum.getIntensityBinaryDataInfo() != null && (importer.getMzMLFile() != null
-                || importer.getMsScanPredicate().test(vars.spectrum))) {
+                || importer.getMsScanPredicate().test(vars.spectrum))
+            && importer.getScanFilter().test(vars.spectrum)) {
           vars.spectrumList.add(vars.spectrum);
         }
       }
@@ -489,6 +518,68 @@ public class MzMLParser {
     }
   }
 
+  /**
+   * <p>
+   * Parses a single <code>&lt;spectrum&gt;</code> or <code>&lt;chromatogram&gt;</code> element of
+   * an indexed mzML file. The input of the <code>xmlStreamReader</code> has to start at the given
+   * offset. Spectra that do not pass the scan filter of the importer are dropped as soon as their
+   * meta data is parsed, so their binary data is skipped.
+   * </p>
+   *
+   * @param xmlStreamReader an instance of {@link XMLStreamReaderImpl XMLStreamReaderImpl}
+   * @param is {@link InputStream InputStream} of the whole mzML file, used to decode the binary
+   *        data later on
+   * @param offset the offset of the element in the file
+   * @param listTag {@link MzMLTags#TAG_SPECTRUM_LIST} or {@link MzMLTags#TAG_CHROMATOGRAM_LIST}
+   * @throws XMLStreamException if the element cannot be parsed
+   */
+  public void parseIndexedElement(XMLStreamReaderImpl xmlStreamReader, InputStream is,
+      long offset, String listTag) throws XMLStreamException {
+    elementOffset = offset;
+    vars.spectrum = null;
+    vars.chromatogram = null;
+    tracker = new TagTracker();
+    tracker.enter(new CharArray(MzMLTags.TAG_MZML));
+    tracker.enter(new CharArray(MzMLTags.TAG_RUN));
+    tracker.enter(new CharArray(listTag));
+
+    int depth = 0;
+    boolean started = false;
+    do {
+      final int eventType = xmlStreamReader.next();
+      if (eventType == XMLStreamConstants.START_ELEMENT) {
+        final CharArray openingTagName = xmlStreamReader.getLocalName();
+        if (vars.spectrum != null
+            && openingTagName.contentEquals(MzMLTags.TAG_BINARY_DATA_ARRAY_LIST)
+            && !importer.getScanFilter().test(vars.spectrum)) {
+          return;
+        }
+        processOpeningTag(xmlStreamReader, is, openingTagName);
+        started = true;
+        depth++;
+      } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+        processClosingTag(xmlStreamReader, xmlStreamReader.getLocalName());
+        depth--;
+      } else if (eventType == XMLStreamConstants.END_DOCUMENT) {
+        return;
+      }
+    } while (!started || depth > 0);
+  }
+
+  /**
+   * <p>
+   * Adds the spectra and chromatograms parsed by
+   * {@link #parseIndexedElement(XMLStreamReaderImpl, InputStream, long, String)} to the raw data
+   * file of the header parser.
+   * </p>
+   *
+   * @param headerParser the parser this parser was created with
+   */
+  public void addParsedElementsTo(MzMLParser headerParser) {
+    headerParser.vars.spectrumList.addAll(vars.spectrumList);
+    headerParser.vars.chromatogramsList.addAll(vars.chromatogramsList);
+  }
+
   /**
    * <p>
    * Call this method when the <code>xmlStreamReader</code> enters <code>&lt;cvParam&gt;</code> tag
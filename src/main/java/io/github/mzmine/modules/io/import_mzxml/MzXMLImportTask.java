@@ -41,6 +41,7 @@ import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Base64;
 import java.util.Date;
 import java.util.LinkedList;
@@ -63,6 +64,8 @@ public class MzXMLImportTask extends AbstractTask {
   private Logger logger = Logger.getLogger(this.getClass().getName());
 
   private File file;
+  // if set, the data is parsed from this stream, e.g. a decompressing stream, instead of the file
+  private @Nullable InputStream inputStream;
   private MZmineProject project;
   private RawDataFile newMZmineFile;
   private int totalScans = 0, parsedScans;
@@ -116,12 +119,23 @@ public class MzXMLImportTask extends AbstractTask {
 
   public MzXMLImportTask(MZmineProject project, File fileToOpen, RawDataFile newMZmineFile,
       AdvancedSpectraImportParameters advancedParam) {
+    this(project, fileToOpen, null, newMZmineFile, advancedParam);
+  }
+
+  /**
+   * @param fileToOpen  The file, only used for its name if an input stream is given.
+   * @param inputStream The stream to parse instead of the file, e.g. the decompressed entry of an
+   *                    archive. Closed after parsing.
+   */
+  public MzXMLImportTask(MZmineProject project, File fileToOpen, @Nullable InputStream inputStream,
+      RawDataFile newMZmineFile, AdvancedSpectraImportParameters advancedParam) {
     super(null); // storage in raw data file
     // 256 kilo-chars buffer
     charBuffer = new StringBuilder(1 << 18);
     parentStack = new LinkedList<SimpleScan>();
     this.project = project;
     this.file = fileToOpen;
+    this.inputStream = inputStream;
     this.newMZmineFile = newMZmineFile;
 
     if(advancedParam != null) {
@@ -165,7 +179,11 @@ public class MzXMLImportTask extends AbstractTask {
       dataTypeFactory = DatatypeFactory.newInstance();
 
       SAXParser saxParser = factory.newSAXParser();
-      saxParser.parse(file, handler);
+      if (inputStream != null) {
+        saxParser.parse(inputStream, handler);
+      } else {
+        saxParser.parse(file, handler);
+      }
 
       project.addFile(newMZmineFile);
 
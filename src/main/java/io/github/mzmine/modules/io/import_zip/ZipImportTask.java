@@ -15,44 +15,68 @@
  * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
  * USA
  */
-
 package io.github.mzmine.modules.io.import_zip;
 
 import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.io.import_mzdata.MzDataImportTask;
+import io.github.mzmine.modules.io.import_mzml_msdk.MSDKmzMLImportTask;
+import io.github.mzmine.modules.io.import_mzxml.MzXMLImportTask;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.ExceptionUtils;
+import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.RawDataFileType;
 import io.github.mzmine.util.RawDataFileTypeDetector;
 import io.github.mzmine.util.RawDataFileUtils;
 import io.github.mzmine.util.StreamCopy;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import org.apache.commons.io.FilenameUtils;
 
+/**
+ * Imports the raw data files of a .zip or .gz archive. The mzML, mzXML and mzData files are parsed
+ * directly from the decompressing stream, all other formats need random access and are
+ * decompressed to a temporary file first. The entries of a zip archive are decompressed and
+ * imported in parallel.
+ */
 public class ZipImportTask extends AbstractTask {
 
+  private static final int BUFFER_SIZE = 1 << 16;
+
   private Logger logger = Logger.getLogger(this.getClass().getName());
 
   private final File fileToOpen;
   private final @Nonnull MZmineProject project;
   private final RawDataFileType fileType;
 
-  private File tmpDir, tmpFile;
-  private StreamCopy copy = null;
-  private Task decompressedOpeningTask = null;
+  private final List<Task> decompressedOpeningTasks = new CopyOnWriteArrayList<>();
+  private final List<Task> tmpFileOpeningTasks = new CopyOnWriteArrayList<>();
+  private final List<StreamCopy> copies = new CopyOnWriteArrayList<>();
+  private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+  private final AtomicInteger importedEntries = new AtomicInteger(0);
+  private MemoryMapStorage storage;
+  private int totalEntries = 1;
 
   public ZipImportTask(@Nonnull MZmineProject project, File fileToOpen, RawDataFileType fileType) {
     super(null); // storage in raw data file
@@ -71,110 +95,202 @@ public class ZipImportTask extends AbstractTask {
     setStatus(TaskStatus.PROCESSING);
     logger.info("Started opening compressed file " + fileToOpen);
 
-    try {
-
-      // Name of the uncompressed file
-      String newName = fileToOpen.getName();
-      if (newName.toLowerCase().endsWith(".zip") || newName.toLowerCase().endsWith(".gz")) {
-        newName = FilenameUtils.removeExtension(newName);
-      }
+    // one storage for all files of the archive, as in RawDataFileUtils
+    storage = MemoryMapStorage.forRawDataFile();
 
-      // Create decompressing stream
-      FileInputStream fis = new FileInputStream(fileToOpen);
-      InputStream is;
-      long decompressedSize = 0;
+    try {
       switch (fileType) {
         case ZIP:
-          ZipInputStream zis = new ZipInputStream(fis);
-          ZipEntry entry = zis.getNextEntry();
-          newName = entry.getName();
-          decompressedSize = entry.getSize();
-          if (decompressedSize < 0)
-            decompressedSize = 0;
-          is = zis;
+          try (ZipFile zip = new ZipFile(fileToOpen)) {
+            // skip the resource forks that are added by macOS
+            final List<? extends ZipEntry> entries = zip.stream()
+                .filter(entry -> !entry.isDirectory() && !entry.getName().startsWith("__MACOSX/")
+                    && !FilenameUtils.getName(entry.getName()).startsWith("._"))
+                .collect(Collectors.toList());
+            totalEntries = Math.max(1, entries.size());
+            // each entry is inflated independently, the parallel stream runs on the pool of the
+            // current task thread
+            entries.parallelStream().forEach(entry -> {
+              if (isCanceled()) {
+                return;
+              }
+              try (InputStream is = zip.getInputStream(entry)) {
+                importStream(FilenameUtils.getName(entry.getName()), is, entry.getSize());
+              } catch (Throwable e) {
+                logger.log(Level.SEVERE,
+                    "Could not open entry " + entry.getName() + " of file " + fileToOpen, e);
+                errors.add(entry.getName() + ": " + ExceptionUtils.exceptionToString(e));
+              }
+            });
+          }
           break;
         case GZIP:
-          is = new GZIPInputStream(fis);
-          // Ballpark a decompressedFile size so the GUI can show progress
-          decompressedSize = (long) (fileToOpen.length() * 1.5);
-          if (decompressedSize < 0)
-            decompressedSize = 0;
+          // Name of the uncompressed file
+          String newName = fileToOpen.getName();
+          if (newName.toLowerCase().endsWith(".gz")) {
+            newName = FilenameUtils.removeExtension(newName);
+          }
+          // concatenated gzip members are inflated one after the other by the stream
+          try (InputStream is = new GZIPInputStream(new FileInputStream(fileToOpen),
+              BUFFER_SIZE)) {
+            // Ballpark a decompressedFile size so the GUI can show progress
+            importStream(newName, is, (long) (fileToOpen.length() * 1.5));
+          }
           break;
         default:
           setErrorMessage("Cannot decompress file type: " + fileType);
           setStatus(TaskStatus.ERROR);
           return;
       }
+    } catch (Throwable e) {
+      logger.log(Level.SEVERE, "Could not open file " + fileToOpen, e);
+      setErrorMessage(ExceptionUtils.exceptionToString(e));
+      setStatus(TaskStatus.ERROR);
+      return;
+    }
 
-      tmpDir = Files.createTempDirectory("mzmine").toFile();
-      tmpFile = new File(tmpDir, newName);
-      logger.finest("Decompressing to file " + tmpFile);
-      tmpDir.deleteOnExit();
-      tmpFile.deleteOnExit();
-      FileOutputStream ous = new FileOutputStream(tmpFile);
+    if (isCanceled()) {
+      return;
+    }
 
-      // Decompress the contents
-      copy = new StreamCopy();
-      copy.copy(is, ous, decompressedSize);
+    // entries that are not raw data files are skipped, only fail if nothing could be imported
+    if (importedEntries.get() == 0) {
+      setErrorMessage(errors.isEmpty() ? "No raw data file found in " + fileToOpen
+          : String.join("\n", errors));
+      setStatus(TaskStatus.ERROR);
+      return;
+    }
+    if (!errors.isEmpty()) {
+      logger.warning("Some entries of " + fileToOpen + " could not be imported:\n" + String
+          .join("\n", errors));
+    }
+
+    logger.info("Finished opening compressed file " + fileToOpen);
+
+    // Update task status
+    setStatus(TaskStatus.FINISHED);
+
+  }
+
+  /**
+   * Imports the decompressed data of one archive entry. The formats that can be parsed from a
+   * stream are passed directly to their import task, the others are decompressed to a temporary
+   * file.
+   *
+   * @param name             The name of the decompressed file.
+   * @param is               The decompressing stream.
+   * @param decompressedSize The (estimated) decompressed size, used for the progress.
+   */
+  private void importStream(@Nonnull String name, @Nonnull InputStream is, long decompressedSize)
+      throws IOException {
+    final BufferedInputStream bis = new BufferedInputStream(is, BUFFER_SIZE);
+    final File decompressedFile = new File(fileToOpen.getParentFile(), name);
+
+    final RawDataFileType type = RawDataFileTypeDetector.detectDataFileType(name, bis);
+    logger.finest("Entry " + name + " of file " + fileToOpen + " type detected as " + type);
+    final Task task = type != null ? createStreamImportTask(decompressedFile, type, bis) : null;
+    if (task != null) {
+      runImportTask(task, name, false);
+      return;
+    }
+
+    // random access formats are imported from a temporary file
+    final File tmpDir = Files.createTempDirectory("mzmine").toFile();
+    final File tmpFile = new File(tmpDir, name);
+    logger.finest("Decompressing to file " + tmpFile);
+    tmpDir.deleteOnExit();
+    tmpFile.deleteOnExit();
 
-      // Close the streams
-      is.close();
-      ous.close();
+    try {
+      // Decompress the contents
+      final StreamCopy copy = new StreamCopy();
+      copies.add(copy);
+      try (FileOutputStream ous = new FileOutputStream(tmpFile)) {
+        copy.copy(bis, ous, Math.max(0, decompressedSize));
+      }
 
-      if (isCanceled())
+      if (isCanceled()) {
         return;
+      }
 
       // Find the type of the decompressed file
-      RawDataFileType fileType = RawDataFileTypeDetector.detectDataFileType(tmpFile);
+      final RawDataFileType fileType = RawDataFileTypeDetector.detectDataFileType(tmpFile);
       logger.finest("File " + tmpFile + " type detected as " + fileType);
-
       if (fileType == null) {
-        setErrorMessage("Could not determine the file type of file " + newName);
-        setStatus(TaskStatus.ERROR);
+        logger.warning("Skipping " + name + " of file " + fileToOpen
+            + ", the file type could not be determined");
         return;
       }
 
-      List<Task> newTasks = new ArrayList<>();
+      final List<Task> newTasks = new ArrayList<>();
       RawDataFileUtils.createRawDataImportTasks(project, newTasks, tmpFile);
       // Run the import module on the decompressed file
       if (newTasks.size() != 1) {
-        setErrorMessage("File type " + fileType + " of file " + newName + " is not supported.");
-        setStatus(TaskStatus.ERROR);
+        logger.warning("Skipping " + name + " of file " + fileToOpen + ", the file type "
+            + fileType + " is not supported");
         return;
       }
-      decompressedOpeningTask = newTasks.get(0);
-
-      // Run the underlying task
-      decompressedOpeningTask.run();
-
+      runImportTask(newTasks.get(0), name, true);
+    } finally {
       // Delete the temporary folder
       tmpFile.delete();
       tmpDir.delete();
+    }
+  }
 
-      if (isCanceled())
-        return;
+  /**
+   * @return The import task that parses the stream, or null if the type needs random access.
+   */
+  @Nullable
+  private Task createStreamImportTask(@Nonnull File file, @Nonnull RawDataFileType type,
+      @Nonnull InputStream is) throws IOException {
+    final RawDataFile newMZmineFile;
+    switch (type) {
+      case MZML:
+        newMZmineFile = MZmineCore.createNewFile(file.getName(), storage);
+        return new MSDKmzMLImportTask(project, file, is, newMZmineFile, null);
+      case MZML_IMS:
+        newMZmineFile = MZmineCore.createNewIMSFile(file.getName(), storage);
+        return new MSDKmzMLImportTask(project, file, is, newMZmineFile, null);
+      case MZXML:
+        newMZmineFile = MZmineCore.createNewFile(file.getName(), storage);
+        return new MzXMLImportTask(project, file, is, newMZmineFile, null);
+      case MZDATA:
+        newMZmineFile = MZmineCore.createNewFile(file.getName(), storage);
+        return new MzDataImportTask(project, file, is, newMZmineFile);
+      default:
+        return null;
+    }
+  }
 
-    } catch (Throwable e) {
-      e.printStackTrace();
-      logger.log(Level.SEVERE, "Could not open file " + fileToOpen, e);
-      setErrorMessage(ExceptionUtils.exceptionToString(e));
-      setStatus(TaskStatus.ERROR);
+  private void runImportTask(@Nonnull Task task, @Nonnull String name, boolean fromTmpFile) {
+    if (fromTmpFile) {
+      tmpFileOpeningTasks.add(task);
+    }
+    decompressedOpeningTasks.add(task);
+    if (isCanceled()) {
       return;
     }
 
-    logger.info("Finished opening compressed file " + fileToOpen);
-
-    // Update task status
-    setStatus(TaskStatus.FINISHED);
+    // Run the underlying task
+    task.run();
 
+    if (task.getStatus() == TaskStatus.ERROR) {
+      errors.add(name + ": " + task.getErrorMessage());
+    } else {
+      importedEntries.incrementAndGet();
+    }
   }
 
   @Override
   public String getTaskDescription() {
-    if (decompressedOpeningTask != null)
-      return decompressedOpeningTask.getTaskDescription();
-    else
+    if (decompressedOpeningTasks.size() == 1) {
+      return decompressedOpeningTasks.get(0).getTaskDescription();
+    } else if (!decompressedOpeningTasks.isEmpty()) {
+      return "Opening " + totalEntries + " files of " + fileToOpen;
+    } else {
       return "Decompressing file " + fileToOpen;
+    }
   }
 
   /**
@@ -182,31 +298,29 @@ public class ZipImportTask extends AbstractTask {
    */
   @Override
   public double getFinishedPercentage() {
-    if (decompressedOpeningTask != null)
-      return (decompressedOpeningTask.getFinishedPercentage() / 2.0) + 0.5; // Reports 50% to 100%
-    if (copy != null) {
-      // Reports up to 50%. In case of .gz files, the uncompressed size
-      // was only estimated, so we make sure the progress bar doesn't go
-      // over 100%
-      double copyProgress = copy.getProgress() / 2.0;
-      if (copyProgress > 0.5)
-        copyProgress = 0.5;
-      return copyProgress;
+    double progress = 0;
+    // Decompressing to a temporary file reports 0% to 50% of an entry, its import 50% to 100%.
+    // In case of .gz files, the uncompressed size was only estimated, so we make sure the
+    // progress bar doesn't go over 100%
+    for (StreamCopy copy : copies) {
+      progress += Math.min(copy.getProgress(), 1d) / 2.0;
+    }
+    for (Task task : decompressedOpeningTasks) {
+      progress += tmpFileOpeningTasks.contains(task) ? task.getFinishedPercentage() / 2.0
+          : task.getFinishedPercentage();
     }
-    return 0.0;
+    return Math.min(1d, progress / totalEntries);
   }
 
   @Override
   public void cancel() {
     super.cancel();
-    if (decompressedOpeningTask != null)
-      decompressedOpeningTask.cancel();
-    if (copy != null)
+    for (Task task : decompressedOpeningTasks) {
+      task.cancel();
+    }
+    for (StreamCopy copy : copies) {
       copy.cancel();
-    if ((tmpFile != null) && (tmpFile.exists()))
-      tmpFile.delete();
-    if ((tmpDir != null) && (tmpDir.exists()))
-      tmpDir.delete();
+    }
   }
 
 }
@@ -21,6 +21,7 @@ package io.github.mzmine.modules.io.projectload;
 import java.io.File;
 import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.impl.SimpleParameterSet;
+import io.github.mzmine.parameters.parametertypes.BooleanParameter;
 import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
 import io.github.mzmine.parameters.parametertypes.filenames.FileSelectionType;
 import io.github.mzmine.util.ExitCode;
@@ -37,8 +38,14 @@ public class ProjectLoaderParameters extends SimpleParameterSet {
   public static final FileNameParameter projectFile = new FileNameParameter("Project file",
       "File name of project to be loaded", FileSelectionType.OPEN);
 
+  public static final BooleanParameter loadOnDemand = new BooleanParameter("Load data on demand",
+      "If checked, the scan data of raw data files is read from the project file when it is "
+          + "accessed for the first time. Otherwise, all scan data is read when the project is "
+          + "opened.",
+      true);
+
   public ProjectLoaderParameters() {
-    super(new Parameter[] {projectFile});
+    super(new Parameter[] {projectFile, loadOnDemand});
   }
 
   @Override
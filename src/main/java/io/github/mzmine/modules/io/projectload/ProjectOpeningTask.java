@@ -37,6 +37,7 @@ import com.google.common.io.CountingInputStream;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.io.projectload.binary.RawDataFileBinaryOpenHandler;
 import io.github.mzmine.modules.io.projectload.version_2_5.PeakListOpenHandler_2_5;
 import io.github.mzmine.modules.io.projectload.version_2_5.RawDataFileOpenHandler_2_5;
 import io.github.mzmine.modules.io.projectload.version_2_5.UserParameterOpenHandler_2_5;
@@ -44,6 +45,7 @@ import io.github.mzmine.modules.io.projectload.version_3_0.PeakListOpenHandler_3
 import io.github.mzmine.modules.io.projectload.version_3_0.RawDataFileOpenHandler_3_0;
 import io.github.mzmine.modules.io.projectload.version_3_0.UserParameterOpenHandler_3_0;
 import io.github.mzmine.modules.io.projectsave.ProjectSavingTask;
+import io.github.mzmine.modules.io.projectsave.RawDataBinaryFormat;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.project.ProjectManager;
 import io.github.mzmine.project.impl.IMSRawDataFileImpl;
@@ -62,9 +64,11 @@ public class ProjectOpeningTask extends AbstractTask {
   private Logger logger = Logger.getLogger(this.getClass().getName());
 
   private File openFile;
+  private final boolean loadOnDemand;
   private MZmineProjectImpl newProject;
 
   private RawDataFileOpenHandler rawDataFileOpenHandler;
+  private RawDataFileBinaryOpenHandler binaryRawDataFileOpenHandler;
   private PeakListOpenHandler peakListOpenHandler;
   private UserParameterOpenHandler userParameterOpenHandler;
   private StreamCopy copyMachine;
@@ -80,11 +84,15 @@ public class ProjectOpeningTask extends AbstractTask {
   public ProjectOpeningTask(ParameterSet parameters) {
     super(null);
     this.openFile = parameters.getParameter(ProjectLoaderParameters.projectFile).getValue();
+    final Boolean onDemand =
+        parameters.getParameter(ProjectLoaderParameters.loadOnDemand).getValue();
+    this.loadOnDemand = onDemand == null || onDemand;
   }
 
   public ProjectOpeningTask(File openFile) {
     super(null);
     this.openFile = openFile;
+    this.loadOnDemand = true;
   }
 
   /**
@@ -181,6 +189,12 @@ public class ProjectOpeningTask extends AbstractTask {
       final Pattern imagingScansFilePattern =
           Pattern.compile(ImagingRawDataFileImpl.SAVE_IDENTIFIER + " #([\\d]+) (.*)\\.scans$");
 
+      // Raw data files saved in the binary format. The data entry is read together with the
+      // metadata entry.
+      final Pattern binaryRawFilePattern = Pattern.compile("(" + RawDataFileImpl.SAVE_IDENTIFIER
+          + "|" + IMSRawDataFileImpl.SAVE_IDENTIFIER + "|" + ImagingRawDataFileImpl.SAVE_IDENTIFIER
+          + ") #([\\d]+) (.*)" + Pattern.quote(RawDataBinaryFormat.METADATA_EXTENSION) + "$");
+
       final Pattern peakListPattern = Pattern.compile("Peak list #([\\d]+) (.*)\\.xml$");
 
       boolean versionInformationLoaded = false;
@@ -239,6 +253,31 @@ public class ProjectOpeningTask extends AbstractTask {
           loadRawDataFile(cis, fileID, fileName, false, false);
         }
 
+        // Load a raw data file saved in the binary format
+        final Matcher binaryRawFileMatcher = binaryRawFilePattern.matcher(entryName);
+        if (binaryRawFileMatcher.matches()) {
+          final String identifier = binaryRawFileMatcher.group(1);
+          final String fileID = binaryRawFileMatcher.group(2);
+          final String fileName = binaryRawFileMatcher.group(3);
+          final String dataEntryName = entryName.substring(0,
+              entryName.length() - RawDataBinaryFormat.METADATA_EXTENSION.length())
+              + RawDataBinaryFormat.DATA_EXTENSION;
+          final ZipEntry dataEntry = zipFile.getEntry(dataEntryName);
+          if (dataEntry == null) {
+            throw new IOException("Missing scans data for file ID " + fileID);
+          }
+          final boolean isIMS = identifier.equals(IMSRawDataFileImpl.SAVE_IDENTIFIER);
+          final boolean isImaging = identifier.equals(ImagingRawDataFileImpl.SAVE_IDENTIFIER);
+          if (loadOnDemand) {
+            loadBinaryRawDataFile(cis, null, dataEntryName, fileID, fileName, isIMS, isImaging);
+          } else {
+            try (InputStream dataStream = zipFile.getInputStream(dataEntry)) {
+              loadBinaryRawDataFile(cis, dataStream, dataEntryName, fileID, fileName, isIMS,
+                  isImaging);
+            }
+          }
+        }
+
         // Load the scan data of a raw data file
         final Matcher scansFileMatcher = scansFilePattern.matcher(entryName);
         if (scansFileMatcher.matches()) {
@@ -325,6 +364,10 @@ public class ProjectOpeningTask extends AbstractTask {
       rawDataFileOpenHandler.cancel();
     }
 
+    if (binaryRawDataFileOpenHandler != null) {
+      binaryRawDataFileOpenHandler.cancel();
+    }
+
     if (peakListOpenHandler != null) {
       peakListOpenHandler.cancel();
     }
@@ -447,6 +490,31 @@ public class ProjectOpeningTask extends AbstractTask {
 
   }
 
+  /**
+   * @param dataStream the stream of the data entry or null, if the data shall be read from the
+   *                   project file on demand
+   */
+  private void loadBinaryRawDataFile(InputStream metadataStream, InputStream dataStream,
+      String dataEntryName, String fileID, String fileName, boolean isIMSRawDataFile,
+      boolean isImagingFile) throws IOException {
+
+    logger.info("Loading raw data file #" + fileID + ": " + fileName);
+
+    currentLoadedObjectName = fileName;
+
+    binaryRawDataFileOpenHandler = new RawDataFileBinaryOpenHandler();
+    RawDataFile newFile = dataStream != null ? binaryRawDataFileOpenHandler
+        .readRawDataFile(metadataStream, dataStream, isIMSRawDataFile, isImagingFile)
+        : binaryRawDataFileOpenHandler.readRawDataFile(metadataStream, openFile, dataEntryName,
+            isIMSRawDataFile, isImagingFile);
+    if (newFile == null) {
+      return;
+    }
+    newProject.addFile(newFile);
+    dataFilesIDMap.put(fileID, newFile);
+
+  }
+
   /*
    * private void loadScansFile(InputStream is, String fileID, String fileName) throws IOException {
    * 
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.projectload.binary;
+
+import io.github.mzmine.datamodel.impl.storage.StoredValues;
+import java.nio.DoubleBuffer;
+import javax.annotation.Nonnull;
+
+/**
+ * Values in a region of a data block. The block is only read when the values are accessed, the
+ * number of values is known without reading it.
+ */
+final class BlockStoredValues implements StoredValues {
+
+  private final DataBlocks blocks;
+  private final int block;
+  private final int position;
+  private final int size;
+
+  private volatile StoredValues values;
+
+  /**
+   * @param position the byte position of the first value in the block
+   * @param size     the number of values
+   */
+  BlockStoredValues(@Nonnull DataBlocks blocks, int block, int position, int size) {
+    this.blocks = blocks;
+    this.block = block;
+    this.position = position;
+    this.size = size;
+  }
+
+  @Nonnull
+  private StoredValues values() {
+    StoredValues v = values;
+    if (v == null) {
+      final DoubleBuffer buffer = blocks.getBlock(block).duplicate().position(position)
+          .limit(position + size * Double.BYTES).slice().asDoubleBuffer();
+      v = values = StoredValues.of(buffer);
+    }
+    return v;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public double get(int index) {
+    return values().get(index);
+  }
+
+  @Override
+  public void get(int index, @Nonnull double[] dst, int dstOffset, int length) {
+    values().get(index, dst, dstOffset, length);
+  }
+
+  @Override
+  public long getStorageSize() {
+    return (long) size * Double.BYTES;
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.projectload.binary;
+
+import io.github.mzmine.util.MemoryMapStorage;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The data blocks of a raw data file saved in the binary format. Every block is copied to the
+ * memory-mapped storage of the raw data file as it is, without decoding the values.
+ * <p>
+ * The blocks are either read one after the other while the project is opened ({@link #read(int,
+ * ReadableByteChannel)}) or on demand, when a value of a block is accessed for the first
+ * time. In the latter case, the block is read from the project file. The project file is opened
+ * for every block and closed afterwards, so it is not locked while the project is in use.
+ */
+final class DataBlocks {
+
+  private static final Logger logger = Logger.getLogger(DataBlocks.class.getName());
+
+  private final String rawDataFileName;
+  @Nullable
+  private final MemoryMapStorage storage;
+  private final long[] blockOffsets;
+  private final long[] blockSizes;
+  private final AtomicReferenceArray<ByteBuffer> blocks;
+
+  // only set if the blocks are read on demand
+  @Nullable
+  private final File projectFile;
+  @Nullable
+  private final String dataEntryName;
+  private final long projectLastModified;
+
+  /**
+   * @param projectFile   the project file to read the blocks from on demand or null, if the blocks
+   *                      are read with {@link #read(int, ReadableByteChannel)}
+   * @param dataEntryName the name of the data entry in the project file
+   */
+  DataBlocks(@Nonnull ScanColumns columns, @Nullable MemoryMapStorage storage,
+      @Nullable File projectFile, @Nullable String dataEntryName) {
+    this.rawDataFileName = columns.name;
+    this.storage = storage;
+    this.blockSizes = columns.blockSizes;
+    this.blockOffsets = new long[blockSizes.length];
+    for (int b = 1; b < blockSizes.length; b++) {
+      blockOffsets[b] = blockOffsets[b - 1] + blockSizes[b - 1];
+    }
+    this.blocks = new AtomicReferenceArray<>(blockSizes.length);
+
+    this.projectFile = projectFile;
+    this.dataEntryName = dataEntryName;
+    this.projectLastModified = projectFile != null ? projectFile.lastModified() : 0;
+  }
+
+  int getNumberOfBlocks() {
+    return blockSizes.length;
+  }
+
+  long getBlockSize(int block) {
+    return blockSizes[block];
+  }
+
+  /**
+   * Reads a block from the channel. The blocks have to be read in order, starting with block 0.
+   */
+  void read(int block, @Nonnull ReadableByteChannel channel) throws IOException {
+    blocks.set(block, readBlock(storage, channel, blockSizes[block]));
+  }
+
+  /**
+   * @return the block. Reads it from the project file, if it was not read yet.
+   * @throws UncheckedIOException if the block cannot be read
+   */
+  @Nonnull
+  ByteBuffer getBlock(int block) {
+    ByteBuffer buffer = blocks.get(block);
+    if (buffer != null) {
+      return buffer;
+    }
+
+    synchronized (this) {
+      buffer = blocks.get(block);
+      if (buffer == null) {
+        try {
+          buffer = readFromProjectFile(block);
+        } catch (IOException e) {
+          throw new UncheckedIOException(
+              "Cannot read the scan data of " + rawDataFileName + " from the project file", e);
+        }
+        blocks.set(block, buffer);
+      }
+      return buffer;
+    }
+  }
+
+  @Nonnull
+  private ByteBuffer readFromProjectFile(int block) throws IOException {
+    if (projectFile == null || dataEntryName == null) {
+      throw new IOException("Block " + block + " was not read");
+    }
+    if (projectFile.lastModified() != projectLastModified) {
+      throw new IOException("The project file " + projectFile + " was modified after opening");
+    }
+
+    logger.finest(() -> "Reading block " + block + " of " + rawDataFileName + " from "
+        + projectFile);
+
+    try (ZipFile zipFile = new ZipFile(projectFile)) {
+      final ZipEntry entry = zipFile.getEntry(dataEntryName);
+      if (entry == null) {
+        throw new IOException("Missing entry " + dataEntryName + " in " + projectFile);
+      }
+      try (InputStream is = zipFile.getInputStream(entry)) {
+        // the entry is stored without compression, so skipping does not read the data
+        long toSkip = blockOffsets[block];
+        while (toSkip > 0) {
+          final long skipped = is.skip(toSkip);
+          if (skipped <= 0) {
+            throw new EOFException("Unexpected end of " + dataEntryName);
+          }
+          toSkip -= skipped;
+        }
+        return readBlock(storage, Channels.newChannel(is), blockSizes[block]);
+      }
+    }
+  }
+
+  @Nonnull
+  private static ByteBuffer readBlock(@Nullable MemoryMapStorage storage,
+      @Nonnull ReadableByteChannel channel, long numBytes) throws IOException {
+    if (storage != null) {
+      return storage.storeData(channel, numBytes);
+    }
+
+    if (numBytes > Integer.MAX_VALUE) {
+      throw new IOException("Cannot read " + numBytes + " bytes into a single buffer.");
+    }
+    final ByteBuffer block = ByteBuffer.allocate((int) numBytes);
+    while (block.hasRemaining()) {
+      if (channel.read(block) < 0) {
+        throw new EOFException("Unexpected end of the raw data blocks");
+      }
+    }
+    return block.flip().asReadOnlyBuffer();
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.projectload.binary;
+
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.impl.SimpleImagingScan;
+import io.github.mzmine.datamodel.impl.storage.StoredValues;
+import io.github.mzmine.modules.io.import_imzml.Coordinates;
+import javax.annotation.Nonnull;
+
+/**
+ * An imaging scan loaded from a binary data block. The values are not read until they are
+ * accessed.
+ */
+class MappedImagingScan extends SimpleImagingScan {
+
+  MappedImagingScan(@Nonnull RawDataFile dataFile, @Nonnull ScanColumns columns, int index,
+      @Nonnull StoredValues mzValues, @Nonnull StoredValues intensityValues) {
+    super(dataFile, columns.scanNumbers[index], columns.msLevels[index],
+        columns.retentionTimes[index], columns.precursorMzs[index],
+        columns.precursorCharges[index], null, null, columns.spectrumTypes[index],
+        columns.polarities[index], columns.scanDefinitions[index],
+        columns.getScanningMZRange(index),
+        new Coordinates(columns.coordinates[0][index], columns.coordinates[1][index],
+            columns.coordinates[2][index]));
+
+    setStoredDataPoints(mzValues, intensityValues, columns.scanSummary.getMzRange(index),
+        columns.scanSummary.getBasePeakIndex(index), columns.scanSummary.tics[index]);
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.projectload.binary;
+
+import io.github.mzmine.datamodel.impl.masslist.SimpleMassList;
+import io.github.mzmine.datamodel.impl.storage.StoredValues;
+import javax.annotation.Nonnull;
+
+/**
+ * A mass list loaded from a binary data block. The values are not read until they are accessed.
+ */
+class MappedMassList extends SimpleMassList {
+
+  MappedMassList(@Nonnull ScanColumns columns, int index, @Nonnull StoredValues mzValues,
+      @Nonnull StoredValues intensityValues) {
+    super(null, null, null);
+
+    setStoredDataPoints(mzValues, intensityValues, columns.massListSummary.getMzRange(index),
+        columns.massListSummary.getBasePeakIndex(index), columns.massListSummary.tics[index]);
+  }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.projectload.binary;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.ImsMsMsInfo;
+import io.github.mzmine.datamodel.MassList;
+import io.github.mzmine.datamodel.MobilityScan;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.BuildingMobilityScan;
+import io.github.mzmine.datamodel.impl.ImsMsMsInfoImpl;
+import io.github.mzmine.datamodel.impl.SimpleFrame;
+import io.github.mzmine.datamodel.impl.masslist.ScanPointerMassList;
+import io.github.mzmine.datamodel.impl.masslist.SimpleMassList;
+import io.github.mzmine.datamodel.impl.storage.StoredValues;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.io.projectload.binary.ScanColumns.MobilityColumns;
+import io.github.mzmine.modules.io.projectsave.RawDataBinaryFormat;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.util.MemoryMapStorage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+import javafx.scene.paint.Color;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Opens raw data files saved in the {@link RawDataBinaryFormat}. The data blocks are copied to
+ * the memory-mapped storage of the raw data file without decoding them. The scans and mass lists
+ * are created from the metadata columns and point to regions of these blocks, so their values are
+ * only read from the disk when they are accessed.
+ * <p>
+ * The blocks are either read while the project is opened or on demand, when a value of a block is
+ * accessed for the first time. In the latter case, only the metadata is read on open, see {@link
+ * DataBlocks}.
+ * <p>
+ * The mobility scans of ion mobility files are decoded and copied to the storage of their frames,
+ * so the blocks of these files are always read on open.
+ */
+public class RawDataFileBinaryOpenHandler {
+
+  private static final Logger logger =
+      Logger.getLogger(RawDataFileBinaryOpenHandler.class.getName());
+
+  private volatile boolean canceled = false;
+
+  /**
+   * Reads the raw data file including all data blocks.
+   *
+   * @param metadataStream       stream of the metadata entry
+   * @param dataStream           stream of the data entry
+   * @param isIMSRawDataFile     the file was saved as an ion mobility file
+   * @param isImagingRawDataFile the file was saved as an imaging file
+   * @return the raw data file or null, if opening was canceled
+   */
+  @Nullable
+  public RawDataFile readRawDataFile(@Nonnull InputStream metadataStream,
+      @Nonnull InputStream dataStream, boolean isIMSRawDataFile, boolean isImagingRawDataFile)
+      throws IOException {
+
+    final ScanColumns columns =
+        ScanColumns.read(new DataInputStream(new BufferedInputStream(metadataStream)));
+    final MemoryMapStorage storage = MemoryMapStorage.forRawDataFile();
+    final DataBlocks blocks = new DataBlocks(columns, storage, null, null);
+
+    final ReadableByteChannel channel = Channels.newChannel(dataStream);
+    for (int b = 0; b < blocks.getNumberOfBlocks(); b++) {
+      if (canceled) {
+        return null;
+      }
+      blocks.read(b, channel);
+    }
+
+    return createRawDataFile(columns, blocks, storage, isIMSRawDataFile, isImagingRawDataFile);
+  }
+
+  /**
+   * Reads the metadata of the raw data file. The data blocks are read from the project file when
+   * they are accessed for the first time.
+   *
+   * @param metadataStream       stream of the metadata entry
+   * @param projectFile          the project file
+   * @param dataEntryName        name of the data entry in the project file
+   * @param isIMSRawDataFile     the file was saved as an ion mobility file
+   * @param isImagingRawDataFile the file was saved as an imaging file
+   * @return the raw data file or null, if opening was canceled
+   */
+  @Nullable
+  public RawDataFile readRawDataFile(@Nonnull InputStream metadataStream,
+      @Nonnull File projectFile, @Nonnull String dataEntryName, boolean isIMSRawDataFile,
+      boolean isImagingRawDataFile) throws IOException {
+
+    final ScanColumns columns =
+        ScanColumns.read(new DataInputStream(new BufferedInputStream(metadataStream)));
+    final MemoryMapStorage storage = MemoryMapStorage.forRawDataFile();
+    final DataBlocks blocks = new DataBlocks(columns, storage, projectFile, dataEntryName);
+
+    return createRawDataFile(columns, blocks, storage, isIMSRawDataFile, isImagingRawDataFile);
+  }
+
+  public void cancel() {
+    canceled = true;
+  }
+
+  @Nullable
+  private RawDataFile createRawDataFile(@Nonnull ScanColumns columns, @Nonnull DataBlocks blocks,
+      @Nullable MemoryMapStorage storage, boolean isIMSRawDataFile, boolean isImagingRawDataFile)
+      throws IOException {
+
+    logger.info("Loading raw data file: " + columns.name);
+
+    final boolean isImaging = isImagingRawDataFile && columns.coordinates != null;
+    final boolean isIMS = isIMSRawDataFile && columns.mobility != null;
+    final RawDataFileImpl newRawDataFile;
+    if (isImaging) {
+      newRawDataFile = (RawDataFileImpl) MZmineCore.createNewImagingFile(columns.name, storage);
+    } else if (isIMS) {
+      newRawDataFile = (RawDataFileImpl) MZmineCore.createNewIMSFile(columns.name, storage);
+    } else {
+      if (isIMSRawDataFile) {
+        logger.warning("The mobility scans of " + columns.name + " were not saved in the project,"
+            + " the frames are loaded as regular scans.");
+      }
+      newRawDataFile = (RawDataFileImpl) MZmineCore.createNewFile(columns.name, storage);
+    }
+    newRawDataFile.setColor(Color.valueOf(columns.color));
+
+    final SimpleFrame[] frames = isIMS ? new SimpleFrame[columns.numScans] : null;
+    int mobilityScanIndex = 0;
+    int index = 0;
+    for (int b = 0; b < blocks.getNumberOfBlocks(); b++) {
+      if (canceled) {
+        return null;
+      }
+
+      int position = 0;
+      for (int s = 0; s < columns.blockScans[b]; s++, index++) {
+        final int numPoints = columns.numDataPoints[index];
+        final StoredValues mzs = values(blocks, b, position, numPoints);
+        position += numPoints * Double.BYTES;
+        final StoredValues intensities = values(blocks, b, position, numPoints);
+        position += numPoints * Double.BYTES;
+
+        final Scan scan;
+        if (isImaging) {
+          scan = new MappedImagingScan(newRawDataFile, columns, index, mzs, intensities);
+        } else if (isIMS) {
+          scan = frames[index] = new MappedFrame(newRawDataFile, columns, index, mzs, intensities);
+        } else {
+          scan = new MappedScan(newRawDataFile, columns, index, mzs, intensities);
+        }
+        newRawDataFile.addScan(scan);
+
+        final int massListSize = columns.massListSizes[index];
+        final MassList massList;
+        if (massListSize == RawDataBinaryFormat.MASS_LIST_SCAN_POINTER) {
+          massList = new ScanPointerMassList(scan);
+        } else if (massListSize >= 0) {
+          final StoredValues massListMzs = values(blocks, b, position, massListSize);
+          position += massListSize * Double.BYTES;
+          final StoredValues massListIntensities = values(blocks, b, position, massListSize);
+          position += massListSize * Double.BYTES;
+          massList = new MappedMassList(columns, index, massListMzs, massListIntensities);
+        } else {
+          massList = null;
+        }
+        if (massList != null) {
+          scan.addMassList(massList);
+        }
+
+        if (isIMS) {
+          position = readMobilityScans(frames[index], columns.mobility, index, mobilityScanIndex,
+              blocks, b, position, storage);
+          mobilityScanIndex += columns.mobility.numMobilityScans[index];
+        }
+      }
+
+      if (position != blocks.getBlockSize(b)) {
+        throw new IOException("Data block " + b + " of " + columns.name + " is corrupted.");
+      }
+    }
+
+    if (index != columns.numScans) {
+      throw new IOException("Expected " + columns.numScans + " scans in " + columns.name
+          + ", but the data blocks contain " + index);
+    }
+    if (isIMS) {
+      setPrecursorInfos(frames, columns.mobility);
+    }
+    return newRawDataFile;
+  }
+
+  /**
+   * Decodes the mobilities and mobility scans of a frame and sets them to the frame.
+   *
+   * @param index             the scan index of the frame
+   * @param mobilityScanIndex index of the first mobility scan of the frame in the mobility columns
+   * @param position          position of the mobility values of the frame in the block
+   * @return the position after the mobility values of the frame
+   */
+  private static int readMobilityScans(@Nonnull SimpleFrame frame, @Nonnull MobilityColumns m,
+      int index, int mobilityScanIndex, @Nonnull DataBlocks blocks, int block, int position,
+      @Nullable MemoryMapStorage storage) {
+    final int numMobilities = m.numMobilities[index];
+    if (numMobilities > 0) {
+      frame.setMobilities(decode(blocks, block, position, numMobilities));
+      position += numMobilities * Double.BYTES;
+    }
+
+    final int numMobilityScans = m.numMobilityScans[index];
+    final List<BuildingMobilityScan> mobilityScans = new ArrayList<>(numMobilityScans);
+    final MassList[] massLists = new MassList[numMobilityScans];
+    for (int i = 0; i < numMobilityScans; i++) {
+      final int numPoints = m.mobilityScanSizes[mobilityScanIndex + i];
+      final double[] mzs = decode(blocks, block, position, numPoints);
+      position += numPoints * Double.BYTES;
+      final double[] intensities = decode(blocks, block, position, numPoints);
+      position += numPoints * Double.BYTES;
+      mobilityScans.add(
+          new BuildingMobilityScan(m.mobilityScanNumbers[mobilityScanIndex + i], mzs, intensities));
+
+      final int massListSize = m.mobilityScanMassListSizes[mobilityScanIndex + i];
+      if (massListSize >= 0) {
+        final double[] massListMzs = decode(blocks, block, position, massListSize);
+        position += massListSize * Double.BYTES;
+        final double[] massListIntensities = decode(blocks, block, position, massListSize);
+        position += massListSize * Double.BYTES;
+        massLists[i] = new SimpleMassList(storage, massListMzs, massListIntensities);
+      }
+    }
+
+    if (numMobilityScans > 0) {
+      frame.setMobilityScans(mobilityScans);
+      final List<MobilityScan> frameMobilityScans = frame.getMobilityScans();
+      for (int i = 0; i < numMobilityScans; i++) {
+        if (massLists[i] != null) {
+          frameMobilityScans.get(i).setMassList(massLists[i]);
+        }
+      }
+    }
+    return position;
+  }
+
+  /**
+   * Sets the precursor infos once all frames exist, they may refer to other frames.
+   */
+  private static void setPrecursorInfos(@Nonnull SimpleFrame[] frames,
+      @Nonnull MobilityColumns m) {
+    int info = 0;
+    for (int i = 0; i < frames.length; i++) {
+      final Set<ImsMsMsInfo> infos = new HashSet<>();
+      for (int j = 0; j < m.numPrecursorInfos[i]; j++, info++) {
+        infos.add(new ImsMsMsInfoImpl(m.precursorMzs[info],
+            Range.closed(m.spectrumRangeLower[info], m.spectrumRangeUpper[info]),
+            m.collisionEnergies[info], m.precursorCharges[info],
+            getFrame(frames, m.parentFrames[info]), getFrame(frames, m.fragmentFrames[info])));
+      }
+      frames[i].setPrecursorInfos(infos);
+    }
+  }
+
+  @Nullable
+  private static SimpleFrame getFrame(@Nonnull SimpleFrame[] frames, int index) {
+    return index >= 0 && index < frames.length ? frames[index] : null;
+  }
+
+  @Nonnull
+  private static double[] decode(@Nonnull DataBlocks blocks, int block, int position,
+      int numValues) {
+    final double[] values = new double[numValues];
+    values(blocks, block, position, numValues).get(0, values, 0, numValues);
+    return values;
+  }
+
+  @Nonnull
+  private static StoredValues values(@Nonnull DataBlocks blocks, int block, int position,
+      int numValues) {
+    return numValues == 0 ? StoredValues.EMPTY
+        : new BlockStoredValues(blocks, block, position, numValues);
+  }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.projectload.binary;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.MobilityType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.modules.io.projectsave.RawDataBinaryFormat;
+import java.io.DataInputStream;
+import java.io.IOException;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The metadata of a raw data file saved in the {@link RawDataBinaryFormat}, one array per column.
+ */
+class ScanColumns {
+
+  String name;
+  String color;
+  int numScans;
+
+  int[] scanNumbers;
+  int[] msLevels;
+  float[] retentionTimes;
+  double[] precursorMzs;
+  int[] precursorCharges;
+  MassSpectrumType[] spectrumTypes;
+  PolarityType[] polarities;
+  String[] scanDefinitions;
+  double[] scanningRangeLower;
+  double[] scanningRangeUpper;
+
+  int[] numDataPoints;
+  SummaryColumns scanSummary;
+
+  int[] massListSizes;
+  SummaryColumns massListSummary;
+
+  // null for non-imaging files
+  @Nullable
+  int[][] coordinates;
+
+  // null for files without mobility data and files saved in version 1
+  @Nullable
+  MobilityColumns mobility;
+
+  int[] blockScans;
+  long[] blockSizes;
+
+  /**
+   * Reads the metadata written by the save handler.
+   *
+   * @throws IOException if the data cannot be read or was written in an unsupported version
+   */
+  @Nonnull
+  static ScanColumns read(@Nonnull DataInputStream in) throws IOException {
+    if (in.readInt() != RawDataBinaryFormat.MAGIC) {
+      throw new IOException("Invalid raw data file metadata");
+    }
+    final int version = in.readInt();
+    if (version > RawDataBinaryFormat.FORMAT_VERSION) {
+      throw new IOException("The raw data file was saved in the binary format version " + version
+          + ", which is not supported by this version of MZmine");
+    }
+
+    final ScanColumns c = new ScanColumns();
+    c.name = in.readUTF();
+    c.color = in.readUTF();
+    final int n = c.numScans = in.readInt();
+
+    c.scanNumbers = readInts(in, n);
+    c.msLevels = readInts(in, n);
+    c.retentionTimes = new float[n];
+    for (int i = 0; i < n; i++) {
+      c.retentionTimes[i] = in.readFloat();
+    }
+    c.precursorMzs = readDoubles(in, n);
+    c.precursorCharges = readInts(in, n);
+
+    c.spectrumTypes = new MassSpectrumType[n];
+    RawDataBinaryFormat
+        .readEnumColumn(in, MassSpectrumType.class, MassSpectrumType.CENTROIDED, c.spectrumTypes);
+    c.polarities = new PolarityType[n];
+    RawDataBinaryFormat.readEnumColumn(in, PolarityType.class, PolarityType.UNKNOWN, c.polarities);
+
+    c.scanDefinitions = new String[n];
+    for (int i = 0; i < n; i++) {
+      c.scanDefinitions[i] = in.readUTF();
+    }
+    c.scanningRangeLower = new double[n];
+    c.scanningRangeUpper = new double[n];
+    readRanges(in, c.scanningRangeLower, c.scanningRangeUpper);
+
+    c.numDataPoints = readInts(in, n);
+    c.scanSummary = SummaryColumns.read(in, n);
+
+    c.massListSizes = readInts(in, n);
+    c.massListSummary = SummaryColumns.read(in, n);
+
+    if (in.readBoolean()) {
+      c.coordinates = new int[][]{readInts(in, n), readInts(in, n), readInts(in, n)};
+    }
+    if (version >= 2 && in.readBoolean()) {
+      c.mobility = MobilityColumns.read(in, n);
+    }
+
+    final int numBlocks = in.readInt();
+    c.blockScans = new int[numBlocks];
+    c.blockSizes = new long[numBlocks];
+    for (int b = 0; b < numBlocks; b++) {
+      c.blockScans[b] = in.readInt();
+      c.blockSizes[b] = in.readLong();
+    }
+    return c;
+  }
+
+  @Nullable
+  Range<Double> getScanningMZRange(int index) {
+    return toRange(scanningRangeLower[index], scanningRangeUpper[index]);
+  }
+
+  @Nullable
+  private static Range<Double> toRange(double lower, double upper) {
+    return Double.isNaN(lower) || Double.isNaN(upper) ? null : Range.closed(lower, upper);
+  }
+
+  private static int[] readInts(DataInputStream in, int n) throws IOException {
+    final int[] values = new int[n];
+    for (int i = 0; i < n; i++) {
+      values[i] = in.readInt();
+    }
+    return values;
+  }
+
+  private static double[] readDoubles(DataInputStream in, int n) throws IOException {
+    final double[] values = new double[n];
+    for (int i = 0; i < n; i++) {
+      values[i] = in.readDouble();
+    }
+    return values;
+  }
+
+  private static void readRanges(DataInputStream in, double[] lower, double[] upper)
+      throws IOException {
+    for (int i = 0; i < lower.length; i++) {
+      lower[i] = in.readDouble();
+      upper[i] = in.readDouble();
+    }
+  }
+
+  /**
+   * The m/z range, base peak index and TIC of the scans or mass lists, so the stored values do not
+   * have to be read to create a spectrum.
+   */
+  static class SummaryColumns {
+
+    double[] mzRangeLower;
+    double[] mzRangeUpper;
+    int[] basePeakIndices;
+    double[] tics;
+
+    static SummaryColumns read(DataInputStream in, int n) throws IOException {
+      final SummaryColumns s = new SummaryColumns();
+      s.mzRangeLower = new double[n];
+      s.mzRangeUpper = new double[n];
+      readRanges(in, s.mzRangeLower, s.mzRangeUpper);
+      s.basePeakIndices = readInts(in, n);
+      s.tics = readDoubles(in, n);
+      return s;
+    }
+
+    @Nullable
+    Range<Double> getMzRange(int index) {
+      return toRange(mzRangeLower[index], mzRangeUpper[index]);
+    }
+
+    @Nullable
+    Integer getBasePeakIndex(int index) {
+      return basePeakIndices[index] >= 0 ? basePeakIndices[index] : null;
+    }
+  }
+
+  /**
+   * The mobility data of the frames of an ion mobility file. The columns of the mobility scans and
+   * precursor infos contain the entries of all frames, one frame after the other.
+   */
+  static class MobilityColumns {
+
+    MobilityType[] mobilityTypes;
+    int[] numMobilities;
+    int[] numMobilityScans;
+
+    int[] mobilityScanNumbers;
+    int[] mobilityScanSizes;
+    int[] mobilityScanMassListSizes;
+
+    int[] numPrecursorInfos;
+    double[] precursorMzs;
+    int[] spectrumRangeLower;
+    int[] spectrumRangeUpper;
+    float[] collisionEnergies;
+    int[] precursorCharges;
+    // scan indices, -1 if there is no frame
+    int[] parentFrames;
+    int[] fragmentFrames;
+
+    static MobilityColumns read(DataInputStream in, int n) throws IOException {
+      final MobilityColumns m = new MobilityColumns();
+      m.mobilityTypes = new MobilityType[n];
+      RawDataBinaryFormat.readEnumColumn(in, MobilityType.class, MobilityType.NONE,
+          m.mobilityTypes);
+      m.numMobilities = readInts(in, n);
+      m.numMobilityScans = readInts(in, n);
+
+      final int numScans = sum(m.numMobilityScans);
+      m.mobilityScanNumbers = readInts(in, numScans);
+      m.mobilityScanSizes = readInts(in, numScans);
+      m.mobilityScanMassListSizes = readInts(in, numScans);
+
+      m.numPrecursorInfos = readInts(in, n);
+      final int numInfos = sum(m.numPrecursorInfos);
+      m.precursorMzs = readDoubles(in, numInfos);
+      m.spectrumRangeLower = readInts(in, numInfos);
+      m.spectrumRangeUpper = readInts(in, numInfos);
+      m.collisionEnergies = new float[numInfos];
+      for (int i = 0; i < numInfos; i++) {
+        m.collisionEnergies[i] = in.readFloat();
+      }
+      m.precursorCharges = readInts(in, numInfos);
+      m.parentFrames = readInts(in, numInfos);
+      m.fragmentFrames = readInts(in, numInfos);
+      return m;
+    }
+
+    private static int sum(int[] values) throws IOException {
+      long sum = 0;
+      for (int value : values) {
+        if (value < 0) {
+          throw new IOException("Invalid mobility scan metadata");
+        }
+        sum += value;
+      }
+      if (sum > Integer.MAX_VALUE) {
+        throw new IOException("Invalid mobility scan metadata");
+      }
+      return (int) sum;
+    }
+  }
+}
@@ -38,7 +38,6 @@ import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.io.projectload.ProjectLoaderParameters;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.project.impl.MZmineProjectImpl;
-import io.github.mzmine.project.impl.RawDataFileImpl;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.ExceptionUtils;
@@ -59,7 +58,7 @@ public class ProjectSavingTask extends AbstractTask {
   private PeakListSaveHandler peakListSaveHandler;
   private UserParameterSaveHandler userParameterSaveHandler;
 
-  private final int totalSaveItems;
+  private final int totalSaveItems, numRawDataFiles;
   private int currentStage, finishedSaveItems = 0;
   private String currentSavedObjectName;
 
@@ -71,7 +70,8 @@ public class ProjectSavingTask extends AbstractTask {
     this.savedProject = (MZmineProjectImpl) project;
     this.saveFile = parameters.getParameter(ProjectLoaderParameters.projectFile).getValue();
     dataFilesIDMap = new Hashtable<RawDataFile, String>();
-    this.totalSaveItems = project.getDataFiles().length + project.getFeatureLists().size();
+    this.numRawDataFiles = project.getDataFiles().length;
+    this.totalSaveItems = numRawDataFiles + project.getFeatureLists().size();
   }
 
   /**
@@ -97,8 +97,9 @@ public class ProjectSavingTask extends AbstractTask {
 
     switch (currentStage) {
       case 2:
+        // all raw data files are saved at once
         if (rawDataFileSaveHandler != null)
-          currentItemProgress = rawDataFileSaveHandler.getProgress();
+          currentItemProgress = rawDataFileSaveHandler.getProgress() * numRawDataFiles;
         break;
       case 3:
         if (peakListSaveHandler != null)
@@ -292,28 +293,23 @@ public class ProjectSavingTask extends AbstractTask {
   }
 
   /**
-   * Save the raw data files
-   * 
-   * @throws SAXException
-   * @throws TransformerConfigurationException
+   * Save the raw data files. The files are encoded in parallel, see {@link RawDataFileSaveHandler}.
    */
-  private void saveRawDataFiles(ZipOutputStream zipStream)
-      throws IOException, TransformerConfigurationException, SAXException {
+  private void saveRawDataFiles(ZipOutputStream zipStream) throws IOException {
 
     rawDataFileSaveHandler = new RawDataFileSaveHandler(zipStream);
 
     RawDataFile rawDataFiles[] = savedProject.getDataFiles();
 
-    for (int i = 0; i < rawDataFiles.length; i++) {
-
-      if (isCanceled())
-        return;
+    currentSavedObjectName = "raw data files";
+    rawDataFileSaveHandler.writeRawDataFiles(rawDataFiles);
+    if (isCanceled())
+      return;
 
-      currentSavedObjectName = rawDataFiles[i].getName();
-      rawDataFileSaveHandler.writeRawDataFile((RawDataFileImpl) rawDataFiles[i], i + 1);
+    for (int i = 0; i < rawDataFiles.length; i++) {
       dataFilesIDMap.put(rawDataFiles[i], String.valueOf(i + 1));
-      finishedSaveItems++;
     }
+    finishedSaveItems += rawDataFiles.length;
   }
 
   /**
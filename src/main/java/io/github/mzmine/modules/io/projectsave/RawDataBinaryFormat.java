@@ -0,0 +1,128 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.projectsave;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.Nonnull;
+
+/**
+ * Constants and helpers of the binary raw data file format of MZmine projects. Every raw data file
+ * is saved as two zip entries:
+ * <p>
+ * The metadata entry ({@link #METADATA_EXTENSION}) contains a header (magic number, format
+ * version, name, color) and one column per scan attribute (scan numbers, ms levels, retention
+ * times, ...), written with a {@link DataOutputStream}. Enum columns are written as a table of
+ * constant names, followed by one byte per scan.
+ * <p>
+ * The data entry ({@link #DATA_EXTENSION}) is saved without compression and contains the m/z and
+ * intensity values of the scans and their mass lists as big-endian doubles. The scans are
+ * grouped into blocks of at most {@link #MAX_BLOCK_SIZE} bytes. Within a block, the values of
+ * each scan are written in the order scan m/z, scan intensity, mass list m/z and mass list
+ * intensity. The number of scans and bytes of each block are part of the metadata, so a block can
+ * be copied to a memory-mapped file without being decoded.
+ * <p>
+ * Since version 2, the frames of ion mobility files are followed by their mobilities and the m/z
+ * and intensity values of their mobility scans and mobility scan mass lists. The metadata contains
+ * the mobility scan and precursor info columns of all frames after the imaging coordinates.
+ */
+public final class RawDataBinaryFormat {
+
+  public static final int MAGIC = 0x4D5A4D42; // "MZMB"
+  public static final int FORMAT_VERSION = 2;
+
+  public static final String METADATA_EXTENSION = ".mzbin";
+  public static final String DATA_EXTENSION = ".scans";
+
+  /**
+   * Mass list size of a scan without a mass list.
+   */
+  public static final int MASS_LIST_NONE = -1;
+  /**
+   * Mass list size of a scan with a mass list that points to the scan's data points.
+   */
+  public static final int MASS_LIST_SCAN_POINTER = -2;
+
+  /**
+   * Blocks are copied to a single memory-mapped buffer on load, so they have to stay well below
+   * 2 GB. A larger block is only written if a single scan exceeds this size.
+   */
+  public static final long MAX_BLOCK_SIZE = 256L * 1024 * 1024;
+
+  private RawDataBinaryFormat() {
+  }
+
+  /**
+   * Ordinal of a null value in an enum column.
+   */
+  private static final int NULL_ORDINAL = 0xFF;
+
+  /**
+   * Writes an enum column as table of the names of the constants, followed by one ordinal per
+   * value. Null values are written as {@link #NULL_ORDINAL}.
+   */
+  public static <T extends Enum<T>> void writeEnumColumn(@Nonnull DataOutputStream out,
+      @Nonnull Class<T> enumClass, @Nonnull T[] values) throws IOException {
+    final T[] constants = enumClass.getEnumConstants();
+    if (constants.length >= NULL_ORDINAL) {
+      throw new IOException("Too many constants in " + enumClass.getName());
+    }
+    out.writeByte(constants.length);
+    for (T constant : constants) {
+      out.writeUTF(constant.name());
+    }
+    for (T value : values) {
+      out.writeByte(value != null ? value.ordinal() : NULL_ORDINAL);
+    }
+  }
+
+  /**
+   * Reads an enum column written by {@link #writeEnumColumn(DataOutputStream, Class, Enum[])}.
+   * The values are resolved by name, so constants may be reordered or added in later versions.
+   *
+   * @param defaultValue the value used for null values and constants that do not exist (anymore)
+   */
+  public static <T extends Enum<T>> void readEnumColumn(@Nonnull DataInputStream in,
+      @Nonnull Class<T> enumClass, @Nonnull T defaultValue, @Nonnull T[] dst) throws IOException {
+    final Map<String, T> byName = new HashMap<>();
+    for (T constant : enumClass.getEnumConstants()) {
+      byName.put(constant.name(), constant);
+    }
+
+    final int numConstants = in.readUnsignedByte();
+    final Object[] table = new Object[numConstants];
+    for (int i = 0; i < numConstants; i++) {
+      table[i] = byName.getOrDefault(in.readUTF(), defaultValue);
+    }
+    for (int i = 0; i < dst.length; i++) {
+      final int ordinal = in.readUnsignedByte();
+      if (ordinal == NULL_ORDINAL) {
+        dst[i] = defaultValue;
+        continue;
+      }
+      if (ordinal >= numConstants) {
+        throw new IOException("Invalid value " + ordinal + " in column of " + enumClass.getName());
+      }
+      dst[i] = enumClass.cast(table[ordinal]);
+    }
+  }
+}
@@ -23,398 +23,553 @@ import io.github.mzmine.datamodel.Frame;
 import io.github.mzmine.datamodel.IMSRawDataFile;
 import io.github.mzmine.datamodel.ImagingRawDataFile;
 import io.github.mzmine.datamodel.ImagingScan;
+import io.github.mzmine.datamodel.ImsMsMsInfo;
 import io.github.mzmine.datamodel.MassList;
+import io.github.mzmine.datamodel.MassSpectrum;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.MobilityScan;
+import io.github.mzmine.datamodel.MobilityType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.masslist.ScanPointerMassList;
 import io.github.mzmine.modules.io.import_imzml.Coordinates;
 import io.github.mzmine.project.impl.IMSRawDataFileImpl;
 import io.github.mzmine.project.impl.ImagingRawDataFileImpl;
 import io.github.mzmine.project.impl.RawDataFileImpl;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.sax.SAXTransformerFactory;
-import javax.xml.transform.sax.TransformerHandler;
-import javax.xml.transform.stream.StreamResult;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.AttributesImpl;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+/**
+ * Saves raw data files in the {@link RawDataBinaryFormat}. The files are encoded in parallel to
+ * temporary files, which are copied to the zip file afterwards, one after the other.
+ */
 class RawDataFileSaveHandler {
 
-  private Logger logger = Logger.getLogger(this.getClass().getName());
-  private int numOfScans, completedScans;
-  private ZipOutputStream zipOutputStream;
-  private boolean canceled = false;
-  private Map<Integer, Long> dataPointsOffsets;
-  private Map<Integer, Long> consolidatedDataPointsOffsets;
-  private Map<Integer, Integer> dataPointsLengths;
-  private double progress = 0;
+  private static final Logger logger = Logger.getLogger(RawDataFileSaveHandler.class.getName());
+
+  private final ZipOutputStream zipOutputStream;
+  private volatile boolean canceled = false;
+
+  private long totalScans;
+  private final AtomicLong encodedScans = new AtomicLong(0);
+  private final AtomicInteger copiedFiles = new AtomicInteger(0);
+  private int totalFiles;
 
   RawDataFileSaveHandler(ZipOutputStream zipOutputStream) {
     this.zipOutputStream = zipOutputStream;
   }
 
   /**
-   * Copy the data points file of the raw data file from the temporary folder to the zip file.
-   * Create an XML file which contains the description of the same raw data file an copy it into the
-   * same zip file.
+   * Encodes the raw data files to temporary files in parallel and copies them into the zip file
+   * afterwards. The raw data file at index i is saved with the number i + 1.
    *
-   * @param rawDataFile raw data file to be copied
-   * @param number number of the raw data file
-   * @throws java.io.IOException
-   * @throws TransformerConfigurationException
-   * @throws SAXException
+   * @param rawDataFiles raw data files to be saved
+   * @throws IOException if a file cannot be encoded or written
    */
-  void writeRawDataFile(RawDataFileImpl rawDataFile, int number)
-      throws IOException, TransformerConfigurationException, SAXException {
+  void writeRawDataFiles(@Nonnull RawDataFile[] rawDataFiles) throws IOException {
 
-    numOfScans = rawDataFile.getNumOfScans();
-
-    // Get the structure of the data points file
-    // dataPointsOffsets = rawDataFile.getDataPointsOffsets();
-    // dataPointsLengths = rawDataFile.getDataPointsLengths();
-    consolidatedDataPointsOffsets = new TreeMap<Integer, Long>();
+    totalFiles = rawDataFiles.length;
+    totalScans = 0;
+    for (RawDataFile rawDataFile : rawDataFiles) {
+      totalScans += rawDataFile.getNumOfScans();
+    }
 
-    // step 1 - save data file
-    logger.info("Saving data points of: " + rawDataFile.getName());
+    final EncodedRawDataFile[] encodedFiles = new EncodedRawDataFile[rawDataFiles.length];
+    try {
+      try {
+        IntStream.range(0, rawDataFiles.length).parallel().forEach(i -> {
+          try {
+            encodedFiles[i] = encode(rawDataFiles[i]);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
 
-    String rawDataSavedName;
-    if (rawDataFile instanceof IMSRawDataFile) {
-      rawDataSavedName =
-          IMSRawDataFileImpl.SAVE_IDENTIFIER + " #" + number + " " + rawDataFile.getName();
-    } else if (rawDataFile instanceof ImagingRawDataFile) {
-      rawDataSavedName =
-          ImagingRawDataFileImpl.SAVE_IDENTIFIER + " #" + number + " " + rawDataFile.getName();
-    } else {
-      rawDataSavedName =
-          RawDataFileImpl.SAVE_IDENTIFIER + " #" + number + " " + rawDataFile.getName();
+      // the zip stream can only be written sequentially
+      for (int i = 0; i < encodedFiles.length; i++) {
+        if (canceled) {
+          return;
+        }
+        copyToZip(rawDataFiles[i], encodedFiles[i], i + 1);
+        copiedFiles.incrementAndGet();
+      }
+    } finally {
+      for (EncodedRawDataFile encoded : encodedFiles) {
+        if (encoded != null) {
+          encoded.delete();
+        }
+      }
     }
-
-    zipOutputStream.putNextEntry(new ZipEntry(rawDataSavedName + ".scans"));
-
-    // We save only those data points that still have a reference in the
-    // dataPointsOffset table. Some deleted mass lists may still be present
-    // in the data points file, we don't want to copy those.
-    long newOffset = 0;
-    byte buffer[] = new byte[1 << 20];
-    /*
-     * RandomAccessFile dataPointsFile = rawDataFile.getDataPointsFile(); for (Integer storageID :
-     * dataPointsOffsets.keySet()) {
-     * 
-     * if (canceled) { return; }
-     * 
-     * final long offset = dataPointsOffsets.get(storageID); dataPointsFile.seek(offset);
-     * 
-     * final int bytes = dataPointsLengths.get(storageID) * 4 * 2;
-     * consolidatedDataPointsOffsets.put(storageID, newOffset); if (buffer.length < bytes) { buffer
-     * = new byte[bytes * 2]; } dataPointsFile.read(buffer, 0, bytes); zipOutputStream.write(buffer,
-     * 0, bytes); newOffset += bytes; progress = 0.9 * ((double) offset / dataPointsFile.length());
-     * }
-     */
-
-    if (canceled) {
-      return;
-    }
-
-    // step 2 - save raw data description
-    logger.info("Saving raw data description of: " + rawDataFile.getName());
-
-    zipOutputStream.putNextEntry(new ZipEntry(rawDataSavedName + ".xml"));
-    OutputStream finalStream = zipOutputStream;
-
-    StreamResult streamResult = new StreamResult(finalStream);
-    SAXTransformerFactory tf = (SAXTransformerFactory) SAXTransformerFactory.newInstance();
-
-    TransformerHandler hd = tf.newTransformerHandler();
-    Transformer serializer = hd.getTransformer();
-    serializer.setOutputProperty(OutputKeys.INDENT, "yes");
-    serializer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-
-    hd.setResult(streamResult);
-    hd.startDocument();
-    saveRawDataInformation(rawDataFile, hd);
-    hd.endDocument();
   }
 
   /**
-   * Function which creates an XML file with the descripcion of the raw data
+   * Writes the data blocks and the metadata columns of the raw data file to temporary files.
    *
-   * @param rawDataFile
-   * @param hd
-   * @throws SAXException
-   * @throws java.lang.Exception
+   * @return the encoded file or null, if saving was canceled
    */
-  private void saveRawDataInformation(RawDataFileImpl rawDataFile, TransformerHandler hd)
-      throws SAXException, IOException {
-
-    AttributesImpl atts = new AttributesImpl();
-
-    hd.startElement("", "", RawDataElementName.RAWDATA.getElementName(), atts);
-
-    // <NAME>
-    hd.startElement("", "", RawDataElementName.NAME.getElementName(), atts);
-    hd.characters(rawDataFile.getName().toCharArray(), 0, rawDataFile.getName().length());
-    hd.endElement("", "", RawDataElementName.NAME.getElementName());
-
-    // COLOR
-    hd.startElement("", "", RawDataElementName.COLOR.getElementName(), atts);
-    hd.characters(rawDataFile.getColor().toString().toCharArray(), 0,
-        rawDataFile.getColor().toString().length());
-    hd.endElement("", "", RawDataElementName.COLOR.getElementName());
-
-    // <STORED_DATAPOINTS>
-    atts.addAttribute("", "", RawDataElementName.QUANTITY.getElementName(), "CDATA",
-        String.valueOf(dataPointsOffsets.size()));
-    hd.startElement("", "", RawDataElementName.STORED_DATAPOINTS.getElementName(), atts);
-    atts.clear();
-    for (Integer storageID : dataPointsOffsets.keySet()) {
-      if (canceled) {
-        return;
-      }
-      int length = dataPointsLengths.get(storageID);
-      long offset = consolidatedDataPointsOffsets.get(storageID);
-      atts.addAttribute("", "", RawDataElementName.STORAGE_ID.getElementName(), "CDATA",
-          String.valueOf(storageID));
-      atts.addAttribute("", "", RawDataElementName.QUANTITY_DATAPOINTS.getElementName(), "CDATA",
-          String.valueOf(length));
-      hd.startElement("", "", RawDataElementName.STORED_DATA.getElementName(), atts);
-      atts.clear();
-      hd.characters(String.valueOf(offset).toCharArray(), 0, String.valueOf(offset).length());
-      hd.endElement("", "", RawDataElementName.STORED_DATA.getElementName());
-    }
-
-    hd.endElement("", "", RawDataElementName.STORED_DATAPOINTS.getElementName());
-
-    // <QUANTITY>
-    hd.startElement("", "", RawDataElementName.QUANTITY_SCAN.getElementName(), atts);
-    hd.characters(String.valueOf(numOfScans).toCharArray(), 0, String.valueOf(numOfScans).length());
-    hd.endElement("", "", RawDataElementName.QUANTITY_SCAN.getElementName());
-
-    // <SCAN>
-    for (Scan scan : rawDataFile.getScans()) {
-
-      if (canceled) {
-        return;
-      }
-
-      int storageID = 0;
-      atts.addAttribute("", "", RawDataElementName.STORAGE_ID.getElementName(), "CDATA",
-          String.valueOf(storageID));
-      hd.startElement("", "", RawDataElementName.SCAN.getElementName(), atts);
-      fillScanElement(scan, hd);
-      hd.endElement("", "", RawDataElementName.SCAN.getElementName());
-      atts.clear();
-      completedScans++;
-      progress = 0.8 + (0.1 * ((double) completedScans / numOfScans));
-    }
-
-    // for loading frames it is important, that scans have already been loaded! so save frames after
-    // scans
-    // <FRAME>
-    if (rawDataFile instanceof IMSRawDataFile) {
+  @Nullable
+  private EncodedRawDataFile encode(@Nonnull RawDataFile rawDataFile) throws IOException {
+
+    logger.info("Saving raw data file " + rawDataFile.getName());
+
+    final Scan[] scans = rawDataFile.getScans().toArray(Scan[]::new);
+    final MassList[] massLists = new MassList[scans.length];
+    final int[] massListSizes = new int[scans.length];
+    for (int i = 0; i < scans.length; i++) {
+      massLists[i] = scans[i].getMassList();
+      if (massLists[i] == null) {
+        massListSizes[i] = RawDataBinaryFormat.MASS_LIST_NONE;
+      } else if (massLists[i] instanceof ScanPointerMassList) {
+        massListSizes[i] = RawDataBinaryFormat.MASS_LIST_SCAN_POINTER;
+      } else {
+        massListSizes[i] = massLists[i].getNumberOfDataPoints();
+      }
+    }
 
-      final IMSRawDataFile imsFile = (IMSRawDataFile) rawDataFile;
-      final int numOfFrames = imsFile.getNumberOfFrames();
+    // the frames of ion mobility files are saved with their mobility scans
+    boolean hasMobility = rawDataFile instanceof IMSRawDataFile;
+    for (int i = 0; i < scans.length && hasMobility; i++) {
+      hasMobility = scans[i] instanceof Frame;
+    }
+    final MobilityScan[][] mobilityScans = hasMobility ? new MobilityScan[scans.length][] : null;
+    if (hasMobility) {
+      for (int i = 0; i < scans.length; i++) {
+        mobilityScans[i] = ((Frame) scans[i]).getMobilityScans().toArray(MobilityScan[]::new);
+      }
+    }
 
-      // <QUANTITY>
-      hd.startElement("", "", RawDataElementName.QUANTITY_FRAMES.getElementName(), atts);
-      hd.characters(String.valueOf(numOfFrames).toCharArray(), 0,
-          String.valueOf(numOfFrames).length());
-      hd.endElement("", "", RawDataElementName.QUANTITY_FRAMES.getElementName());
+    final EncodedRawDataFile encoded = new EncodedRawDataFile();
+    encoded.dataFile = File.createTempFile("mzmine_project", ".tmp");
+    encoded.dataFile.deleteOnExit();
+    encoded.metadataFile = File.createTempFile("mzmine_project", ".tmp");
+    encoded.metadataFile.deleteOnExit();
+
+    // step 1 - data blocks
+    final IntArrayList blockScans = new IntArrayList();
+    final LongArrayList blockSizes = new LongArrayList();
+    final CRC32 crc = new CRC32();
+
+    try (FileChannel channel = FileChannel
+        .open(encoded.dataFile.toPath(), StandardOpenOption.WRITE)) {
+      final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+      double[] values = new double[Math.max(rawDataFile.getMaxRawDataPoints(), 0)];
+
+      int numBlockScans = 0;
+      long blockSize = 0;
+      for (int i = 0; i < scans.length; i++) {
+        if (canceled) {
+          encoded.delete();
+          return null;
+        }
 
-      int completedFrames = 0;
-      for (Frame frameNum : imsFile.getFrames()) {
+        final int numPoints = scans[i].getNumberOfDataPoints();
+        final int numMassListPoints = Math.max(massListSizes[i], 0);
+        final long scanSize = 2L * Double.BYTES * ((long) numPoints + numMassListPoints)
+            + (hasMobility ? getMobilityDataSize((Frame) scans[i], mobilityScans[i]) : 0L);
+        if (numBlockScans > 0 && blockSize + scanSize > RawDataBinaryFormat.MAX_BLOCK_SIZE) {
+          blockScans.add(numBlockScans);
+          blockSizes.add(blockSize);
+          numBlockScans = 0;
+          blockSize = 0;
+        }
 
-        if (canceled) {
-          return;
+        values = scans[i].getMzValues(values);
+        writeValues(channel, buffer, crc, values, numPoints);
+        values = scans[i].getIntensityValues(values);
+        writeValues(channel, buffer, crc, values, numPoints);
+        if (numMassListPoints > 0) {
+          values = massLists[i].getMzValues(values);
+          writeValues(channel, buffer, crc, values, numMassListPoints);
+          values = massLists[i].getIntensityValues(values);
+          writeValues(channel, buffer, crc, values, numMassListPoints);
+        }
+        if (hasMobility) {
+          values = writeMobilityValues(channel, buffer, crc, (Frame) scans[i], mobilityScans[i],
+              values);
         }
 
-        // StorableFrame frame = (StorableFrame) imsFile.getFrame(frameNum);
-        // int storageID = frame.getStorageID();
-        // atts.addAttribute("", "", RawDataElementName.STORAGE_ID.getElementName(), "CDATA",
-        // String.valueOf(storageID));
-        // hd.startElement("", "", RawDataElementName.FRAME.getElementName(), atts);
-        // fillScanElement(frame, hd);
-        // fillFrameElement(frame, hd);
-        // hd.endElement("", "", RawDataElementName.FRAME.getElementName());
-        // atts.clear();
-        //
-        // completedFrames++;
-        // progress = 0.9 + (0.1 * ((double) completedFrames / numOfFrames));
+        numBlockScans++;
+        blockSize += scanSize;
+        encodedScans.incrementAndGet();
+      }
+      if (numBlockScans > 0) {
+        blockScans.add(numBlockScans);
+        blockSizes.add(blockSize);
+      }
+      flush(channel, buffer, crc);
+      encoded.dataSize = channel.size();
+    }
+    encoded.dataCrc = crc.getValue();
+
+    // step 2 - metadata columns
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(encoded.metadataFile)))) {
+      out.writeInt(RawDataBinaryFormat.MAGIC);
+      out.writeInt(RawDataBinaryFormat.FORMAT_VERSION);
+      out.writeUTF(rawDataFile.getName());
+      out.writeUTF(rawDataFile.getColor().toString());
+      out.writeInt(scans.length);
+
+      for (Scan scan : scans) {
+        out.writeInt(scan.getScanNumber());
+      }
+      for (Scan scan : scans) {
+        out.writeInt(scan.getMSLevel());
+      }
+      for (Scan scan : scans) {
+        out.writeFloat(scan.getRetentionTime());
+      }
+      for (Scan scan : scans) {
+        out.writeDouble(scan.getPrecursorMZ());
+      }
+      for (Scan scan : scans) {
+        out.writeInt(scan.getPrecursorCharge());
+      }
+
+      final MassSpectrumType[] spectrumTypes = new MassSpectrumType[scans.length];
+      final PolarityType[] polarities = new PolarityType[scans.length];
+      for (int i = 0; i < scans.length; i++) {
+        spectrumTypes[i] = scans[i].getSpectrumType();
+        polarities[i] = scans[i].getPolarity();
+      }
+      RawDataBinaryFormat.writeEnumColumn(out, MassSpectrumType.class, spectrumTypes);
+      RawDataBinaryFormat.writeEnumColumn(out, PolarityType.class, polarities);
+
+      for (Scan scan : scans) {
+        final String definition = scan.getScanDefinition();
+        out.writeUTF(definition != null ? definition : "");
+      }
+      for (Scan scan : scans) {
+        writeRange(out, scan.getScanningMZRange());
+      }
+
+      // scan data points
+      for (Scan scan : scans) {
+        out.writeInt(scan.getNumberOfDataPoints());
+      }
+      writeSummaryColumns(out, scans);
+
+      // mass lists
+      for (int size : massListSizes) {
+        out.writeInt(size);
+      }
+      final MassSpectrum[] storedMassLists = new MassSpectrum[scans.length];
+      for (int i = 0; i < scans.length; i++) {
+        storedMassLists[i] = massListSizes[i] >= 0 ? massLists[i] : null;
+      }
+      writeSummaryColumns(out, storedMassLists);
+
+      // imaging coordinates
+      final boolean hasCoordinates = rawDataFile instanceof ImagingRawDataFile;
+      out.writeBoolean(hasCoordinates);
+      if (hasCoordinates) {
+        final int[][] coordinates = new int[3][scans.length];
+        for (int i = 0; i < scans.length; i++) {
+          final Coordinates c =
+              scans[i] instanceof ImagingScan ? ((ImagingScan) scans[i]).getCoordinates() : null;
+          coordinates[0][i] = c != null ? c.getX() : -1;
+          coordinates[1][i] = c != null ? c.getY() : -1;
+          coordinates[2][i] = c != null ? c.getZ() : -1;
+        }
+        for (int[] column : coordinates) {
+          for (int value : column) {
+            out.writeInt(value);
+          }
+        }
+      }
+
+      // mobility data
+      out.writeBoolean(hasMobility);
+      if (hasMobility) {
+        writeMobilityColumns(out, scans, mobilityScans);
+      }
+
+      // block table
+      out.writeInt(blockScans.size());
+      for (int b = 0; b < blockScans.size(); b++) {
+        out.writeInt(blockScans.getInt(b));
+        out.writeLong(blockSizes.getLong(b));
+      }
+    }
+
+    return encoded;
+  }
+
+  /**
+   * Writes the m/z range, base peak index and TIC columns. Null spectra are written as empty.
+   */
+  private static void writeSummaryColumns(@Nonnull DataOutputStream out,
+      @Nonnull MassSpectrum[] spectra) throws IOException {
+    for (MassSpectrum spectrum : spectra) {
+      writeRange(out, spectrum != null ? spectrum.getDataPointMZRange() : null);
+    }
+    for (MassSpectrum spectrum : spectra) {
+      final Integer basePeak = spectrum != null ? spectrum.getBasePeakIndex() : null;
+      out.writeInt(basePeak != null ? basePeak : -1);
+    }
+    for (MassSpectrum spectrum : spectra) {
+      final Double tic = spectrum != null ? spectrum.getTIC() : null;
+      out.writeDouble(tic != null ? tic : 0d);
+    }
+  }
+
+  /**
+   * Writes the mobility types, the number of mobilities and mobility scans of the frames, the
+   * columns of all mobility scans and the columns of all precursor infos. Frames of precursor infos
+   * are written as scan indices.
+   */
+  private static void writeMobilityColumns(@Nonnull DataOutputStream out, @Nonnull Scan[] frames,
+      @Nonnull MobilityScan[][] mobilityScans) throws IOException {
+    final MobilityType[] mobilityTypes = new MobilityType[frames.length];
+    final Map<Scan, Integer> frameIndices = new IdentityHashMap<>();
+    for (int i = 0; i < frames.length; i++) {
+      mobilityTypes[i] = ((Frame) frames[i]).getMobilityType();
+      frameIndices.put(frames[i], i);
+    }
+    RawDataBinaryFormat.writeEnumColumn(out, MobilityType.class, mobilityTypes);
+    for (Scan frame : frames) {
+      out.writeInt(getNumMobilities((Frame) frame));
+    }
+    for (MobilityScan[] scans : mobilityScans) {
+      out.writeInt(scans.length);
+    }
+
+    for (MobilityScan[] scans : mobilityScans) {
+      for (MobilityScan scan : scans) {
+        out.writeInt(scan.getMobilityScanNumber());
+      }
+    }
+    for (MobilityScan[] scans : mobilityScans) {
+      for (MobilityScan scan : scans) {
+        out.writeInt(scan.getNumberOfDataPoints());
+      }
+    }
+    for (MobilityScan[] scans : mobilityScans) {
+      for (MobilityScan scan : scans) {
+        final MassList massList = scan.getMassList();
+        out.writeInt(massList != null ? massList.getNumberOfDataPoints()
+            : RawDataBinaryFormat.MASS_LIST_NONE);
       }
     }
 
-    hd.endElement("", "", RawDataElementName.RAWDATA.getElementName());
+    final ImsMsMsInfo[][] infos = new ImsMsMsInfo[frames.length][];
+    for (int i = 0; i < frames.length; i++) {
+      infos[i] = ((Frame) frames[i]).getImsMsMsInfos().toArray(ImsMsMsInfo[]::new);
+      out.writeInt(infos[i].length);
+    }
+    for (ImsMsMsInfo[] frameInfos : infos) {
+      for (ImsMsMsInfo info : frameInfos) {
+        out.writeDouble(info.getLargestPeakMz());
+      }
+    }
+    for (ImsMsMsInfo[] frameInfos : infos) {
+      for (ImsMsMsInfo info : frameInfos) {
+        out.writeInt(info.getSpectrumNumberRange().lowerEndpoint());
+      }
+    }
+    for (ImsMsMsInfo[] frameInfos : infos) {
+      for (ImsMsMsInfo info : frameInfos) {
+        out.writeInt(info.getSpectrumNumberRange().upperEndpoint());
+      }
+    }
+    for (ImsMsMsInfo[] frameInfos : infos) {
+      for (ImsMsMsInfo info : frameInfos) {
+        out.writeFloat(info.getCollisionEnergy());
+      }
+    }
+    for (ImsMsMsInfo[] frameInfos : infos) {
+      for (ImsMsMsInfo info : frameInfos) {
+        out.writeInt(info.getPrecursorCharge());
+      }
+    }
+    for (ImsMsMsInfo[] frameInfos : infos) {
+      for (ImsMsMsInfo info : frameInfos) {
+        out.writeInt(frameIndices.getOrDefault(info.getParentFrameNumber(), -1));
+      }
+    }
+    for (ImsMsMsInfo[] frameInfos : infos) {
+      for (ImsMsMsInfo info : frameInfos) {
+        out.writeInt(frameIndices.getOrDefault(info.getFrameNumber(), -1));
+      }
+    }
+  }
 
+  private static int getNumMobilities(@Nonnull Frame frame) {
+    final DoubleBuffer mobilities = frame.getMobilities();
+    return mobilities != null ? mobilities.limit() : 0;
   }
 
   /**
-   * Create the part of the XML document related to the scans
+   * @return the number of bytes of the mobilities and mobility scans of a frame in a data block
+   */
+  private static long getMobilityDataSize(@Nonnull Frame frame,
+      @Nonnull MobilityScan[] mobilityScans) {
+    long numValues = getNumMobilities(frame);
+    for (MobilityScan scan : mobilityScans) {
+      numValues += 2L * scan.getNumberOfDataPoints();
+      final MassList massList = scan.getMassList();
+      if (massList != null) {
+        numValues += 2L * massList.getNumberOfDataPoints();
+      }
+    }
+    return Double.BYTES * numValues;
+  }
+
+  /**
+   * Writes the mobilities of the frame, followed by the m/z and intensity values of each mobility
+   * scan and its mass list.
    *
-   * @param scan
-   * @param hd
+   * @return the array used for the values, it is replaced if it is too small
    */
-  private void fillScanElement(Scan scan, TransformerHandler hd) throws SAXException, IOException {
-    // <SCAN_ID>
-    AttributesImpl atts = new AttributesImpl();
-    hd.startElement("", "", RawDataElementName.SCAN_ID.getElementName(), atts);
-    hd.characters(String.valueOf(scan.getScanNumber()).toCharArray(), 0,
-        String.valueOf(scan.getScanNumber()).length());
-    hd.endElement("", "", RawDataElementName.SCAN_ID.getElementName());
-
-    // <MS_LEVEL>
-    hd.startElement("", "", RawDataElementName.MS_LEVEL.getElementName(), atts);
-    hd.characters(String.valueOf(scan.getMSLevel()).toCharArray(), 0,
-        String.valueOf(scan.getMSLevel()).length());
-    hd.endElement("", "", RawDataElementName.MS_LEVEL.getElementName());
-
-    if (scan.getMSLevel() >= 2) {
-      // <PRECURSOR_MZ>
-      hd.startElement("", "", RawDataElementName.PRECURSOR_MZ.getElementName(), atts);
-      hd.characters(String.valueOf(scan.getPrecursorMZ()).toCharArray(), 0,
-          String.valueOf(scan.getPrecursorMZ()).length());
-      hd.endElement("", "", RawDataElementName.PRECURSOR_MZ.getElementName());
-
-      // <PRECURSOR_CHARGE>
-      hd.startElement("", "", RawDataElementName.PRECURSOR_CHARGE.getElementName(), atts);
-      hd.characters(String.valueOf(scan.getPrecursorCharge()).toCharArray(), 0,
-          String.valueOf(scan.getPrecursorCharge()).length());
-      hd.endElement("", "", RawDataElementName.PRECURSOR_CHARGE.getElementName());
-    }
-
-    // <RETENTION_TIME>
-    hd.startElement("", "", RawDataElementName.RETENTION_TIME.getElementName(), atts);
-    // In the project file, retention time is represented in seconds, for
-    // historical reasons
-    // TODO @tomas change to minutes here?
-    float rt = scan.getRetentionTime() * 60;
-    hd.characters(String.valueOf(rt).toCharArray(), 0, String.valueOf(rt).length());
-    hd.endElement("", "", RawDataElementName.RETENTION_TIME.getElementName());
-
-    // <CENTROIDED>
-    hd.startElement("", "", RawDataElementName.CENTROIDED.getElementName(), atts);
-    hd.characters(String.valueOf(scan.getSpectrumType()).toCharArray(), 0,
-        String.valueOf(scan.getSpectrumType()).length());
-    hd.endElement("", "", RawDataElementName.CENTROIDED.getElementName());
-
-    // <QUANTITY_DATAPOINTS>
-    hd.startElement("", "", RawDataElementName.QUANTITY_DATAPOINTS.getElementName(), atts);
-    hd.characters(String.valueOf((scan.getNumberOfDataPoints())).toCharArray(), 0,
-        String.valueOf((scan.getNumberOfDataPoints())).length());
-    hd.endElement("", "", RawDataElementName.QUANTITY_DATAPOINTS.getElementName());
-
-    // <FRAGMENT_SCAN>
-    /*
-     * if (scan.getFragmentScanNumbers() != null) { int[] fragmentScans =
-     * scan.getFragmentScanNumbers(); atts.addAttribute("", "",
-     * RawDataElementName.QUANTITY.getElementName(), "CDATA", String.valueOf(fragmentScans.length));
-     * hd.startElement("", "", RawDataElementName.QUANTITY_FRAGMENT_SCAN.getElementName(), atts);
-     * atts.clear(); for (int i : fragmentScans) { hd.startElement("", "",
-     * RawDataElementName.FRAGMENT_SCAN.getElementName(), atts);
-     * hd.characters(String.valueOf(i).toCharArray(), 0, String.valueOf(i).length());
-     * hd.endElement("", "", RawDataElementName.FRAGMENT_SCAN.getElementName()); } hd.endElement("",
-     * "", RawDataElementName.QUANTITY_FRAGMENT_SCAN.getElementName());
-     *
-     * }
-     */
-
-    // <MASS_LIST>
-      MassList stMassList = scan.getMassList();
-      atts.addAttribute("", "", RawDataElementName.NAME.getElementName(), "CDATA",
-          "masses");
-      // atts.addAttribute("", "", RawDataElementName.STORAGE_ID.getElementName(), "CDATA",
-      // String.valueOf(stMassList.getStorageID()));
-      hd.startElement("", "", RawDataElementName.MASS_LIST.getElementName(), atts);
-      atts.clear();
-      hd.endElement("", "", RawDataElementName.MASS_LIST.getElementName());
-
-    // <POLARITY>
-    hd.startElement("", "", RawDataElementName.POLARITY.getElementName(), atts);
-    String pol = scan.getPolarity().toString();
-    hd.characters(pol.toCharArray(), 0, pol.length());
-    hd.endElement("", "", RawDataElementName.POLARITY.getElementName());
-
-    // <SCAN_DESCRIPTION>
-    hd.startElement("", "", RawDataElementName.SCAN_DESCRIPTION.getElementName(), atts);
-    String scanDesc = scan.getScanDefinition();
-    hd.characters(scanDesc.toCharArray(), 0, scanDesc.length());
-    hd.endElement("", "", RawDataElementName.SCAN_DESCRIPTION.getElementName());
-
-    // <SCAN_MZ_RANGE>
-    hd.startElement("", "", RawDataElementName.SCAN_MZ_RANGE.getElementName(), atts);
-    Range<Double> mzRange = scan.getScanningMZRange();
-    String mzRangeStr = mzRange.lowerEndpoint() + "-" + mzRange.upperEndpoint();
-    hd.characters(mzRangeStr.toCharArray(), 0, mzRangeStr.length());
-    hd.endElement("", "", RawDataElementName.SCAN_MZ_RANGE.getElementName());
-
-    // <MOBILITY>
-    // hd.startElement("", "", RawDataElementName.MOBILITY.getElementName(), atts);
-    // double mobility = scan.getMobility();
-    // hd.characters(String.valueOf(mobility).toCharArray(), 0, String.valueOf(mobility).length());
-    // hd.endElement("", "", RawDataElementName.MOBILITY.getElementName());
-
-    if (scan instanceof ImagingScan) {
-      // <COORDINATES>
-      hd.startElement("", "", RawDataElementName.COORDINATES.getElementName(), atts);
-      Coordinates coordinates = ((ImagingScan) scan).getCoordinates();
-      hd.characters(coordinates.toString().toCharArray(), 0, coordinates.toString().length());
-      hd.endElement("", "", RawDataElementName.COORDINATES.getElementName());
+  @Nonnull
+  private static double[] writeMobilityValues(@Nonnull FileChannel channel,
+      @Nonnull ByteBuffer buffer, @Nonnull CRC32 crc, @Nonnull Frame frame,
+      @Nonnull MobilityScan[] mobilityScans, @Nonnull double[] values) throws IOException {
+    final int numMobilities = getNumMobilities(frame);
+    if (values.length < numMobilities) {
+      values = new double[numMobilities];
+    }
+    for (int i = 0; i < numMobilities; i++) {
+      values[i] = frame.getMobilities().get(i);
     }
+    writeValues(channel, buffer, crc, values, numMobilities);
+
+    for (MobilityScan scan : mobilityScans) {
+      final int numPoints = scan.getNumberOfDataPoints();
+      values = scan.getMzValues(values);
+      writeValues(channel, buffer, crc, values, numPoints);
+      values = scan.getIntensityValues(values);
+      writeValues(channel, buffer, crc, values, numPoints);
+
+      final MassList massList = scan.getMassList();
+      if (massList != null) {
+        final int numMassListPoints = massList.getNumberOfDataPoints();
+        values = massList.getMzValues(values);
+        writeValues(channel, buffer, crc, values, numMassListPoints);
+        values = massList.getIntensityValues(values);
+        writeValues(channel, buffer, crc, values, numMassListPoints);
+      }
+    }
+    return values;
   }
 
-  private void fillFrameElement(Frame frame, TransformerHandler hd)
-      throws SAXException, IOException {
-    AttributesImpl atts = new AttributesImpl();
-
-    String frameId = String.valueOf(frame.getFrameId());
-    hd.startElement("", "", RawDataElementName.FRAME_ID.getElementName(), atts);
-    hd.characters(frameId.toCharArray(), 0, frameId.length());
-    hd.endElement("", "", RawDataElementName.FRAME_ID.getElementName());
-
-    // <MOBILITY_TYPE>
-    // hd.startElement("", "", RawDataElementName.MOBILITY_TYPE.getElementName(), atts);
-    // MobilityType mobilityType = scan.getMobilityType();
-    // hd.characters(mobilityType.toString().toCharArray(), 0, mobilityType.toString().length());
-    // hd.endElement("", "", RawDataElementName.MOBILITY_TYPE.getElementName());
-
-    hd.startElement("", "", RawDataElementName.LOWER_MOBILITY_RANGE.getElementName(), atts);
-    hd.characters(frame.getMobilityRange().lowerEndpoint().toString().toCharArray(), 0,
-        frame.getMobilityRange().lowerEndpoint().toString().toCharArray().length);
-    hd.endElement("", "", RawDataElementName.LOWER_MOBILITY_RANGE.getElementName());
-
-    hd.startElement("", "", RawDataElementName.UPPER_MOBILITY_RANGE.getElementName(), atts);
-    hd.characters(frame.getMobilityRange().upperEndpoint().toString().toCharArray(), 0,
-        frame.getMobilityRange().upperEndpoint().toString().toCharArray().length);
-    hd.endElement("", "", RawDataElementName.UPPER_MOBILITY_RANGE.getElementName());
-
-    /*Set<Integer> mobilityScanNumbers = frame.getMobilityScanNumbers();
-    atts.addAttribute("", "", RawDataElementName.QUANTITY.getElementName(), "CDATA",
-        String.valueOf(mobilityScanNumbers.size()));
-    hd.startElement("", "", RawDataElementName.QUANTITY_MOBILITY_SCANS.getElementName(), atts);
-    atts.clear();
-    for (int i : mobilityScanNumbers) {
-      hd.startElement("", "", RawDataElementName.MOBILITY_SCANNUM.getElementName(), atts);
-      hd.characters(String.valueOf(i).toCharArray(), 0, String.valueOf(i).length());
-      hd.endElement("", "", RawDataElementName.MOBILITY_SCANNUM.getElementName());
-    }
-    hd.endElement("", "", RawDataElementName.QUANTITY_MOBILITY_SCANS.getElementName());*/
+  private static void writeRange(@Nonnull DataOutputStream out, @Nullable Range<Double> range)
+      throws IOException {
+    out.writeDouble(range != null ? range.lowerEndpoint() : Double.NaN);
+    out.writeDouble(range != null ? range.upperEndpoint() : Double.NaN);
+  }
 
+  private static void writeValues(@Nonnull FileChannel channel, @Nonnull ByteBuffer buffer,
+      @Nonnull CRC32 crc, @Nonnull double[] values, int length) throws IOException {
+    for (int i = 0; i < length; i++) {
+      if (buffer.remaining() < Double.BYTES) {
+        flush(channel, buffer, crc);
+      }
+      buffer.putDouble(values[i]);
+    }
+  }
+
+  private static void flush(@Nonnull FileChannel channel, @Nonnull ByteBuffer buffer,
+      @Nonnull CRC32 crc) throws IOException {
+    buffer.flip();
+    crc.update(buffer.duplicate());
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  private void copyToZip(@Nonnull RawDataFile rawDataFile, @Nonnull EncodedRawDataFile encoded,
+      int number) throws IOException {
+
+    final String rawDataSavedName;
+    if (rawDataFile instanceof IMSRawDataFile) {
+      rawDataSavedName =
+          IMSRawDataFileImpl.SAVE_IDENTIFIER + " #" + number + " " + rawDataFile.getName();
+    } else if (rawDataFile instanceof ImagingRawDataFile) {
+      rawDataSavedName =
+          ImagingRawDataFileImpl.SAVE_IDENTIFIER + " #" + number + " " + rawDataFile.getName();
+    } else {
+      rawDataSavedName =
+          RawDataFileImpl.SAVE_IDENTIFIER + " #" + number + " " + rawDataFile.getName();
+    }
+
+    // the metadata has to precede the data, it is needed to read the data blocks
+    zipOutputStream.putNextEntry(
+        new ZipEntry(rawDataSavedName + RawDataBinaryFormat.METADATA_EXTENSION));
+    Files.copy(encoded.metadataFile.toPath(), zipOutputStream);
+
+    // doubles do not compress well, store the data blocks as they are
+    final ZipEntry dataEntry = new ZipEntry(rawDataSavedName + RawDataBinaryFormat.DATA_EXTENSION);
+    dataEntry.setMethod(ZipEntry.STORED);
+    dataEntry.setSize(encoded.dataSize);
+    dataEntry.setCompressedSize(encoded.dataSize);
+    dataEntry.setCrc(encoded.dataCrc);
+    zipOutputStream.putNextEntry(dataEntry);
+    Files.copy(encoded.dataFile.toPath(), zipOutputStream);
+    zipOutputStream.closeEntry();
   }
 
   /**
-   * @return the progress of these functions saving the raw data information to the zip file.
+   * @return the progress of saving all raw data files. Encoding takes 90 %, copying the encoded
+   * files to the zip file the remaining 10 %.
    */
   double getProgress() {
-    return progress;
+    final double encodingProgress =
+        totalScans == 0 ? 1d : (double) encodedScans.get() / totalScans;
+    final double copyProgress = totalFiles == 0 ? 1d : (double) copiedFiles.get() / totalFiles;
+    return 0.9 * encodingProgress + 0.1 * copyProgress;
   }
 
   void cancel() {
     canceled = true;
   }
+
+  /**
+   * Temporary files of an encoded raw data file.
+   */
+  private static final class EncodedRawDataFile {
+
+    private File metadataFile;
+    private File dataFile;
+    private long dataSize;
+    private long dataCrc;
+
+    private void delete() {
+      if (metadataFile != null && !metadataFile.delete()) {
+        logger.warning("Could not delete temporary file " + metadataFile);
+      }
+      if (dataFile != null && !dataFile.delete()) {
+        logger.warning("Could not delete temporary file " + dataFile);
+      }
+      metadataFile = null;
+      dataFile = null;
+    }
+  }
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.tools.isotopeprediction;
+
+import io.github.mzmine.datamodel.IonizationType;
+import io.github.mzmine.datamodel.IsotopePattern;
+import io.github.mzmine.util.FormulaUtils;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.Nonnull;
+
+/**
+ * A least recently used cache of predicted isotope patterns. Formula prediction scores the same
+ * candidate formulas over and over again (for every score and for features of similar m/z), so the
+ * patterns are only calculated once. The cache is thread-safe, the patterns are calculated outside
+ * of the lock.
+ * <p>
+ * The minimum abundance usually differs between features, so the patterns are cached down to
+ * {@link #MIN_CACHED_ABUNDANCE} and cut at the requested abundance on every access.
+ */
+public class IsotopePatternCache {
+
+  /**
+   * The minimum abundance of the cached patterns. Lower abundances are calculated without the
+   * cache.
+   */
+  public static final double MIN_CACHED_ABUNDANCE = 0.001;
+
+  private final Map<Key, IsotopePattern> patterns;
+
+  /**
+   * @param maxSize The maximum number of cached patterns. The least recently used pattern is
+   *                removed if the cache exceeds this size.
+   */
+  public IsotopePatternCache(int maxSize) {
+    patterns = new LinkedHashMap<>(Math.min(maxSize, 1024), 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, IsotopePattern> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Returns the isotope pattern of the ionized formula. See {@link
+   * FormulaUtils#ionizeFormula(String, IonizationType, int)} and {@link
+   * IsotopePatternCalculator#calculateIsotopePattern(String, double, int,
+   * io.github.mzmine.datamodel.PolarityType)}.
+   *
+   * @param formula      The neutral formula.
+   * @param ionType      The ionization type.
+   * @param charge       The charge.
+   * @param minAbundance The minimum abundance of the predicted isotopes.
+   * @return The isotope pattern, without isotopes below the minimum abundance relative to the most
+   * abundant isotope.
+   */
+  @Nonnull
+  public IsotopePattern getIsotopePattern(@Nonnull String formula,
+      @Nonnull IonizationType ionType, int charge, double minAbundance) {
+    if (minAbundance < MIN_CACHED_ABUNDANCE) {
+      return calculateIsotopePattern(formula, ionType, charge, minAbundance);
+    }
+
+    final Key key = new Key(formula, ionType, charge);
+    IsotopePattern pattern;
+    synchronized (patterns) {
+      pattern = patterns.get(key);
+    }
+    if (pattern == null) {
+      pattern = calculateIsotopePattern(formula, ionType, charge, MIN_CACHED_ABUNDANCE);
+      synchronized (patterns) {
+        patterns.put(key, pattern);
+      }
+    }
+
+    final Double basePeakIntensity = pattern.getBasePeakIntensity();
+    if (minAbundance <= MIN_CACHED_ABUNDANCE || basePeakIntensity == null) {
+      return pattern;
+    }
+    return IsotopePatternCalculator
+        .removeDataPointsBelowIntensity(pattern, minAbundance * basePeakIntensity);
+  }
+
+  @Nonnull
+  private static IsotopePattern calculateIsotopePattern(@Nonnull String formula,
+      @Nonnull IonizationType ionType, int charge, double minAbundance) {
+    final String adjustedFormula = FormulaUtils.ionizeFormula(formula, ionType, charge);
+    return IsotopePatternCalculator.calculateIsotopePattern(adjustedFormula, minAbundance, charge,
+        ionType.getPolarity());
+  }
+
+  private record Key(String formula, IonizationType ionType, int charge) {
+
+  }
+}
@@ -23,6 +23,8 @@ import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.gui.chartbasics.simplechart.datasets.LevelOfDetailDataset;
+import io.github.mzmine.gui.chartbasics.simplechart.datasets.MinMaxLevelOfDetail;
 import io.github.mzmine.util.FeatureUtils;
 import java.util.Arrays;
 import java.util.List;
@@ -31,9 +33,10 @@ import org.jfree.data.xy.AbstractXYDataset;
 
 /**
  * Integrated peak area data set. Separate data set is created for every peak shown in this
- * visualizer window.
+ * visualizer window. Only the minima and maxima of the visible retention time range are served as
+ * items (see {@link MinMaxLevelOfDetail}).
  */
-public class FeatureDataSet extends AbstractXYDataset {
+public class FeatureDataSet extends AbstractXYDataset implements LevelOfDetailDataset {
 
   /**
    *
@@ -45,6 +48,7 @@ public class FeatureDataSet extends AbstractXYDataset {
   private final double[] mzValues;
   private final String name;
   private final int featureItem;
+  private final MinMaxLevelOfDetail levelOfDetail = new MinMaxLevelOfDetail();
 
   /**
    * Create the data set.
@@ -96,6 +100,7 @@ public class FeatureDataSet extends AbstractXYDataset {
     }
 
     featureItem = peakIndex;
+    levelOfDetail.setData(scanCount, i -> retentionTimes[i], i -> intensities[i]);
   }
 
   /**
@@ -119,21 +124,28 @@ public class FeatureDataSet extends AbstractXYDataset {
 
   @Override
   public int getItemCount(final int series) {
-    return retentionTimes.length;
+    return levelOfDetail.getItemCount(retentionTimes.length);
   }
 
   @Override
   public Number getX(final int series, final int item) {
-    return retentionTimes[item];
+    return retentionTimes[levelOfDetail.getDataIndex(item)];
   }
 
   @Override
   public Number getY(final int series, final int item) {
-    return intensities[item];
+    return intensities[levelOfDetail.getDataIndex(item)];
+  }
+
+  @Override
+  public void setVisibleDomain(double lower, double upper, int maxItems) {
+    if (levelOfDetail.setVisibleDomain(lower, upper, maxItems)) {
+      fireDatasetChanged();
+    }
   }
 
   public double getMZ(final int item) {
-    return mzValues[item];
+    return mzValues[levelOfDetail.getDataIndex(item)];
   }
 
   public Feature getFeature() {
@@ -145,7 +157,7 @@ public class FeatureDataSet extends AbstractXYDataset {
   }
 
   public boolean isFeature(final int item) {
-    return item == featureItem;
+    return levelOfDetail.getDataIndex(item) == featureItem;
   }
 
   @Override
@@ -32,6 +32,8 @@ import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.gui.chartbasics.simplechart.datasets.LevelOfDetailDataset;
+import io.github.mzmine.gui.chartbasics.simplechart.datasets.MinMaxLevelOfDetail;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskPriority;
@@ -46,8 +48,12 @@ import javafx.collections.ObservableList;
  * create separate data set for each file because the user may add/remove files later.
  *
  * Added the possibility to switch to TIC plot type from a "non-TICVisualizerWindow" context.
+ * <p>
+ * Once all values are calculated, only the minima and maxima of the visible retention time range
+ * are served as items (see {@link MinMaxLevelOfDetail}). Item indices are therefore not scan
+ * indices.
  */
-public class TICDataSet extends AbstractXYZDataset implements Task {
+public class TICDataSet extends AbstractXYZDataset implements Task, LevelOfDetailDataset {
 
   private static final long serialVersionUID = 1L;
 
@@ -76,6 +82,8 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
   private double intensityMin;
   private double intensityMax;
 
+  private final MinMaxLevelOfDetail levelOfDetail = new MinMaxLevelOfDetail();
+
   private TaskStatus status;
   private String errorMessage;
 
@@ -195,6 +203,8 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
 
       if (status != TaskStatus.CANCELED) {
 
+        levelOfDetail.setData(totalScans, i -> rtValues[i], i -> intensityValues[i]);
+
         // Always redraw when we add last value.
         refresh();
 
@@ -223,25 +233,47 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
   @Override
   public Number getZ(final int series, final int item) {
 
-    return basePeakMZValues[item];
+    return basePeakMZValues[levelOfDetail.getDataIndex(item)];
   }
 
   @Override
   public int getItemCount(final int series) {
 
-    return processedScans;
+    return levelOfDetail.getItemCount(processedScans);
   }
 
   @Override
   public Number getX(final int series, final int item) {
 
-    return rtValues[item];
+    return rtValues[levelOfDetail.getDataIndex(item)];
   }
 
   @Override
   public Number getY(final int series, final int item) {
 
-    return intensityValues[item];
+    return intensityValues[levelOfDetail.getDataIndex(item)];
+  }
+
+  @Override
+  public void setVisibleDomain(double lower, double upper, int maxItems) {
+    if (levelOfDetail.setVisibleDomain(lower, upper, maxItems)) {
+      fireDatasetChanged();
+    }
+  }
+
+  /**
+   * @return The number of calculated data points, regardless of the visible range.
+   */
+  public int getNumberOfDataPoints() {
+    return processedScans;
+  }
+
+  public double getRetentionTime(final int dataIndex) {
+    return rtValues[dataIndex];
+  }
+
+  public double getIntensity(final int dataIndex) {
+    return intensityValues[dataIndex];
   }
 
   /**
@@ -259,7 +291,7 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
       if (Math.abs(retentionTime - rtValues[i]) < EPSILON
           && Math.abs(intensity - intensityValues[i]) < EPSILON) {
 
-        index = i;
+        index = levelOfDetail.getItem(i);
       }
     }
 
@@ -267,7 +299,7 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
   }
 
   public Scan getScan(final int item) {
-    return scans.get(item);
+    return scans.get(levelOfDetail.getDataIndex(item));
   }
 
   public RawDataFile getDataFile() {
@@ -281,17 +313,21 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
    * @return true/false if the item is a local maximum.
    */
   public boolean isLocalMaximum(final int item) {
+    return isLocalMaximumDataPoint(levelOfDetail.getDataIndex(item));
+  }
+
+  private boolean isLocalMaximumDataPoint(final int index) {
 
     final boolean isLocalMaximum;
-    if (item <= 0 || item >= processedScans - 1) {
+    if (index <= 0 || index >= processedScans - 1) {
 
       isLocalMaximum = false;
 
     } else {
 
-      final double intensity = intensityValues[item];
+      final double intensity = intensityValues[index];
       isLocalMaximum =
-          intensityValues[item - 1] <= intensity && intensity >= intensityValues[item + 1];
+          intensityValues[index - 1] <= intensity && intensity >= intensityValues[index + 1];
     }
 
     return isLocalMaximum;
@@ -336,9 +372,13 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
 
       // Check Y range..
       final double intensity = intensityValues[index];
-      if (yMin <= intensity && intensity <= yMax && isLocalMaximum(index)) {
+      if (yMin <= intensity && intensity <= yMax && isLocalMaximumDataPoint(index)) {
 
-        indices.add(index);
+        // only items that are currently served
+        final int item = levelOfDetail.getItem(index);
+        if (item >= 0) {
+          indices.add(item);
+        }
       }
     }
 
@@ -420,7 +460,10 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
    * Notify data set listener (on the EDT).
    */
   private void refresh() {
-    Platform.runLater(() -> fireDatasetChanged());
+    Platform.runLater(() -> {
+      levelOfDetail.updateVisibleItems();
+      fireDatasetChanged();
+    });
   }
 
   @Override
@@ -49,6 +49,11 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
   public double curMaxIntensity;
   private ArrayList<Float> rtValuesInUserRange;
 
+  /**
+   * Raster of the maximum intensities, available once all scans are loaded. Null until then.
+   */
+  private volatile TwoDRasterPyramid raster;
+
   TwoDDataSet(RawDataFile rawDataFile, Scan scans[], Range<Float> rtRange, Range<Double> mzRange,
       TwoDVisualizerTab visualizer) {
 
@@ -92,6 +97,18 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
       processedScans++;
     }
 
+    TwoDRasterPyramid pyramid = TwoDRasterPyramid.getCached(rawDataFile, retentionTimes,
+        totalMZRange);
+    if (pyramid == null) {
+      pyramid = TwoDRasterPyramid.build(retentionTimes, mzValues, intensityValues, totalMZRange,
+          () -> status == TaskStatus.CANCELED);
+      if (pyramid == null) {
+        return;
+      }
+      TwoDRasterPyramid.putCached(rawDataFile, pyramid);
+    }
+    raster = pyramid;
+
     Platform.runLater(() -> fireDatasetChanged());
 
     status = TaskStatus.FINISHED;
@@ -180,6 +197,22 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
         return upperEndpointIntensity(startScanIndex, mzRange, plotMode);
     }
 
+    // zoomed out, the pixel is looked up in the raster instead of the data points. Empty pixels
+    // fall through, because the profile modes show the closest data point there
+    final TwoDRasterPyramid pyramid = raster;
+    if (pyramid != null) {
+      int endScanIndex = startScanIndex;
+      while (endScanIndex + 1 < searchRetentionTimes.length
+          && searchRetentionTimes[endScanIndex + 1] <= rtRange.upperEndpoint()) {
+        endScanIndex++;
+      }
+      maxIntensity = rasterMaxIntensity(pyramid, startScanIndex, endScanIndex, mzRange);
+      if (maxIntensity > 0 || (maxIntensity == 0 && plotMode == PlotMode.CENTROID)) {
+        return maxIntensity;
+      }
+      maxIntensity = 0;
+    }
+
     for (int scanIndex = startScanIndex; ((scanIndex < searchRetentionTimes.length)
         && (searchRetentionTimes[scanIndex] <= rtRange.upperEndpoint())); scanIndex++) {
 
@@ -206,6 +239,15 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
 
     double maxIntensity = 0;
 
+    final TwoDRasterPyramid pyramid = raster;
+    if (pyramid != null) {
+      maxIntensity = rasterMaxIntensity(pyramid, index, index, mzRange);
+      if (maxIntensity > 0 || (maxIntensity == 0 && plotMode == PlotMode.CENTROID)) {
+        return maxIntensity;
+      }
+      maxIntensity = 0;
+    }
+
     int startMZIndex = Arrays.binarySearch(mzValues[index], mzRange.lowerEndpoint());
     if (startMZIndex < 0)
       startMZIndex = (startMZIndex * -1) - 1;
@@ -244,6 +286,40 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
 
   }
 
+  /**
+   * Looks up the maximum intensity of the data points of the scans within the m/z range. The bins
+   * that lie completely within the range are looked up in the raster, the data points in the
+   * partially covered bins at the edges of the range are looked up in the scans.
+   *
+   * @return The maximum intensity or -1, if no bin lies completely within the m/z range.
+   */
+  private double rasterMaxIntensity(TwoDRasterPyramid pyramid, int firstScan, int lastScan,
+      Range<Double> mzRange) {
+    final Range<Double> covered = pyramid.getCoveredMzRange(mzRange);
+    if (covered == null) {
+      return -1;
+    }
+
+    double maxIntensity = pyramid.getMaxIntensity(firstScan, lastScan, mzRange);
+    final boolean hasLowerEdge = mzRange.lowerEndpoint() < covered.lowerEndpoint();
+    final boolean hasUpperEdge = mzRange.upperEndpoint() > covered.upperEndpoint();
+    for (int scanIndex = firstScan; scanIndex <= lastScan; scanIndex++) {
+      // ignore scans where all peaks are smaller than current max
+      if (basePeaks[scanIndex] <= maxIntensity) {
+        continue;
+      }
+      if (hasLowerEdge) {
+        maxIntensity = Math.max(maxIntensity, upperEndpointIntensity(scanIndex,
+            Range.closed(mzRange.lowerEndpoint(), covered.lowerEndpoint()), PlotMode.CENTROID));
+      }
+      if (hasUpperEdge) {
+        maxIntensity = Math.max(maxIntensity, upperEndpointIntensity(scanIndex,
+            Range.closed(covered.upperEndpoint(), mzRange.upperEndpoint()), PlotMode.CENTROID));
+      }
+    }
+    return maxIntensity;
+  }
+
   @Override
   public void cancel() {
     status = TaskStatus.CANCELED;
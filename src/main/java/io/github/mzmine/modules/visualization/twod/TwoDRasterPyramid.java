@@ -0,0 +1,297 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.visualization.twod;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.featuredata.impl.StorageUtils;
+import io.github.mzmine.util.MemoryMapStorage;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.BooleanSupplier;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Multi-resolution intensity raster of a raw data file in the RT x m/z plane. Level 0 holds one
+ * column per scan and {@link #MZ_BINS} m/z bins, every further level halves both dimensions and
+ * keeps the maximum intensity of the merged cells. Each level is split into square tiles that are
+ * stored in a {@link MemoryMapStorage}, tiles without any signal are not stored at all.
+ * <p>
+ * The last raster of every raw data file is cached, so that all 2D views of the same file, scan
+ * selection and m/z range share it.
+ */
+class TwoDRasterPyramid {
+
+  static final int MZ_BINS = 2048;
+  private static final int TILE_SIZE = 256;
+
+  private static final Map<RawDataFile, TwoDRasterPyramid> cache = Collections
+      .synchronizedMap(new WeakHashMap<>());
+
+  private final float[] retentionTimes;
+  private final Range<Double> mzRange;
+  private final double mzMin;
+  private final double mzMax;
+  private final double binWidth;
+  private final Level[] levels;
+
+  private TwoDRasterPyramid(float[] retentionTimes, Range<Double> mzRange, Level[] levels) {
+    this.retentionTimes = retentionTimes;
+    this.mzRange = mzRange;
+    this.mzMin = mzRange.lowerEndpoint();
+    this.mzMax = mzRange.upperEndpoint();
+    this.binWidth = (mzMax - mzMin) / MZ_BINS;
+    this.levels = levels;
+  }
+
+  /**
+   * @return The cached raster of the given file, if it was built for the same scans and m/z range.
+   */
+  @Nullable
+  static TwoDRasterPyramid getCached(@Nonnull RawDataFile file, @Nonnull float[] retentionTimes,
+      @Nonnull Range<Double> mzRange) {
+    final TwoDRasterPyramid pyramid = cache.get(file);
+    if (pyramid != null && pyramid.mzRange.equals(mzRange)
+        && Arrays.equals(pyramid.retentionTimes, retentionTimes)) {
+      return pyramid;
+    }
+    return null;
+  }
+
+  static void putCached(@Nonnull RawDataFile file, @Nonnull TwoDRasterPyramid pyramid) {
+    cache.put(file, pyramid);
+  }
+
+  /**
+   * Builds the raster from the data points of RT-sorted scans.
+   *
+   * @param retentionTimes The retention times of the scans.
+   * @param mzValues       The m/z values of every scan.
+   * @param intensities    The intensities of every scan.
+   * @param mzRange        The m/z range covered by the raster.
+   * @param isCanceled     Checked after every scan, the build stops if it returns true.
+   * @return The raster or null, if the build was canceled.
+   */
+  @Nullable
+  static TwoDRasterPyramid build(@Nonnull float[] retentionTimes, @Nonnull double[][] mzValues,
+      @Nonnull double[][] intensities, @Nonnull Range<Double> mzRange,
+      @Nonnull BooleanSupplier isCanceled) {
+    final MemoryMapStorage storage = MemoryMapStorage.forRawDataFile();
+    final double mzMin = mzRange.lowerEndpoint();
+    final double mzMax = mzRange.upperEndpoint();
+    final double binWidth = (mzMax - mzMin) / MZ_BINS;
+
+    // level 0 is filled one column of tiles at a time to keep the heap usage low
+    final List<Level> levels = new ArrayList<>();
+    final Level base = new Level(retentionTimes.length, MZ_BINS);
+    for (int tileX = 0; tileX < base.tilesX; tileX++) {
+      final float[][] tiles = new float[base.tilesY][];
+      final int firstScan = tileX * TILE_SIZE;
+      final int lastScan = Math.min(base.cols, firstScan + TILE_SIZE);
+      for (int scan = firstScan; scan < lastScan; scan++) {
+        if (isCanceled.getAsBoolean()) {
+          return null;
+        }
+        final double[] mzs = mzValues[scan];
+        final double[] ints = intensities[scan];
+        for (int i = 0; i < mzs.length; i++) {
+          if (mzs[i] < mzMin || mzs[i] > mzMax || ints[i] <= 0) {
+            continue;
+          }
+          final int bin = Math.min(MZ_BINS - 1, (int) ((mzs[i] - mzMin) / binWidth));
+          if (tiles[bin / TILE_SIZE] == null) {
+            tiles[bin / TILE_SIZE] = new float[TILE_SIZE * TILE_SIZE];
+          }
+          final float[] tile = tiles[bin / TILE_SIZE];
+          final int index = (scan - firstScan) * TILE_SIZE + bin % TILE_SIZE;
+          tile[index] = Math.max(tile[index], (float) ints[i]);
+        }
+      }
+      base.storeTiles(tileX, tiles, storage);
+    }
+    levels.add(base);
+
+    // every further level merges 2 x 2 cells of the previous one
+    Level previous = base;
+    while (previous.cols > 1 || previous.rows > 1) {
+      if (isCanceled.getAsBoolean()) {
+        return null;
+      }
+      final Level level = new Level((previous.cols + 1) / 2, (previous.rows + 1) / 2);
+      for (int tileX = 0; tileX < level.tilesX; tileX++) {
+        final float[][] tiles = new float[level.tilesY][];
+        final int firstCol = tileX * TILE_SIZE;
+        final int lastCol = Math.min(level.cols, firstCol + TILE_SIZE);
+        for (int col = firstCol; col < lastCol; col++) {
+          for (int row = 0; row < level.rows; row++) {
+            final float value = Math.max(
+                Math.max(previous.get(2 * col, 2 * row), previous.get(2 * col + 1, 2 * row)),
+                Math.max(previous.get(2 * col, 2 * row + 1),
+                    previous.get(2 * col + 1, 2 * row + 1)));
+            if (value <= 0) {
+              continue;
+            }
+            if (tiles[row / TILE_SIZE] == null) {
+              tiles[row / TILE_SIZE] = new float[TILE_SIZE * TILE_SIZE];
+            }
+            tiles[row / TILE_SIZE][(col - firstCol) * TILE_SIZE + row % TILE_SIZE] = value;
+          }
+        }
+        level.storeTiles(tileX, tiles, storage);
+      }
+      levels.add(level);
+      previous = level;
+    }
+
+    return new TwoDRasterPyramid(retentionTimes.clone(), mzRange, levels.toArray(new Level[0]));
+  }
+
+  /**
+   * Returns the m/z range of the bins of level 0 that lie completely within the given range. Only
+   * these bins are looked up by {@link #getMaxIntensity(int, int, Range)}, the data points in the
+   * remaining edges of the range have to be looked up in the scans.
+   *
+   * @return The covered m/z range or null, if no bin lies completely within the range.
+   */
+  @Nullable
+  Range<Double> getCoveredMzRange(@Nonnull Range<Double> mzRange) {
+    final int firstBin = getFirstCoveredBin(mzRange.lowerEndpoint());
+    final int lastBin = getLastCoveredBin(mzRange.upperEndpoint());
+    if (firstBin > lastBin) {
+      return null;
+    }
+    return Range.closed(mzMin + firstBin * binWidth,
+        lastBin == MZ_BINS - 1 ? mzMax : mzMin + (lastBin + 1) * binWidth);
+  }
+
+  /**
+   * Looks up the maximum intensity in a range of scans and the m/z bins that lie completely within
+   * the m/z range, see {@link #getCoveredMzRange(Range)}. The range is split into the largest
+   * aligned cells of all levels that lie completely within it, starting at the coarsest level.
+   * Cells that cannot exceed the current maximum are skipped.
+   *
+   * @param firstScan The index of the first scan (inclusive).
+   * @param lastScan  The index of the last scan (inclusive).
+   * @param mzRange   The m/z range.
+   * @return The maximum intensity.
+   */
+  double getMaxIntensity(int firstScan, int lastScan, @Nonnull Range<Double> mzRange) {
+    final int firstBin = getFirstCoveredBin(mzRange.lowerEndpoint());
+    final int lastBin = getLastCoveredBin(mzRange.upperEndpoint());
+    if (firstBin > lastBin || lastScan < firstScan) {
+      return 0;
+    }
+    return getMaxIntensity(levels.length - 1, 0, 0, firstScan, lastScan, firstBin, lastBin, 0f);
+  }
+
+  private float getMaxIntensity(int levelIndex, int col, int row, int firstScan, int lastScan,
+      int firstBin, int lastBin, float max) {
+    final int cellFirstScan = col << levelIndex;
+    final int cellLastScan = ((col + 1) << levelIndex) - 1;
+    final int cellFirstBin = row << levelIndex;
+    final int cellLastBin = ((row + 1) << levelIndex) - 1;
+    if (cellLastScan < firstScan || cellFirstScan > lastScan || cellLastBin < firstBin
+        || cellFirstBin > lastBin) {
+      return max;
+    }
+
+    // a cell holds the maximum of all cells it was merged from
+    final float value = levels[levelIndex].get(col, row);
+    if (value <= max) {
+      return max;
+    }
+    if (cellFirstScan >= firstScan && cellLastScan <= lastScan && cellFirstBin >= firstBin
+        && cellLastBin <= lastBin) {
+      return value;
+    }
+
+    // partially covered, cells of level 0 are always covered completely
+    for (int c = 2 * col; c <= 2 * col + 1; c++) {
+      for (int r = 2 * row; r <= 2 * row + 1; r++) {
+        max = getMaxIntensity(levelIndex - 1, c, r, firstScan, lastScan, firstBin, lastBin, max);
+      }
+    }
+    return max;
+  }
+
+  /**
+   * @return The first bin that starts at or above the m/z value. Bins are closed at their lower
+   * edge, so a bin that starts exactly at the value is treated as partially covered.
+   */
+  private int getFirstCoveredBin(double lower) {
+    if (lower <= mzMin) {
+      return 0;
+    }
+    return (int) Math.min(MZ_BINS, (lower - mzMin) / binWidth) + 1;
+  }
+
+  /**
+   * @return The last bin that ends at or below the m/z value.
+   */
+  private int getLastCoveredBin(double upper) {
+    if (upper >= mzMax) {
+      return MZ_BINS - 1;
+    }
+    return (int) Math.max(-1, (upper - mzMin) / binWidth) - 1;
+  }
+
+  /**
+   * One resolution level of the raster. Cells are stored column-major within tiles of
+   * {@link #TILE_SIZE} x {@link #TILE_SIZE} values.
+   */
+  private static class Level {
+
+    private final int cols;
+    private final int rows;
+    private final int tilesX;
+    private final int tilesY;
+    private final FloatBuffer[] tiles;
+
+    private Level(int cols, int rows) {
+      this.cols = cols;
+      this.rows = rows;
+      tilesX = (cols + TILE_SIZE - 1) / TILE_SIZE;
+      tilesY = (rows + TILE_SIZE - 1) / TILE_SIZE;
+      tiles = new FloatBuffer[tilesX * tilesY];
+    }
+
+    private void storeTiles(int tileX, float[][] columnTiles, @Nullable MemoryMapStorage storage) {
+      for (int tileY = 0; tileY < tilesY; tileY++) {
+        if (columnTiles[tileY] != null) {
+          tiles[tileX * tilesY + tileY] = StorageUtils
+              .storeValuesToFloatBuffer(storage, columnTiles[tileY]);
+        }
+      }
+    }
+
+    private float get(int col, int row) {
+      if (col >= cols || row >= rows) {
+        return 0f;
+      }
+      final FloatBuffer tile = tiles[(col / TILE_SIZE) * tilesY + row / TILE_SIZE];
+      return tile == null ? 0f : tile.get((col % TILE_SIZE) * TILE_SIZE + row % TILE_SIZE);
+    }
+  }
+}
@@ -26,6 +26,7 @@ import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.types.graphicalnodes.FeatureChartImages;
 import io.github.mzmine.parameters.UserParameter;
 import io.github.mzmine.util.javafx.FxThreadUtil;
 import javafx.beans.property.ListProperty;
@@ -190,6 +191,14 @@ public class MZmineProjectImpl implements MZmineProject {
     FxThreadUtil.runOnFxThreadAndWait(() -> {
       featureListsProperty.get().remove(featureList);
     });
+    FeatureChartImages.invalidate(featureList);
+
+    // hand the open storage segments back to the pool, they are reused as soon as the feature
+    // data is not referenced anymore.
+    if (featureList instanceof ModularFeatureList
+        && ((ModularFeatureList) featureList).getMemoryMapStorage() != null) {
+      ((ModularFeatureList) featureList).getMemoryMapStorage().release();
+    }
   }
 
   @Override
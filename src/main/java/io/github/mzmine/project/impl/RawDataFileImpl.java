@@ -28,13 +28,19 @@ import io.github.mzmine.datamodel.features.FeatureList.FeatureListAppliedMethod;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.javafx.FxColorUtil;
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.collections.FXCollections;
@@ -67,6 +73,14 @@ public class RawDataFileImpl implements RawDataFile {
   private final Hashtable<Integer, Double> dataMaxBasePeakIntensity = new Hashtable<>();
   private final Hashtable<Integer, Double> dataMaxTIC = new Hashtable<>();
 
+  // index key for all scans, regardless of their ms level
+  private static final int ALL_MS_LEVELS = -1;
+
+  // lazily built indexes of the scans, cleared when a scan is added
+  private final Map<Integer, ScanIndex> scanIndexes = new ConcurrentHashMap<>();
+  private volatile PrecursorIndex fragmentScanIndex;
+  private volatile int[] msLevels;
+
   // Temporary file for scan data storage
   private final MemoryMapStorage storageMemoryMap;
 
@@ -145,20 +159,7 @@ public class RawDataFileImpl implements RawDataFile {
     if (rt > getDataRTRange(mslevel).upperEndpoint()) {
       return null;
     }
-    Range<Float> range = Range.closed(rt - 2, rt + 2);
-    Scan[] scanNumbers = getScanNumbers(mslevel, range);
-    double minDiff = 10E6;
-
-    for (int i = 0; i < scanNumbers.length; i++) {
-      Scan scanNum = scanNumbers[i];
-      double diff = Math.abs(rt - scanNum.getRetentionTime());
-      if (diff < minDiff) {
-        minDiff = diff;
-      } else if (diff > minDiff) { // not triggered in first run
-        return scanNumbers[i - 1]; // the previous one was better
-      }
-    }
-    return null;
+    return getScanIndex(mslevel).getClosestScan(rt, 2f);
   }
 
   /**
@@ -171,16 +172,7 @@ public class RawDataFileImpl implements RawDataFile {
     if (rt > getDataRTRange().upperEndpoint()) {
       return null;
     }
-    double minDiff = 10E10;
-    for (Scan scan : scans) {
-      double diff = Math.abs(rt - scan.getRetentionTime());
-      if (diff < minDiff) {
-        minDiff = diff;
-      } else if (diff > minDiff) { // not triggered in first run
-        return scan;
-      }
-    }
-    return null;
+    return getScanIndex(ALL_MS_LEVELS).getClosestScan(rt, Float.POSITIVE_INFINITY);
   }
 
   /**
@@ -189,7 +181,7 @@ public class RawDataFileImpl implements RawDataFile {
   @Override
   @Nonnull
   public List<Scan> getScanNumbers(int msLevel) {
-    return scans.stream().filter(s -> s.getMSLevel() == msLevel).collect(Collectors.toList());
+    return getScanIndex(msLevel).getScanList();
   }
 
   /**
@@ -199,9 +191,23 @@ public class RawDataFileImpl implements RawDataFile {
   public @Nonnull
   Scan[] getScanNumbers(int msLevel, @Nonnull Range<Float> rtRange) {
     assert rtRange != null;
-    return scans.stream()
-        .filter(s -> s.getMSLevel() == msLevel && rtRange.contains(s.getRetentionTime()))
-        .toArray(Scan[]::new);
+    return getScanIndex(msLevel).getScans(rtRange);
+  }
+
+  @Override
+  @Nonnull
+  public Scan[] getFragmentScans(@Nonnull Range<Float> rtRange,
+      @Nonnull Range<Double> precursorMzRange) {
+    PrecursorIndex index = fragmentScanIndex;
+    if (index == null) {
+      synchronized (this) {
+        if (fragmentScanIndex == null) {
+          fragmentScanIndex = new PrecursorIndex(getScanIndex(2).scans);
+        }
+        index = fragmentScanIndex;
+      }
+    }
+    return index.getScans(rtRange, precursorMzRange);
   }
 
   /**
@@ -210,7 +216,14 @@ public class RawDataFileImpl implements RawDataFile {
   @Override
   @Nonnull
   public int[] getMSLevels() {
-    return scans.stream().mapToInt(Scan::getMSLevel).distinct().sorted().toArray();
+    int[] levels = msLevels;
+    if (levels == null) {
+      synchronized (this) {
+        levels = scans.stream().mapToInt(Scan::getMSLevel).distinct().sorted().toArray();
+        msLevels = levels;
+      }
+    }
+    return levels.clone();
   }
 
   /**
@@ -303,6 +316,27 @@ public class RawDataFileImpl implements RawDataFile {
     dataRTRange.clear();
     dataMaxBasePeakIntensity.clear();
     dataMaxTIC.clear();
+    scanIndexes.clear();
+    fragmentScanIndex = null;
+    msLevels = null;
+  }
+
+  /**
+   * @param msLevel The ms level or {@link #ALL_MS_LEVELS}.
+   * @return The index of the scans of the given ms level. Built on first access.
+   */
+  @Nonnull
+  private ScanIndex getScanIndex(int msLevel) {
+    ScanIndex index = scanIndexes.get(msLevel);
+    if (index == null) {
+      // synchronized with addScan
+      synchronized (this) {
+        index = scanIndexes.computeIfAbsent(msLevel, level -> new ScanIndex(scans.stream()
+            .filter(s -> level == ALL_MS_LEVELS || s.getMSLevel() == level)
+            .toArray(Scan[]::new)));
+      }
+    }
+    return index;
   }
 
 
@@ -408,7 +442,7 @@ public class RawDataFileImpl implements RawDataFile {
 
   @Override
   public int getNumOfScans(int msLevel) {
-    return getScanNumbers(msLevel).size();
+    return getScanIndex(msLevel).scans.length;
   }
 
   @Nonnull
@@ -441,7 +475,9 @@ public class RawDataFileImpl implements RawDataFile {
 
   @Override
   public synchronized void close() {
-
+    if (storageMemoryMap != null) {
+      storageMemoryMap.release();
+    }
   }
 
   @Override
@@ -481,4 +517,157 @@ public class RawDataFileImpl implements RawDataFile {
    */
   public void applyMassListChanged(Scan scan, MassList old, MassList masses) {
   }
+
+  /**
+   * Immutable index of the scans of one ms level in the order of the scan list. If the retention
+   * times are ascending (the usual case), scans are looked up by binary search.
+   */
+  private static final class ScanIndex {
+
+    private final Scan[] scans;
+    private final List<Scan> scanList;
+    private final float[] rts;
+    private final boolean rtSorted;
+
+    private ScanIndex(Scan[] scans) {
+      this.scans = scans;
+      scanList = Collections.unmodifiableList(Arrays.asList(scans));
+      rts = new float[scans.length];
+      boolean sorted = true;
+      for (int i = 0; i < scans.length; i++) {
+        rts[i] = scans[i].getRetentionTime();
+        if (i > 0 && Float.compare(rts[i - 1], rts[i]) > 0) {
+          sorted = false;
+        }
+      }
+      rtSorted = sorted;
+    }
+
+    private List<Scan> getScanList() {
+      return scanList;
+    }
+
+    private Scan[] getScans(Range<Float> rtRange) {
+      int from = 0;
+      int to = rts.length;
+      if (rtSorted) {
+        from = rtRange.hasLowerBound() ? lowerBound(rtRange.lowerEndpoint()) : 0;
+        to = rtRange.hasUpperBound() ? upperBound(rtRange.upperEndpoint()) : rts.length;
+      }
+      return IntStream.range(from, to).filter(i -> rtRange.contains(rts[i]))
+          .mapToObj(i -> scans[i]).toArray(Scan[]::new);
+    }
+
+    /**
+     * @return The scan closest to the given rt with a maximum difference of maxDiff or null. The
+     * first scan is returned for equal differences.
+     */
+    private Scan getClosestScan(float rt, float maxDiff) {
+      int from = 0;
+      int to = rts.length;
+      if (rtSorted) {
+        final int index = lowerBound(rt);
+        from = Math.max(index - 1, 0);
+        to = Math.min(index + 1, rts.length);
+      }
+      Scan closest = null;
+      double minDiff = maxDiff;
+      for (int i = from; i < to; i++) {
+        final double diff = Math.abs(rt - rts[i]);
+        if (diff < minDiff || (closest == null && diff <= minDiff)) {
+          minDiff = diff;
+          closest = scans[i];
+        }
+      }
+      return closest;
+    }
+
+    /**
+     * @return The first index with a retention time >= rt.
+     */
+    private int lowerBound(float rt) {
+      int low = 0;
+      int high = rts.length;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (Float.compare(rts[mid], rt) < 0) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * @return The first index with a retention time > rt.
+     */
+    private int upperBound(float rt) {
+      int low = 0;
+      int high = rts.length;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (Float.compare(rts[mid], rt) <= 0) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+
+  /**
+   * Immutable index of fragment scans sorted by their precursor m/z.
+   */
+  private static final class PrecursorIndex {
+
+    // the fragment scans in the order of the scan list
+    private final Scan[] scans;
+    // positions of the scans in ascending order of the precursor m/z
+    private final int[] order;
+    private final double[] precursorMzs;
+
+    private PrecursorIndex(Scan[] scans) {
+      this.scans = scans;
+      final double[] mzs = new double[scans.length];
+      for (int i = 0; i < scans.length; i++) {
+        mzs[i] = scans[i].getPrecursorMZ();
+      }
+      order = IntStream.range(0, scans.length).toArray();
+      IntArrays.quickSort(order, (a, b) -> Double.compare(mzs[a], mzs[b]));
+      precursorMzs = new double[scans.length];
+      for (int i = 0; i < scans.length; i++) {
+        precursorMzs[i] = mzs[order[i]];
+      }
+    }
+
+    private Scan[] getScans(Range<Float> rtRange, Range<Double> precursorMzRange) {
+      int low = 0;
+      int high = precursorMzs.length;
+      if (precursorMzRange.hasLowerBound()) {
+        final double lower = precursorMzRange.lowerEndpoint();
+        while (low < high) {
+          final int mid = (low + high) >>> 1;
+          if (Double.compare(precursorMzs[mid], lower) < 0) {
+            low = mid + 1;
+          } else {
+            high = mid;
+          }
+        }
+      }
+      final int from = low;
+      int to = from;
+      while (to < precursorMzs.length && (!precursorMzRange.hasUpperBound()
+          || Double.compare(precursorMzs[to], precursorMzRange.upperEndpoint()) <= 0)) {
+        to++;
+      }
+
+      // keep the order of the scan list
+      return IntStream.range(from, to).map(i -> order[i])
+          .filter(i -> precursorMzRange.contains(scans[i].getPrecursorMZ())
+              && rtRange.contains(scans[i].getRetentionTime())).sorted()
+          .mapToObj(i -> scans[i]).toArray(Scan[]::new);
+    }
+  }
 }
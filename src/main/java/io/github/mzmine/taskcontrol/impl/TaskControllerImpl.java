@@ -18,11 +18,6 @@
 
 package io.github.mzmine.taskcontrol.impl;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Iterator;
-import java.util.Vector;
-import java.util.logging.Logger;
 import io.github.mzmine.gui.Desktop;
 import io.github.mzmine.gui.HeadLessDesktop;
 import io.github.mzmine.gui.preferences.MZminePreferences;
@@ -33,47 +28,93 @@ import io.github.mzmine.taskcontrol.TaskControlListener;
 import io.github.mzmine.taskcontrol.TaskController;
 import io.github.mzmine.taskcontrol.TaskPriority;
 import io.github.mzmine.taskcontrol.TaskStatus;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
 
 /**
- * Task controller implementation
+ * Task controller implementation.
+ * <p>
+ * Tasks of NORMAL priority are executed on a work-stealing {@link ForkJoinPool}, whose parallelism
+ * matches the maximum number of concurrent tasks specified in the preferences. Parallel streams
+ * started from within a task are executed in the same pool, so intra-task parallelism does not
+ * oversubscribe the CPU. HIGH priority tasks are always started immediately on a separate thread
+ * pool.
+ * <p>
+ * Dispatching is event driven: waiting tasks are started as soon as a task is added, a running
+ * task finishes or a task priority changes. Threads are reused between tasks. The progress of the
+ * queue is reported to the listeners and the GUI in fixed intervals.
  */
-public class TaskControllerImpl implements TaskController, Runnable {
+public class TaskControllerImpl implements TaskController {
 
   private Logger logger = Logger.getLogger(this.getClass().getName());
 
-  ArrayList<TaskControlListener> listeners = new ArrayList<TaskControlListener>();
+  private final List<TaskControlListener> listeners = new CopyOnWriteArrayList<>();
 
   /**
    * Update the task progress window every 300 ms
    */
-  private final int TASKCONTROLLER_THREAD_SLEEP = 300;
-
-  private Thread taskControllerThread;
+  private static final int PROGRESS_UPDATE_INTERVAL = 300;
 
   private TaskQueue taskQueue;
 
   /**
-   * This vector contains references to all running threads of NORMAL priority. Maximum number of
-   * concurrent threads is specified in the preferences dialog.
+   * Tasks that were not started yet. HIGH priority tasks first, otherwise in the order of
+   * submission.
    */
-  private Vector<WorkerThread> runningThreads;
+  private final PriorityQueue<WrappedTask> pendingTasks = new PriorityQueue<>(
+      Comparator.comparing(WrappedTask::getPriority)
+          .thenComparingLong(WrappedTask::getSequenceNumber));
+
+  /**
+   * Number of running tasks of NORMAL priority. Maximum number of concurrent tasks is specified in
+   * the preferences dialog. Guarded by {@link #pendingTasks}.
+   */
+  private int runningNormalTasks = 0;
+
+  private ForkJoinPool normalPriorityPool;
+  private ExecutorService highPriorityExecutor;
+  private ScheduledExecutorService progressUpdater;
+
+  private int previousQueueSize = -1;
+  private int previousPercentDone = -1;
 
   /**
    * Initialize the task controller
    */
   public void initModule() {
 
-    logger.finest("Starting task controller thread");
+    logger.finest("Starting task controller");
     taskQueue = new TaskQueue();
 
-    runningThreads = new Vector<WorkerThread>();
-
-    // Create a low-priority thread that will manage the queue and start
-    // worker threads for tasks
-    taskControllerThread = new Thread(this, "Task controller thread");
-    taskControllerThread.setPriority(Thread.MIN_PRIORITY);
-    taskControllerThread.start();
-
+    final AtomicInteger highPriorityThreadCounter = new AtomicInteger(0);
+    highPriorityExecutor = Executors.newCachedThreadPool(r -> {
+      final Thread thread = new Thread(r,
+          "High priority task thread " + highPriorityThreadCounter.getAndIncrement());
+      thread.setDaemon(false);
+      return thread;
+    });
+
+    // Create a low-priority thread that reports the progress of the queue
+    progressUpdater = Executors.newSingleThreadScheduledExecutor(r -> {
+      final Thread thread = new Thread(r, "Task controller thread");
+      thread.setPriority(Thread.MIN_PRIORITY);
+      thread.setDaemon(true);
+      return thread;
+    });
+    progressUpdater.scheduleWithFixedDelay(this::updateProgress, PROGRESS_UPDATE_INTERVAL,
+        PROGRESS_UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
   }
 
   @Override
@@ -118,96 +159,117 @@ public class TaskControllerImpl implements TaskController, Runnable {
       WrappedTask newQueueEntry = new WrappedTask(task, priority);
       taskQueue.addWrappedTask(newQueueEntry);
       wrappedTasks[i] = newQueueEntry;
-      // logger.finest("Added wrapped task for " +
-      // task.getTaskDescription());
     }
 
-    // Wake up the task controller thread
-    synchronized (this) {
-      this.notifyAll();
+    synchronized (pendingTasks) {
+      pendingTasks.addAll(Arrays.asList(wrappedTasks));
     }
+
+    // Start as many tasks as possible
+    dispatch();
     return wrappedTasks;
   }
 
   /**
-   * Task controller thread main method.
-   *
-   * @see java.lang.Runnable#run()
+   * Starts waiting tasks until the maximum number of concurrent NORMAL priority tasks is reached.
+   * HIGH priority tasks are always started. Tasks that were canceled before they were started are
+   * skipped.
    */
-  @Override
-  public void run() {
+  private void dispatch() {
+    final int maxRunningTasks = getMaxRunningTasks();
 
-    int previousQueueSize = -1;
-    int previousPercentDone = -1;
+    synchronized (pendingTasks) {
+      while (!pendingTasks.isEmpty()) {
+        final WrappedTask task = pendingTasks.peek();
 
-    while (true) {
+        // Skip canceled tasks
+        if (task.getActualTask().getStatus() == TaskStatus.CANCELED) {
+          pendingTasks.poll();
+          continue;
+        }
 
-      final int waitingTasks = taskQueue.getNumOfWaitingTasks();
-      final int percentDone = taskQueue.getTotalPercentComplete();
-      if ((waitingTasks != previousQueueSize) || (percentDone != previousPercentDone)) {
-        previousQueueSize = waitingTasks;
-        previousPercentDone = percentDone;
-        for (TaskControlListener listener : listeners)
-          listener.numberOfWaitingTasksChanged(waitingTasks, percentDone);
-      }
+        if (task.getPriority() == TaskPriority.HIGH) {
+          pendingTasks.poll();
+          highPriorityExecutor.execute(new TaskWorker(task, false, this::onTaskFinished));
+          continue;
+        }
 
-      // If the queue is empty, we can sleep. When new task is added into
-      // the queue, we will be awaken by notify()
-      synchronized (this) {
-        while (taskQueue.isEmpty()) {
-          try {
-            this.wait(100);
-          } catch (InterruptedException e) {
-            // Ignore
-          }
+        // the queue is sorted by priority, so only NORMAL priority tasks remain
+        if (runningNormalTasks >= maxRunningTasks) {
+          break;
         }
-      }
 
-      // Check if all tasks in the queue are finished
-      if (taskQueue.allTasksFinished()) {
-        taskQueue.clear();
-        continue;
+        pendingTasks.poll();
+        runningNormalTasks++;
+        getNormalPriorityPool(maxRunningTasks)
+            .execute(new TaskWorker(task, true, this::onTaskFinished));
       }
+    }
+  }
 
-      // Remove already finished threads from runningThreads
-      Iterator<WorkerThread> threadIterator = runningThreads.iterator();
-      while (threadIterator.hasNext()) {
-        WorkerThread thread = threadIterator.next();
-        if (thread.isFinished())
-          threadIterator.remove();
+  private void onTaskFinished(TaskWorker worker) {
+    if (worker.countsTowardsLimit()) {
+      synchronized (pendingTasks) {
+        runningNormalTasks--;
       }
+    }
 
-      // Get a snapshot of the queue
-      WrappedTask[] queueSnapshot = taskQueue.getQueueSnapshot();
+    // Start the next task right away
+    dispatch();
 
-      // Obtain the settings of max concurrent threads
-      NumOfThreadsParameter parameter = MZmineCore.getConfiguration().getPreferences()
-          .getParameter(MZminePreferences.numOfThreads);
-      int maxRunningThreads;
-      if (parameter.isAutomatic() || (parameter.getValue() == null))
-        maxRunningThreads = Runtime.getRuntime().availableProcessors();
-      else
-        maxRunningThreads = parameter.getValue();
+    // Check if all tasks in the queue are finished
+    if (taskQueue.clearIfAllTasksFinished()) {
+      updateProgress();
+    }
+  }
 
-      // Check all tasks in the queue
-      for (WrappedTask task : queueSnapshot) {
+  /**
+   * @return The pool for NORMAL priority tasks. If the number of threads was changed in the
+   * preferences, the old pool is shut down after its running tasks are finished.
+   */
+  private ForkJoinPool getNormalPriorityPool(int parallelism) {
+    if (normalPriorityPool == null || normalPriorityPool.getParallelism() != parallelism) {
+      if (normalPriorityPool != null) {
+        normalPriorityPool.shutdown();
+      }
+      logger.finest("Creating task thread pool with " + parallelism + " threads");
+      normalPriorityPool = new ForkJoinPool(parallelism, new TaskThreadFactory(), null, true);
+    }
+    return normalPriorityPool;
+  }
 
-        // Skip assigned and canceled tasks
-        if (task.isAssigned() || (task.getActualTask().getStatus() == TaskStatus.CANCELED))
-          continue;
+  private int getMaxRunningTasks() {
+    // Obtain the settings of max concurrent threads
+    NumOfThreadsParameter parameter = MZmineCore.getConfiguration().getPreferences()
+        .getParameter(MZminePreferences.numOfThreads);
+    int maxRunningThreads;
+    if (parameter.isAutomatic() || (parameter.getValue() == null))
+      maxRunningThreads = Runtime.getRuntime().availableProcessors();
+    else
+      maxRunningThreads = parameter.getValue();
+    return Math.max(1, maxRunningThreads);
+  }
 
-        // Create a new thread if the task is high-priority or if we
-        // have less then maximum # of threads running
-        if ((task.getPriority() == TaskPriority.HIGH)
-            || (runningThreads.size() < maxRunningThreads)) {
-          WorkerThread newThread = new WorkerThread(task);
+  /**
+   * Reports the number of waiting tasks and the total progress to the listeners and refreshes the
+   * tasks window.
+   */
+  private synchronized void updateProgress() {
+    try {
+      // Check if all tasks in the queue are finished (e.g. all remaining tasks were canceled)
+      taskQueue.clearIfAllTasksFinished();
 
-          if (task.getPriority() == TaskPriority.NORMAL) {
-            runningThreads.add(newThread);
-          }
+      final int waitingTasks = taskQueue.getNumOfWaitingTasks();
+      final int percentDone = taskQueue.getTotalPercentComplete();
+      if ((waitingTasks != previousQueueSize) || (percentDone != previousPercentDone)) {
+        previousQueueSize = waitingTasks;
+        previousPercentDone = percentDone;
+        for (TaskControlListener listener : listeners)
+          listener.numberOfWaitingTasksChanged(waitingTasks, percentDone);
+      }
 
-          newThread.start();
-        }
+      if (taskQueue.isEmpty()) {
+        return;
       }
 
       // Refresh the tasks window
@@ -215,16 +277,10 @@ public class TaskControllerImpl implements TaskController, Runnable {
       if ((desktop != null) && (!(desktop instanceof HeadLessDesktop))) {
         desktop.getTasksView().refresh();
       }
-
-      // Sleep for a while until next update
-      try {
-        Thread.sleep(TASKCONTROLLER_THREAD_SLEEP);
-      } catch (InterruptedException e) {
-        // Ignore
-      }
-
+    } catch (Exception e) {
+      // an exception would cancel all further updates
+      logger.warning("Error while updating the task progress: " + e.getMessage());
     }
-
   }
 
   @Override
@@ -239,10 +295,20 @@ public class TaskControllerImpl implements TaskController, Runnable {
       if (wrappedTask.getActualTask() == task) {
         logger.finest(
             "Setting priority of task \"" + task.getTaskDescription() + "\" to " + priority);
-        wrappedTask.setPriority(priority);
+
+        // waiting tasks have to be resorted
+        synchronized (pendingTasks) {
+          final boolean waiting = pendingTasks.remove(wrappedTask);
+          wrappedTask.setPriority(priority);
+          if (waiting) {
+            pendingTasks.add(wrappedTask);
+          }
+        }
       }
     }
 
+    dispatch();
+
     // Refresh the tasks window
     Desktop desktop = MZmineCore.getDesktop();
     if ((desktop != null) && (!(desktop instanceof HeadLessDesktop))) {
@@ -256,4 +322,21 @@ public class TaskControllerImpl implements TaskController, Runnable {
     listeners.add(listener);
   }
 
+  /**
+   * Creates non-daemon worker threads, so the JVM does not exit while tasks are processed.
+   */
+  private static class TaskThreadFactory implements ForkJoinWorkerThreadFactory {
+
+    private final AtomicInteger threadCounter = new AtomicInteger(0);
+
+    @Override
+    public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+      final ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {
+      };
+      thread.setName("Task thread " + threadCounter.getAndIncrement());
+      thread.setDaemon(false);
+      return thread;
+    }
+  }
+
 }
@@ -21,20 +21,28 @@ package io.github.mzmine.taskcontrol.impl;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
-import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.logging.Logger;
-import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
 /**
  * This class stores all tasks (as WrappedTasks) in the queue of task controller and also provides
  * data for TaskProgressWindow (as TableModel).
+ * <p>
+ * The queue itself is independent of the GUI. The observable list returned by {@link #getTasks()}
+ * is a mirror of the queue, which is updated on the JavaFX thread.
  */
 public class TaskQueue {
 
   /**
-   * This observable list stores the actual tasks
+   * The actual tasks in order of their submission.
+   */
+  private final Set<WrappedTask> tasks = new LinkedHashSet<>();
+
+  /**
+   * This observable list mirrors the actual tasks for the GUI
    */
   private final ObservableList<WrappedTask> queue =
       FXCollections.synchronizedObservableList(FXCollections.observableArrayList());
@@ -42,17 +50,27 @@ public class TaskQueue {
 
   public int getNumOfWaitingTasks() {
     final WrappedTask snapshot[] = getQueueSnapshot();
-    final long numOfWaitingTasks = Arrays.asList(snapshot).stream()
-        .filter(task -> ((task.getActualTask().getStatus() == TaskStatus.PROCESSING)
-            || (task.getActualTask().getStatus() == TaskStatus.WAITING)))
-        .count();
-    return (int) numOfWaitingTasks;
+    return countWaitingTasks(snapshot);
+  }
+
+  private static int countWaitingTasks(WrappedTask[] snapshot) {
+    int numOfWaitingTasks = 0;
+    for (WrappedTask task : snapshot) {
+      final TaskStatus status = task.getActualTask().getStatus();
+      if (status == TaskStatus.PROCESSING || status == TaskStatus.WAITING) {
+        numOfWaitingTasks++;
+      }
+    }
+    return numOfWaitingTasks;
   }
 
   public int getTotalPercentComplete() {
     double totalFinished = 0.0;
 
     final WrappedTask snapshot[] = getQueueSnapshot();
+    if (snapshot.length == 0) {
+      return 0;
+    }
 
     for (WrappedTask task : snapshot) {
       totalFinished += task.getActualTask().getFinishedPercentage();
@@ -66,20 +84,47 @@ public class TaskQueue {
     if (task.getActualTask() instanceof AbstractTask) {
       ((AbstractTask) task.getActualTask()).addTaskStatusListener((t, oldStatus, newStatus) -> {
         if (t.getStatus() == TaskStatus.FINISHED) {
+          synchronized (tasks) {
+            tasks.remove(task);
+          }
           MZmineCore.runLater(() -> queue.remove(task));
         }
       });
     }
 
+    synchronized (tasks) {
+      tasks.add(task);
+    }
     MZmineCore.runLater(() -> queue.add(task));
   }
 
   void clear() {
+    synchronized (tasks) {
+      tasks.clear();
+    }
     MZmineCore.runLater(() -> queue.clear());
   }
 
+  /**
+   * Clears the queue if none of the tasks is waiting or processing anymore. The check and the
+   * removal are atomic, so tasks that are added concurrently are not lost.
+   *
+   * @return true if the queue was cleared.
+   */
+  boolean clearIfAllTasksFinished() {
+    synchronized (tasks) {
+      if (tasks.isEmpty() || countWaitingTasks(getQueueSnapshot()) != 0) {
+        return false;
+      }
+      clear();
+      return true;
+    }
+  }
+
   boolean isEmpty() {
-    return queue.isEmpty();
+    synchronized (tasks) {
+      return tasks.isEmpty();
+    }
   }
 
   boolean allTasksFinished() {
@@ -88,7 +133,9 @@ public class TaskQueue {
   }
 
   public WrappedTask[] getQueueSnapshot() {
-    return queue.toArray(new WrappedTask[0]);
+    synchronized (tasks) {
+      return tasks.toArray(new WrappedTask[0]);
+    }
   }
 
   public ObservableList<WrappedTask> getTasks() {
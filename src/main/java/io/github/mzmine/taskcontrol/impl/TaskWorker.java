@@ -1,16 +1,16 @@
 /*
  * Copyright 2006-2020 The MZmine Development Team
- * 
+ *
  * This file is part of MZmine.
- * 
+ *
  * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
  * General Public License as published by the Free Software Foundation; either version 2 of the
  * License, or (at your option) any later version.
- * 
+ *
  * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
  * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
  * Public License for more details.
- * 
+ *
  * You should have received a copy of the GNU General Public License along with MZmine; if not,
  * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
  * USA
@@ -18,36 +18,50 @@
 
 package io.github.mzmine.taskcontrol.impl;
 
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.taskcontrol.Task;
+import io.github.mzmine.taskcontrol.TaskPriority;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.ExceptionUtils;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
- * Task controller worker thread, this thread will process one task and then finish
+ * Processes a single task on a pooled thread of the {@link TaskControllerImpl} and reports back to
+ * the controller once the task is done, so the next task can be started right away.
  */
-class WorkerThread extends Thread {
+class TaskWorker implements Runnable {
 
   private Logger logger = Logger.getLogger(this.getClass().getName());
 
-  private WrappedTask wrappedTask;
-  private boolean finished = false;
+  private final WrappedTask wrappedTask;
+  private final Consumer<TaskWorker> onFinished;
+  private final boolean countsTowardsLimit;
 
-  WorkerThread(WrappedTask wrappedTask) {
-    super("Thread executing task " + wrappedTask);
+  /**
+   * @param wrappedTask        The task to process.
+   * @param countsTowardsLimit true if the task occupies one of the limited NORMAL priority slots.
+   * @param onFinished         Called after the task was processed, regardless of the outcome.
+   */
+  TaskWorker(WrappedTask wrappedTask, boolean countsTowardsLimit,
+      Consumer<TaskWorker> onFinished) {
     this.wrappedTask = wrappedTask;
-    wrappedTask.assignTo(this);
+    this.countsTowardsLimit = countsTowardsLimit;
+    this.onFinished = onFinished;
   }
 
-  /**
-   * @see java.lang.Runnable#run()
-   */
+  @Override
   public void run() {
 
-    Task actualTask = wrappedTask.getActualTask();
+    final Thread thread = Thread.currentThread();
+    final String threadName = thread.getName();
+    final Task actualTask = wrappedTask.getActualTask();
+
+    thread.setName("Thread executing task " + wrappedTask);
+    wrappedTask.assignTo(thread);
+    thread.setPriority(wrappedTask.getPriority() == TaskPriority.HIGH ? Thread.MAX_PRIORITY
+        : Thread.NORM_PRIORITY);
 
     try {
 
@@ -61,8 +75,9 @@ class WorkerThread extends Thread {
       if (actualTask.getStatus() == TaskStatus.ERROR) {
 
         String errorMsg = actualTask.getErrorMessage();
-        if (errorMsg == null)
+        if (errorMsg == null) {
           errorMsg = "Unspecified error";
+        }
 
         // Log the error
         logger.severe("Error of task " + actualTask.getTaskDescription() + ": " + errorMsg);
@@ -96,17 +111,21 @@ class WorkerThread extends Thread {
       MZmineCore.getDesktop().displayErrorMessage("Unhandled exception in task "
           + actualTask.getTaskDescription() + ": " + ExceptionUtils.exceptionToString(e));
 
+    } finally {
+      // the thread is reused for the next task
+      wrappedTask.assignTo(null);
+      thread.setPriority(Thread.NORM_PRIORITY);
+      thread.setName(threadName);
+      onFinished.accept(this);
     }
+  }
 
-    /*
-     * Mark this thread as finished
-     */
-    finished = true;
-
+  WrappedTask getWrappedTask() {
+    return wrappedTask;
   }
 
-  boolean isFinished() {
-    return finished;
+  boolean countsTowardsLimit() {
+    return countsTowardsLimit;
   }
 
 }
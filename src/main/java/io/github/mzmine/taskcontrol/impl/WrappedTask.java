@@ -20,6 +20,7 @@ package io.github.mzmine.taskcontrol.impl;
 
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskPriority;
+import java.util.concurrent.atomic.AtomicLong;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 
@@ -42,13 +43,25 @@ public class WrappedTask {
     return name;
   }
 
+  private static final AtomicLong sequenceCounter = new AtomicLong(0);
+
   private Task task;
   private TaskPriority priority;
-  private WorkerThread assignedTo;
+  private volatile Thread assignedTo;
+  private final long sequenceNumber;
 
   public WrappedTask(Task task, TaskPriority priority) {
     this.task = task;
     this.priority = priority;
+    this.sequenceNumber = sequenceCounter.getAndIncrement();
+  }
+
+  /**
+   * @return A number reflecting the order in which the tasks were submitted. Tasks of the same
+   * priority are started in this order.
+   */
+  long getSequenceNumber() {
+    return sequenceNumber;
   }
 
   /**
@@ -63,6 +76,7 @@ public class WrappedTask {
    */
   void setPriority(TaskPriority priority) {
     this.priority = priority;
+    final Thread assignedTo = this.assignedTo;
     if (assignedTo != null) {
       switch (priority) {
         case HIGH:
@@ -82,7 +96,10 @@ public class WrappedTask {
     return assignedTo != null;
   }
 
-  void assignTo(WorkerThread thread) {
+  /**
+   * @param thread The thread executing this task or null, if the task is not executed anymore.
+   */
+  void assignTo(Thread thread) {
     assignedTo = thread;
   }
 
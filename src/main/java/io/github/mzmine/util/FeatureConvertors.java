@@ -166,6 +166,39 @@ public class FeatureConvertors {
           "Can not create modular feature from ion trace of non-modular feature list.");
     }
 
+    MemoryMapStorage storage = ((ModularFeatureList) ionTrace.getFeatureList())
+        .getMemoryMapStorage();
+    List<IonMobilitySeries> mobilograms = new ArrayList<>();
+    var sortedDp = FeatureConvertorIonMobility.groupDataPointsByFrameId(ionTrace.getDataPoints());
+    for (Entry<Frame, SortedSet<RetentionTimeMobilityDataPoint>> entry : sortedDp.entrySet()) {
+      double[][] data = DataPointUtils.getDataPointsAsDoubleArray(entry.getValue());
+      SimpleIonMobilitySeries mobilogram = new SimpleIonMobilitySeries(storage, data[0], data[1],
+          entry.getValue().stream().map(RetentionTimeMobilityDataPoint::getMobilityScan).collect(
+              Collectors.toList()));
+      mobilograms.add(mobilogram);
+    }
+    IonMobilogramTimeSeries imTimeSeries = new SimpleIonMobilogramTimeSeries(storage, mobilograms);
+    return IonMobilityIonTraceToModularFeature(ionTrace, rawDataFile, imTimeSeries);
+  }
+
+  /**
+   * Creates a feature from an ion trace whose data points were already converted to mobilograms,
+   * e.g. by a builder that does not keep the single data points in memory.
+   *
+   * @param ionTrace     The ion trace with the feature list and the ranges set.
+   * @param rawDataFile  The raw data file.
+   * @param imTimeSeries The mobilograms of the ion trace.
+   * @return The feature.
+   */
+  public static ModularFeature IonMobilityIonTraceToModularFeature(
+      @Nonnull IIonMobilityTrace ionTrace, RawDataFile rawDataFile,
+      @Nonnull IonMobilogramTimeSeries imTimeSeries) {
+
+    if (!(ionTrace.getFeatureList() instanceof ModularFeatureList)) {
+      throw new IllegalArgumentException(
+          "Can not create modular feature from ion trace of non-modular feature list.");
+    }
+
     ModularFeature modularFeature =
         new ModularFeature((ModularFeatureList) ionTrace.getFeatureList());
 
@@ -191,18 +224,6 @@ public class FeatureConvertors {
 //    List<DataPoint> dps = new ArrayList<>(ionTrace.getDataPoints());
 //    modularFeature.set(DataPointsType.class, dps);
 
-    MemoryMapStorage storage = ((ModularFeatureList) ionTrace.getFeatureList())
-        .getMemoryMapStorage();
-    List<IonMobilitySeries> mobilograms = new ArrayList<>();
-    var sortedDp = FeatureConvertorIonMobility.groupDataPointsByFrameId(ionTrace.getDataPoints());
-    for (Entry<Frame, SortedSet<RetentionTimeMobilityDataPoint>> entry : sortedDp.entrySet()) {
-      double[][] data = DataPointUtils.getDataPointsAsDoubleArray(entry.getValue());
-      SimpleIonMobilitySeries mobilogram = new SimpleIonMobilitySeries(storage, data[0], data[1],
-          entry.getValue().stream().map(RetentionTimeMobilityDataPoint::getMobilityScan).collect(
-              Collectors.toList()));
-      mobilograms.add(mobilogram);
-    }
-    IonMobilogramTimeSeries imTimeSeries = new SimpleIonMobilogramTimeSeries(storage, mobilograms);
     modularFeature.set(FeatureDataType.class, imTimeSeries);
 
     // Ranges
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import sun.misc.Unsafe;
+
+/**
+ * A pool of memory-mapped segments that are handed out to {@link MemoryMapStorage}s. Every pool
+ * manages its own set of temporary files. Each file is divided into {@link #SEGMENTS_PER_FILE}
+ * slots of {@link #SEGMENT_CAPACITY} bytes, which are mapped lazily, one at a time, when a storage
+ * requests a new segment. This way, only the segments that are actually used occupy virtual
+ * address space.
+ * <p>
+ * A slot is reclaimed as soon as the mapped segment (and therefore every buffer that was sliced
+ * from it) is no longer reachable. This is tracked with phantom references, so data that is still
+ * referenced by a scan or feature is never overwritten, even if the storage that created it was
+ * released.
+ * <p>
+ * Arrays that do not fit into a single segment are stored in a dedicated temporary file, which is
+ * deleted once the data is no longer reachable.
+ */
+final class MemoryMapSegmentPool {
+
+  /**
+   * Size of a single segment. Small enough to keep the virtual memory footprint of mostly empty
+   * storages low, large enough to keep the number of mappings manageable.
+   */
+  static final int SEGMENT_CAPACITY = 64 * 1024 * 1024;
+
+  /**
+   * 16 x 64 MiB = 1 GiB per temporary file.
+   */
+  private static final int SEGMENTS_PER_FILE = 16;
+
+  private static final Logger logger = Logger.getLogger(MemoryMapSegmentPool.class.getName());
+
+  private final String name;
+  private final ReferenceQueue<ByteBuffer> referenceQueue = new ReferenceQueue<>();
+  private final Set<SegmentReference> liveSegments = new HashSet<>();
+  private final Deque<Slot> freeSlots = new ArrayDeque<>();
+  private final List<File> temporaryFiles = new ArrayList<>();
+
+  MemoryMapSegmentPool(@Nonnull String name) {
+    this.name = name;
+  }
+
+  /**
+   * @return A new segment of {@link #SEGMENT_CAPACITY} bytes. Previously used slots are reused
+   * if their data is not reachable anymore.
+   * @throws IOException If a new temporary file cannot be created or mapped.
+   */
+  @Nonnull
+  synchronized Segment acquireSegment() throws IOException {
+    reclaimUnreachableSegments();
+
+    if (freeSlots.isEmpty()) {
+      createNewFile();
+    }
+
+    final Slot slot = freeSlots.poll();
+    final MappedByteBuffer buffer;
+    try (RandomAccessFile raf = new RandomAccessFile(slot.file, "rw")) {
+      // the memory mapping will remain after the file is closed
+      buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+          (long) slot.index * SEGMENT_CAPACITY, SEGMENT_CAPACITY);
+    } catch (IOException e) {
+      freeSlots.push(slot);
+      throw e;
+    }
+
+    liveSegments.add(new SegmentReference(buffer, referenceQueue, slot, null));
+    return new Segment(buffer);
+  }
+
+  /**
+   * Stores data that does not fit into a single segment in a dedicated temporary file.
+   *
+   * @param numBytes The number of bytes to map.
+   * @return A buffer of the given capacity.
+   * @throws IOException If the temporary file cannot be created or mapped.
+   */
+  @Nonnull
+  synchronized ByteBuffer acquireDedicated(int numBytes) throws IOException {
+    reclaimUnreachableSegments();
+
+    final File file = File.createTempFile("mzmine", ".tmp");
+    file.deleteOnExit();
+    logger.finest(() -> "Created a dedicated temporary file " + file + " for " + numBytes + " bytes");
+
+    final MappedByteBuffer buffer;
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, numBytes);
+    }
+
+    liveSegments.add(new SegmentReference(buffer, referenceQueue, null, file));
+    return buffer;
+  }
+
+  /**
+   * @return The number of segments that are currently mapped by this pool.
+   */
+  synchronized int getNumberOfMappedSegments() {
+    reclaimUnreachableSegments();
+    return liveSegments.size();
+  }
+
+  /**
+   * Unmaps all segments that are still reachable (if an {@link Unsafe} is given) and deletes all
+   * temporary files of this pool. Buffers obtained from this pool must not be accessed afterwards.
+   */
+  synchronized void discard(@Nullable Unsafe theUnsafe) {
+    if (theUnsafe != null) {
+      for (SegmentReference reference : liveSegments) {
+        final ByteBuffer buffer = reference.weakBuffer.get();
+        if (buffer != null) {
+          theUnsafe.invokeCleaner(buffer);
+        }
+      }
+    }
+
+    for (SegmentReference reference : liveSegments) {
+      if (reference.dedicatedFile != null) {
+        temporaryFiles.add(reference.dedicatedFile);
+      }
+    }
+
+    for (File tmpFile : temporaryFiles) {
+      if (!tmpFile.delete()) {
+        logger.warning("Could not delete temporary file " + tmpFile.getAbsolutePath());
+      }
+    }
+
+    liveSegments.clear();
+    freeSlots.clear();
+    temporaryFiles.clear();
+  }
+
+  private void createNewFile() throws IOException {
+    // Create the temporary storage file. The file is sparse, it only occupies the disk space of
+    // the segments that were actually written.
+    final File file = File.createTempFile("mzmine", ".tmp");
+    temporaryFiles.add(file);
+    logger.finest(() -> "Created a temporary file " + file + " for the " + name + " pool");
+
+    // Unfortunately, deleteOnExit() doesn't work on Windows, see JDK
+    // bug #4171239. We will try to remove the temporary files in a
+    // shutdown hook registered in the main.ShutDownHook class.
+    file.deleteOnExit();
+
+    for (int i = 0; i < SEGMENTS_PER_FILE; i++) {
+      freeSlots.add(new Slot(file, i));
+    }
+  }
+
+  /**
+   * Returns the slots of all segments that are not reachable anymore to the pool and deletes
+   * unreachable dedicated files.
+   */
+  private void reclaimUnreachableSegments() {
+    Reference<? extends ByteBuffer> ref;
+    while ((ref = referenceQueue.poll()) != null) {
+      final SegmentReference reference = (SegmentReference) ref;
+      if (!liveSegments.remove(reference)) {
+        continue; // pool was discarded in the meantime
+      }
+
+      if (reference.slot != null) {
+        freeSlots.push(reference.slot);
+      } else if (reference.dedicatedFile != null && !reference.dedicatedFile.delete()) {
+        // might still be mapped on windows, try again on exit
+        temporaryFiles.add(reference.dedicatedFile);
+      }
+    }
+  }
+
+  /**
+   * A region of {@link #SEGMENT_CAPACITY} bytes in one of the temporary files.
+   */
+  private static final class Slot {
+
+    private final File file;
+    private final int index;
+
+    private Slot(File file, int index) {
+      this.file = file;
+      this.index = index;
+    }
+  }
+
+  private static final class SegmentReference extends PhantomReference<ByteBuffer> {
+
+    private final WeakReference<ByteBuffer> weakBuffer;
+    private final Slot slot;
+    private final File dedicatedFile;
+
+    private SegmentReference(ByteBuffer buffer, ReferenceQueue<ByteBuffer> queue,
+        @Nullable Slot slot, @Nullable File dedicatedFile) {
+      super(buffer, queue);
+      this.weakBuffer = new WeakReference<>(buffer);
+      this.slot = slot;
+      this.dedicatedFile = dedicatedFile;
+    }
+  }
+
+  /**
+   * A mapped segment that hands out non-overlapping regions to concurrent writers. A region is
+   * reserved by advancing the write position with a compare-and-set, so no lock is needed while
+   * the data is copied.
+   */
+  static final class Segment {
+
+    private final ByteBuffer buffer;
+    private final AtomicInteger position = new AtomicInteger(0);
+
+    private Segment(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    /**
+     * @param numBytes The number of bytes to reserve.
+     * @return A buffer of exactly numBytes capacity or null, if the segment is full.
+     */
+    @Nullable
+    ByteBuffer reserve(int numBytes) {
+      while (true) {
+        final int start = position.get();
+        final int end = start + numBytes;
+        if (end > buffer.capacity() || end < 0) {
+          return null;
+        }
+        if (position.compareAndSet(start, end)) {
+          // duplicate, so the position of the shared segment buffer is never modified.
+          return buffer.duplicate().position(start).limit(end).slice();
+        }
+      }
+    }
+  }
+}
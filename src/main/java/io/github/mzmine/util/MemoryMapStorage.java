@@ -18,21 +18,15 @@
 
 package io.github.mzmine.util;
 
-import io.github.mzmine.main.MZmineCore;
-import java.io.File;
+import io.github.mzmine.util.MemoryMapSegmentPool.Segment;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.DoubleBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-import java.util.logging.Logger;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import sun.misc.Unsafe;
@@ -43,19 +37,22 @@ import sun.misc.Unsafe;
  * buffer is directly bound to the memory-mapped portion of the file so the data can be directly
  * accessed without loading it into another intermediate primitive type array.
  * <p>
- * The size of each temporary file is STORAGE_FILE_CAPACITY bytes. When the file is full, a new file
- * is automatically created using the createNewMappedFile() function. The size of each temporary
- * file in the filesystem may show as 1GB, but actually only a portion of that space is occupied on
- * the disk, depending on the amount of stored data (this can be examined using the 'du -hs' Linux
- * command.
+ * A storage does not own any temporary files. It requests segments of {@link
+ * MemoryMapSegmentPool#SEGMENT_CAPACITY} bytes from a process-wide {@link MemoryMapSegmentPool}
+ * (one pool for raw data files, feature lists and mass lists each) as soon as data is stored. This
+ * way, a storage that is created but (almost) never used does not occupy virtual address space or
+ * disk space. Arrays that exceed the capacity of a segment are stored in a dedicated file.
  * <p>
- * There is no support for removing data from the file - we assume such operation is rare and
- * therefore the data can be left on the disk until the whole temporary file is discarded.
+ * Allocation is lock-striped: every storage keeps a small number of open segments and each thread
+ * writes to the segment of its stripe. A region within a segment is reserved with a
+ * compare-and-set, so concurrent tasks storing into the same storage (e.g. mass detection) do not
+ * block each other while copying their data. A lock is only acquired when a stripe's segment is
+ * full and a new one has to be requested from the pool.
  * <p>
- * There is a limit on the number of open file descriptors (e.g. 1024 by default on Linux). With 1
- * GB per temporary file, this would give us about 1 TB of storage space, so perhaps it is okay.
- * There is no way to remove the memory-mapped file, it is removed automatically when the
- * MappedByteBuffer is garbage-collected.
+ * There is no support for removing single arrays. Once the storage is {@link #release()}d (e.g.
+ * when the raw data file or feature list is removed from the project), its open segments are
+ * handed back to the pool. The pool reuses a segment as soon as none of the buffers sliced from it
+ * are reachable anymore, so data still referenced by other feature lists is never overwritten.
  * <p>
  * The total amount of storage space is also limited by the amount of addressable virtual memory
  * (e.g., 128TB on Linux). For this reason, this approach requires a 64-bit system - the limit would
@@ -63,25 +60,29 @@ import sun.misc.Unsafe;
  */
 public class MemoryMapStorage {
 
+  private static final MemoryMapSegmentPool rawDataPool = new MemoryMapSegmentPool("raw data");
+  private static final MemoryMapSegmentPool featurePool = new MemoryMapSegmentPool("feature");
+  private static final MemoryMapSegmentPool massListPool = new MemoryMapSegmentPool("mass list");
+
   /**
-   * One temporary file can store STORAGE_FILE_CAPACITY bytes. We need to fit within 2GB limit for a
-   * single MappedByteBuffer. 1 GB per file seems like a good start.
+   * Number of segments that can be written concurrently. Has to be a power of 2.
    */
-  private static final long STORAGE_FILE_CAPACITY = 1_000_000_000L;
-  private final Logger logger = Logger.getLogger(this.getClass().getName());
-  private final Set<File> temporaryFiles = new HashSet<>();
-  private final List<MappedByteBuffer> mappedByteBufferList = new ArrayList<>();
+  private static final int STRIPES = Math.min(4,
+      Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors())));
 
   private static boolean storeFeaturesInRam = false;
   private static boolean storeRawFilesInRam = false;
   private static boolean storeMassListsInRam = false;
 
+  private final MemoryMapSegmentPool pool;
+  private final AtomicReferenceArray<Segment> stripes = new AtomicReferenceArray<>(STRIPES);
+
   /**
    * @return The {@link MemoryMapStorage} or null, if the data shall be stored in ram.
    */
   @Nullable
   public static MemoryMapStorage forFeatureList() {
-    return storeFeaturesInRam ? null : new MemoryMapStorage();
+    return storeFeaturesInRam ? null : new MemoryMapStorage(featurePool);
   }
 
   /**
@@ -89,7 +90,7 @@ public class MemoryMapStorage {
    */
   @Nullable
   public static MemoryMapStorage forRawDataFile() {
-    return storeRawFilesInRam ? null : new MemoryMapStorage();
+    return storeRawFilesInRam ? null : new MemoryMapStorage(rawDataPool);
   }
 
   /**
@@ -97,56 +98,52 @@ public class MemoryMapStorage {
    */
   @Nullable
   public static MemoryMapStorage forMassList() {
-    return storeMassListsInRam ? null : new MemoryMapStorage();
+    return storeMassListsInRam ? null : new MemoryMapStorage(massListPool);
   }
 
   @Nonnull
   public static MemoryMapStorage create() {
-    return new MemoryMapStorage();
+    return new MemoryMapStorage(featurePool);
   }
 
-  private MemoryMapStorage() {
-    // register this storage to MZmineCore, so we can delete all temp files later.
-    MZmineCore.registerStorage(this);
+  private MemoryMapStorage(@Nonnull MemoryMapSegmentPool pool) {
+    this.pool = pool;
   }
 
   /**
-   * The file that we are currently writing into.
-   */
-  private MappedByteBuffer currentMappedFile = null;
-
-  /**
-   * Creates a new temporary file, maps it into memory, and returns the corresponding
-   * MappedByteBuffer. The capacity of the buffer is STORAGE_FILE_CAPACITY bytes.
+   * Reserves a region of the given size in the segment of the current thread's stripe.
    *
-   * @return a MappedByteBuffer corresponding to the memory-mapped temporary file
-   * @throws IOException
+   * @param numBytes the number of bytes to reserve
+   * @return a buffer of exactly numBytes capacity, directly mapped to the temporary file
+   * @throws IOException if a new segment cannot be mapped
    */
-  private MappedByteBuffer createNewMappedFile() throws IOException {
-
-    // Create the temporary storage file
-    File storageFileName = File.createTempFile("mzmine", ".tmp");
-    temporaryFiles.add(storageFileName);
-    logger.finest("Created a temporary file " + storageFileName);
-
-    // Open the file for writing
-    RandomAccessFile storageFile = new RandomAccessFile(storageFileName, "rw");
-
-    // Map the file into memory
-    MappedByteBuffer mappedFileBuffer =
-        storageFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, STORAGE_FILE_CAPACITY);
-    mappedByteBufferList.add(mappedFileBuffer);
-
-    // Close the temporary file, the memory mapping will remain
-    storageFile.close();
-
-    // Unfortunately, deleteOnExit() doesn't work on Windows, see JDK
-    // bug #4171239. We will try to remove the temporary files in a
-    // shutdown hook registered in the main.ShutDownHook class.
-    storageFileName.deleteOnExit();
+  @Nonnull
+  private ByteBuffer reserve(final long numBytes) throws IOException {
+    if (numBytes > Integer.MAX_VALUE) {
+      throw new IOException("Cannot store " + numBytes + " bytes in a single buffer.");
+    }
+    if (numBytes > MemoryMapSegmentPool.SEGMENT_CAPACITY) {
+      return pool.acquireDedicated((int) numBytes);
+    }
 
-    return mappedFileBuffer;
+    final int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+    while (true) {
+      final Segment segment = stripes.get(stripe);
+      if (segment != null) {
+        final ByteBuffer region = segment.reserve((int) numBytes);
+        if (region != null) {
+          return region;
+        }
+      }
 
+      // If we have no segment or if the current segment is full, request a new one. Only one
+      // thread per stripe may do so, the others will retry with the new segment.
+      synchronized (stripes) {
+        if (stripes.get(stripe) == segment) {
+          stripes.set(stripe, pool.acquireSegment());
+        }
+      }
+    }
   }
 
   /**
@@ -158,8 +155,7 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @Nonnull
-  public synchronized DoubleBuffer storeData(@Nonnull final double data[])
-      throws IOException {
+  public DoubleBuffer storeData(@Nonnull final double data[]) throws IOException {
     return storeData(data, 0, data.length);
   }
 
@@ -174,36 +170,17 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @Nonnull
-  public synchronized DoubleBuffer storeData(@Nonnull final double data[], int offset,
-      int length) throws IOException {
-
-    // If we have no storage file or if the current file is full, create a new one
-    if ((currentMappedFile == null)
-        || (currentMappedFile.position() + (length * Double.BYTES) > STORAGE_FILE_CAPACITY)) {
-      currentMappedFile = createNewMappedFile();
-    }
-
-    // Save the current position in the storage file
-    final int savedPosition = currentMappedFile.position();
-
-    // Set the limit to the end of the new array and create a buffer slice
-    currentMappedFile.limit(savedPosition + length * Double.BYTES);
-    final ByteBuffer slice = currentMappedFile.slice();
+  public DoubleBuffer storeData(@Nonnull final double data[], int offset, int length)
+      throws IOException {
 
     // Create a double view of the memory-mapped byte buffer
-    DoubleBuffer sliceDoubleView = slice.asDoubleBuffer();
+    final DoubleBuffer doubleView = reserve((long) length * Double.BYTES).asDoubleBuffer();
 
     // Copy the data to the memory mapped storage
-    sliceDoubleView.put(data, offset, length);
-
-    // Update the position and the main buffer so we are ready to store the next array
-    currentMappedFile.position(savedPosition + length * Double.BYTES);
+    doubleView.put(data, offset, length);
 
     // Create a read-only version of the new buffer slice
-    final DoubleBuffer readOnlySlice = sliceDoubleView.asReadOnlyBuffer();
-
-    return readOnlySlice;
-
+    return doubleView.flip().asReadOnlyBuffer();
   }
 
   /**
@@ -215,8 +192,7 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @Nonnull
-  public synchronized FloatBuffer storeData(@Nonnull final float data[])
-      throws IOException {
+  public FloatBuffer storeData(@Nonnull final float data[]) throws IOException {
     return storeData(data, 0, data.length);
   }
 
@@ -231,36 +207,17 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @Nonnull
-  public synchronized FloatBuffer storeData(@Nonnull final float data[], int offset,
-      int length) throws IOException {
-
-    // If we have no storage file or if the current file is full, create a new one
-    if ((currentMappedFile == null)
-        || (currentMappedFile.position() + length > STORAGE_FILE_CAPACITY)) {
-      currentMappedFile = createNewMappedFile();
-    }
-
-    // Save the current position in the storage file
-    final int savedPosition = currentMappedFile.position();
-
-    // Set the limit to the end of the new array and create a buffer slice
-    currentMappedFile.limit(savedPosition + length * Float.BYTES);
-    final ByteBuffer slice = currentMappedFile.slice();
+  public FloatBuffer storeData(@Nonnull final float data[], int offset, int length)
+      throws IOException {
 
     // Create a float view of the memory-mapped byte buffer
-    FloatBuffer sliceFloatView = slice.asFloatBuffer();
+    final FloatBuffer floatView = reserve((long) length * Float.BYTES).asFloatBuffer();
 
     // Copy the data to the memory mapped storage
-    sliceFloatView.put(data, offset, length);
-
-    // Update the position and the main buffer so we are ready to store the next array
-    currentMappedFile.position(savedPosition + length * Float.BYTES);
+    floatView.put(data, offset, length);
 
     // Create a read-only version of the new buffer slice
-    final FloatBuffer readOnlySlice = sliceFloatView.asReadOnlyBuffer();
-
-    return readOnlySlice;
-
+    return floatView.flip().asReadOnlyBuffer();
   }
 
   /**
@@ -272,7 +229,7 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @Nonnull
-  public synchronized IntBuffer storeData(@Nonnull final int data[]) throws IOException {
+  public IntBuffer storeData(@Nonnull final int data[]) throws IOException {
     return storeData(data, 0, data.length);
   }
 
@@ -287,57 +244,68 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @Nonnull
-  public synchronized IntBuffer storeData(@Nonnull final int data[], int offset,
-      int length) throws IOException {
-
-    // If we have no storage file or if the current file is full, create a new one
-    if ((currentMappedFile == null)
-        || (currentMappedFile.position() + length > STORAGE_FILE_CAPACITY)) {
-      currentMappedFile = createNewMappedFile();
-    }
-
-    // Save the current position in the storage file
-    final int savedPosition = currentMappedFile.position();
-
-    // Set the limit to the end of the new array and create a buffer slice
-    currentMappedFile.limit(savedPosition + length * Integer.BYTES);
-    final ByteBuffer slice = currentMappedFile.slice();
+  public IntBuffer storeData(@Nonnull final int data[], int offset, int length)
+      throws IOException {
 
     // Create an int view of the memory-mapped byte buffer
-    IntBuffer sliceIntView = slice.asIntBuffer();
+    final IntBuffer intView = reserve((long) length * Integer.BYTES).asIntBuffer();
 
     // Copy the data to the memory mapped storage
-    sliceIntView.put(data, offset, length);
-
-    // Update the position and the main buffer so we are ready to store the next array
-    currentMappedFile.position(savedPosition + length * Integer.BYTES);
+    intView.put(data, offset, length);
 
     // Create a read-only version of the new buffer slice
-    final IntBuffer readOnlySlice = sliceIntView.asReadOnlyBuffer();
-
-    return readOnlySlice;
-
+    return intView.flip().asReadOnlyBuffer();
   }
 
   /**
-   * Discard this memory-mapped storage and remove all the associated temporary files.
+   * Copies the next numBytes bytes of the given channel to a memory-mapped temporary file and
+   * returns a read-only ByteBuffer that can access the data. The data is not copied to the heap,
+   * so this is used to map binary data blocks (e.g. from a saved project) without decoding them.
+   *
+   * @param channel  the channel to read from
+   * @param numBytes the number of bytes to copy
+   * @return a read-only ByteBuffer that is directly mapped to the stored data on the disk
+   * @throws IOException if the channel cannot be read or ends before numBytes bytes were read
    */
-  public synchronized void discard(Unsafe theUnsafe) throws IOException {
+  @Nonnull
+  public ByteBuffer storeData(@Nonnull final ReadableByteChannel channel, final long numBytes)
+      throws IOException {
+
+    final ByteBuffer region = reserve(numBytes);
 
-    if (theUnsafe != null) {
-      for (MappedByteBuffer mappedByteBuffer : mappedByteBufferList) {
-        theUnsafe.invokeCleaner(mappedByteBuffer);
+    while (region.hasRemaining()) {
+      if (channel.read(region) < 0) {
+        throw new EOFException(
+            "Expected " + numBytes + " bytes, but the channel ended after " + region.position());
       }
     }
 
-    for (File tmpFile : temporaryFiles) {
-      if (!tmpFile.delete()) {
-        logger.warning("Could not delete temporary file " + tmpFile.getAbsolutePath());
+    return region.flip().asReadOnlyBuffer();
+  }
+
+  /**
+   * Releases the segments this storage is currently writing to. Buffers that were already
+   * returned by this storage stay valid. The segments are reused by the pool once none of these
+   * buffers is reachable anymore. The storage itself can still be used afterwards, it will request
+   * new segments on demand.
+   */
+  public void release() {
+    synchronized (stripes) {
+      for (int i = 0; i < STRIPES; i++) {
+        stripes.set(i, null);
       }
     }
+  }
 
-    temporaryFiles.clear();
-    currentMappedFile = null;
+  /**
+   * Discard all memory-mapped storages and remove all the associated temporary files. Buffers
+   * returned by any storage must not be accessed afterwards, so this should only be called on
+   * shutdown.
+   */
+  public static void discardAll(@Nullable Unsafe theUnsafe) {
+    rawDataPool.discard(theUnsafe);
+    featurePool.discard(theUnsafe);
+    massListPool.discard(theUnsafe);
   }
 
 }
@@ -20,9 +20,13 @@ package io.github.mzmine.util;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * Detector of raw data file format
@@ -65,6 +69,9 @@ public class RawDataFileTypeDetector {
   private static final String TDF_BIN_SUFFIX = ".tdf_bin";
   private static final String BRUKER_FOLDER_SUFFIX = ".d";
 
+  // bytes of a stream that are inspected, the mobility accessions are found in the first spectrum
+  private static final int STREAM_LOOKAHEAD = 1 << 20;
+
   /**
    * @return Detected file type or null if the file is not of any supported type
    */
@@ -179,4 +186,62 @@ public class RawDataFileTypeDetector {
 
   }
 
+  /**
+   * Detects the type of the data in a stream, e.g. the decompressed entry of an archive. Only the
+   * XML formats are detected, which can be parsed from a stream. Other formats need random access
+   * to a file.
+   *
+   * @param name The file name of the data. Types that are detected by the file name (e.g. imzML,
+   *             which has an mzML header) are not detected from the stream.
+   * @param is   A stream that supports mark and reset. It is reset to the start afterwards.
+   * @return Detected type or null if the stream contains neither mzML, mzXML nor mzData, the mzML
+   * type cannot be decided from the beginning of the stream or the type depends on the name
+   */
+  @Nullable
+  public static RawDataFileType detectDataFileType(@Nonnull String name, @Nonnull InputStream is)
+      throws IOException {
+    if (!is.markSupported()) {
+      throw new IllegalArgumentException("Stream does not support mark and reset");
+    }
+    if (isDetectedByName(name)) {
+      return null;
+    }
+
+    is.mark(STREAM_LOOKAHEAD);
+    final byte[] buffer = is.readNBytes(STREAM_LOOKAHEAD);
+    is.reset();
+
+    final String content = new String(buffer, StandardCharsets.ISO_8859_1)
+        .replaceAll("[^\\x00-\\x7F]", "");
+    final String header = content.substring(0, Math.min(1024, content.length()));
+
+    if (header.contains(MZML_HEADER)) {
+      // accession for mobility
+      if (content.contains("1002476") || content.contains("1002815")) {
+        return RawDataFileType.MZML_IMS;
+      }
+      return content.contains("/scan") ? RawDataFileType.MZML : null;
+    }
+
+    if (header.contains(MZDATA_HEADER)) {
+      return RawDataFileType.MZDATA;
+    }
+
+    if (header.contains(MZXML_HEADER)) {
+      return RawDataFileType.MZXML;
+    }
+
+    return null;
+  }
+
+  /**
+   * @return true, if the type of a file with this name is decided by the name in {@link
+   * #detectDataFileType(File)}
+   */
+  private static boolean isDetectedByName(@Nonnull String name) {
+    final String lowerName = name.toLowerCase();
+    return lowerName.endsWith("imzml") || lowerName.endsWith(".csv") || name.contains(TDF_SUFFIX)
+        || name.contains(TDF_BIN_SUFFIX);
+  }
+
 }
@@ -561,9 +561,8 @@ public class ScanUtils {
     assert rtRange != null;
     assert mzRange != null;
 
-    return dataFile.getScanNumbers(2).stream()
-        .filter(s -> s.getBasePeakIntensity() != null && rtRange.contains(s.getRetentionTime())
-            && mzRange.contains(s.getPrecursorMZ()))
+    return Arrays.stream(dataFile.getFragmentScans(rtRange, mzRange))
+        .filter(s -> s.getBasePeakIntensity() != null)
         .max(Comparator.comparingDouble(s -> s.getBasePeakIntensity())).orElse(null);
   }
 
@@ -577,10 +576,7 @@ public class ScanUtils {
     assert rtRange != null;
     assert mzRange != null;
 
-    return dataFile.getScanNumbers(2).stream()
-        .filter(s -> rtRange.contains(s.getRetentionTime())
-            && mzRange.contains(s.getPrecursorMZ()))
-        .toArray(Scan[]::new);
+    return dataFile.getFragmentScans(rtRange, mzRange);
   }
 
   /**
@@ -56,6 +56,38 @@ public abstract class SpectralSimilarityFunction implements MZmineModule {
   public abstract SpectralSimilarity getSimilarity(ParameterSet parameters, MZTolerance mzTol,
       int minMatch, DataPoint[] library, DataPoint[] query);
 
+  /**
+   * Same as {@link #getSimilarity(ParameterSet, MZTolerance, int, DataPoint[], DataPoint[])} on
+   * prepared spectra. Functions that support prepared spectra override this method to score
+   * without sorting and converting the data points. The default implementation uses the data
+   * points of the spectra.
+   *
+   * @param parameters
+   * @param mzTol
+   * @param minMatch minimum overlap in signals
+   * @param library  prepared with the {@link #getWeights(ParameterSet)} of this function
+   * @param query    prepared with the {@link #getWeights(ParameterSet)} of this function
+   * @param matcher  reusable matcher of the current thread
+   * @return A spectra similarity if all requirements were met - otherwise null
+   */
+  @Nullable
+  public SpectralSimilarity getSimilarity(ParameterSet parameters, MZTolerance mzTol,
+      int minMatch, WeightedSpectrum library, WeightedSpectrum query,
+      WeightedSpectrumMatcher matcher) {
+    // the data point arrays are shared and sorted by the alignment
+    return getSimilarity(parameters, mzTol, minMatch, library.getDataPoints().clone(),
+        query.getDataPoints().clone());
+  }
+
+  /**
+   * 
+   * @param parameters
+   * @return the weights to prepare {@link WeightedSpectrum}s for this function
+   */
+  public Weights getWeights(ParameterSet parameters) {
+    return Weights.NONE;
+  }
+
   /**
    * Align two mass lists. Override if alignement is changed in a specific spectral similarity
    * function.
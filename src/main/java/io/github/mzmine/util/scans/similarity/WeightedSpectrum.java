@@ -0,0 +1,105 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util.scans.similarity;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.util.scans.ScanAlignment;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import javax.annotation.Nonnull;
+
+/**
+ * A mass list prepared for repeated similarity scoring with a {@link WeightedSpectrumMatcher}. The
+ * data points are sorted and weighted once, so a spectrum that is compared to many others (e.g. a
+ * library entry or the mass list of a row) does not need to be sorted and converted for every
+ * comparison.
+ * <p>
+ * The values are copied, later changes to the order of the data point array (e.g. by {@link
+ * ScanAlignment#align}) do not affect this spectrum.
+ */
+public class WeightedSpectrum {
+
+  private final DataPoint[] dataPoints;
+  private final Weights weights;
+
+  // values in the order of ScanAlignment.sorter (intensity descending)
+  final double[] mz;
+  final double[] intensity;
+  final double[] weighted;
+
+  // indices of the values above, sorted by m/z (ascending), and their m/z values
+  final int[] mzOrder;
+  final double[] sortedMz;
+
+  /**
+   * @param dataPoints the mass list
+   * @param weights    the weights used by the similarity function
+   */
+  public WeightedSpectrum(@Nonnull DataPoint[] dataPoints, @Nonnull Weights weights) {
+    this.dataPoints = dataPoints;
+    this.weights = weights;
+
+    final int n = dataPoints.length;
+    final int[] order = new int[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+    IntArrays.quickSort(order,
+        (a, b) -> ScanAlignment.sorter.compare(dataPoints[a], dataPoints[b]));
+
+    mz = new double[n];
+    intensity = new double[n];
+    weighted = new double[n];
+    for (int i = 0; i < n; i++) {
+      final DataPoint dp = dataPoints[order[i]];
+      mz[i] = dp.getMZ();
+      intensity[i] = dp.getIntensity();
+      // same as ScanAlignment.toIntensityMatrixWeighted
+      weighted[i] =
+          Math.pow(intensity[i], weights.getIntensity()) * Math.pow(mz[i], weights.getMz());
+    }
+
+    mzOrder = new int[n];
+    for (int i = 0; i < n; i++) {
+      mzOrder[i] = i;
+    }
+    IntArrays.quickSort(mzOrder, (a, b) -> Double.compare(mz[a], mz[b]));
+    sortedMz = new double[n];
+    for (int i = 0; i < n; i++) {
+      sortedMz[i] = mz[mzOrder[i]];
+    }
+  }
+
+  /**
+   * @return the mass list this spectrum was created from. The array is shared, it must be copied
+   * before it is sorted.
+   */
+  @Nonnull
+  public DataPoint[] getDataPoints() {
+    return dataPoints;
+  }
+
+  @Nonnull
+  public Weights getWeights() {
+    return weights;
+  }
+
+  public int getNumberOfDataPoints() {
+    return mz.length;
+  }
+}
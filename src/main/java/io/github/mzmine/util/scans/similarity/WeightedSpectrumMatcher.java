@@ -0,0 +1,203 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util.scans.similarity;
+
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.scans.ScanAlignment;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.ints.IntComparator;
+import java.util.Arrays;
+import javax.annotation.Nonnull;
+
+/**
+ * Aligns two {@link WeightedSpectrum}s and calculates the similarity measures on the aligned
+ * signals without creating any objects. The alignment is the same as {@link ScanAlignment#align}:
+ * the library signals are matched in the order of descending intensity, each one to the most
+ * intense query signal within m/z tolerance that was not matched before. All sums are calculated
+ * in the same order as on the aligned data point list, so the results are exactly the same as
+ * those of the data point based functions.
+ * <p>
+ * A matcher keeps the state of the last alignment in reusable arrays. It is not thread-safe, every
+ * thread needs its own matcher.
+ */
+public class WeightedSpectrumMatcher {
+
+  private WeightedSpectrum library;
+  private WeightedSpectrum query;
+
+  // index of the matched query signal for every library signal or -1
+  private int[] libraryMatch = new int[0];
+  // query signals with a stamp equal to the current stamp are matched
+  private int[] queryMatched = new int[0];
+  private int stamp = 0;
+  private int overlap = 0;
+
+  // library indices of matched signals, sorted by m/z for the relative neighbour factor
+  private int[] matchedByMz = new int[0];
+  private final IntComparator minMzComparator = (a, b) -> {
+    final int result = Double.compare(getMinMz(a), getMinMz(b));
+    // stable like List.sort: keep the alignment order for equal m/z values
+    return result != 0 ? result : Integer.compare(a, b);
+  };
+
+  /**
+   * Aligns the signals of both spectra.
+   *
+   * @return the number of matched signals
+   */
+  public int align(@Nonnull MZTolerance mzTol, @Nonnull WeightedSpectrum library,
+      @Nonnull WeightedSpectrum query) {
+    this.library = library;
+    this.query = query;
+
+    final int nLib = library.getNumberOfDataPoints();
+    final int nQuery = query.getNumberOfDataPoints();
+    if (libraryMatch.length < nLib) {
+      libraryMatch = new int[nLib];
+    }
+    if (queryMatched.length < nQuery) {
+      queryMatched = new int[nQuery];
+      stamp = 0;
+    }
+    if (stamp == Integer.MAX_VALUE) {
+      Arrays.fill(queryMatched, 0);
+      stamp = 0;
+    }
+    stamp++;
+
+    overlap = 0;
+    final double[] sortedMz = query.sortedMz;
+    for (int i = 0; i < nLib; i++) {
+      // same tolerance range as MZTolerance.checkWithinTolerance(library mz, query mz)
+      final double mz = library.mz[i];
+      final double tolerance = mzTol.getMzToleranceForMass(mz);
+      final double lower = mz - tolerance;
+      final double upper = mz + tolerance;
+
+      // the most intense unmatched query signal within the range has the lowest index
+      int best = -1;
+      for (int s = lowerBound(sortedMz, lower); s < nQuery && sortedMz[s] <= upper; s++) {
+        final int q = query.mzOrder[s];
+        if (queryMatched[q] != stamp && (best == -1 || q < best)) {
+          best = q;
+        }
+      }
+
+      libraryMatch[i] = best;
+      if (best != -1) {
+        queryMatched[best] = stamp;
+        overlap++;
+      }
+    }
+    return overlap;
+  }
+
+  /**
+   * @return the number of matched signals of the last alignment
+   */
+  public int getOverlap() {
+    return overlap;
+  }
+
+  /**
+   * Cosine similarity of the weighted intensities of the last alignment. Equal to {@link
+   * io.github.mzmine.util.maths.similarity.Similarity#COSINE} on {@link
+   * ScanAlignment#toIntensityMatrixWeighted}.
+   *
+   * @param removeUnmatched only use matched signals, like {@link ScanAlignment#removeUnaligned}
+   */
+  public double getWeightedCosine(boolean removeUnmatched) {
+    final int nLib = library.getNumberOfDataPoints();
+    final double[] libWeighted = library.weighted;
+    final double[] queryWeighted = query.weighted;
+
+    double dot = 0;
+    double libNorm = 0;
+    double queryNorm = 0;
+    // aligned list: all library signals with their match
+    for (int i = 0; i < nLib; i++) {
+      final int q = libraryMatch[i];
+      if (q != -1) {
+        dot += libWeighted[i] * queryWeighted[q];
+        libNorm += libWeighted[i] * libWeighted[i];
+        queryNorm += queryWeighted[q] * queryWeighted[q];
+      } else if (!removeUnmatched) {
+        libNorm += libWeighted[i] * libWeighted[i];
+      }
+    }
+    // followed by the unmatched query signals
+    if (!removeUnmatched) {
+      for (int q = 0; q < query.getNumberOfDataPoints(); q++) {
+        if (queryMatched[q] != stamp) {
+          queryNorm += queryWeighted[q] * queryWeighted[q];
+        }
+      }
+    }
+    return dot / (Math.sqrt(libNorm) * Math.sqrt(queryNorm));
+  }
+
+  /**
+   * Sum of the relative intensity ratios of neighbouring matched signals (sorted by m/z), divided
+   * by the overlap. Ranges from 0 to 1.
+   */
+  public double getRelativeNeighbourFactor() {
+    if (matchedByMz.length < overlap) {
+      matchedByMz = new int[library.getNumberOfDataPoints()];
+    }
+    int n = 0;
+    for (int i = 0; i < library.getNumberOfDataPoints(); i++) {
+      if (libraryMatch[i] != -1) {
+        matchedByMz[n++] = i;
+      }
+    }
+    IntArrays.quickSort(matchedByMz, 0, n, minMzComparator);
+
+    double factor = 0;
+    for (int i = 1; i < n; i++) {
+      final int lib1 = matchedByMz[i - 1];
+      final int lib2 = matchedByMz[i];
+      final double ratioLibrary = library.intensity[lib2] / library.intensity[lib1];
+      final double ratioQuery =
+          query.intensity[libraryMatch[lib2]] / query.intensity[libraryMatch[lib1]];
+      factor += Math.min(ratioLibrary, ratioQuery) / Math.max(ratioLibrary, ratioQuery);
+    }
+    return factor / overlap;
+  }
+
+  private double getMinMz(int lib) {
+    return Math.min(library.mz[lib], query.mz[libraryMatch[lib]]);
+  }
+
+  /**
+   * @return the index of the first value >= key
+   */
+  private static int lowerBound(double[] sorted, double key) {
+    int low = 0;
+    int high = sorted.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (sorted[mid] < key) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
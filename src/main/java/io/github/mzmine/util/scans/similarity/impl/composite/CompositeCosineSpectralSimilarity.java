@@ -31,6 +31,8 @@ import io.github.mzmine.util.maths.similarity.Similarity;
 import io.github.mzmine.util.scans.ScanAlignment;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarity;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarityFunction;
+import io.github.mzmine.util.scans.similarity.WeightedSpectrum;
+import io.github.mzmine.util.scans.similarity.WeightedSpectrumMatcher;
 import io.github.mzmine.util.scans.similarity.Weights;
 
 /**
@@ -86,6 +88,41 @@ public class CompositeCosineSpectralSimilarity extends SpectralSimilarityFunctio
     return null;
   }
 
+  /**
+   * Aligns and scores the prepared spectra without creating objects. Only if all requirements
+   * are met, the similarity is created on the data points.
+   */
+  @Override
+  public SpectralSimilarity getSimilarity(ParameterSet parameters, MZTolerance mzTol, int minMatch,
+      WeightedSpectrum library, WeightedSpectrum query, WeightedSpectrumMatcher matcher) {
+    Weights weights = getWeights(parameters);
+    if (library.getWeights() != weights || query.getWeights() != weights)
+      return super.getSimilarity(parameters, mzTol, minMatch, library, query, matcher);
+
+    double minCos =
+        parameters.getParameter(CompositeCosineSpectralSimilarityParameters.minCosine).getValue();
+    boolean removeUnmatched = parameters
+        .getParameter(CompositeCosineSpectralSimilarityParameters.removeUnmatched).getValue();
+
+    int queryN = query.getNumberOfDataPoints();
+    int overlap = matcher.align(mzTol, library, query);
+    if (overlap < minMatch)
+      return null;
+
+    double relativeFactor = matcher.getRelativeNeighbourFactor();
+    double diffCosine = matcher.getWeightedCosine(removeUnmatched);
+    double composite = (queryN * diffCosine + overlap * relativeFactor) / (queryN + overlap);
+    if (composite < minCos)
+      return null;
+
+    return super.getSimilarity(parameters, mzTol, minMatch, library, query, matcher);
+  }
+
+  @Override
+  public Weights getWeights(ParameterSet parameters) {
+    return parameters.getParameter(CompositeCosineSpectralSimilarityParameters.weight).getValue();
+  }
+
   /**
    * sum of relative ratios of neighbours in both mass lists
    * 
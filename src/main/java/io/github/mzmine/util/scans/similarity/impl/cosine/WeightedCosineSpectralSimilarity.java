@@ -29,6 +29,8 @@ import io.github.mzmine.util.maths.similarity.Similarity;
 import io.github.mzmine.util.scans.ScanAlignment;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarity;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarityFunction;
+import io.github.mzmine.util.scans.similarity.WeightedSpectrum;
+import io.github.mzmine.util.scans.similarity.WeightedSpectrumMatcher;
 import io.github.mzmine.util.scans.similarity.Weights;
 
 /**
@@ -73,6 +75,34 @@ public class WeightedCosineSpectralSimilarity extends SpectralSimilarityFunction
     return null;
   }
 
+  /**
+   * Aligns and scores the prepared spectra without creating objects. Only if all requirements
+   * are met, the similarity is created on the data points.
+   */
+  @Override
+  public SpectralSimilarity getSimilarity(ParameterSet parameters, MZTolerance mzTol, int minMatch,
+      WeightedSpectrum library, WeightedSpectrum query, WeightedSpectrumMatcher matcher) {
+    Weights weights = getWeights(parameters);
+    if (library.getWeights() != weights || query.getWeights() != weights)
+      return super.getSimilarity(parameters, mzTol, minMatch, library, query, matcher);
+
+    double minCos =
+        parameters.getParameter(WeightedCosineSpectralSimilarityParameters.minCosine).getValue();
+    boolean removeUnmatched = parameters
+        .getParameter(WeightedCosineSpectralSimilarityParameters.removeUnmatched).getValue();
+
+    int overlap = matcher.align(mzTol, library, query);
+    if (overlap < minMatch || matcher.getWeightedCosine(removeUnmatched) < minCos)
+      return null;
+
+    return super.getSimilarity(parameters, mzTol, minMatch, library, query, matcher);
+  }
+
+  @Override
+  public Weights getWeights(ParameterSet parameters) {
+    return parameters.getParameter(WeightedCosineSpectralSimilarityParameters.weight).getValue();
+  }
+
   @Override
   @Nonnull
   public String getName() {
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util.spectraldb;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.spectraldb.entry.SpectralDBEntry;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * An index of a spectral library to find the candidates of a library search without comparing
+ * the query to every entry. The index is built once per library and consists of
+ * <ul>
+ * <li>the precursor m/z values of all entries in a sorted array and</li>
+ * <li>an inverted index of the fragment signals, mapping m/z bins to the entries with a signal in
+ * this bin (one posting per signal).</li>
+ * </ul>
+ * <p>
+ * A {@link Searcher} returns all entries with a precursor m/z in a given range that have at least
+ * minMatch signals in the bins covered by the tolerance windows of the query signals. Spectral
+ * similarity functions match every library signal at most once and require at least minMatch
+ * matched signals, so every entry that can be matched is a candidate. The exact similarity only
+ * has to be calculated for the candidates.
+ */
+public class SpectralLibraryIndex {
+
+  /**
+   * The tolerance windows of the query are widened by this factor. A match is defined by the
+   * tolerance of either signal, which may be slightly larger than the tolerance of the query
+   * signal (ppm).
+   */
+  private static final double WINDOW_FACTOR = 2d;
+
+  private final SpectralDBEntry[] entries;
+  private final double binWidth;
+
+  // precursor m/z of the entries with a precursor, sorted
+  private final double[] sortedPrecursors;
+  private final int[] precursorOrder;
+
+  // fragment bins, sorted. The postings of bin i are stored in postings[binStart[i]] to
+  // postings[binStart[i + 1] - 1] in ascending order.
+  private final int[] bins;
+  private final int[] binStart;
+  private final int[] postings;
+
+  /**
+   * @param entries  the library entries. The position of an entry in this list is its index.
+   * @param binWidth the m/z width of the fragment bins. Only affects the performance, not the
+   *                 result of a search.
+   */
+  public SpectralLibraryIndex(@Nonnull List<SpectralDBEntry> entries, double binWidth) {
+    this.entries = entries.toArray(SpectralDBEntry[]::new);
+    this.binWidth = binWidth;
+
+    // precursors
+    final IntArrayList withPrecursor = new IntArrayList();
+    for (int i = 0; i < this.entries.length; i++) {
+      final Double precursor = this.entries[i].getPrecursorMZ();
+      if (precursor != null && !precursor.isNaN()) {
+        withPrecursor.add(i);
+      }
+    }
+    precursorOrder = withPrecursor.toIntArray();
+    IntArrays.quickSort(precursorOrder, (a, b) -> Double
+        .compare(this.entries[a].getPrecursorMZ(), this.entries[b].getPrecursorMZ()));
+    sortedPrecursors = new double[precursorOrder.length];
+    for (int i = 0; i < precursorOrder.length; i++) {
+      sortedPrecursors[i] = this.entries[precursorOrder[i]].getPrecursorMZ();
+    }
+
+    // fragment postings as (bin << 32 | entry), sorted by bin and entry
+    int numSignals = 0;
+    for (SpectralDBEntry entry : this.entries) {
+      numSignals += entry.getDataPoints().length;
+    }
+    final long[] binAndEntry = new long[numSignals];
+    int n = 0;
+    for (int i = 0; i < this.entries.length; i++) {
+      for (DataPoint dp : this.entries[i].getDataPoints()) {
+        binAndEntry[n++] = ((long) toBin(dp.getMZ()) << 32) | i;
+      }
+    }
+    LongArrays.parallelQuickSort(binAndEntry);
+
+    final IntArrayList binList = new IntArrayList();
+    final IntArrayList startList = new IntArrayList();
+    postings = new int[numSignals];
+    for (int p = 0; p < numSignals; p++) {
+      final int bin = (int) (binAndEntry[p] >>> 32);
+      if (binList.isEmpty() || binList.getInt(binList.size() - 1) != bin) {
+        binList.add(bin);
+        startList.add(p);
+      }
+      postings[p] = (int) binAndEntry[p];
+    }
+    startList.add(numSignals);
+    bins = binList.toIntArray();
+    binStart = startList.toIntArray();
+  }
+
+  /**
+   * @return the number of entries
+   */
+  public int size() {
+    return entries.length;
+  }
+
+  @Nonnull
+  public SpectralDBEntry getEntry(int index) {
+    return entries[index];
+  }
+
+  /**
+   * @return a new searcher. Searchers are not thread safe, every thread needs its own.
+   */
+  @Nonnull
+  public Searcher createSearcher() {
+    return new Searcher();
+  }
+
+  private int toBin(double mz) {
+    // negative or invalid m/z values do not occur in spectra, keep them in the first bin
+    return mz > 0 ? (int) Math.min(mz / binWidth, Integer.MAX_VALUE) : 0;
+  }
+
+  /**
+   * @return the first index in the sorted array with a value >= the given value
+   */
+  private static int firstIndexNotBelow(double[] sorted, double value) {
+    int low = 0;
+    int high = sorted.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (sorted[mid] < value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the first index in the sorted array with a value >= the given value
+   */
+  private static int firstIndexNotBelow(int[] sorted, int value) {
+    int low = 0;
+    int high = sorted.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (sorted[mid] < value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Finds candidate entries for query spectra. Keeps the counters of a search, so it must only be
+   * used by a single thread.
+   */
+  public class Searcher {
+
+    // number of signals of an entry in the bins of the current query
+    private final int[] counts = new int[entries.length];
+    // entries with a count > 0
+    private final IntArrayList touched = new IntArrayList();
+    // search stamp of entries that passed the precursor filter and of selected candidates
+    private final int[] allowedStamp = new int[entries.length];
+    private final int[] selectedStamp = new int[entries.length];
+    private int stamp = 0;
+
+    private Searcher() {
+    }
+
+    /**
+     * Finds all entries that can match at least one of the query spectra.
+     *
+     * @param precursorMZ  the precursor m/z of the query or null to not filter by precursor.
+     * @param precursorTol the precursor tolerance
+     * @param queries      the m/z values of the query spectra
+     * @param mzTol        the tolerance to match signals
+     * @param minMatch     the minimum number of matched signals
+     * @return the indices of the candidates in ascending order
+     */
+    @Nonnull
+    public int[] findCandidates(@Nullable Double precursorMZ, @Nullable MZTolerance precursorTol,
+        @Nonnull List<double[]> queries, @Nonnull MZTolerance mzTol, int minMatch) {
+      nextStamp();
+      final IntArrayList candidates = new IntArrayList();
+
+      final boolean filterPrecursor = precursorMZ != null && precursorTol != null;
+      if (filterPrecursor) {
+        final double tol = WINDOW_FACTOR * precursorTol.getMzToleranceForMass(precursorMZ);
+        final double upper = precursorMZ + tol;
+        for (int i = firstIndexNotBelow(sortedPrecursors, precursorMZ - tol);
+            i < sortedPrecursors.length && sortedPrecursors[i] <= upper; i++) {
+          allowedStamp[precursorOrder[i]] = stamp;
+        }
+      }
+
+      if (minMatch <= 0) {
+        // every entry passing the precursor filter can match
+        for (int e = 0; e < entries.length; e++) {
+          if (!filterPrecursor || allowedStamp[e] == stamp) {
+            candidates.add(e);
+          }
+        }
+        return candidates.toIntArray();
+      }
+
+      for (double[] query : queries) {
+        countSignalsInBins(query, mzTol, filterPrecursor);
+        for (int i = 0; i < touched.size(); i++) {
+          final int e = touched.getInt(i);
+          if (counts[e] >= minMatch && selectedStamp[e] != stamp) {
+            selectedStamp[e] = stamp;
+            candidates.add(e);
+          }
+          counts[e] = 0;
+        }
+        touched.clear();
+      }
+
+      final int[] result = candidates.toIntArray();
+      Arrays.sort(result);
+      return result;
+    }
+
+    private void nextStamp() {
+      stamp++;
+      if (stamp == Integer.MAX_VALUE) {
+        Arrays.fill(allowedStamp, 0);
+        Arrays.fill(selectedStamp, 0);
+        stamp = 1;
+      }
+    }
+
+    private void countSignalsInBins(@Nonnull double[] query, @Nonnull MZTolerance mzTol,
+        boolean filterPrecursor) {
+      final double[] mzs = query.clone();
+      Arrays.sort(mzs);
+
+      // every bin is only counted once, even if it is covered by multiple query signals
+      long lastCountedBin = Long.MIN_VALUE;
+      for (double mz : mzs) {
+        final double tol = WINDOW_FACTOR * mzTol.getMzToleranceForMass(mz);
+        final int lowerBin = (int) Math.max(toBin(mz - tol), lastCountedBin + 1);
+        final int upperBin = toBin(mz + tol);
+        if (lowerBin > upperBin) {
+          continue;
+        }
+
+        for (int b = firstIndexNotBelow(bins, lowerBin); b < bins.length && bins[b] <= upperBin;
+            b++) {
+          for (int p = binStart[b]; p < binStart[b + 1]; p++) {
+            final int e = postings[p];
+            if (filterPrecursor && allowedStamp[e] != stamp) {
+              continue;
+            }
+            if (counts[e]++ == 0) {
+              touched.add(e);
+            }
+          }
+        }
+        lastCountedBin = upperBin;
+      }
+    }
+  }
+}
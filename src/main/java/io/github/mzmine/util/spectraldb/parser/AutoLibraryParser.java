@@ -20,13 +20,18 @@ package io.github.mzmine.util.spectraldb.parser;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.util.files.FileTypeFilter;
 
 /**
- * Auto detects library format
+ * Auto detects library format. Parsed libraries are cached in a binary file, see {@link
+ * SpectralLibraryCache}.
  * 
  * @author Robin Schmid
  *
@@ -42,20 +47,44 @@ public class AutoLibraryParser extends SpectralDBParser {
   @Override
   public boolean parse(AbstractTask mainTask, File dataBaseFile)
       throws UnsupportedFormatException, IOException {
+    // entries of a library that was parsed before are read from the cache
+    SpectralLibraryCache cache = new SpectralLibraryCache(dataBaseFile);
+    final AtomicInteger deliveredEntries = new AtomicInteger(0);
+    try {
+      if (cache.read(mainTask, entry -> {
+        deliveredEntries.incrementAndGet();
+        addLibraryEntry(entry);
+      })) {
+        finish();
+        return true;
+      }
+    } catch (IOException e) {
+      // parsing again would pass the entries that were already read a second time
+      if (deliveredEntries.get() > 0) {
+        throw e;
+      }
+      logger.log(Level.WARNING, "Parsing library file " + dataBaseFile + " again", e);
+    }
+    if (deliveredEntries.get() > 0) {
+      // canceled while reading the cache
+      return false;
+    }
+    if (mainTask.isCanceled())
+      return false;
+
     FileTypeFilter json = new FileTypeFilter("json", "");
     FileTypeFilter msp = new FileTypeFilter("msp", "");
     FileTypeFilter mgf = new FileTypeFilter("mgf", "");
     FileTypeFilter jdx = new FileTypeFilter("jdx", "");
     if (json.accept(dataBaseFile)) {
       // test Gnps and MONA json parser
-      SpectralDBParser[] parser =
-          new SpectralDBParser[] {new MonaJsonParser(bufferEntries, processor),
-              new GnpsJsonParser(bufferEntries, processor)};
-      for (SpectralDBParser p : parser) {
+      List<BiFunction<Integer, LibraryEntryProcessor, SpectralDBParser>> parser =
+          List.of(MonaJsonParser::new, GnpsJsonParser::new);
+      for (BiFunction<Integer, LibraryEntryProcessor, SpectralDBParser> p : parser) {
         if (mainTask.isCanceled())
           return false;
         try {
-          boolean state = p.parse(mainTask, dataBaseFile);
+          boolean state = parse(mainTask, dataBaseFile, cache, p);
           if (state)
             return state;
           else
@@ -65,23 +94,23 @@ public class AutoLibraryParser extends SpectralDBParser {
         }
       }
     } else {
-      final SpectralDBParser parser;
+      final BiFunction<Integer, LibraryEntryProcessor, SpectralDBParser> parser;
       // msp, jdx or mgf
       if (msp.accept(dataBaseFile)) {
         // load NIST msp format
-        parser = new NistMspParser(bufferEntries, processor);
+        parser = NistMspParser::new;
       } else if (jdx.accept(dataBaseFile)) {
         // load jdx format
-        parser = new JdxParser(bufferEntries, processor);
+        parser = JdxParser::new;
       } else if (mgf.accept(dataBaseFile)) {
-        parser = new GnpsMgfParser(bufferEntries, processor);
+        parser = GnpsMgfParser::new;
       } else {
         throw (new UnsupportedFormatException(
             "Format not supported: " + dataBaseFile.getAbsolutePath()));
       }
 
       // parse the file
-      boolean state = parser.parse(mainTask, dataBaseFile);
+      boolean state = parse(mainTask, dataBaseFile, cache, parser);
       if (state)
         return state;
     }
@@ -92,4 +121,28 @@ public class AutoLibraryParser extends SpectralDBParser {
           "Format not supported: " + dataBaseFile.getAbsolutePath()));
   }
 
+  /**
+   * Parses the file with a new parser and writes all entries to the cache. The cache file is only
+   * replaced if the file was parsed completely.
+   */
+  private boolean parse(AbstractTask mainTask, File dataBaseFile, SpectralLibraryCache cache,
+      BiFunction<Integer, LibraryEntryProcessor, SpectralDBParser> parserFactory)
+      throws UnsupportedFormatException, IOException {
+    final SpectralLibraryCache.Writer writer = cache.createWriter();
+    if (writer == null) {
+      return parserFactory.apply(bufferEntries, processor).parse(mainTask, dataBaseFile);
+    }
+
+    boolean state = false;
+    try {
+      state = parserFactory.apply(bufferEntries, (list, alreadyProcessed) -> {
+        writer.append(list);
+        processor.processNextEntries(list, alreadyProcessed);
+      }).parse(mainTask, dataBaseFile);
+      return state;
+    } finally {
+      writer.close(state && !mainTask.isCanceled());
+    }
+  }
+
 }
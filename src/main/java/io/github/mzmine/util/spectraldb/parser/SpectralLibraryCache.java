@@ -0,0 +1,448 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util.spectraldb.parser;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.util.spectraldb.entry.DBEntryField;
+import io.github.mzmine.util.spectraldb.entry.SpectralDBEntry;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Compiled binary copy of a parsed spectral library. The text formats (json, msp, mgf, jdx) are
+ * slow to parse, so the entries of a library are written to a cache file in the temporary
+ * directory while the library is parsed for the first time. As long as the library file is not
+ * changed, the entries are read from the cache file on subsequent imports.
+ * <p>
+ * There is one cache file per library path. It is only used if it was written for the same path,
+ * file size and modification time of the library and by the same format version. The entries are
+ * stored in library order, each one as:
+ * <ul>
+ * <li>number of data points (int)</li>
+ * <li>the m/z values and the intensities of all data points (double blocks)</li>
+ * <li>number of fields (byte), then field index (byte), value type (byte) and value for every
+ * field</li>
+ * </ul>
+ * Strings are pooled: a string is written once, all further occurrences (e.g. instrument or ion
+ * mode) refer to its index in the pool and share the same instance when the cache is read. The
+ * entries are followed by -1, the number of entries, a CRC32 checksum of all preceding bytes and
+ * the magic number. The whole file is validated against the checksum before any entry is read, so
+ * an incomplete or corrupt file is detected before entries are passed on.
+ */
+class SpectralLibraryCache {
+
+  private static final Logger logger = Logger.getLogger(SpectralLibraryCache.class.getName());
+
+  private static final int MAGIC = 0x4D5A4C42;
+  private static final int FORMAT_VERSION = 2;
+  private static final String EXTENSION = ".mzlib";
+  private static final String CACHE_DIRECTORY = "mzmine_library_cache";
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  private static final byte STRING = 0;
+  private static final byte STRING_REFERENCE = 1;
+  private static final byte DOUBLE = 2;
+  private static final byte FLOAT = 3;
+  private static final byte INTEGER = 4;
+
+  private final File libraryFile;
+  private final File cacheFile;
+
+  /**
+   * @param libraryFile the spectral library text file
+   */
+  SpectralLibraryCache(@Nonnull File libraryFile) {
+    this.libraryFile = libraryFile.getAbsoluteFile();
+    final File directory = new File(System.getProperty("java.io.tmpdir"), CACHE_DIRECTORY);
+    this.cacheFile = new File(directory, libraryFile.getName() + "_"
+        + Integer.toHexString(this.libraryFile.getPath().hashCode()) + EXTENSION);
+  }
+
+  /**
+   * Reads all entries from the cache file, if it is up to date.
+   *
+   * @param task     cancels the reading
+   * @param consumer receives the entries in library order
+   * @return true if the entries were read, false if there is no valid cache file or the task was
+   * canceled
+   * @throws IOException if the cache file is corrupt. The file is deleted in this case. Corrupt
+   *                     files are usually detected by the checksum before any entry is passed to
+   *                     the consumer.
+   */
+  boolean read(@Nonnull AbstractTask task, @Nonnull Consumer<SpectralDBEntry> consumer)
+      throws IOException {
+    final int numEntries = readNumEntries();
+    if (numEntries < 0) {
+      return false;
+    }
+    validateChecksum(task);
+    if (task.isCanceled()) {
+      return false;
+    }
+
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(cacheFile), BUFFER_SIZE))) {
+      if (!readHeader(in)) {
+        return false;
+      }
+
+      final DBEntryField[] fields = new DBEntryField[in.readUnsignedByte()];
+      for (int i = 0; i < fields.length; i++) {
+        final String name = in.readUTF();
+        try {
+          fields[i] = DBEntryField.valueOf(name);
+        } catch (IllegalArgumentException e) {
+          // the field was removed, its values are skipped
+          fields[i] = null;
+        }
+      }
+
+      final List<String> strings = new ArrayList<>();
+      byte[] buffer = new byte[0];
+      int entries = 0;
+      int numDataPoints;
+      while ((numDataPoints = in.readInt()) >= 0) {
+        if (task.isCanceled()) {
+          return false;
+        }
+
+        final int numBytes = numDataPoints * 2 * Double.BYTES;
+        if (buffer.length < numBytes) {
+          buffer = new byte[numBytes];
+        }
+        in.readFully(buffer, 0, numBytes);
+        final ByteBuffer values = ByteBuffer.wrap(buffer, 0, numBytes);
+        final DataPoint[] dps = new DataPoint[numDataPoints];
+        for (int i = 0; i < numDataPoints; i++) {
+          dps[i] = new SimpleDataPoint(values.getDouble(i * Double.BYTES),
+              values.getDouble((numDataPoints + i) * Double.BYTES));
+        }
+
+        final Map<DBEntryField, Object> map = new EnumMap<>(DBEntryField.class);
+        final int numFields = in.readUnsignedByte();
+        for (int i = 0; i < numFields; i++) {
+          final DBEntryField field = fields[in.readUnsignedByte()];
+          final Object value = readValue(in, strings);
+          if (field != null) {
+            map.put(field, value);
+          }
+        }
+
+        consumer.accept(new SpectralDBEntry(map, dps));
+        entries++;
+      }
+
+      if (entries != numEntries) {
+        throw new IOException("Expected " + numEntries + " entries, but read " + entries);
+      }
+      logger.info(() -> "Read " + numEntries + " library entries from cache " + cacheFile);
+      return true;
+    } catch (IOException | RuntimeException e) {
+      // the next import will parse the library again
+      delete(cacheFile);
+      throw new IOException("Cannot read library cache " + cacheFile, e);
+    }
+  }
+
+  /**
+   * Compares the checksum of the cache file with the checksum in its trailer.
+   *
+   * @throws IOException if the checksums differ. The file is deleted in this case.
+   */
+  private void validateChecksum(@Nonnull AbstractTask task) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(cacheFile, "r");
+        CheckedInputStream in = new CheckedInputStream(new FileInputStream(cacheFile),
+            new CRC32())) {
+      final long checkedLength = file.length() - 2 * Integer.BYTES;
+      file.seek(checkedLength);
+      final int expected = file.readInt();
+
+      final byte[] buffer = new byte[BUFFER_SIZE];
+      long remaining = checkedLength;
+      while (remaining > 0 && !task.isCanceled()) {
+        final int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+        if (read < 0) {
+          throw new IOException("Unexpected end of file");
+        }
+        remaining -= read;
+      }
+      if (!task.isCanceled() && (int) in.getChecksum().getValue() != expected) {
+        throw new IOException("Checksum mismatch");
+      }
+    } catch (IOException e) {
+      // the next import will parse the library again
+      delete(cacheFile);
+      throw new IOException("Cannot read library cache " + cacheFile, e);
+    }
+  }
+
+  /**
+   * @return the number of entries written to the trailer of the cache file or -1, if there is no
+   * complete cache file
+   */
+  private int readNumEntries() {
+    if (!cacheFile.isFile()) {
+      return -1;
+    }
+    try (RandomAccessFile file = new RandomAccessFile(cacheFile, "r")) {
+      if (file.length() < 3 * Integer.BYTES) {
+        return -1;
+      }
+      file.seek(file.length() - 3 * Integer.BYTES);
+      final int numEntries = file.readInt();
+      file.readInt(); // checksum
+      return file.readInt() == MAGIC ? numEntries : -1;
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Cannot read library cache " + cacheFile, e);
+      return -1;
+    }
+  }
+
+  /**
+   * @return true if the cache file was written for the current state of the library file
+   */
+  private boolean readHeader(DataInputStream in) throws IOException {
+    if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+      logger.fine(() -> "Library cache " + cacheFile + " was written by another version");
+      return false;
+    }
+    final String path = in.readUTF();
+    final long length = in.readLong();
+    final long lastModified = in.readLong();
+    if (!path.equals(libraryFile.getPath()) || length != libraryFile.length()
+        || lastModified != libraryFile.lastModified()) {
+      logger.fine(() -> "Library cache " + cacheFile + " is outdated");
+      return false;
+    }
+    return true;
+  }
+
+  private static Object readValue(DataInputStream in, List<String> strings) throws IOException {
+    final byte type = in.readByte();
+    switch (type) {
+      case STRING:
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        final String string = new String(bytes, StandardCharsets.UTF_8);
+        strings.add(string);
+        return string;
+      case STRING_REFERENCE:
+        return strings.get(in.readInt());
+      case DOUBLE:
+        return in.readDouble();
+      case FLOAT:
+        return in.readFloat();
+      case INTEGER:
+        return in.readInt();
+      default:
+        throw new IOException("Unknown value type " + type);
+    }
+  }
+
+  /**
+   * Creates a writer for a new cache file. The current cache file is only replaced once the writer
+   * is committed.
+   *
+   * @return the writer or null, if the cache file cannot be created
+   */
+  @Nullable
+  Writer createWriter() {
+    try {
+      return new Writer();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Cannot create library cache " + cacheFile, e);
+      return null;
+    }
+  }
+
+  private static void delete(File file) {
+    if (file.exists() && !file.delete()) {
+      logger.fine(() -> "Cannot delete " + file);
+    }
+  }
+
+  /**
+   * Writes the entries to a temporary file while the library is parsed. Errors are only logged,
+   * they never interrupt the parsing, the cache file is just not written in this case.
+   */
+  class Writer {
+
+    private final File tmpFile;
+    private final CRC32 checksum = new CRC32();
+    private final DataOutputStream out;
+    private final Map<String, Integer> strings = new HashMap<>();
+    private ByteBuffer buffer = ByteBuffer.allocate(0);
+    private int numEntries = 0;
+    private boolean failed = false;
+
+    private Writer() throws IOException {
+      final File directory = cacheFile.getParentFile();
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IOException("Cannot create directory " + directory);
+      }
+      tmpFile = File.createTempFile("mzmine", ".tmp", directory);
+      out = new DataOutputStream(new BufferedOutputStream(
+          new CheckedOutputStream(new FileOutputStream(tmpFile), checksum), BUFFER_SIZE));
+
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeUTF(libraryFile.getPath());
+      out.writeLong(libraryFile.length());
+      out.writeLong(libraryFile.lastModified());
+
+      final DBEntryField[] fields = DBEntryField.values();
+      out.writeByte(fields.length);
+      for (DBEntryField field : fields) {
+        out.writeUTF(field.name());
+      }
+    }
+
+    /**
+     * Appends the entries to the cache file.
+     */
+    synchronized void append(@Nonnull List<SpectralDBEntry> entries) {
+      if (failed) {
+        return;
+      }
+      try {
+        for (SpectralDBEntry entry : entries) {
+          writeEntry(entry);
+        }
+      } catch (IOException | RuntimeException e) {
+        logger.log(Level.WARNING, "Cannot write library cache " + cacheFile, e);
+        failed = true;
+      }
+    }
+
+    private void writeEntry(SpectralDBEntry entry) throws IOException {
+      final DataPoint[] dps = entry.getDataPoints();
+      final int numBytes = dps.length * 2 * Double.BYTES;
+      if (buffer.capacity() < numBytes) {
+        buffer = ByteBuffer.allocate(numBytes);
+      }
+      for (int i = 0; i < dps.length; i++) {
+        buffer.putDouble(i * Double.BYTES, dps[i].getMZ());
+        buffer.putDouble((dps.length + i) * Double.BYTES, dps[i].getIntensity());
+      }
+      out.writeInt(dps.length);
+      out.write(buffer.array(), 0, numBytes);
+
+      final DBEntryField[] fields = DBEntryField.values();
+      final List<DBEntryField> present = new ArrayList<>();
+      for (DBEntryField field : fields) {
+        if (entry.getField(field).isPresent()) {
+          present.add(field);
+        }
+      }
+      out.writeByte(present.size());
+      for (DBEntryField field : present) {
+        out.writeByte(field.ordinal());
+        writeValue(entry.getField(field).get());
+      }
+      numEntries++;
+    }
+
+    private void writeValue(Object value) throws IOException {
+      if (value instanceof String) {
+        final Integer index = strings.get(value);
+        if (index != null) {
+          out.writeByte(STRING_REFERENCE);
+          out.writeInt(index);
+        } else {
+          strings.put((String) value, strings.size());
+          final byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+          out.writeByte(STRING);
+          out.writeInt(bytes.length);
+          out.write(bytes);
+        }
+      } else if (value instanceof Double) {
+        out.writeByte(DOUBLE);
+        out.writeDouble((Double) value);
+      } else if (value instanceof Float) {
+        out.writeByte(FLOAT);
+        out.writeFloat((Float) value);
+      } else if (value instanceof Integer) {
+        out.writeByte(INTEGER);
+        out.writeInt((Integer) value);
+      } else {
+        throw new IOException("Cannot cache values of type " + value.getClass());
+      }
+    }
+
+    /**
+     * Closes the writer.
+     *
+     * @param commit true if the library was parsed completely. The cache file is replaced by the
+     *               new file in this case, otherwise the new file is discarded.
+     */
+    synchronized void close(boolean commit) {
+      try {
+        if (!failed) {
+          out.writeInt(-1);
+          out.writeInt(numEntries);
+          // the checksum covers all bytes written so far
+          out.flush();
+          out.writeInt((int) checksum.getValue());
+          out.writeInt(MAGIC);
+        }
+        out.close();
+        if (commit && !failed) {
+          try {
+            Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+          } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+          }
+          logger.info(() -> "Wrote " + numEntries + " library entries to cache " + cacheFile);
+        }
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Cannot write library cache " + cacheFile, e);
+      } finally {
+        delete(tmpFile);
+      }
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package modules.dataprocessing.featdet_adapchromatogrambuilder;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder.ADAPChromatogram;
+import io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder.ADAPChromatogramBuilder;
+import io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder.ExpandedDataPoint;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ADAPChromatogramBuilderTest {
+
+  private static final Logger logger =
+      Logger.getLogger(ADAPChromatogramBuilderTest.class.getName());
+
+  private static final int NUM_SCANS = 120;
+  private static final int NUM_TRACES = 300;
+  private static final int NOISE_POINTS_PER_SCAN = 200;
+
+  /**
+   * The array based builder has to create exactly the same chromatograms as the original
+   * implementation based on data point objects and a range set.
+   */
+  @Test
+  public void testIdenticalChromatograms() throws IOException {
+    final RawDataFile file = new RawDataFileImpl("test", null, Color.BLACK);
+    final Random random = new Random(42);
+
+    // m/z and apex of the chromatographic traces. Some traces are closer than the tolerance.
+    final double[] traceMzs = new double[NUM_TRACES];
+    final int[] traceApex = new int[NUM_TRACES];
+    for (int t = 0; t < NUM_TRACES; t++) {
+      traceMzs[t] = t % 10 == 0 && t > 0 ? traceMzs[t - 1] + 0.004 : 100 + random.nextDouble() * 900;
+      traceApex[t] = random.nextInt(NUM_SCANS);
+    }
+
+    final Scan[] scans = new Scan[NUM_SCANS];
+    final List<Double> mzList = new ArrayList<>();
+    final List<Double> intensityList = new ArrayList<>();
+    final List<Integer> scanIndexList = new ArrayList<>();
+    final List<ExpandedDataPoint> dataPoints = new ArrayList<>();
+
+    for (int s = 0; s < NUM_SCANS; s++) {
+      final int numPoints = NUM_TRACES + NOISE_POINTS_PER_SCAN;
+      final double[][] points = new double[numPoints][];
+      for (int t = 0; t < NUM_TRACES; t++) {
+        final double width = 5d;
+        final double intensity = 1E5 * Math.exp(-Math.pow(s - traceApex[t], 2) / (2 * width * width));
+        // rounded intensities create ties that need to be resolved the same way
+        points[t] = new double[]{traceMzs[t] + (random.nextDouble() - 0.5) * 0.004,
+            Math.rint(intensity)};
+      }
+      for (int n = NUM_TRACES; n < numPoints; n++) {
+        points[n] = new double[]{100 + random.nextDouble() * 900, random.nextInt(500)};
+      }
+      Arrays.sort(points, (a, b) -> Double.compare(a[0], b[0]));
+
+      final double[] mzs = new double[numPoints];
+      final double[] intensities = new double[numPoints];
+      for (int i = 0; i < numPoints; i++) {
+        mzs[i] = points[i][0];
+        intensities[i] = points[i][1];
+      }
+
+      scans[s] = new SimpleScan(file, s, 1, s * 0.1f, 0, 0, mzs, intensities,
+          MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "", Range.closed(100d, 1000d));
+      file.addScan(scans[s]);
+
+      for (int i = 0; i < numPoints; i++) {
+        mzList.add(mzs[i]);
+        intensityList.add(intensities[i]);
+        scanIndexList.add(s);
+        dataPoints.add(new ExpandedDataPoint(mzs[i], intensities[i], scans[s]));
+      }
+    }
+
+    final double[] mzs = mzList.stream().mapToDouble(Double::doubleValue).toArray();
+    final double[] intensities = intensityList.stream().mapToDouble(Double::doubleValue).toArray();
+    final int[] scanIndices = scanIndexList.stream().mapToInt(Integer::intValue).toArray();
+
+    final MZTolerance tolerance = new MZTolerance(0.003, 5);
+    final ADAPChromatogramBuilder builder =
+        new ADAPChromatogramBuilder(file, scans, tolerance, 1000, () -> false);
+
+    final List<ADAPChromatogram> expected = builder.buildChromatograms(dataPoints);
+    final List<ADAPChromatogram> actual =
+        builder.buildChromatograms(mzs, intensities, scanIndices, mzs.length);
+
+    logger.info("Built " + actual.size() + " chromatograms");
+    Assertions.assertFalse(expected.isEmpty());
+    Assertions.assertEquals(expected.size(), actual.size());
+
+    for (int c = 0; c < expected.size(); c++) {
+      final ADAPChromatogram exp = expected.get(c);
+      final ADAPChromatogram act = actual.get(c);
+      Assertions.assertEquals(exp.getHighPointMZ(), act.getHighPointMZ());
+      Assertions.assertArrayEquals(exp.getScanNumbers(), act.getScanNumbers());
+
+      final List<DataPoint> expPoints = new ArrayList<>(exp.getDataPoints());
+      final List<DataPoint> actPoints = new ArrayList<>(act.getDataPoints());
+      Assertions.assertEquals(expPoints.size(), actPoints.size());
+      for (int i = 0; i < expPoints.size(); i++) {
+        Assertions.assertEquals(expPoints.get(i).getMZ(), actPoints.get(i).getMZ());
+        Assertions.assertEquals(expPoints.get(i).getIntensity(), actPoints.get(i).getIntensity());
+      }
+    }
+  }
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package modules.dataprocessing.gapfill_peakfinder;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.FeatureStatus;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.Gap;
+import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.GapFiller;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.util.RangeUtils;
+import io.github.mzmine.util.scans.ScanUtils;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+import java.util.logging.Logger;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import util.SyntheticSpectra;
+
+public class GapFillerTest {
+
+  private static final Logger logger = Logger.getLogger(GapFillerTest.class.getName());
+
+  private static final int NUM_SCANS = 150;
+  private static final float RT_STEP = 0.05f;
+  private static final int NUM_TRACES = 100;
+  private static final int NUM_GAPS = 300;
+  private static final double INT_TOLERANCE = 0.2;
+
+  /**
+   * The single sweep over the scans has to fill the gaps with exactly the same features as the
+   * original implementation, which offered every scan to every gap.
+   */
+  @Test
+  public void testIdenticalFeatures() throws IOException {
+    final RawDataFile file = new RawDataFileImpl("test", null, Color.BLACK);
+    final SyntheticSpectra spectra = new SyntheticSpectra(42);
+    final Random random = spectra.getRandom();
+
+    // every tenth trace has almost the same m/z as the previous one, so some gaps contain two
+    // peaks and have to select the same one
+    final double[] traceMzs = new double[NUM_TRACES];
+    final int[] traceApex = new int[NUM_TRACES];
+    for (int t = 0; t < NUM_TRACES; t++) {
+      traceMzs[t] =
+          t % 10 == 0 && t > 0 ? traceMzs[t - 1] + 0.001 : 100 + random.nextDouble() * 900;
+      traceApex[t] = random.nextInt(NUM_SCANS);
+    }
+    final Scan[] scans = spectra.createScans(file, NUM_SCANS, RT_STEP, traceMzs, traceApex, 100);
+
+    final ModularFeatureList expectedList = new ModularFeatureList("expected", null, file);
+    final ModularFeatureList actualList = new ModularFeatureList("actual", null, file);
+    final List<OriginalGap> expectedGaps = new ArrayList<>(NUM_GAPS);
+    final List<Gap> actualGaps = new ArrayList<>(NUM_GAPS);
+    final List<FeatureListRow> expectedRows = new ArrayList<>(NUM_GAPS);
+    final List<FeatureListRow> actualRows = new ArrayList<>(NUM_GAPS);
+
+    for (int g = 0; g < NUM_GAPS; g++) {
+      // most gaps are located around a trace, the others contain only noise. Some RT ranges
+      // exceed the RT range of the scans.
+      final double mz;
+      final int apex;
+      if (g % 3 != 0) {
+        final int t = random.nextInt(NUM_TRACES);
+        mz = traceMzs[t];
+        apex = traceApex[t] + random.nextInt(13) - 6;
+      } else {
+        mz = 100 + random.nextDouble() * 900;
+        apex = random.nextInt(NUM_SCANS);
+      }
+      final double mzTol = 0.003 + random.nextDouble() * 0.007;
+      final Range<Double> mzRange = Range.closed(mz - mzTol, mz + mzTol);
+      final Range<Float> rtRange = Range.closed((apex - 1 - random.nextInt(8)) * RT_STEP,
+          (apex + 1 + random.nextInt(8)) * RT_STEP);
+
+      final ModularFeatureListRow expectedRow = new ModularFeatureListRow(expectedList, g + 1);
+      expectedList.addRow(expectedRow);
+      expectedRows.add(expectedRow);
+      expectedGaps.add(new OriginalGap(expectedRow, file, mzRange, rtRange, INT_TOLERANCE));
+
+      final ModularFeatureListRow actualRow = new ModularFeatureListRow(actualList, g + 1);
+      actualList.addRow(actualRow);
+      actualRows.add(actualRow);
+      actualGaps.add(new Gap(actualRow, file, mzRange, rtRange, INT_TOLERANCE));
+    }
+
+    // original implementation: every scan is offered to every gap
+    for (Scan scan : scans) {
+      for (OriginalGap gap : expectedGaps) {
+        gap.offerNextScan(scan);
+      }
+    }
+    for (OriginalGap gap : expectedGaps) {
+      gap.noMoreOffers();
+    }
+
+    final GapFiller gapFiller = new GapFiller(actualGaps);
+    for (Scan scan : scans) {
+      gapFiller.offerNextScan(scan);
+    }
+    gapFiller.noMoreOffers();
+
+    int numFilled = 0;
+    for (int g = 0; g < NUM_GAPS; g++) {
+      final ModularFeature expected = (ModularFeature) expectedRows.get(g).getFeature(file);
+      final ModularFeature actual = (ModularFeature) actualRows.get(g).getFeature(file);
+      if (expected == null) {
+        Assertions.assertNull(actual, "Gap " + g + " was filled but should not be");
+        continue;
+      }
+      Assertions.assertNotNull(actual, "Gap " + g + " was not filled");
+      numFilled++;
+
+      Assertions.assertEquals(expected.getScanNumbers(), actual.getScanNumbers());
+      Assertions.assertEquals(expected.getMZ(), actual.getMZ());
+      Assertions.assertEquals(expected.getRT(), actual.getRT());
+      Assertions.assertEquals(expected.getHeight(), actual.getHeight());
+      Assertions.assertEquals(expected.getArea(), actual.getArea());
+      Assertions.assertEquals(expected.getRawDataPointsRTRange(),
+          actual.getRawDataPointsRTRange());
+      Assertions.assertEquals(expected.getRawDataPointsMZRange(),
+          actual.getRawDataPointsMZRange());
+
+      final IonTimeSeries<? extends Scan> expData = expected.getFeatureData();
+      final IonTimeSeries<? extends Scan> actData = actual.getFeatureData();
+      Assertions.assertEquals(expData.getNumberOfValues(), actData.getNumberOfValues());
+      for (int i = 0; i < expData.getNumberOfValues(); i++) {
+        Assertions.assertEquals(expData.getMZ(i), actData.getMZ(i));
+        Assertions.assertEquals(expData.getIntensity(i), actData.getIntensity(i));
+      }
+    }
+
+    logger.info("Filled " + numFilled + " of " + NUM_GAPS + " gaps");
+    Assertions.assertTrue(numFilled > 0);
+    Assertions.assertTrue(numFilled < NUM_GAPS);
+  }
+
+  /**
+   * The gap implementation before the single sweep, based on a list of data point objects.
+   */
+  private static class OriginalGap {
+
+    private final FeatureListRow peakListRow;
+    private final RawDataFile rawDataFile;
+    private final Range<Double> mzRange;
+    private final Range<Float> rtRange;
+    private final double intTolerance;
+
+    private List<GapDataPoint> currentPeakDataPoints;
+    private List<GapDataPoint> bestPeakDataPoints;
+    private double bestPeakHeight;
+
+    OriginalGap(FeatureListRow peakListRow, RawDataFile rawDataFile, Range<Double> mzRange,
+        Range<Float> rtRange, double intTolerance) {
+      this.peakListRow = peakListRow;
+      this.rawDataFile = rawDataFile;
+      this.intTolerance = intTolerance;
+      this.mzRange = mzRange;
+      this.rtRange = rtRange;
+    }
+
+    void offerNextScan(Scan scan) {
+      double scanRT = scan.getRetentionTime();
+      if (scanRT < rtRange.lowerEndpoint()) {
+        return;
+      }
+      if ((scanRT > rtRange.upperEndpoint()) && (currentPeakDataPoints == null)) {
+        return;
+      }
+
+      DataPoint basePeak = ScanUtils.findBasePeak(scan, mzRange);
+      GapDataPoint currentDataPoint;
+      if (basePeak != null) {
+        currentDataPoint =
+            new GapDataPoint(scan, basePeak.getMZ(), scanRT, basePeak.getIntensity());
+      } else {
+        currentDataPoint = new GapDataPoint(scan, RangeUtils.rangeCenter(mzRange), scanRT, 0);
+      }
+
+      if (currentPeakDataPoints == null) {
+        currentPeakDataPoints = new Vector<>();
+        currentPeakDataPoints.add(currentDataPoint);
+        return;
+      }
+
+      if (checkRTShape(currentDataPoint)) {
+        currentPeakDataPoints.add(currentDataPoint);
+      } else {
+        checkCurrentPeak();
+        currentPeakDataPoints = null;
+      }
+    }
+
+    void noMoreOffers() {
+      if (currentPeakDataPoints != null) {
+        checkCurrentPeak();
+        currentPeakDataPoints = null;
+      }
+      if (bestPeakDataPoints == null) {
+        return;
+      }
+
+      double mz = 0;
+      float rt = 0, height = 0, area = 0;
+      Scan[] scanNumbers = new Scan[bestPeakDataPoints.size()];
+      DataPoint[] finalDataPoint = new DataPoint[bestPeakDataPoints.size()];
+      Range<Double> finalMZRange = null;
+      Range<Float> finalRTRange = null, finalIntensityRange = null;
+      Scan representativeScan = null;
+
+      for (int i = 0; i < bestPeakDataPoints.size(); i++) {
+        GapDataPoint dp = bestPeakDataPoints.get(i);
+        if (i == 0) {
+          finalRTRange = Range.singleton((float) dp.rt);
+          finalMZRange = Range.singleton(dp.mz);
+          finalIntensityRange = Range.singleton((float) dp.intensity);
+        } else {
+          finalRTRange = finalRTRange.span(Range.singleton((float) dp.rt));
+          finalMZRange = finalMZRange.span(Range.singleton(dp.mz));
+          finalIntensityRange = finalIntensityRange.span(Range.singleton((float) dp.intensity));
+        }
+        scanNumbers[i] = dp.scan;
+        finalDataPoint[i] = new SimpleDataPoint(dp.mz, dp.intensity);
+        mz += dp.mz;
+
+        if (dp.intensity > height) {
+          height = (float) dp.intensity;
+          rt = (float) dp.rt;
+          representativeScan = dp.scan;
+        }
+
+        if (i == bestPeakDataPoints.size() - 1) {
+          break;
+        }
+        double rtDifference = (bestPeakDataPoints.get(i + 1).rt - dp.rt) * 60d;
+        double intensityStart = dp.intensity;
+        double intensityEnd = bestPeakDataPoints.get(i + 1).intensity;
+        area += (rtDifference * (intensityStart + intensityEnd) / 2);
+      }
+      mz /= bestPeakDataPoints.size();
+
+      Scan fragmentScan = ScanUtils.findBestFragmentScan(rawDataFile, finalRTRange, finalMZRange);
+      Scan[] allMS2FragmentScanNumbers =
+          ScanUtils.findAllMS2FragmentScans(rawDataFile, finalRTRange, finalMZRange);
+
+      ModularFeature newPeak = new ModularFeature((ModularFeatureList) peakListRow.getFeatureList(),
+          rawDataFile, mz, rt, height, area, scanNumbers, finalDataPoint, FeatureStatus.ESTIMATED,
+          representativeScan, fragmentScan, allMS2FragmentScanNumbers, finalRTRange, finalMZRange,
+          finalIntensityRange);
+      peakListRow.addFeature(rawDataFile, newPeak);
+    }
+
+    private boolean checkRTShape(GapDataPoint dp) {
+      if (dp.rt < rtRange.lowerEndpoint()) {
+        double prevInt = currentPeakDataPoints.get(currentPeakDataPoints.size() - 1).intensity;
+        if (dp.intensity > (prevInt * (1 - intTolerance))) {
+          return true;
+        }
+      }
+      if (rtRange.contains((float) dp.rt)) {
+        return true;
+      }
+      if (dp.rt > rtRange.upperEndpoint()) {
+        double prevInt = currentPeakDataPoints.get(currentPeakDataPoints.size() - 1).intensity;
+        return dp.intensity < (prevInt * (1 + intTolerance));
+      }
+      return false;
+    }
+
+    private void checkCurrentPeak() {
+      // 1) Check if the current peak has a local maximum inside the search range
+      int highestMaximumInd = -1;
+      double currentMaxHeight = 0f;
+      for (int i = 1; i < currentPeakDataPoints.size() - 1; i++) {
+        if (rtRange.contains((float) currentPeakDataPoints.get(i).rt)) {
+          final double intensity = currentPeakDataPoints.get(i).intensity;
+          if (intensity >= currentPeakDataPoints.get(i + 1).intensity
+              && intensity >= currentPeakDataPoints.get(i - 1).intensity
+              && intensity > currentMaxHeight) {
+            currentMaxHeight = intensity;
+            highestMaximumInd = i;
+          }
+        }
+      }
+      if (highestMaximumInd == -1) {
+        return;
+      }
+
+      // 2) Find elution start and stop
+      int startInd = highestMaximumInd;
+      double currentInt = currentPeakDataPoints.get(startInd).intensity;
+      while (startInd > 0) {
+        double nextInt = currentPeakDataPoints.get(startInd - 1).intensity;
+        if (currentInt < (nextInt * (1 - intTolerance))) {
+          break;
+        }
+        startInd--;
+        if (nextInt == 0) {
+          break;
+        }
+        currentInt = nextInt;
+      }
+
+      int stopInd = highestMaximumInd, toIndex = highestMaximumInd;
+      currentInt = currentPeakDataPoints.get(stopInd).intensity;
+      while (stopInd < (currentPeakDataPoints.size() - 1)) {
+        double nextInt = currentPeakDataPoints.get(stopInd + 1).intensity;
+        if (nextInt > (currentInt * (1 + intTolerance))) {
+          toIndex = Math.min(currentPeakDataPoints.size(), stopInd + 1);
+          break;
+        }
+        stopInd++;
+        toIndex = Math.min(currentPeakDataPoints.size(), stopInd + 1);
+        if (nextInt == 0) {
+          stopInd++;
+          toIndex = stopInd;
+          break;
+        }
+        currentInt = nextInt;
+      }
+
+      // 3) Check if this is the best candidate for a peak
+      if ((bestPeakDataPoints == null) || (bestPeakHeight < currentMaxHeight)) {
+        bestPeakDataPoints = currentPeakDataPoints.subList(startInd, toIndex);
+      }
+    }
+  }
+
+  private static class GapDataPoint {
+
+    private final Scan scan;
+    private final double mz;
+    private final double rt;
+    private final double intensity;
+
+    GapDataPoint(Scan scan, double mz, double rt, double intensity) {
+      this.scan = scan;
+      this.mz = mz;
+      this.rt = rt;
+      this.intensity = intensity;
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package util;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Creates reproducible centroid spectra for tests that compare an optimized implementation with
+ * the original one. The spectra contain signals closer than common m/z tolerances and rounded
+ * intensities, so that ties have to be resolved the same way by both implementations.
+ */
+public class SyntheticSpectra {
+
+  private final Random random;
+
+  /**
+   * @param seed the seed of the random numbers, the same seed creates the same spectra
+   */
+  public SyntheticSpectra(long seed) {
+    random = new Random(seed);
+  }
+
+  public Random getRandom() {
+    return random;
+  }
+
+  /**
+   * @param numSignals number of signals
+   * @param minMz      lower bound of the m/z values
+   * @param maxMz      upper bound of the m/z values
+   * @return a spectrum sorted by m/z
+   */
+  public DataPoint[] createSpectrum(int numSignals, double minMz, double maxMz) {
+    final List<DataPoint> dps = new ArrayList<>(numSignals);
+    for (int i = 0; i < numSignals; i++) {
+      // every fifth signal is close to the previous one
+      final double mz = i % 5 == 4 ? dps.get(i - 1).getMZ() + 0.002
+          : minMz + random.nextDouble() * (maxMz - minMz);
+      dps.add(new SimpleDataPoint(mz, Math.rint(random.nextDouble() * 100) * 100));
+    }
+    return sortByMz(dps);
+  }
+
+  /**
+   * Creates a spectrum similar to the given one. The m/z values are shifted, the intensities are
+   * scaled, some signals are removed and random signals are added.
+   *
+   * @param spectrum      the original spectrum
+   * @param maxMzShift    the maximum absolute shift of the m/z values
+   * @param removedShare  the share of removed signals
+   * @param addedSignals  the number of added random signals
+   * @return a spectrum sorted by m/z
+   */
+  public DataPoint[] createSimilarSpectrum(DataPoint[] spectrum, double maxMzShift,
+      double removedShare, int addedSignals) {
+    final List<DataPoint> dps = new ArrayList<>(spectrum.length + addedSignals);
+    double minMz = Double.MAX_VALUE;
+    double maxMz = 0d;
+    for (DataPoint dp : spectrum) {
+      minMz = Math.min(minMz, dp.getMZ());
+      maxMz = Math.max(maxMz, dp.getMZ());
+      if (random.nextDouble() < removedShare) {
+        continue;
+      }
+      final double mz = dp.getMZ() + (random.nextDouble() * 2 - 1) * maxMzShift;
+      final double intensity = Math.rint(dp.getIntensity() * (0.5 + random.nextDouble()));
+      dps.add(new SimpleDataPoint(mz, intensity));
+    }
+    if (spectrum.length == 0) {
+      minMz = 100;
+      maxMz = 1000;
+    }
+    dps.addAll(Arrays.asList(createSpectrum(addedSignals, minMz, maxMz)));
+    return sortByMz(dps);
+  }
+
+  /**
+   * Creates MS1 scans with Gaussian chromatographic traces and random noise signals and adds them
+   * to the raw data file.
+   *
+   * @param file         the raw data file
+   * @param numScans     number of scans, the retention time of scan s is s * rtStep
+   * @param rtStep       the retention time difference of two scans
+   * @param traceMzs     the m/z of the traces
+   * @param traceApex    the scan index of the apex of each trace
+   * @param noiseSignals number of random signals per scan
+   * @return the scans in the order of their retention time
+   */
+  public Scan[] createScans(RawDataFile file, int numScans, float rtStep, double[] traceMzs,
+      int[] traceApex, int noiseSignals) throws IOException {
+    final Scan[] scans = new Scan[numScans];
+    for (int s = 0; s < numScans; s++) {
+      final List<DataPoint> dps = new ArrayList<>(traceMzs.length + noiseSignals);
+      for (int t = 0; t < traceMzs.length; t++) {
+        final double width = 2 + t % 5;
+        final double intensity =
+            1E5 * Math.exp(-Math.pow(s - traceApex[t], 2) / (2 * width * width));
+        // traces end in zero intensities, rounded intensities create ties
+        if (intensity >= 1) {
+          dps.add(new SimpleDataPoint(traceMzs[t] + (random.nextDouble() - 0.5) * 0.002,
+              Math.rint(intensity)));
+        }
+      }
+      dps.addAll(Arrays.asList(createSpectrum(noiseSignals, 100, 1000)));
+      final DataPoint[] sorted = sortByMz(dps);
+
+      final double[] mzs = new double[sorted.length];
+      final double[] intensities = new double[sorted.length];
+      for (int i = 0; i < sorted.length; i++) {
+        mzs[i] = sorted[i].getMZ();
+        intensities[i] = sorted[i].getIntensity();
+      }
+      scans[s] = new SimpleScan(file, s, 1, s * rtStep, 0, 0, mzs, intensities,
+          MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "", Range.closed(100d, 1000d));
+      file.addScan(scans[s]);
+    }
+    return scans;
+  }
+
+  private static DataPoint[] sortByMz(List<DataPoint> dps) {
+    final DataPoint[] sorted = dps.toArray(new DataPoint[0]);
+    Arrays.sort(sorted, Comparator.comparingDouble(DataPoint::getMZ));
+    return sorted;
+  }
+}
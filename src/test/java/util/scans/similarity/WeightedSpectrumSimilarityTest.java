@@ -0,0 +1,129 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package util.scans.similarity;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.scans.similarity.SpectralSimilarity;
+import io.github.mzmine.util.scans.similarity.SpectralSimilarityFunction;
+import io.github.mzmine.util.scans.similarity.WeightedSpectrum;
+import io.github.mzmine.util.scans.similarity.WeightedSpectrumMatcher;
+import io.github.mzmine.util.scans.similarity.Weights;
+import io.github.mzmine.util.scans.similarity.impl.composite.CompositeCosineSpectralSimilarity;
+import io.github.mzmine.util.scans.similarity.impl.composite.CompositeCosineSpectralSimilarityParameters;
+import io.github.mzmine.util.scans.similarity.impl.cosine.WeightedCosineSpectralSimilarity;
+import io.github.mzmine.util.scans.similarity.impl.cosine.WeightedCosineSpectralSimilarityParameters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import util.SyntheticSpectra;
+
+public class WeightedSpectrumSimilarityTest {
+
+  private static final Logger logger =
+      Logger.getLogger(WeightedSpectrumSimilarityTest.class.getName());
+
+  private static final int NUM_LIBRARY = 60;
+  private static final int NUM_QUERIES = 20;
+  private static final int MIN_MATCH = 4;
+  private static final double[] MIN_COSINES = {0d, 0.5, 0.7, 0.9};
+
+  private final MZTolerance mzTol = new MZTolerance(0.003, 5);
+
+  @Test
+  public void testWeightedCosine() {
+    testIdenticalSimilarities(new WeightedCosineSpectralSimilarity(),
+        new WeightedCosineSpectralSimilarityParameters().cloneParameterSet());
+  }
+
+  @Test
+  public void testCompositeCosine() {
+    testIdenticalSimilarities(new CompositeCosineSpectralSimilarity(),
+        new CompositeCosineSpectralSimilarityParameters().cloneParameterSet());
+  }
+
+  /**
+   * The similarity of prepared spectra has to be the same as the similarity of the data points
+   * for all weights and thresholds. Both functions use the same parameter names.
+   */
+  private void testIdenticalSimilarities(SpectralSimilarityFunction function,
+      ParameterSet parameters) {
+    final SyntheticSpectra spectra = new SyntheticSpectra(42);
+    final List<DataPoint[]> library = new ArrayList<>(NUM_LIBRARY);
+    for (int i = 0; i < NUM_LIBRARY; i++) {
+      library.add(spectra.createSpectrum(5 + spectra.getRandom().nextInt(40), 50, 800));
+    }
+    // similar queries and random ones
+    final List<DataPoint[]> queries = new ArrayList<>(NUM_QUERIES);
+    for (int i = 0; i < NUM_QUERIES; i++) {
+      queries.add(i % 4 != 0
+          ? spectra.createSimilarSpectrum(library.get(i), 0.004, 0.2, 5 * (i % 3))
+          : spectra.createSpectrum(40, 50, 800));
+    }
+
+    final WeightedSpectrumMatcher matcher = new WeightedSpectrumMatcher();
+    int numMatches = 0;
+    int numRejected = 0;
+    for (Weights weights : Weights.VALUES) {
+      parameters.getParameter(WeightedCosineSpectralSimilarityParameters.weight)
+          .setValue(weights);
+      final List<WeightedSpectrum> weightedLibrary = new ArrayList<>(NUM_LIBRARY);
+      for (DataPoint[] dps : library) {
+        weightedLibrary.add(new WeightedSpectrum(dps, weights));
+      }
+
+      for (boolean removeUnmatched : new boolean[]{false, true}) {
+        parameters.getParameter(WeightedCosineSpectralSimilarityParameters.removeUnmatched)
+            .setValue(removeUnmatched);
+        for (double minCos : MIN_COSINES) {
+          parameters.getParameter(WeightedCosineSpectralSimilarityParameters.minCosine)
+              .setValue(minCos);
+
+          for (DataPoint[] query : queries) {
+            final WeightedSpectrum weightedQuery = new WeightedSpectrum(query, weights);
+            for (int l = 0; l < NUM_LIBRARY; l++) {
+              // the data point based similarity sorts the arrays
+              final SpectralSimilarity expected = function.getSimilarity(parameters, mzTol,
+                  MIN_MATCH, library.get(l).clone(), query.clone());
+              final SpectralSimilarity actual = function.getSimilarity(parameters, mzTol,
+                  MIN_MATCH, weightedLibrary.get(l), weightedQuery, matcher);
+
+              if (expected == null) {
+                Assertions.assertNull(actual);
+                numRejected++;
+              } else {
+                Assertions.assertNotNull(actual);
+                Assertions.assertEquals(expected.getScore(), actual.getScore());
+                Assertions.assertEquals(expected.getOverlap(), actual.getOverlap());
+                numMatches++;
+              }
+            }
+          }
+        }
+      }
+    }
+
+    logger.info(function.getName() + ": " + numMatches + " matches, " + numRejected + " rejected");
+    Assertions.assertTrue(numMatches > 0);
+    Assertions.assertTrue(numRejected > 0);
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package util.spectraldb;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.scans.similarity.SpectralSimilarityFunction;
+import io.github.mzmine.util.scans.similarity.impl.cosine.WeightedCosineSpectralSimilarity;
+import io.github.mzmine.util.scans.similarity.impl.cosine.WeightedCosineSpectralSimilarityParameters;
+import io.github.mzmine.util.spectraldb.SpectralLibraryIndex;
+import io.github.mzmine.util.spectraldb.entry.DBEntryField;
+import io.github.mzmine.util.spectraldb.entry.SpectralDBEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import util.SyntheticSpectra;
+
+public class SpectralLibraryIndexTest {
+
+  private static final Logger logger = Logger.getLogger(SpectralLibraryIndexTest.class.getName());
+
+  private static final int NUM_ENTRIES = 400;
+  private static final int NUM_QUERIES = 80;
+  private static final int MIN_MATCH = 4;
+
+  private final MZTolerance precursorTol = new MZTolerance(0.003, 5);
+  private final MZTolerance mzTol = new MZTolerance(0.003, 5);
+
+  /**
+   * The index has to return every entry that is matched when the query is compared to all entries
+   * of the library, with and without the precursor filter.
+   */
+  @Test
+  public void testCandidatesContainAllMatches() {
+    final SyntheticSpectra spectra = new SyntheticSpectra(42);
+    final Random random = spectra.getRandom();
+
+    final List<SpectralDBEntry> entries = new ArrayList<>(NUM_ENTRIES);
+    for (int e = 0; e < NUM_ENTRIES; e++) {
+      final Map<DBEntryField, Object> fields = new HashMap<>();
+      // some entries have no precursor, some have the same precursor as the previous entry
+      if (e % 20 != 0) {
+        final Double previous = e > 0 ? entries.get(e - 1).getPrecursorMZ() : null;
+        fields.put(DBEntryField.MZ, e % 7 == 0 && previous != null ? previous
+            : 200 + random.nextDouble() * 600);
+      }
+      entries.add(new SpectralDBEntry(fields,
+          spectra.createSpectrum(10 + random.nextInt(30), 50, 800)));
+    }
+    final SpectralLibraryIndex index = new SpectralLibraryIndex(entries, 1d);
+    final SpectralLibraryIndex.Searcher searcher = index.createSearcher();
+
+    // minimum cosine of 0, every entry with enough matched signals is a match
+    final SpectralSimilarityFunction function = new WeightedCosineSpectralSimilarity();
+    final ParameterSet parameters =
+        new WeightedCosineSpectralSimilarityParameters().cloneParameterSet();
+    parameters.getParameter(WeightedCosineSpectralSimilarityParameters.minCosine).setValue(0d);
+
+    int numMatches = 0;
+    for (int q = 0; q < NUM_QUERIES; q++) {
+      // most queries are derived from library entries, the others are random
+      final SpectralDBEntry source = entries.get(random.nextInt(NUM_ENTRIES));
+      final Double sourcePrecursor = source.getPrecursorMZ();
+      final Double precursor = q % 4 != 0 && sourcePrecursor != null
+          ? sourcePrecursor + (random.nextDouble() * 2 - 1) * 0.004
+          : 200 + random.nextDouble() * 600;
+      final List<DataPoint[]> queries = new ArrayList<>();
+      for (int s = 0; s < 2; s++) {
+        queries.add(q % 4 != 0
+            ? spectra.createSimilarSpectrum(source.getDataPoints(), 0.004, 0.3, 10)
+            : spectra.createSpectrum(30, 50, 800));
+      }
+      final List<double[]> queryMzs = new ArrayList<>();
+      for (DataPoint[] query : queries) {
+        queryMzs.add(Arrays.stream(query).mapToDouble(DataPoint::getMZ).toArray());
+      }
+
+      for (Double queryPrecursor : Arrays.asList(precursor, null)) {
+        final int[] candidates = searcher
+            .findCandidates(queryPrecursor, precursorTol, queryMzs, mzTol, MIN_MATCH);
+
+        for (int e = 0; e < NUM_ENTRIES; e++) {
+          final SpectralDBEntry entry = entries.get(e);
+          if (queryPrecursor != null && (entry.getPrecursorMZ() == null || !precursorTol
+              .checkWithinTolerance(entry.getPrecursorMZ(), queryPrecursor))) {
+            continue;
+          }
+          for (DataPoint[] query : queries) {
+            // the similarity sorts the arrays
+            if (function.getSimilarity(parameters, mzTol, MIN_MATCH,
+                entry.getDataPoints().clone(), query.clone()) != null) {
+              numMatches++;
+              Assertions.assertTrue(Arrays.binarySearch(candidates, e) >= 0,
+                  "Entry " + e + " is matched by query " + q + " but is not a candidate");
+              break;
+            }
+          }
+        }
+      }
+    }
+
+    logger.info("Found " + numMatches + " matches");
+    Assertions.assertTrue(numMatches > 0);
+  }
+}